@@ -15,28 +15,41 @@ import java.util.Iterator;
 import java.util.Set;
 import java.util.logging.Logger;
 
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.IJobChangeListener;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
 import org.eclipse.jface.action.Action;
 import org.eclipse.jface.action.IAction;
+import org.eclipse.jface.action.IMenuListener;
+import org.eclipse.jface.action.IMenuManager;
 import org.eclipse.jface.action.IToolBarManager;
+import org.eclipse.jface.action.MenuManager;
 import org.eclipse.jface.dialogs.Dialog;
 import org.eclipse.jface.dialogs.DialogSettings;
 import org.eclipse.jface.dialogs.IDialogSettings;
 import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.viewers.ArrayContentProvider;
 import org.eclipse.jface.viewers.DoubleClickEvent;
 import org.eclipse.jface.viewers.IDoubleClickListener;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.IStructuredContentProvider;
 import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.jface.viewers.ITableLabelProvider;
 import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
 import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.SashForm;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
 import org.eclipse.ui.ISharedImages;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.dialogs.FilteredTree;
@@ -50,6 +63,7 @@ import org.geotools.util.logging.Logging;
 import org.locationtech.udig.processingtoolbox.internal.Messages;
 import org.locationtech.udig.processingtoolbox.internal.ui.ProcessExecutionDialog;
 import org.locationtech.udig.processingtoolbox.internal.ui.SettingsDialog;
+import org.locationtech.udig.processingtoolbox.styler.ProcessExecutionJob;
 import org.locationtech.udig.processingtoolbox.tools.AmoebaWizard;
 import org.locationtech.udig.processingtoolbox.tools.AmoebaWizardDialog;
 import org.locationtech.udig.processingtoolbox.tools.BatchClipFeaturesDialog;
@@ -104,8 +118,22 @@ public class ToolboxView extends ViewPart implements ISetSelectionTarget {
     
     private static String lastSaveLocation;
 
+    private static Boolean streamingRasterOutput = Boolean.FALSE;
+
+    private static Integer rasterWorkingSetSize = Integer.valueOf(256); // MB
+
+    private static Boolean useResultCache = Boolean.FALSE;
+
+    private static Integer resultCacheSize = Integer.valueOf(1024); // MB
+
+    private static Integer chartDensityThreshold = Integer.valueOf(50000); // points
+
     private TreeViewer viewer;
 
+    private TableViewer jobViewer;
+
+    private IJobChangeListener jobListener;
+
     private IAction actionEnv;
 
     private String envIcon = "icons/applications-system-3.png"; //$NON-NLS-1$
@@ -139,6 +167,17 @@ public class ToolboxView extends ViewPart implements ISetSelectionTarget {
             ToolboxView.setAddLayerAutomatically(Boolean.parseBoolean(params[4]));
             ToolboxView.setMandatoryParameterOnly(Boolean.parseBoolean(params[5]));
             ToolboxView.setRetainLastSaveLocation(Boolean.parseBoolean(params[6]));
+            if (params.length > 8) {
+                ToolboxView.setStreamingRasterOutput(Boolean.parseBoolean(params[7]));
+                ToolboxView.setRasterWorkingSetSize(Integer.valueOf(params[8]));
+            }
+            if (params.length > 10) {
+                ToolboxView.setUseResultCache(Boolean.parseBoolean(params[9]));
+                ToolboxView.setResultCacheSize(Integer.valueOf(params[10]));
+            }
+            if (params.length > 11) {
+                ToolboxView.setChartDensityThreshold(Integer.valueOf(params[11]));
+            }
         } else {
             setDefaultWorkspace();
         }
@@ -234,6 +273,46 @@ public class ToolboxView extends ViewPart implements ISetSelectionTarget {
         ToolboxView.retainLastSaveLocation = retainLastSaveLocation;
     }
 
+    public static Boolean getStreamingRasterOutput() {
+        return streamingRasterOutput;
+    }
+
+    public static void setStreamingRasterOutput(Boolean streamingRasterOutput) {
+        ToolboxView.streamingRasterOutput = streamingRasterOutput;
+    }
+
+    public static Integer getRasterWorkingSetSize() {
+        return rasterWorkingSetSize;
+    }
+
+    public static void setRasterWorkingSetSize(Integer rasterWorkingSetSize) {
+        ToolboxView.rasterWorkingSetSize = rasterWorkingSetSize;
+    }
+
+    public static Boolean getUseResultCache() {
+        return useResultCache;
+    }
+
+    public static void setUseResultCache(Boolean useResultCache) {
+        ToolboxView.useResultCache = useResultCache;
+    }
+
+    public static Integer getResultCacheSize() {
+        return resultCacheSize;
+    }
+
+    public static void setResultCacheSize(Integer resultCacheSize) {
+        ToolboxView.resultCacheSize = resultCacheSize;
+    }
+
+    public static Integer getChartDensityThreshold() {
+        return chartDensityThreshold;
+    }
+
+    public static void setChartDensityThreshold(Integer chartDensityThreshold) {
+        ToolboxView.chartDensityThreshold = chartDensityThreshold;
+    }
+
     public static String getLastSaveLocation() {
         return lastSaveLocation;
     }
@@ -246,8 +325,8 @@ public class ToolboxView extends ViewPart implements ISetSelectionTarget {
     public void dispose() {
         // save settings
         String[] params = settings.getArray(ENV_SETTING);
-        if (params == null) {
-            params = new String[7];
+        if (params == null || params.length < 12) {
+            params = new String[12];
         }
         
         params[0] = ToolboxView.getWorkspace();
@@ -257,18 +336,32 @@ public class ToolboxView extends ViewPart implements ISetSelectionTarget {
         params[4] = Boolean.toString(ToolboxView.getAddLayerAutomatically());
         params[5] = Boolean.toString(ToolboxView.getMandatoryParameterOnly());
         params[6] = Boolean.toString(ToolboxView.getRetainLastSaveLocation());
+        params[7] = Boolean.toString(ToolboxView.getStreamingRasterOutput());
+        params[8] = Integer.toString(ToolboxView.getRasterWorkingSetSize());
+        params[9] = Boolean.toString(ToolboxView.getUseResultCache());
+        params[10] = Integer.toString(ToolboxView.getResultCacheSize());
+        params[11] = Integer.toString(ToolboxView.getChartDensityThreshold());
         
         settings.put(ENV_SETTING, params);
-        
+
+        if (jobListener != null) {
+            Job.getJobManager().removeJobChangeListener(jobListener);
+            jobListener = null;
+        }
+
+        jobViewer = null;
         viewer = null;
         super.dispose();
     }
 
     @Override
     public void createPartControl(Composite parent) {
+        SashForm sashForm = new SashForm(parent, SWT.VERTICAL);
+
         // create tree viewer
         PatternFilter patternFilter = new PatternFilter();
-        FilteredTree filter = new FilteredTree(parent, SWT.SINGLE | SWT.BORDER, patternFilter, true);
+        FilteredTree filter = new FilteredTree(sashForm, SWT.SINGLE | SWT.BORDER, patternFilter,
+                true);
 
         viewer = filter.getViewer();
         viewer.setContentProvider(new ViewContentProvider());
@@ -361,11 +454,119 @@ public class ToolboxView extends ViewPart implements ISetSelectionTarget {
             }
         });
 
+        // process jobs
+        jobViewer = createJobViewer(sashForm);
+        sashForm.setWeights(new int[] { 4, 1 });
+
         // action bar
         IToolBarManager toolbarMgr = getViewSite().getActionBars().getToolBarManager();
         toolbarMgr.add(getEnvironmentAction());
     }
 
+    private TableViewer createJobViewer(Composite parent) {
+        final TableViewer tableViewer = new TableViewer(parent, SWT.MULTI | SWT.FULL_SELECTION
+                | SWT.BORDER);
+        Table table = tableViewer.getTable();
+        table.setHeaderVisible(true);
+        table.setLinesVisible(true);
+        table.setToolTipText(Messages.ToolboxView_Jobs);
+
+        String[] titles = new String[] { Messages.ToolboxView_JobProcess,
+                Messages.ToolboxView_JobOutput, Messages.ToolboxView_JobStatus,
+                Messages.ToolboxView_JobElapsed };
+        int[] widths = new int[] { 140, 100, 70, 60 };
+        for (int index = 0; index < titles.length; index++) {
+            TableColumn column = new TableColumn(table, SWT.LEFT);
+            column.setText(titles[index]);
+            column.setWidth(widths[index]);
+        }
+
+        tableViewer.setContentProvider(new ArrayContentProvider());
+        tableViewer.setLabelProvider(new JobLabelProvider());
+        tableViewer.setInput(ProcessExecutionJob.getJobs());
+
+        // context menu
+        final IAction cancelAction = new Action(Messages.ToolboxView_CancelJob) {
+            @Override
+            public void run() {
+                IStructuredSelection selection = (IStructuredSelection) tableViewer
+                        .getSelection();
+                Iterator<?> iter = selection.iterator();
+                while (iter.hasNext()) {
+                    ((ProcessExecutionJob) iter.next()).cancel();
+                }
+            }
+        };
+
+        IAction clearAction = new Action(Messages.ToolboxView_ClearJobs) {
+            @Override
+            public void run() {
+                ProcessExecutionJob.clearFinished();
+                tableViewer.setInput(ProcessExecutionJob.getJobs());
+            }
+        };
+
+        MenuManager menuMgr = new MenuManager();
+        menuMgr.setRemoveAllWhenShown(true);
+        menuMgr.addMenuListener(new IMenuListener() {
+            @Override
+            public void menuAboutToShow(IMenuManager manager) {
+                boolean cancelable = false;
+                IStructuredSelection selection = (IStructuredSelection) tableViewer
+                        .getSelection();
+                Iterator<?> iter = selection.iterator();
+                while (iter.hasNext()) {
+                    cancelable |= !((ProcessExecutionJob) iter.next()).isFinished();
+                }
+                cancelAction.setEnabled(cancelable);
+                manager.add(cancelAction);
+                manager.add(clearAction);
+            }
+        });
+        table.setMenu(menuMgr.createContextMenu(table));
+
+        // refresh when the state of a process job changes
+        jobListener = new JobChangeAdapter() {
+            @Override
+            public void scheduled(IJobChangeEvent event) {
+                refreshJobs(event.getJob());
+            }
+
+            @Override
+            public void running(IJobChangeEvent event) {
+                refreshJobs(event.getJob());
+            }
+
+            @Override
+            public void done(IJobChangeEvent event) {
+                refreshJobs(event.getJob());
+            }
+        };
+        Job.getJobManager().addJobChangeListener(jobListener);
+
+        return tableViewer;
+    }
+
+    private void refreshJobs(Job job) {
+        if (!job.belongsTo(ProcessExecutionJob.FAMILY)) {
+            return;
+        }
+
+        final Display display = PlatformUI.getWorkbench().getDisplay();
+        if (display.isDisposed()) {
+            return;
+        }
+
+        display.asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                if (jobViewer != null && !jobViewer.getControl().isDisposed()) {
+                    jobViewer.setInput(ProcessExecutionJob.getJobs());
+                }
+            }
+        });
+    }
+
     public IAction getEnvironmentAction() {
         if (actionEnv == null) {
             actionEnv = new Action() {
@@ -925,6 +1126,54 @@ public class ToolboxView extends ViewPart implements ISetSelectionTarget {
         }
     }
 
+    static class JobLabelProvider extends LabelProvider implements ITableLabelProvider {
+
+        @Override
+        public Image getColumnImage(Object element, int columnIndex) {
+            return null;
+        }
+
+        @Override
+        public String getColumnText(Object element, int columnIndex) {
+            ProcessExecutionJob job = (ProcessExecutionJob) element;
+            switch (columnIndex) {
+            case 0:
+                return job.getName();
+            case 1:
+                StringBuffer sb = new StringBuffer();
+                for (File outputFile : job.getOutputFiles()) {
+                    if (sb.length() > 0) {
+                        sb.append(", "); //$NON-NLS-1$
+                    }
+                    sb.append(outputFile.getName());
+                }
+                return sb.toString();
+            case 2:
+                switch (job.getJobState()) {
+                case WAITING:
+                    return Messages.ToolboxView_JobWaiting;
+                case RUNNING:
+                    return Messages.ToolboxView_JobRunning;
+                case COMPLETED:
+                    return Messages.ToolboxView_JobCompleted;
+                case CANCELLED:
+                    return Messages.ToolboxView_JobCancelled;
+                default:
+                    return Messages.ToolboxView_JobFailed;
+                }
+            case 3:
+                long elapsed = job.getElapsedTime();
+                if (elapsed == 0) {
+                    return ""; //$NON-NLS-1$
+                }
+                long seconds = elapsed / 1000;
+                String pattern = "%d:%02d:%02d"; //$NON-NLS-1$
+                return String.format(pattern, seconds / 3600, (seconds % 3600) / 60, seconds % 60);
+            }
+            return null;
+        }
+    }
+
     static class ViewLabelProvider extends LabelProvider {
 
         @Override
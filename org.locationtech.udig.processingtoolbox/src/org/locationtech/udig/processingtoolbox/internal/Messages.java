@@ -160,6 +160,10 @@ public class Messages extends NLS {
     public static String FormatConversionDialog_CRS;
     public static String FormatConversionDialog_Format;
     public static String FormatConversionDialog_Warning;
+    public static String FormatConversionDialog_GeoJSONOptions;
+    public static String FormatConversionDialog_Decimals;
+    public static String FormatConversionDialog_ChunkSize;
+    public static String FormatConversionDialog_Pipelined;
 
     public static String General_Cancelled;
     public static String General_Error;
@@ -168,6 +172,7 @@ public class Messages extends NLS {
     public static String General_Name;
     public static String General_OverwriteLayer;
     public static String General_OverwriteError;
+    public static String General_FailedLayers;
     
     public static String GeometryPickerDialog_title;
     public static String GeometryPickerDialog_Layer;
@@ -312,6 +317,11 @@ public class Messages extends NLS {
     public static String SettingsDialog_AddLayerAuto;
     public static String SettingsDialog_MandatoryParameter;  
     public static String SettingsDialog_RetainLastLocation;  
+    public static String SettingsDialog_StreamingRasterOutput;
+    public static String SettingsDialog_RasterWorkingSetSize;
+    public static String SettingsDialog_UseResultCache;
+    public static String SettingsDialog_ResultCacheSize;
+    public static String SettingsDialog_ChartDensityThreshold;
     
     public static String SpatialWeightsMatrixDialog_title;
     public static String SpatialWeightsMatrixDialog_description;
@@ -371,8 +381,12 @@ public class Messages extends NLS {
     public static String Task_ConfirmErrorFile;
     public static String Task_CheckFile;
     public static String Task_Executing;
+    public static String Task_FeaturesImported;
+    public static String Task_FeaturesMerged;
+    public static String Task_FeaturesWritten;
     public static String Task_Internal;
     public static String Task_Running;
+    public static String Task_ReusingResult;
     public static String Task_WritingResult;
     
     public static String TextfileToPointDialog_title;
@@ -426,6 +440,8 @@ public class Messages extends NLS {
     public static String ToolboxView_DescriptiveStatistics;
     public static String ToolboxView_PointPattern;
     public static String ToolboxView_Autocorrelation;
+    public static String ToolboxView_CancelJob;
+    public static String ToolboxView_ClearJobs;
     public static String ToolboxView_Relationsips;
     public static String ToolboxView_Cluster;
     public static String ToolboxView_Distribution;
@@ -444,6 +460,16 @@ public class Messages extends NLS {
     public static String ToolboxView_Export;
     public static String ToolboxView_Density;
     public static String ToolboxView_Interpolation;
+    public static String ToolboxView_Jobs;
+    public static String ToolboxView_JobProcess;
+    public static String ToolboxView_JobOutput;
+    public static String ToolboxView_JobStatus;
+    public static String ToolboxView_JobElapsed;
+    public static String ToolboxView_JobWaiting;
+    public static String ToolboxView_JobRunning;
+    public static String ToolboxView_JobCompleted;
+    public static String ToolboxView_JobCancelled;
+    public static String ToolboxView_JobFailed;
     public static String ToolboxView_RasterSurface;
     public static String ToolboxView_Conditional;
     public static String ToolboxView_Conversion;
@@ -56,6 +56,7 @@ import org.geotools.util.logging.Logging;
 import org.locationtech.udig.processingtoolbox.ToolboxPlugin;
 import org.locationtech.udig.processingtoolbox.internal.Messages;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils;
+import org.locationtech.udig.processingtoolbox.tools.expression.FeatureExpressionEvaluator;
 import org.locationtech.udig.project.ILayer;
 import org.locationtech.udig.project.IMap;
 import org.opengis.coverage.grid.GridCoverageReader;
@@ -163,7 +164,8 @@ public class ExpressionBuilderDialog extends Dialog {
                 try {
                     if (isFeatureLayer) {
                         Expression expression = ECQL.toExpression(txtExpression.getText());
-                        Object evaluated = expression.evaluate(features.features().next());
+                        Object evaluated = FeatureExpressionEvaluator.evaluateFirst(features,
+                                expression);
                         String msg = "Evaluated value: " + evaluated;
                         MessageDialog.openInformation(getParentShell(),
                                 Messages.ExpressionBuilderDialog_Test, msg);
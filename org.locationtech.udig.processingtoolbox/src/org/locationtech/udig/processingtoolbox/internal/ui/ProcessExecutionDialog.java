@@ -10,17 +10,17 @@
 package org.locationtech.udig.processingtoolbox.internal.ui;
 
 import java.io.File;
-import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
 import org.eclipse.jface.dialogs.DialogSettings;
 import org.eclipse.jface.dialogs.IDialogSettings;
 import org.eclipse.jface.dialogs.MessageDialog;
-import org.eclipse.jface.dialogs.ProgressMonitorDialog;
 import org.eclipse.jface.dialogs.TitleAreaDialog;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.browser.Browser;
@@ -37,6 +37,7 @@ import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.Widget;
 import org.geotools.coverage.grid.GridCoverage2D;
@@ -52,6 +53,7 @@ import org.locationtech.udig.processingtoolbox.ToolboxView;
 import org.locationtech.udig.processingtoolbox.internal.Messages;
 import org.locationtech.udig.processingtoolbox.internal.ui.OutputDataWidget.FileDataType;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils;
+import org.locationtech.udig.processingtoolbox.styler.ProcessExecutionJob;
 import org.locationtech.udig.processingtoolbox.styler.ProcessExecutorOperation;
 import org.locationtech.udig.processingtoolbox.tools.HtmlWriter;
 import org.locationtech.udig.project.IMap;
@@ -414,13 +416,16 @@ public class ProcessExecutionDialog extends TitleAreaDialog {
     private boolean validOutput() {
         for (Entry<String, Object> entrySet : outputParams.entrySet()) {
             File outputFile = new File(outputParams.get(entrySet.getKey()).toString());
-            if (!outputFile.exists()) {
+            boolean pending = ProcessExecutionJob.isPendingOutput(outputFile);
+            if (!pending && !outputFile.exists()) {
                 continue;
             }
 
             String msg = Messages.ProcessExecutionDialog_overwriteconfirm;
             if (MessageDialog.openConfirm(getParentShell(), getShell().getText(), msg)) {
-                if (!MapUtils.confirmSpatialFile(outputFile)) {
+                if (pending) {
+                    continue; // replaced when the queued job starts
+                } else if (!MapUtils.confirmSpatialFile(outputFile)) {
                     msg = Messages.ProcessExecutionDialog_deletefailed;
                     MessageDialog.openInformation(getParentShell(), getShell().getText(), msg);
                     return false;
@@ -453,26 +458,39 @@ public class ProcessExecutionDialog extends TitleAreaDialog {
             return;
         }
 
-        ProcessExecutorOperation runnable = new ProcessExecutorOperation(map, factory, processName,
-                inputParams, outputParams);
-        try {
-            new ProgressMonitorDialog(getParentShell()).run(true, true, runnable);
-        } catch (InvocationTargetException e) {
-            ToolboxPlugin.log(e.getMessage());
-            MessageDialog.openError(getParentShell(), Messages.General_Error, e.getMessage());
-        } catch (InterruptedException e) {
-            ToolboxPlugin.log(e.getMessage());
-            MessageDialog.openInformation(getParentShell(), Messages.General_Cancelled,
-                    e.getMessage());
-        }
+        // the job keeps its own parameters, the dialog can be used again while it runs
+        final ProcessExecutorOperation runnable = new ProcessExecutorOperation(map, factory,
+                processName, new HashMap<String, Object>(inputParams),
+                new HashMap<String, Object>(outputParams));
+        ProcessExecutionJob job = new ProcessExecutionJob(windowTitle, runnable,
+                new HashMap<String, Object>(outputParams));
 
         if (outputTabRequired) {
-            String outputText = runnable.getOutputText();
-            if (outputText.length() > 0) {
-                outputTab.getParent().setSelection(outputTab);
-                browser.setText(outputText);
-            }
-        } else {
+            final Display display = getShell().getDisplay();
+            job.addJobChangeListener(new JobChangeAdapter() {
+                @Override
+                public void done(IJobChangeEvent event) {
+                    if (display.isDisposed()) {
+                        return;
+                    }
+                    display.asyncExec(new Runnable() {
+                        @Override
+                        public void run() {
+                            // show the output if the dialog is still open
+                            String outputText = runnable.getOutputText();
+                            if (outputText.length() > 0 && browser != null
+                                    && !browser.isDisposed()) {
+                                outputTab.getParent().setSelection(outputTab);
+                                browser.setText(outputText);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+        job.queue();
+
+        if (!outputTabRequired) {
             super.okPressed();
             LayersView.getViewPart()
                     .setCurrentMap((org.locationtech.udig.project.internal.Map) map);
@@ -27,6 +27,7 @@ import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.DirectoryDialog;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Spinner;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.swt.widgets.Widget;
 import org.geotools.util.logging.Logging;
@@ -46,6 +47,16 @@ public class SettingsDialog extends Dialog {
 
     private Button btnOpen, chkLog, chkSel, chkStyle, chkAddLayer, chkMandatoryParameter, chkLastLocation;
 
+    private Button chkStreaming;
+
+    private Spinner spnWorkingSet;
+
+    private Button chkResultCache;
+
+    private Spinner spnCacheSize;
+
+    private Spinner spnDensityThreshold;
+
     private Text txtWorkspace;
 
     public SettingsDialog(Shell parentShell) {
@@ -140,6 +151,40 @@ public class SettingsDialog extends Dialog {
         // TODO:
         // widget.createLabel(advancedComposite, "", null, 4);
 
+        // 2.2 write raster output tile by tile
+        chkStreaming = widget.createCheckbox(advancedComposite,
+                Messages.SettingsDialog_StreamingRasterOutput, null, 4);
+        chkStreaming.setSelection(ToolboxView.getStreamingRasterOutput());
+        chkStreaming.addSelectionListener(selectionListener);
+
+        // 2.3 working set size of raster output
+        widget.createLabel(advancedComposite, Messages.SettingsDialog_RasterWorkingSetSize, null,
+                2);
+        spnWorkingSet = widget.createSpinner(advancedComposite,
+                ToolboxView.getRasterWorkingSetSize(), 16, 65536, 0, 16, 256, 2);
+        spnWorkingSet.setEnabled(chkStreaming.getSelection());
+        spnWorkingSet.addSelectionListener(selectionListener);
+
+        // 2.4 reuse the results of identical process runs
+        chkResultCache = widget.createCheckbox(advancedComposite,
+                Messages.SettingsDialog_UseResultCache, null, 4);
+        chkResultCache.setSelection(ToolboxView.getUseResultCache());
+        chkResultCache.addSelectionListener(selectionListener);
+
+        // 2.5 maximum size of the result cache
+        widget.createLabel(advancedComposite, Messages.SettingsDialog_ResultCacheSize, null, 2);
+        spnCacheSize = widget.createSpinner(advancedComposite, ToolboxView.getResultCacheSize(),
+                16, 1048576, 0, 64, 1024, 2);
+        spnCacheSize.setEnabled(chkResultCache.getSelection());
+        spnCacheSize.addSelectionListener(selectionListener);
+
+        // 2.6 number of points above which the charts are rendered as a density grid
+        widget.createLabel(advancedComposite, Messages.SettingsDialog_ChartDensityThreshold, null,
+                2);
+        spnDensityThreshold = widget.createSpinner(advancedComposite,
+                ToolboxView.getChartDensityThreshold(), 1000, 10000000, 0, 1000, 10000, 2);
+        spnDensityThreshold.addSelectionListener(selectionListener);
+
         tabItemAdvanced.setControl(advancedComposite);
 
         area.pack();
@@ -162,6 +207,18 @@ public class SettingsDialog extends Dialog {
                 ToolboxView.setMandatoryParameterOnly(chkMandatoryParameter.getSelection());
             } else if (widget.equals(chkLastLocation)) {
                 ToolboxView.setRetainLastSaveLocation(chkLastLocation.getSelection());
+            } else if (widget.equals(chkStreaming)) {
+                ToolboxView.setStreamingRasterOutput(chkStreaming.getSelection());
+                spnWorkingSet.setEnabled(chkStreaming.getSelection());
+            } else if (widget.equals(spnWorkingSet)) {
+                ToolboxView.setRasterWorkingSetSize(spnWorkingSet.getSelection());
+            } else if (widget.equals(chkResultCache)) {
+                ToolboxView.setUseResultCache(chkResultCache.getSelection());
+                spnCacheSize.setEnabled(chkResultCache.getSelection());
+            } else if (widget.equals(spnCacheSize)) {
+                ToolboxView.setResultCacheSize(spnCacheSize.getSelection());
+            } else if (widget.equals(spnDensityThreshold)) {
+                ToolboxView.setChartDensityThreshold(spnDensityThreshold.getSelection());
             } else if (widget.equals(btnOpen)) {
                 final Shell shell = Display.getCurrent().getActiveShell();
                 DirectoryDialog dirDialog = new DirectoryDialog(shell);
@@ -0,0 +1,273 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.styler;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.filter.function.RangedClassifier;
+import org.geotools.process.spatialstatistics.transformation.GXTSimpleFeatureCollection;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Streaming summary of a numeric field for the class breaks of graduated styles.
+ * <p>
+ * Count, minimum, maximum, mean and standard deviation are exact. Quantile and natural breaks
+ * are computed from a uniform reservoir sample of {@link #CAPACITY} values, which is exact up to
+ * that number of features. The sketch is filled while the features are written, so the output
+ * does not have to be read again to build the style.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+@SuppressWarnings("nls")
+public class ClassBreaksSketch {
+    protected static final Logger LOGGER = Logging.getLogger(ClassBreaksSketch.class);
+
+    public static final int CAPACITY = 4096;
+
+    private final double[] sample = new double[CAPACITY];
+
+    private final Random random = new Random(0);
+
+    private int sampleSize;
+
+    private long count;
+
+    private double min, max, mean, m2;
+
+    public ClassBreaksSketch() {
+        clear();
+    }
+
+    public void clear() {
+        sampleSize = 0;
+        count = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        mean = 0;
+        m2 = 0;
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+
+        // Welford
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+
+        // reservoir sampling
+        if (sampleSize < CAPACITY) {
+            sample[sampleSize++] = value;
+        } else {
+            long index = (long) (random.nextDouble() * count);
+            if (index < CAPACITY) {
+                sample[(int) index] = value;
+            }
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the class breaks(number of classes + 1) of a classification function, or null if
+     * the function is not supported or there are no values
+     *
+     * @param functionName EqualIntervalFunction, QuantileFunction, JenksNaturalBreaksFunction or
+     *            StandardDeviationFunction
+     * @param numClasses the number of classes
+     */
+    public double[] getClassBreaks(String functionName, int numClasses) {
+        if (count == 0 || numClasses < 1) {
+            return null;
+        }
+
+        double[] breaks = null;
+        if ("EqualIntervalFunction".equals(functionName)) {
+            breaks = new double[numClasses + 1];
+            double interval = (max - min) / numClasses;
+            for (int index = 0; index < numClasses; index++) {
+                breaks[index] = min + index * interval;
+            }
+        } else if ("QuantileFunction".equals(functionName)) {
+            double[] values = sortedSample();
+            breaks = new double[numClasses + 1];
+            for (int index = 1; index < numClasses; index++) {
+                breaks[index] = values[(int) ((long) index * values.length / numClasses)];
+            }
+        } else if ("JenksNaturalBreaksFunction".equals(functionName)) {
+            breaks = jenks(sortedSample(), numClasses);
+        } else if ("StandardDeviationFunction".equals(functionName)) {
+            double stdDev = count > 1 ? Math.sqrt(m2 / count) : 0;
+            breaks = new double[numClasses + 1];
+            for (int index = 1; index < numClasses; index++) {
+                breaks[index] = mean + (index - numClasses / 2.0) * stdDev;
+            }
+        } else {
+            return null;
+        }
+
+        breaks[0] = min;
+        breaks[numClasses] = max;
+        return distinct(breaks);
+    }
+
+    /**
+     * Returns the classifier of the class breaks, or null if they are not available
+     */
+    public RangedClassifier getClassifier(String functionName, int numClasses) {
+        double[] breaks = getClassBreaks(functionName, numClasses);
+        if (breaks == null) {
+            return null;
+        }
+
+        Double[] minValues = new Double[breaks.length - 1];
+        Double[] maxValues = new Double[breaks.length - 1];
+        for (int index = 0; index < minValues.length; index++) {
+            minValues[index] = Double.valueOf(breaks[index]);
+            maxValues[index] = Double.valueOf(breaks[index + 1]);
+        }
+        return new RangedClassifier(minValues, maxValues);
+    }
+
+    private double[] sortedSample() {
+        double[] values = Arrays.copyOf(sample, sampleSize);
+        Arrays.sort(values);
+        return values;
+    }
+
+    private double[] distinct(double[] breaks) {
+        double[] values = breaks.clone();
+        Arrays.sort(values);
+        int size = 1;
+        for (int index = 1; index < values.length; index++) {
+            if (values[index] > values[size - 1]) {
+                values[size++] = values[index];
+            }
+        }
+
+        if (size < 2) {
+            return new double[] { min, max };
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    // Jenks natural breaks of the sorted values
+    private double[] jenks(double[] values, int numClasses) {
+        final int n = values.length;
+        final int k = Math.min(numClasses, n);
+        double[] breaks = new double[numClasses + 1];
+        if (k < 2) {
+            Arrays.fill(breaks, values[n - 1]);
+            return breaks;
+        }
+
+        int[][] lowerLimits = new int[n + 1][k + 1];
+        double[][] variances = new double[n + 1][k + 1];
+        for (int j = 1; j <= k; j++) {
+            lowerLimits[1][j] = 1;
+            for (int i = 2; i <= n; i++) {
+                variances[i][j] = Double.POSITIVE_INFINITY;
+            }
+        }
+
+        for (int l = 2; l <= n; l++) {
+            double sum = 0, sumSquares = 0, variance = 0;
+            for (int m = 1; m <= l; m++) {
+                int lower = l - m + 1;
+                double value = values[lower - 1];
+                sum += value;
+                sumSquares += value * value;
+                variance = sumSquares - (sum * sum) / m;
+                int previous = lower - 1;
+                if (previous != 0) {
+                    for (int j = 2; j <= k; j++) {
+                        if (variances[l][j] >= variance + variances[previous][j - 1]) {
+                            lowerLimits[l][j] = lower;
+                            variances[l][j] = variance + variances[previous][j - 1];
+                        }
+                    }
+                }
+            }
+            lowerLimits[l][1] = 1;
+            variances[l][1] = variance;
+        }
+
+        int upper = n;
+        for (int j = k; j >= 2; j--) {
+            int lower = lowerLimits[upper][j];
+            breaks[j - 1] = values[lower - 1];
+            upper = lower - 1;
+        }
+        for (int j = k; j < numClasses; j++) {
+            breaks[j] = values[n - 1];
+        }
+        return breaks;
+    }
+
+    /**
+     * Wraps the features so that the values of the field are added to the sketch while the
+     * features are iterated. The sketch is cleared when a new iteration starts.
+     */
+    public SimpleFeatureCollection observe(SimpleFeatureCollection features, String fieldName) {
+        return new SketchFeatureCollection(features, fieldName);
+    }
+
+    final class SketchFeatureCollection extends GXTSimpleFeatureCollection {
+        private final String fieldName;
+
+        SketchFeatureCollection(SimpleFeatureCollection delegate, String fieldName) {
+            super(delegate);
+            this.fieldName = fieldName;
+        }
+
+        @Override
+        public SimpleFeatureIterator features() {
+            clear();
+            final SimpleFeatureIterator iter = delegate.features();
+            final int attributeIndex = getSchema().indexOf(fieldName);
+            return new SimpleFeatureIterator() {
+                @Override
+                public boolean hasNext() {
+                    return iter.hasNext();
+                }
+
+                @Override
+                public SimpleFeature next() {
+                    SimpleFeature feature = iter.next();
+                    Object value = feature.getAttribute(attributeIndex);
+                    if (value instanceof Number) {
+                        add(((Number) value).doubleValue());
+                    }
+                    return feature;
+                }
+
+                @Override
+                public void close() {
+                    iter.close();
+                }
+            };
+        }
+    }
+}
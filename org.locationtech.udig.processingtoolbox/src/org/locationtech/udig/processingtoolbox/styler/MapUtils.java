@@ -19,8 +19,11 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.io.FilenameUtils;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.io.AbstractGridFormat;
+import org.geotools.coverage.grid.io.imageio.GeoToolsWriteParams;
 import org.geotools.data.DataUtilities;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.FeatureStore;
@@ -29,6 +32,8 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.data.simple.SimpleFeatureStore;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.gce.geotiff.GeoTiffWriteParams;
+import org.geotools.gce.geotiff.GeoTiffWriter;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.storage.RasterExportOperation;
 import org.geotools.process.spatialstatistics.transformation.ForceCRSFeatureCollection;
@@ -39,6 +44,7 @@ import org.locationtech.udig.catalog.CatalogPlugin;
 import org.locationtech.udig.catalog.ICatalog;
 import org.locationtech.udig.catalog.IGeoResource;
 import org.locationtech.udig.catalog.IService;
+import org.locationtech.udig.catalog.util.GeoToolsAdapters;
 import org.locationtech.udig.processingtoolbox.ToolboxPlugin;
 import org.locationtech.udig.processingtoolbox.ToolboxView;
 import org.locationtech.udig.project.ILayer;
@@ -50,7 +56,10 @@ import org.opengis.coverage.grid.GridCoverageReader;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
+import org.opengis.parameter.GeneralParameterValue;
+import org.opengis.parameter.ParameterValue;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.util.ProgressListener;
 
 import com.vividsolutions.jts.geom.Geometry;
 
@@ -320,6 +329,28 @@ public class MapUtils {
         return saveAs.saveAsGeoTiff(source, filePath.getAbsolutePath());
     }
 
+    /**
+     * Writes the coverage to a GeoTIFF file, the progress of the written tiles is reported to the
+     * monitor and the writer is aborted once it is canceled
+     */
+    public static void saveAsGeoTiff(GridCoverage2D source, File filePath,
+            IProgressMonitor monitor) throws IOException {
+        ParameterValue<GeoToolsWriteParams> writeParams = AbstractGridFormat.GEOTOOLS_WRITE_PARAMS
+                .createValue();
+        writeParams.setValue(new GeoTiffWriteParams());
+
+        ParameterValue<ProgressListener> listener = AbstractGridFormat.PROGRESS_LISTENER
+                .createValue();
+        listener.setValue(GeoToolsAdapters.progress(monitor));
+
+        GeoTiffWriter writer = new GeoTiffWriter(filePath);
+        try {
+            writer.write(source, new GeneralParameterValue[] { writeParams, listener });
+        } finally {
+            writer.dispose();
+        }
+    }
+
     public static ILayer addGridCoverageToMap(IMap map, GridCoverage2D source, File filePath,
             Style style) {
         try {
@@ -0,0 +1,224 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.styler;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FilenameUtils;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.MultiRule;
+import org.geotools.util.logging.Logging;
+import org.locationtech.udig.processingtoolbox.ToolboxPlugin;
+import org.locationtech.udig.processingtoolbox.internal.Messages;
+
+/**
+ * Runs a {@link ProcessExecutorOperation} as a background job.
+ * <p>
+ * Jobs writing different output files run concurrently, jobs writing the same output file are
+ * serialized by their scheduling rules. The queued jobs are kept until they are cleared, so the
+ * toolbox view can show them after the process dialog is closed.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class ProcessExecutionJob extends Job {
+    protected static final Logger LOGGER = Logging.getLogger(ProcessExecutionJob.class);
+
+    public static final Object FAMILY = ProcessExecutionJob.class;
+
+    public enum JobState {
+        WAITING, RUNNING, COMPLETED, CANCELLED, FAILED
+    }
+
+    private static final List<ProcessExecutionJob> jobs = new ArrayList<ProcessExecutionJob>();
+
+    private final ProcessExecutorOperation operation;
+
+    private final List<File> outputFiles = new ArrayList<File>();
+
+    private volatile JobState state = JobState.WAITING;
+
+    private volatile boolean queued = false;
+
+    private volatile long startTime = 0;
+
+    private volatile long endTime = 0;
+
+    public ProcessExecutionJob(String name, ProcessExecutorOperation operation,
+            Map<String, Object> outputParams) {
+        super(name);
+        this.operation = operation;
+
+        ISchedulingRule rule = null;
+        for (Object outputPath : outputParams.values()) {
+            if (outputPath != null) {
+                File outputFile = new File(outputPath.toString()).getAbsoluteFile();
+                outputFiles.add(outputFile);
+                rule = MultiRule.combine(rule, new OutputFileRule(outputFile));
+            }
+        }
+        setRule(rule);
+        setUser(false);
+    }
+
+    /**
+     * Adds the job to the queue and schedules it
+     */
+    public void queue() {
+        synchronized (jobs) {
+            jobs.add(this);
+        }
+        schedule();
+        queued = true;
+    }
+
+    /**
+     * Returns the queued jobs in the order they were queued
+     */
+    public static ProcessExecutionJob[] getJobs() {
+        synchronized (jobs) {
+            return jobs.toArray(new ProcessExecutionJob[jobs.size()]);
+        }
+    }
+
+    /**
+     * Removes the completed, cancelled and failed jobs from the queue
+     */
+    public static void clearFinished() {
+        synchronized (jobs) {
+            Iterator<ProcessExecutionJob> iter = jobs.iterator();
+            while (iter.hasNext()) {
+                if (iter.next().isFinished()) {
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if a waiting or running job writes the output file
+     */
+    public static boolean isPendingOutput(File outputFile) {
+        File target = outputFile.getAbsoluteFile();
+        synchronized (jobs) {
+            for (ProcessExecutionJob job : jobs) {
+                if (!job.isFinished() && job.outputFiles.contains(target)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public ProcessExecutorOperation getOperation() {
+        return operation;
+    }
+
+    public List<File> getOutputFiles() {
+        return outputFiles;
+    }
+
+    public JobState getJobState() {
+        if (state == JobState.WAITING && queued) {
+            if (getState() == Job.RUNNING) {
+                return JobState.RUNNING;
+            } else if (getState() == Job.NONE) {
+                return JobState.CANCELLED; // cancelled before it started
+            }
+        }
+        return state;
+    }
+
+    public boolean isFinished() {
+        JobState current = getJobState();
+        return current == JobState.COMPLETED || current == JobState.CANCELLED
+                || current == JobState.FAILED;
+    }
+
+    /**
+     * Returns the elapsed time in milliseconds, 0 while waiting
+     */
+    public long getElapsedTime() {
+        if (startTime == 0) {
+            return 0;
+        }
+        return (endTime == 0 ? System.currentTimeMillis() : endTime) - startTime;
+    }
+
+    @Override
+    public boolean belongsTo(Object family) {
+        return family == FAMILY;
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+        startTime = System.currentTimeMillis();
+        state = JobState.RUNNING;
+        try {
+            // the overwrite was confirmed when the job was queued behind another job
+            for (File outputFile : outputFiles) {
+                if (outputFile.exists() && !MapUtils.confirmSpatialFile(outputFile)) {
+                    state = JobState.FAILED;
+                    return new Status(IStatus.ERROR, ToolboxPlugin.PLUGIN_ID,
+                            Messages.ProcessExecutionDialog_deletefailed);
+                }
+            }
+
+            operation.run(monitor);
+            if (monitor.isCanceled()) {
+                state = JobState.CANCELLED;
+                return Status.CANCEL_STATUS;
+            }
+            state = operation.isFailed() ? JobState.FAILED : JobState.COMPLETED;
+            return Status.OK_STATUS;
+        } catch (InvocationTargetException e) {
+            state = JobState.FAILED;
+            return new Status(IStatus.ERROR, ToolboxPlugin.PLUGIN_ID, e.getMessage(), e);
+        } catch (InterruptedException e) {
+            state = JobState.CANCELLED;
+            return Status.CANCEL_STATUS;
+        } finally {
+            endTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Conflicts with the rules of the same output file. Shapefiles are compared without extension
+     * because the sidecar files share the base name.
+     */
+    static final class OutputFileRule implements ISchedulingRule {
+        private final String key;
+
+        OutputFileRule(File outputFile) {
+            this.key = FilenameUtils.removeExtension(outputFile.getPath()).toLowerCase();
+        }
+
+        @Override
+        public boolean contains(ISchedulingRule rule) {
+            return rule == this;
+        }
+
+        @Override
+        public boolean isConflicting(ISchedulingRule rule) {
+            return rule instanceof OutputFileRule && key.equals(((OutputFileRule) rule).key);
+        }
+    }
+}
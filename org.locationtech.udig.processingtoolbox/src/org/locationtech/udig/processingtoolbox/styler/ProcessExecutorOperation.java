@@ -15,12 +15,17 @@ import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,6 +45,7 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.filter.function.RangedClassifier;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.process.spatialstatistics.GlobalGStatisticsProcess.GStatisticsProcessResult;
 import org.geotools.process.spatialstatistics.GlobalGearysCProcess.GearysCProcessResult;
@@ -87,6 +93,8 @@ import org.locationtech.udig.project.ui.ApplicationGIS;
 import org.locationtech.udig.style.sld.SLDContent;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.filter.FilterFactory2;
 import org.opengis.geometry.BoundingBox;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
@@ -121,6 +129,8 @@ public class ProcessExecutorOperation implements IRunnableWithProgress {
 
     private StringBuffer outputBuffer = new StringBuffer();
 
+    private volatile boolean failed = false;
+
     public ProcessExecutorOperation(IMap map, org.geotools.process.ProcessFactory factory,
             org.opengis.feature.type.Name processName, Map<String, Object> inputParams,
             Map<String, Object> outputParams) {
@@ -136,6 +146,17 @@ public class ProcessExecutorOperation implements IRunnableWithProgress {
         return outputBuffer.toString();
     }
 
+    public String getWindowTitle() {
+        return windowTitle;
+    }
+
+    /**
+     * Returns true if the last run failed, the error has been written to the log
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
     @Override
     public void run(IProgressMonitor monitor) throws InvocationTargetException,
             InterruptedException {
@@ -143,6 +164,7 @@ public class ProcessExecutorOperation implements IRunnableWithProgress {
         monitor.beginTask(Messages.Task_Running, 100);
         monitor.worked(increment);
 
+        failed = false;
         try {
             monitor.setTaskName(String.format(Messages.Task_Executing, windowTitle));
             ToolboxPlugin.log(String.format(Messages.Task_Executing, windowTitle));
@@ -150,45 +172,96 @@ public class ProcessExecutorOperation implements IRunnableWithProgress {
             ProgressListener subMonitor = GeoToolsAdapters.progress(SubMonitor.convert(monitor,
                     Messages.Task_Internal, 60));
 
-            org.geotools.process.Process process = factory.create(processName);
-            final Map<String, Object> result = process.execute(inputParams, subMonitor);
+            // reuse the outputs of an identical run
+            ProcessResultCache cache = ProcessResultCache.getDefault();
+            String cacheKey = cache == null ? null : cache.createKey(map, processName,
+                    inputParams);
+            Map<String, Object> result = cacheKey == null ? null : cache.get(cacheKey);
+            final boolean cached = result != null;
+            if (cached) {
+                ToolboxPlugin.log(String.format(Messages.Task_ReusingResult, windowTitle));
+            } else {
+                org.geotools.process.Process process = factory.create(processName);
+                result = process.execute(inputParams, subMonitor);
+            }
             monitor.worked(increment);
 
             monitor.setTaskName(Messages.Task_AddingLayer);
             outputBuffer.setLength(0);
             if (result != null) {
                 Map<String, Parameter<?>> resultInfo = factory.getResultInfo(processName, null);
-                for (Entry<String, Object> entrySet : result.entrySet()) {
-                    final Object val = entrySet.getValue();
-                    if (val == null) {
-                        continue;
+
+                // write the spatial outputs concurrently, then add them to the map in order
+                List<Future<Runnable>> outputs = new ArrayList<Future<Runnable>>();
+                Map<String, File> outputFiles = new HashMap<String, File>();
+                Map<String, String> outputTexts = new HashMap<String, String>();
+                int parallelism = Math.min(result.size(), Runtime.getRuntime()
+                        .availableProcessors());
+                ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+                try {
+                    for (Entry<String, Object> entrySet : result.entrySet()) {
+                        final Object val = entrySet.getValue();
+                        if (val == null) {
+                            continue;
+                        }
+
+                        Object outputPath = outputParams.get(entrySet.getKey());
+                        Map<String, Object> outputMeta = resultInfo.get(entrySet.getKey()).metadata;
+                        if (outputPath != null) {
+                            outputFiles.put(entrySet.getKey(), new File(outputPath.toString()));
+                        }
+
+                        if (val instanceof SimpleFeatureCollection) {
+                            outputs.add(executor.submit(postProcessing(
+                                    (SimpleFeatureCollection) val, outputPath, outputMeta)));
+                        } else if (val instanceof Geometry) {
+                            outputs.add(executor.submit(postProcessing(
+                                    geometryToFeatures((Geometry) val, processName.toString()),
+                                    outputPath, outputMeta)));
+                        } else if (val instanceof BoundingBox) {
+                            Geometry boundingBox = JTS.toGeometry((BoundingBox) val);
+                            boundingBox.setUserData(((BoundingBox) val)
+                                    .getCoordinateReferenceSystem());
+                            outputs.add(executor.submit(postProcessing(
+                                    geometryToFeatures(boundingBox, processName.toString()),
+                                    outputPath, outputMeta)));
+                        } else if (val instanceof GridCoverage2D) {
+                            outputs.add(executor.submit(postProcessing((GridCoverage2D) val,
+                                    outputPath, outputMeta)));
+                        } else {
+                            String html = postProcessing(val);
+                            outputBuffer.append(html);
+                            outputTexts.put(entrySet.getKey(), html);
+                            outputFiles.remove(entrySet.getKey());
+                            monitor.worked(increment);
+                        }
                     }
 
-                    if (val instanceof SimpleFeatureCollection) {
-                        postProcessing((SimpleFeatureCollection) val,
-                                outputParams.get(entrySet.getKey()),
-                                resultInfo.get(entrySet.getKey()).metadata, monitor);
-                    } else if (val instanceof Geometry) {
-                        postProcessing(geometryToFeatures((Geometry) val, processName.toString()),
-                                outputParams.get(entrySet.getKey()),
-                                resultInfo.get(entrySet.getKey()).metadata, monitor);
-                    } else if (val instanceof BoundingBox) {
-                        Geometry boundingBox = JTS.toGeometry((BoundingBox) val);
-                        boundingBox.setUserData(((BoundingBox) val).getCoordinateReferenceSystem());
-                        postProcessing(geometryToFeatures(boundingBox, processName.toString()),
-                                outputParams.get(entrySet.getKey()),
-                                resultInfo.get(entrySet.getKey()).metadata, monitor);
-                    } else if (val instanceof GridCoverage2D) {
-                        postProcessing((GridCoverage2D) val, outputParams.get(entrySet.getKey()),
-                                resultInfo.get(entrySet.getKey()).metadata, monitor);
-                    } else {
-                        postProcessing(val);
+                    monitor.setTaskName(Messages.Task_WritingResult);
+                    for (Future<Runnable> output : outputs) {
+                        Runnable addLayer = output.get();
+                        if (addLayer != null && !monitor.isCanceled()) {
+                            monitor.setTaskName(Messages.Task_AddingLayer);
+                            ToolboxPlugin.log(Messages.Task_AddingLayer);
+                            addLayer.run();
+                        }
+                        monitor.worked(increment);
+                    }
+
+                    if (cacheKey != null && !cached && !monitor.isCanceled()
+                            && isComplete(result, outputFiles, outputTexts)) {
+                        cache.put(cacheKey, outputFiles, outputTexts);
+                    }
+                } finally {
+                    executor.shutdown();
+                    if (cached) {
+                        cache.dispose();
                     }
-                    monitor.worked(increment);
                 }
             }
             monitor.worked(increment);
         } catch (Exception e) {
+            failed = true;
             // always show log
             boolean showLog = ToolboxView.getShowLog();
             ToolboxView.setShowLog(true);
@@ -200,41 +273,54 @@ public class ProcessExecutorOperation implements IRunnableWithProgress {
         }
     }
 
-    private void postProcessing(GridCoverage2D source, Object outputPath,
-            Map<String, Object> outputMeta, IProgressMonitor monitor) {
-        try {
-            monitor.setTaskName(Messages.Task_WritingResult);
-            File outputFile = new File(outputPath.toString());
-            GridCoverage2D output = MapUtils.saveAsGeoTiff(source, outputFile);
-
-            if (ToolboxView.getAddLayerAutomatically()) {
-                monitor.setTaskName(Messages.Task_AddingLayer);
-
-                // create default style
-                Style style = null;
-
-                Object minValue = source.getProperty("Minimum"); //$NON-NLS-1$
-                Object maxValue = source.getProperty("Maximum"); //$NON-NLS-1$
-                int numBands = source.getNumSampleDimensions();
-
-                if (minValue != null && minValue instanceof Number && maxValue != null
-                        && maxValue instanceof Number && numBands == 1) {
-                    Double noData = RasterHelper.getNoDataValue(source);
-                    style = buildCoverageStyle((Double) minValue, (Double) maxValue, noData);
-                } else {
-                    SSStyleBuilder builder = new SSStyleBuilder(null);
-                    style = builder.getDefaultGridCoverageStyle(source);
-                }
+    /**
+     * Returns the task writing the GeoTiff, the task returns the step adding it to the map
+     */
+    private Callable<Runnable> postProcessing(final GridCoverage2D source,
+            final Object outputPath, Map<String, Object> outputMeta) {
+        return new Callable<Runnable>() {
+            @Override
+            public Runnable call() {
+                try {
+                    final File outputFile = new File(outputPath.toString());
+                    final GridCoverage2D output = MapUtils.saveAsGeoTiff(source, outputFile);
+                    if (!ToolboxView.getAddLayerAutomatically()) {
+                        return null;
+                    }
+
+                    // create default style
+                    Style style = null;
+
+                    Object minValue = source.getProperty("Minimum"); //$NON-NLS-1$
+                    Object maxValue = source.getProperty("Maximum"); //$NON-NLS-1$
+                    int numBands = source.getNumSampleDimensions();
 
-                MapUtils.addGridCoverageToMap(map, output, outputFile, style);
+                    if (minValue != null && minValue instanceof Number && maxValue != null
+                            && maxValue instanceof Number && numBands == 1) {
+                        Double noData = RasterHelper.getNoDataValue(source);
+                        style = buildCoverageStyle((Double) minValue, (Double) maxValue, noData);
+                    } else {
+                        SSStyleBuilder builder = new SSStyleBuilder(null);
+                        style = builder.getDefaultGridCoverageStyle(source);
+                    }
+
+                    final Style coverageStyle = style;
+                    return new Runnable() {
+                        @Override
+                        public void run() {
+                            MapUtils.addGridCoverageToMap(map, output, outputFile, coverageStyle);
+                        }
+                    };
+                } catch (IllegalArgumentException e) {
+                    ToolboxPlugin.log(e.getMessage());
+                } catch (IndexOutOfBoundsException e) {
+                    ToolboxPlugin.log(e.getMessage());
+                } catch (IOException e) {
+                    ToolboxPlugin.log(e.getMessage());
+                }
+                return null;
             }
-        } catch (IllegalArgumentException e) {
-            ToolboxPlugin.log(e.getMessage());
-        } catch (IndexOutOfBoundsException e) {
-            ToolboxPlugin.log(e.getMessage());
-        } catch (IOException e) {
-            ToolboxPlugin.log(e.getMessage());
-        }
+        };
     }
 
     private Style buildCoverageStyle(double minValue, double maxValue, Double noData) {
@@ -289,7 +375,28 @@ public class ProcessExecutorOperation implements IRunnableWithProgress {
         return builder.createStyle(builder.createRasterSymbolizer(colorMap, 1.0d));
     }
 
-    private void postProcessing(Object value) {
+    // returns true if every result has been written
+    private boolean isComplete(Map<String, Object> result, Map<String, File> outputFiles,
+            Map<String, String> outputTexts) {
+        for (Entry<String, Object> entrySet : result.entrySet()) {
+            if (entrySet.getValue() == null) {
+                continue;
+            }
+
+            File outputFile = outputFiles.get(entrySet.getKey());
+            if (outputFile == null ? !outputTexts.containsKey(entrySet.getKey())
+                    : !outputFile.exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String postProcessing(Object value) {
+        if (value instanceof ProcessResultCache.CachedText) {
+            return ((ProcessResultCache.CachedText) value).getHTML();
+        }
+
         HtmlWriter writer = new HtmlWriter(windowTitle);
         if (value instanceof DataStatisticsResult) {
             writer.writeDataStatistics((DataStatisticsResult) value);
@@ -324,23 +431,67 @@ public class ProcessExecutorOperation implements IRunnableWithProgress {
         } else {
             writer.writePre(value.toString());
         }
-        outputBuffer.append(writer.getHTML());
+        return writer.getHTML();
     }
 
-    private void postProcessing(SimpleFeatureCollection source, Object outputPath,
-            Map<String, Object> outputMeta, IProgressMonitor monitor) {
+    /**
+     * Returns the task writing the shapefile, the task returns the step adding it to the map.
+     * The class breaks of a graduated style are computed while the features are written.
+     */
+    private Callable<Runnable> postProcessing(SimpleFeatureCollection features,
+            final Object outputPath, final Map<String, Object> outputMeta) {
         // check crs
-        CoordinateReferenceSystem crs = source.getSchema().getCoordinateReferenceSystem();
+        CoordinateReferenceSystem crs = features.getSchema().getCoordinateReferenceSystem();
         if (crs == null) {
             ToolboxPlugin
                     .log("Warning: Output CRS will be used coordinate reference system of the current map"); //$NON-NLS-1$
-            source = new ForceCRSFeatureCollection(source, map.getViewportModel().getCRS());
+            features = new ForceCRSFeatureCollection(features, map.getViewportModel().getCRS());
         }
 
+        final SimpleFeatureCollection source = features;
+        return new Callable<Runnable>() {
+            @Override
+            public Runnable call() {
+                return writeFeatures(source, outputPath, outputMeta);
+            }
+        };
+    }
+
+    private Runnable writeFeatures(SimpleFeatureCollection source, Object outputPath,
+            Map<String, Object> outputMeta) {
+        // KVP(Params.STYLES, "renderer.fieldname")
+        // renderer = LISA, OLS, UniqueValues, ClassBreaks, Density, Distance, Interpolation
+        // ClassBreaks = EqualInterval, Quantile, NaturalBreaks, StdDev
+        String[] splits = null;
+        String functionName = null;
+        String fieldName = null;
+        ClassBreaksSketch sketch = null;
+        if (ToolboxView.getAddLayerAutomatically() && ToolboxView.getUseDefaultStyle()
+                && outputMeta.containsKey(Params.STYLES)) {
+            splits = outputMeta.get(Params.STYLES).toString().split("\\."); //$NON-NLS-1$
+            functionName = getClassificationFunction(splits[0].toUpperCase());
+            if (functionName != null && splits.length == 2) {
+                SimpleFeatureType sourceSchema = source.getSchema();
+                fieldName = splits[1]; // inputParams
+                if (sourceSchema.indexOf(fieldName) == -1 && inputParams.get(fieldName) != null) {
+                    fieldName = inputParams.get(fieldName).toString();
+                }
+
+                if (sourceSchema.indexOf(fieldName) != -1) {
+                    Class<?> binding = sourceSchema.getDescriptor(fieldName).getType()
+                            .getBinding();
+                    if (Number.class.isAssignableFrom(binding)) {
+                        sketch = new ClassBreaksSketch();
+                        source = sketch.observe(source, fieldName);
+                    }
+                }
+            }
+        }
+        SimpleFeatureType sourceSchema = source.getSchema();
+
         // write shapefile
-        monitor.setTaskName(Messages.Task_WritingResult);
-        File filePath = new File(outputPath.toString());
-        String typeName = FilenameUtils.getBaseName(filePath.getPath());
+        final File filePath = new File(outputPath.toString());
+        final String typeName = FilenameUtils.getBaseName(filePath.getPath());
         SimpleFeatureSource featureSource = null;
         try {
             Map<String, Object> params = new HashMap<String, Object>();
@@ -349,7 +500,8 @@ public class ProcessExecutorOperation implements IRunnableWithProgress {
             params.put(ShapefileDataStoreFactory.CREATE_SPATIAL_INDEX.key, false);
             params.put(ShapefileDataStoreFactory.DBFCHARSET.key, ToolboxPlugin.defaultCharset());
 
-            ShapeExportOperation exportOp = ShapeExportOperation.getDefault();
+            // not the shared instance, the outputs are written concurrently
+            ShapeExportOperation exportOp = new ShapeExportOperation();
             exportOp.setOutputDataStore(DataStoreFactory.getDataStore(params));
             exportOp.setOutputTypeName(typeName);
             featureSource = exportOp.execute(source);
@@ -359,16 +511,13 @@ public class ProcessExecutorOperation implements IRunnableWithProgress {
         }
 
         if (featureSource == null) {
-            return;
+            return null;
         }
 
         if (!ToolboxView.getAddLayerAutomatically()) {
-            return;
+            return null;
         }
 
-        monitor.setTaskName(Messages.Task_AddingLayer);
-        ToolboxPlugin.log(Messages.Task_AddingLayer);
-
         SimpleFeatureType schema = featureSource.getSchema();
         SSStyleBuilder ssBuilder = new SSStyleBuilder(schema);
         ssBuilder.setOpacity(0.8f);
@@ -376,66 +525,115 @@ public class ProcessExecutorOperation implements IRunnableWithProgress {
         Style style = ssBuilder.getDefaultFeatureStyle();
         if (ToolboxView.getUseDefaultStyle()) {
             if (outputMeta.containsKey(Params.STYLES)) {
-                // KVP(Params.STYLES, "renderer.fieldname")
-                // renderer = LISA, OLS, UniqueValues, ClassBreaks, Density, Distance, Interpolation
-                // ClassBreaks = EqualInterval, Quantile, NaturalBreaks, StdDev
-
                 try {
-                    String value = outputMeta.get(Params.STYLES).toString();
-                    String[] splits = value.split("\\."); //$NON-NLS-1$ 
                     String styleName = splits[0].toUpperCase();
-
-                    String functionName = null;
                     if (styleName.startsWith("LISA")) { //$NON-NLS-1$
                         style = ssBuilder.getLISAStyle("COType"); //$NON-NLS-1$
                     } else if (styleName.startsWith("OLS")) { //$NON-NLS-1$
                         style = ssBuilder.getOLSStyle(splits[1]);
-                    } else if (styleName.startsWith("CL") || styleName.startsWith("JE") //$NON-NLS-1$ //$NON-NLS-2$
-                            || styleName.startsWith("NA")) { //$NON-NLS-1$
-                        functionName = "JenksNaturalBreaksFunction"; //$NON-NLS-1$
-                    } else if (styleName.startsWith("E")) { //$NON-NLS-1$
-                        functionName = "EqualIntervalFunction"; //$NON-NLS-1$
-                    } else if (styleName.startsWith("S")) { //$NON-NLS-1$
-                        functionName = "StandardDeviationFunction"; //$NON-NLS-1$
-                    } else if (styleName.startsWith("Q")) { //$NON-NLS-1$
-                        functionName = "QuantileFunction"; //$NON-NLS-1$
                     }
 
-                    if (functionName != null && splits.length == 2) {
-                        String fieldName = splits[1]; // inputParams
-                        if (schema.indexOf(fieldName) == -1) {
-                            fieldName = inputParams.get(fieldName).toString();
-                        }
-
-                        if (schema.indexOf(fieldName) != -1) {
-                            Class<?> binding = schema.getDescriptor(fieldName).getType()
-                                    .getBinding();
-                            if (Number.class.isAssignableFrom(binding)) {
-                                SimpleShapeType shapeType = FeatureTypes.getSimpleShapeType(source);
-                                if (shapeType == SimpleShapeType.POINT) {
-                                    GraduatedSymbolStyleBuilder builder = new GraduatedSymbolStyleBuilder();
-                                    builder.setMethodName(functionName);
-                                    style = builder.createStyle(source, fieldName);
-                                } else {
-                                    GraduatedColorStyleBuilder builder = new GraduatedColorStyleBuilder();
-                                    style = builder.createStyle(source, fieldName, functionName, 5,
-                                            "Blues"); //$NON-NLS-1$
+                    String outputField = getOutputField(sourceSchema, schema, fieldName);
+                    if (sketch != null && outputField != null) {
+                        final ClassBreaksSketch breaks = sketch;
+                        SimpleShapeType shapeType = FeatureTypes.getSimpleShapeType(source);
+                        if (shapeType == SimpleShapeType.POINT) {
+                            GraduatedSymbolStyleBuilder builder;
+                            builder = new GraduatedSymbolStyleBuilder() {
+                                @Override
+                                protected RangedClassifier getClassifier(
+                                        SimpleFeatureCollection inputFeatures,
+                                        String propertyName, String functionName, int numClasses) {
+                                    RangedClassifier classifier = breaks.getClassifier(
+                                            functionName, numClasses);
+                                    return classifier != null ? classifier : super.getClassifier(
+                                            inputFeatures, propertyName, functionName, numClasses);
                                 }
-                            }
+                            };
+                            builder.setMethodName(functionName);
+                            style = builder.createStyle(source, outputField);
+                        } else {
+                            GraduatedColorStyleBuilder builder = new GraduatedColorStyleBuilder() {
+                                @Override
+                                protected RangedClassifier getClassifier(
+                                        SimpleFeatureCollection inputFeatures,
+                                        String propertyName, String functionName, int numClasses) {
+                                    RangedClassifier classifier = breaks.getClassifier(
+                                            functionName, numClasses);
+                                    return classifier != null ? classifier : super.getClassifier(
+                                            inputFeatures, propertyName, functionName, numClasses);
+                                }
+                            };
+                            style = builder.createStyle(source, outputField, functionName, 5,
+                                    "Blues"); //$NON-NLS-1$
                         }
                     }
                 } catch (Exception e) {
                     ToolboxPlugin.log(e.getMessage());
                 }
             } else {
-                if (source.getSchema().indexOf("COType") != -1) { //$NON-NLS-1$
+                if (sourceSchema.indexOf("COType") != -1) { //$NON-NLS-1$
                     style = ssBuilder.getLISAStyle("COType"); //$NON-NLS-1$
-                } else if (source.getSchema().indexOf("GiZScore") != -1) { //$NON-NLS-1$
+                } else if (sourceSchema.indexOf("GiZScore") != -1) { //$NON-NLS-1$
                     style = ssBuilder.getZScoreStdDevStyle("GiZScore"); //$NON-NLS-1$
                 }
             }
         }
 
+        final Style layerStyle = style;
+        return new Runnable() {
+            @Override
+            public void run() {
+                addFeatureLayer(filePath, typeName, layerStyle);
+            }
+        };
+    }
+
+    @SuppressWarnings("nls")
+    private String getClassificationFunction(String styleName) {
+        if (styleName.startsWith("LISA") || styleName.startsWith("OLS")) {
+            return null;
+        } else if (styleName.startsWith("CL") || styleName.startsWith("JE")
+                || styleName.startsWith("NA")) {
+            return "JenksNaturalBreaksFunction";
+        } else if (styleName.startsWith("E")) {
+            return "EqualIntervalFunction";
+        } else if (styleName.startsWith("S")) {
+            return "StandardDeviationFunction";
+        } else if (styleName.startsWith("Q")) {
+            return "QuantileFunction";
+        }
+        return null;
+    }
+
+    // the shapefile may shorten the field names, the attribute order is kept
+    private String getOutputField(SimpleFeatureType sourceSchema, SimpleFeatureType schema,
+            String fieldName) {
+        if (fieldName == null || schema.indexOf(fieldName) != -1) {
+            return fieldName;
+        }
+
+        int ordinal = 0;
+        for (AttributeDescriptor descriptor : sourceSchema.getAttributeDescriptors()) {
+            if (descriptor instanceof GeometryDescriptor) {
+                continue;
+            } else if (descriptor.getLocalName().equals(fieldName)) {
+                break;
+            }
+            ordinal++;
+        }
+
+        for (AttributeDescriptor descriptor : schema.getAttributeDescriptors()) {
+            if (descriptor instanceof GeometryDescriptor) {
+                continue;
+            } else if (ordinal-- == 0) {
+                return descriptor.getLocalName();
+            }
+        }
+        return null;
+    }
+
+    private void addFeatureLayer(File filePath, String typeName, Style style) {
         try {
             CatalogPlugin catalogPlugin = CatalogPlugin.getDefault();
             ICatalog localCatalog = catalogPlugin.getLocalCatalog();
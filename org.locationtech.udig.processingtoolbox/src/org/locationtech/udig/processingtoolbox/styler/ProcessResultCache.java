@@ -0,0 +1,505 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.styler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.data.DataStore;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.FeatureStore;
+import org.geotools.data.shapefile.ShapefileDataStoreFactory;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.factory.Hints;
+import org.geotools.filter.text.ecql.ECQL;
+import org.geotools.gce.geotiff.GeoTiffReader;
+import org.geotools.process.spatialstatistics.storage.DataStoreFactory;
+import org.geotools.util.logging.Logging;
+import org.locationtech.udig.processingtoolbox.ToolboxPlugin;
+import org.locationtech.udig.processingtoolbox.ToolboxView;
+import org.locationtech.udig.project.ILayer;
+import org.locationtech.udig.project.IMap;
+import org.opengis.feature.type.Name;
+import org.opengis.filter.Filter;
+import org.opengis.filter.expression.Expression;
+import org.opengis.geometry.BoundingBox;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Content addressed cache of process results in the toolbox workspace.
+ * <p>
+ * The key is a SHA-1 hash of the process name and the input parameters. Layer inputs are
+ * identified by their source files with size and modification time, and by the selection filter,
+ * so editing a source invalidates the results. Runs with inputs that can not be identified, such
+ * as memory or database layers or layers of a map with uncommitted edits, and runs of processes
+ * with random outputs are not cached.
+ * <p>
+ * An entry keeps the written shapefiles and GeoTiffs and the HTML of the other results. The least
+ * recently used entries are removed when the cache grows beyond
+ * {@link ToolboxView#getResultCacheSize()}.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+@SuppressWarnings("nls")
+public class ProcessResultCache {
+    protected static final Logger LOGGER = Logging.getLogger(ProcessResultCache.class);
+
+    static final String CACHE_FOLDER = ".process_cache";
+
+    static final String INDEX_FILE = "entry.properties";
+
+    static final String SHAPEFILE = "shp";
+
+    static final String GEOTIFF = "tif";
+
+    static final String HTML = "html";
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // processes whose outputs differ from run to run
+    static final Set<String> NON_DETERMINISTIC = new HashSet<String>(Arrays.asList(
+            "RandomPoints", "RandomPointsPerFeatures"));
+
+    private static final Object lock = new Object();
+
+    private final File cacheFolder;
+
+    private final long maxSize;
+
+    private final List<DataStore> dataStores = new ArrayList<DataStore>();
+
+    private final List<GeoTiffReader> readers = new ArrayList<GeoTiffReader>();
+
+    private final List<GridCoverage2D> coverages = new ArrayList<GridCoverage2D>();
+
+    /**
+     * A text result restored from the cache
+     */
+    public static final class CachedText {
+        private final String html;
+
+        CachedText(String html) {
+            this.html = html;
+        }
+
+        public String getHTML() {
+            return html;
+        }
+    }
+
+    /**
+     * Returns the cache of the toolbox workspace, null if the cache is disabled
+     */
+    public static ProcessResultCache getDefault() {
+        if (!ToolboxView.getUseResultCache() || ToolboxView.getWorkspace() == null) {
+            return null;
+        }
+
+        File cacheFolder = new File(ToolboxView.getWorkspace(), CACHE_FOLDER);
+        long maxSize = ToolboxView.getResultCacheSize().longValue() * 1024 * 1024;
+        return new ProcessResultCache(cacheFolder, maxSize);
+    }
+
+    public ProcessResultCache(File cacheFolder, long maxSize) {
+        this.cacheFolder = cacheFolder;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the key of a process run, or null if an input can not be identified
+     */
+    public String createKey(IMap map, Name processName, Map<String, Object> inputParams) {
+        if (NON_DETERMINISTIC.contains(processName.getLocalPart())) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder(processName.getURI());
+        for (Entry<String, Object> entry : new TreeMap<String, Object>(inputParams).entrySet()) {
+            String fingerprint = fingerprint(map, entry.getValue());
+            if (fingerprint == null) {
+                return null;
+            }
+            sb.append('\n').append(entry.getKey()).append('=').append(fingerprint);
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(sb.toString().getBytes(UTF8));
+            StringBuilder key = new StringBuilder(hash.length * 2);
+            for (byte value : hash) {
+                key.append(String.format("%02x", value & 0xFF));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            LOGGER.log(Level.WARNING, e.getMessage(), e);
+        }
+        return null;
+    }
+
+    private String fingerprint(IMap map, Object value) {
+        if (value == null) {
+            return "null";
+        } else if (value instanceof String || value instanceof Number
+                || value instanceof Boolean || value instanceof Character
+                || value instanceof Enum<?>) {
+            return value.getClass().getName() + ":" + value;
+        } else if (value instanceof Geometry) {
+            Geometry geometry = (Geometry) value;
+            String crs = geometry.getUserData() instanceof CoordinateReferenceSystem ? geometry
+                    .getUserData().toString() : "";
+            return geometry.toText() + ";" + geometry.getSRID() + ";" + crs;
+        } else if (value instanceof Filter) {
+            return ECQL.toCQL((Filter) value);
+        } else if (value instanceof Expression) {
+            return ECQL.toCQL((Expression) value);
+        } else if (value instanceof CoordinateReferenceSystem) {
+            return value.toString();
+        } else if (value instanceof BoundingBox) {
+            BoundingBox bbox = (BoundingBox) value;
+            return bbox.getMinX() + "," + bbox.getMinY() + "," + bbox.getMaxX() + ","
+                    + bbox.getMaxY() + ";" + bbox.getCoordinateReferenceSystem();
+        } else if (value instanceof SimpleFeatureCollection) {
+            return getLayerIdentity(map, (SimpleFeatureCollection) value);
+        } else if (value instanceof GridCoverage2D) {
+            return getCoverageIdentity(map, (GridCoverage2D) value);
+        } else if (value instanceof Collection<?>) {
+            StringBuilder sb = new StringBuilder("[");
+            for (Object element : (Collection<?>) value) {
+                String fingerprint = fingerprint(map, element);
+                if (fingerprint == null) {
+                    return null;
+                }
+                sb.append(fingerprint).append(';');
+            }
+            return sb.append(']').toString();
+        }
+        return null; // unknown parameter type
+    }
+
+    private String getLayerIdentity(IMap map, SimpleFeatureCollection features) {
+        String typeName = features.getSchema().getTypeName();
+        String identity = null;
+        for (ILayer layer : map.getMapLayers()) {
+            if (!layer.hasResource(FeatureSource.class) || layer.getSchema() == null
+                    || !typeName.equals(layer.getSchema().getTypeName())) {
+                continue;
+            }
+
+            File file = getSourceFile(layer);
+            if (file == null) {
+                return null;
+            } else if (layer.hasResource(FeatureStore.class)
+                    && map.getEditManager().isEditing()) {
+                return null; // uncommitted edits do not change the source files
+            }
+
+            StringBuilder sb = new StringBuilder(getFileIdentity(file));
+            if (ToolboxView.getSelectedOnly() && layer.getFilter() != Filter.EXCLUDE) {
+                sb.append(';').append(layer.getFilter());
+            }
+            sb.append(';').append(layer.getCRS());
+
+            // the same source with different selections can not be told apart
+            if (identity != null && !identity.equals(sb.toString())) {
+                return null;
+            }
+            identity = sb.toString();
+        }
+        return identity;
+    }
+
+    private String getCoverageIdentity(IMap map, GridCoverage2D coverage) {
+        String coverageName = coverage.getName().toString();
+        String identity = null;
+        for (ILayer layer : map.getMapLayers()) {
+            if (!MapUtils.isRatserLayer(layer)) {
+                continue;
+            }
+
+            File file = getSourceFile(layer);
+            if (file == null
+                    || !FilenameUtils.getBaseName(file.getName()).equalsIgnoreCase(coverageName)) {
+                continue;
+            } else if (identity != null) {
+                return null;
+            }
+            identity = getFileIdentity(file) + ";" + coverage.getEnvelope() + ";"
+                    + coverage.getGridGeometry().getGridRange();
+        }
+        return identity;
+    }
+
+    private File getSourceFile(ILayer layer) {
+        URL url = layer.getGeoResource().getIdentifier();
+        if (url == null || !"file".equalsIgnoreCase(url.getProtocol())) {
+            return null;
+        }
+
+        try {
+            // without the #typename reference
+            File file = DataUtilities.urlToFile(new URL(url.getProtocol(), url.getHost(),
+                    url.getPort(), url.getFile()));
+            return file != null && file.isFile() ? file : null;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+        }
+        return null;
+    }
+
+    // the file and its sidecar files(.dbf, .shx, .tfw ...)
+    private String getFileIdentity(File file) {
+        StringBuilder sb = new StringBuilder(file.getAbsolutePath());
+        for (File sidecar : getSidecarFiles(file)) {
+            sb.append(';').append(sidecar.getName()).append(':').append(sidecar.length())
+                    .append(':').append(sidecar.lastModified());
+        }
+        return sb.toString();
+    }
+
+    private List<File> getSidecarFiles(File file) {
+        final String baseName = FilenameUtils.getBaseName(file.getName()).toLowerCase() + ".";
+        List<File> files = new ArrayList<File>();
+        File[] siblings = file.getAbsoluteFile().getParentFile().listFiles();
+        if (siblings != null) {
+            for (File sibling : siblings) {
+                if (sibling.isFile() && sibling.getName().toLowerCase().startsWith(baseName)) {
+                    files.add(sibling);
+                }
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Returns the cached results of a key, or null if there is no complete entry. Shapefiles are
+     * returned as feature collections, GeoTiffs as grid coverages and the other results as
+     * {@link CachedText}. The data stores of the feature collections and the readers of the
+     * coverages are open until {@link #dispose()} is called.
+     */
+    public Map<String, Object> get(String key) {
+        File entry = new File(cacheFolder, key);
+        File indexFile = new File(entry, INDEX_FILE);
+        Properties index = new Properties();
+        synchronized (lock) {
+            if (!indexFile.exists()) {
+                return null;
+            }
+
+            try {
+                InputStream inputStream = new FileInputStream(indexFile);
+                try {
+                    index.load(inputStream);
+                } finally {
+                    inputStream.close();
+                }
+                indexFile.setLastModified(System.currentTimeMillis()); // recently used
+            } catch (IOException e) {
+                LOGGER.log(Level.FINER, e.getMessage(), e);
+                return null;
+            }
+        }
+
+        Map<String, Object> result = new HashMap<String, Object>();
+        try {
+            for (String outputKey : index.stringPropertyNames()) {
+                String[] value = index.getProperty(outputKey).split(":", 2);
+                File file = new File(entry, value[1]);
+                if (SHAPEFILE.equals(value[0])) {
+                    Map<String, Object> params = new HashMap<String, Object>();
+                    params.put(ShapefileDataStoreFactory.URLP.key, DataUtilities.fileToURL(file));
+                    params.put(ShapefileDataStoreFactory.DBFCHARSET.key,
+                            ToolboxPlugin.defaultCharset());
+                    DataStore dataStore = DataStoreFactory.getDataStore(params);
+                    if (dataStore == null) {
+                        dispose();
+                        return null;
+                    }
+                    dataStores.add(dataStore);
+                    String typeName = FilenameUtils.getBaseName(file.getName());
+                    result.put(outputKey, dataStore.getFeatureSource(typeName).getFeatures());
+                } else if (GEOTIFF.equals(value[0])) {
+                    GeoTiffReader reader = new GeoTiffReader(file, new Hints(
+                            Hints.FORCE_LONGITUDE_FIRST_AXIS_ORDER, Boolean.TRUE));
+                    readers.add(reader);
+                    GridCoverage2D coverage = reader.read(null);
+                    if (coverage == null) {
+                        dispose();
+                        return null;
+                    }
+                    coverages.add(coverage);
+                    result.put(outputKey, coverage);
+                } else {
+                    String html = FileUtils.readFileToString(file, "UTF-8");
+                    result.put(outputKey, new CachedText(html));
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+            dispose();
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Disposes the data stores, coverages and readers opened by {@link #get(String)}
+     */
+    public void dispose() {
+        for (DataStore dataStore : dataStores) {
+            dataStore.dispose();
+        }
+        dataStores.clear();
+
+        for (GridCoverage2D coverage : coverages) {
+            coverage.dispose(true);
+        }
+        coverages.clear();
+
+        for (GeoTiffReader reader : readers) {
+            reader.dispose();
+        }
+        readers.clear();
+    }
+
+    /**
+     * Stores the results of a run
+     *
+     * @param key the key of the run
+     * @param outputFiles the written shapefiles and GeoTiffs
+     * @param outputTexts the HTML of the other results
+     */
+    public void put(String key, Map<String, File> outputFiles, Map<String, String> outputTexts) {
+        File entry = new File(cacheFolder, key);
+        File temp = new File(cacheFolder, key + "_" + System.nanoTime());
+        try {
+            FileUtils.forceMkdir(temp);
+
+            Properties index = new Properties();
+            int fileIndex = 0;
+            for (Entry<String, File> output : outputFiles.entrySet()) {
+                File outputFile = output.getValue();
+                String type = outputFile.getName().toLowerCase().endsWith(".shp") ? SHAPEFILE
+                        : GEOTIFF;
+                String baseName = "output" + fileIndex++;
+                int baseLength = FilenameUtils.getBaseName(outputFile.getName()).length();
+                for (File sidecar : getSidecarFiles(outputFile)) {
+                    // keep double extensions such as .aux.xml
+                    String extension = sidecar.getName().substring(baseLength);
+                    FileUtils.copyFile(sidecar, new File(temp, baseName + extension));
+                }
+                String extension = outputFile.getName().substring(baseLength);
+                index.setProperty(output.getKey(), type + ":" + baseName + extension);
+            }
+
+            for (Entry<String, String> output : outputTexts.entrySet()) {
+                String fileName = "output" + fileIndex++ + ".html";
+                FileUtils.writeStringToFile(new File(temp, fileName), output.getValue(), "UTF-8");
+                index.setProperty(output.getKey(), HTML + ":" + fileName);
+            }
+
+            // the index is written last, an entry without it is incomplete
+            OutputStream outputStream = new FileOutputStream(new File(temp, INDEX_FILE));
+            try {
+                index.store(outputStream, null);
+            } finally {
+                IOUtils.closeQuietly(outputStream);
+            }
+
+            synchronized (lock) {
+                if (entry.exists() || !temp.renameTo(entry)) {
+                    FileUtils.deleteQuietly(temp);
+                }
+                evict(key);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+            FileUtils.deleteQuietly(temp);
+        }
+    }
+
+    // removes the least recently used entries
+    private void evict(String keep) {
+        File[] entries = cacheFolder.listFiles();
+        if (entries == null) {
+            return;
+        }
+
+        final Map<File, Long> lastUsed = new LinkedHashMap<File, Long>();
+        long totalSize = 0;
+        final long expired = System.currentTimeMillis() - 24 * 60 * 60 * 1000L;
+        for (File entry : entries) {
+            if (!entry.isDirectory()) {
+                continue;
+            }
+
+            File indexFile = new File(entry, INDEX_FILE);
+            if (indexFile.exists()) {
+                totalSize += FileUtils.sizeOfDirectory(entry);
+                lastUsed.put(entry, Long.valueOf(indexFile.lastModified()));
+            } else if (entry.lastModified() < expired) {
+                FileUtils.deleteQuietly(entry); // left by an interrupted run
+            }
+        }
+
+        File[] sorted = lastUsed.keySet().toArray(new File[lastUsed.size()]);
+        Arrays.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return lastUsed.get(o1).compareTo(lastUsed.get(o2));
+            }
+        });
+
+        for (File entry : sorted) {
+            if (totalSize <= maxSize) {
+                break;
+            } else if (entry.getName().equals(keep)) {
+                continue;
+            }
+            long size = FileUtils.sizeOfDirectory(entry);
+            if (FileUtils.deleteQuietly(entry)) {
+                totalSize -= size;
+            }
+        }
+    }
+}
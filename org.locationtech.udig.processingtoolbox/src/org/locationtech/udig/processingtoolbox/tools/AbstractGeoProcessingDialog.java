@@ -20,6 +20,7 @@ import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.text.MessageFormat;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -60,6 +61,7 @@ import org.locationtech.udig.catalog.IGeoResource;
 import org.locationtech.udig.catalog.IService;
 import org.locationtech.udig.processingtoolbox.ToolboxPlugin;
 import org.locationtech.udig.processingtoolbox.ToolboxView;
+import org.locationtech.udig.processingtoolbox.internal.Messages;
 import org.locationtech.udig.processingtoolbox.internal.ui.OutputDataWidget;
 import org.locationtech.udig.processingtoolbox.internal.ui.WidgetBuilder;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils;
@@ -166,6 +168,31 @@ public abstract class AbstractGeoProcessingDialog extends TitleAreaDialog {
         return false;
     }
 
+    /**
+     * Asks whether the existing output file of the layer can be overwritten and deletes it.
+     * <p>
+     * Batch dialogs call this for every layer before any layer is processed.
+     *
+     * @param file the output file
+     * @param layerName the layer name
+     * @return true if the output file does not exist or has been deleted
+     */
+    protected boolean confirmOverwrite(File file, String layerName) {
+        if (!file.exists()) {
+            return true;
+        }
+
+        String msg = MessageFormat.format(Messages.General_OverwriteLayer, layerName);
+        if (!MessageDialog.openQuestion(getShell(), windowTitle, msg)) {
+            return false;
+        } else if (MapUtils.confirmSpatialFile(file)) {
+            return true;
+        }
+
+        openInformation(getShell(), Messages.General_Error);
+        return false;
+    }
+
     protected boolean invalidWidgetValue(Widget... widgets) {
         for (Widget widget : widgets) {
             if (widget instanceof Combo && ((Combo) widget).getText().isEmpty()) {
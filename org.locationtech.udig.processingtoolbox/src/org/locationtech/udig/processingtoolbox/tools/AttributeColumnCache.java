@@ -0,0 +1,291 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Logger;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.util.Converters;
+import org.geotools.util.logging.Logging;
+import org.locationtech.udig.processingtoolbox.ToolboxView;
+import org.locationtech.udig.project.ILayer;
+import org.locationtech.udig.project.ILayerListener;
+import org.locationtech.udig.project.LayerEvent;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.Filter;
+
+/**
+ * Columnar cache of the numeric fields of a layer shared by the chart dialogs.
+ * <p>
+ * A field is read once into a primitive array with a validity bitset, the rows are aligned with
+ * the feature id array. Changing the fields, the number of bins or the axes of a chart reads the
+ * cached columns instead of the layer. The cache of a layer is cleared when its features are
+ * edited or the features to process (selected features only) change.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+final class AttributeColumnCache {
+    protected static final Logger LOGGER = Logging.getLogger(AttributeColumnCache.class);
+
+    private static final Map<ILayer, AttributeColumnCache> caches = new WeakHashMap<ILayer,
+            AttributeColumnCache>();
+
+    // the layer is the weak key of the cache
+    private final WeakReference<ILayer> layerRef;
+
+    private final Map<String, Column> columns = new HashMap<String, Column>();
+
+    private String[] featureIDs;
+
+    private Filter filter;
+
+    /**
+     * A numeric field, the value of a row is valid if it is a finite number
+     */
+    static final class Column {
+        private final String name;
+
+        private final double[] values;
+
+        private final BitSet valid;
+
+        Column(String name, int size) {
+            this.name = name;
+            this.values = new double[size];
+            this.valid = new BitSet(size);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        public boolean isValid(int row) {
+            return valid.get(row);
+        }
+
+        public double get(int row) {
+            return values[row];
+        }
+
+        public BitSet getValidity() {
+            return valid;
+        }
+
+        public int getValidCount() {
+            return valid.cardinality();
+        }
+
+        void set(int row, Object value) {
+            Double val = value instanceof Number ? ((Number) value).doubleValue() : Converters
+                    .convert(value, Double.class);
+            if (val != null && !val.isNaN() && !val.isInfinite()) {
+                values[row] = val;
+                valid.set(row);
+            }
+        }
+    }
+
+    /**
+     * Returns the cache of a layer
+     */
+    public static AttributeColumnCache getCache(ILayer layer) {
+        synchronized (caches) {
+            AttributeColumnCache cache = caches.get(layer);
+            if (cache == null) {
+                cache = new AttributeColumnCache(layer);
+                caches.put(layer, cache);
+            }
+            return cache;
+        }
+    }
+
+    private AttributeColumnCache(ILayer layer) {
+        this.layerRef = new WeakReference<ILayer>(layer);
+        layer.addListener(new ILayerListener() {
+            @Override
+            public void refresh(LayerEvent event) {
+                if (event.getType() == LayerEvent.EventType.EDIT_EVENT
+                        || event.getType() == LayerEvent.EventType.ALL) {
+                    invalidate();
+                }
+            }
+        });
+    }
+
+    /**
+     * Clears the cached columns
+     */
+    public synchronized void invalidate() {
+        columns.clear();
+        featureIDs = null;
+        filter = null;
+    }
+
+    /**
+     * Returns the ids of the features, the index of a feature is the row of the columns
+     */
+    public synchronized String[] getFeatureIDs() throws IOException {
+        load(new String[0]);
+        return featureIDs;
+    }
+
+    /**
+     * Returns the column of a field
+     */
+    public Column getColumn(String field) throws IOException {
+        return getColumns(field)[0];
+    }
+
+    /**
+     * Returns the columns of the fields, the fields not cached yet are read in one pass
+     */
+    public synchronized Column[] getColumns(String... fields) throws IOException {
+        load(fields);
+
+        Column[] result = new Column[fields.length];
+        for (int index = 0; index < fields.length; index++) {
+            result[index] = columns.get(fields[index]);
+        }
+        return result;
+    }
+
+    private void load(String[] fields) throws IOException {
+        ILayer layer = layerRef.get();
+        if (layer == null) {
+            throw new IOException("The layer has been removed"); //$NON-NLS-1$
+        }
+
+        // same features as MapUtils.getFeatures
+        Filter current = Filter.INCLUDE;
+        if (ToolboxView.getSelectedOnly() && layer.getFilter() != Filter.EXCLUDE) {
+            current = layer.getFilter();
+        }
+        if (!current.equals(filter)) {
+            invalidate();
+        }
+
+        List<String> missing = new ArrayList<String>();
+        for (String field : fields) {
+            if (!columns.containsKey(field) && !missing.contains(field)) {
+                missing.add(field);
+            }
+        }
+        if (featureIDs != null && missing.isEmpty()) {
+            return;
+        }
+
+        SimpleFeatureSource sfs = (SimpleFeatureSource) layer.getResource(FeatureSource.class,
+                new NullProgressMonitor());
+        String[] propertyNames = missing.toArray(new String[missing.size()]);
+        Query query = new Query(sfs.getSchema().getTypeName(), current, propertyNames);
+
+        if (featureIDs == null || !read(sfs, query, featureIDs.length, false)) {
+            // the rows are not aligned with the cached columns, read all of them again
+            for (String field : columns.keySet()) {
+                if (!missing.contains(field)) {
+                    missing.add(field);
+                }
+            }
+            columns.clear();
+            propertyNames = missing.toArray(new String[missing.size()]);
+            query = new Query(sfs.getSchema().getTypeName(), current, propertyNames);
+            read(sfs, query, sfs.getCount(query), true);
+        }
+        filter = current;
+    }
+
+    private boolean read(SimpleFeatureSource sfs, Query query, int size, boolean withFeatureIDs)
+            throws IOException {
+        String[] propertyNames = query.getPropertyNames();
+        Column[] loaded = new Column[propertyNames.length];
+        int[] attributeIndex = new int[propertyNames.length];
+
+        List<String> ids = new ArrayList<String>(Math.max(size, 16));
+        int row = 0;
+        SimpleFeatureIterator featureIter = sfs.getFeatures(query).features();
+        try {
+            while (featureIter.hasNext()) {
+                SimpleFeature feature = featureIter.next();
+                if (row == 0) {
+                    for (int index = 0; index < propertyNames.length; index++) {
+                        attributeIndex[index] = feature.getType().indexOf(propertyNames[index]);
+                        loaded[index] = new Column(propertyNames[index], Math.max(size, 16));
+                    }
+                }
+
+                if (withFeatureIDs) {
+                    ids.add(feature.getID());
+                } else if (row >= size || !featureIDs[row].equals(feature.getID())) {
+                    return false;
+                }
+
+                for (int index = 0; index < propertyNames.length; index++) {
+                    if (row >= loaded[index].size()) {
+                        loaded[index] = grow(loaded[index]);
+                    }
+                    if (attributeIndex[index] >= 0) {
+                        loaded[index].set(row, feature.getAttribute(attributeIndex[index]));
+                    }
+                }
+                row++;
+            }
+        } finally {
+            featureIter.close();
+        }
+
+        if (!withFeatureIDs && row != size) {
+            return false;
+        }
+
+        if (withFeatureIDs) {
+            featureIDs = ids.toArray(new String[ids.size()]);
+        }
+        for (int index = 0; index < propertyNames.length; index++) {
+            Column column = loaded[index];
+            if (column == null) {
+                column = new Column(propertyNames[index], 0);
+            } else if (column.size() != row) {
+                column = trim(column, row);
+            }
+            columns.put(propertyNames[index], column);
+        }
+        return true;
+    }
+
+    // the feature count is an estimate for some data stores
+    private Column grow(Column column) {
+        return trim(column, column.size() * 2);
+    }
+
+    private Column trim(Column column, int size) {
+        Column result = new Column(column.name, size);
+        System.arraycopy(column.values, 0, result.values, 0, Math.min(size, column.size()));
+        result.valid.or(column.valid.get(0, Math.min(size, column.size())));
+        return result;
+    }
+}
@@ -11,12 +11,10 @@ package org.locationtech.udig.processingtoolbox.tools;
 
 import java.io.File;
 import java.lang.reflect.InvocationTargetException;
-import java.text.MessageFormat;
 import java.util.logging.Logger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.dialogs.MessageDialog;
-import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.layout.GridData;
@@ -31,8 +29,7 @@ import org.eclipse.swt.widgets.TableItem;
 import org.eclipse.ui.PlatformUI;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.process.spatialstatistics.operations.ClipWithFeaturesOperation;
-import org.geotools.process.spatialstatistics.storage.ShapeExportOperation;
+import org.geotools.process.spatialstatistics.storage.DataStoreFactory;
 import org.geotools.util.logging.Logging;
 import org.locationtech.udig.processingtoolbox.ToolboxPlugin;
 import org.locationtech.udig.processingtoolbox.ToolboxView;
@@ -42,6 +39,8 @@ import org.locationtech.udig.processingtoolbox.internal.ui.OutputDataWidget.File
 import org.locationtech.udig.processingtoolbox.internal.ui.TableSelectionWidget;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils.VectorLayerType;
+import org.locationtech.udig.processingtoolbox.tools.BatchScheduler.BatchTask;
+import org.locationtech.udig.processingtoolbox.tools.ClipWithPreparedFeaturesOperation.ClipIndex;
 import org.locationtech.udig.project.ILayer;
 import org.locationtech.udig.project.IMap;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
@@ -51,8 +50,7 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
  * 
  * @author MapPlus
  */
-public class BatchClipFeaturesDialog extends AbstractGeoProcessingDialog implements
-        IRunnableWithProgress {
+public class BatchClipFeaturesDialog extends AbstractGeoProcessingDialog {
     protected static final Logger LOGGER = Logging.getLogger(BatchClipFeaturesDialog.class);
 
     private Table inputTable;
@@ -127,70 +125,54 @@ public class BatchClipFeaturesDialog extends AbstractGeoProcessingDialog impleme
             return;
         }
 
-        try {
-            PlatformUI.getWorkbench().getProgressService().run(false, true, this);
-            openInformation(getShell(), Messages.General_Completed);
-            super.okPressed();
-        } catch (InvocationTargetException e) {
-            MessageDialog.openError(getShell(), Messages.General_Error, e.getMessage());
-        } catch (InterruptedException e) {
-            MessageDialog.openInformation(getShell(), Messages.General_Cancelled, e.getMessage());
-        }
-    }
-
-    @Override
-    public void run(IProgressMonitor monitor) throws InvocationTargetException,
-            InterruptedException {
-        monitor.beginTask(String.format(Messages.Task_Executing, windowTitle),
-                inputTable.getItems().length * increment);
-        try {
-            monitor.worked(increment);
+        final String folder = locationView.getFolder();
+        SimpleFeatureCollection clipFeatures = MapUtils.getFeatures(map, cboLayer.getText());
 
-            final String folder = locationView.getFolder();
+        // prepared clip geometries are indexed once and shared by all layers
+        final ClipIndex clipIndex = new ClipIndex(clipFeatures);
 
-            ShapeExportOperation export = new ShapeExportOperation();
-            export.setOutputDataStore(locationView.getDataStore());
+        // collect layers and overwrite confirmations before processing
+        BatchScheduler scheduler = new BatchScheduler(windowTitle);
+        for (TableItem item : inputTable.getItems()) {
+            if (!item.getChecked()) {
+                continue;
+            }
 
-            SimpleFeatureCollection clipFeatures = MapUtils.getFeatures(map, cboLayer.getText());
+            final ILayer layer = (ILayer) item.getData();
+            final File file = new File(folder, layer.getName() + ".shp"); //$NON-NLS-1$
+            if (!confirmOverwrite(file, layer.getName())) {
+                continue;
+            }
 
-            ClipWithFeaturesOperation clipper = new ClipWithFeaturesOperation();
-            for (TableItem item : inputTable.getItems()) {
-                monitor.subTask(item.getText());
-                if (item.getChecked()) {
-                    ILayer layer = (ILayer) item.getData();
+            scheduler.add(new BatchTask(layer.getName()) {
+                @Override
+                protected Object execute(IProgressMonitor monitor) throws Exception {
                     SimpleFeatureCollection features = MapUtils.getFeatures(layer);
 
-                    SimpleFeatureCollection clipped = null;
-                    File file = new File(folder, layer.getName() + ".shp"); //$NON-NLS-1$
-                    if (file.exists()) {
-                        if (MessageDialog.openQuestion(
-                                getShell(),
-                                windowTitle,
-                                MessageFormat.format(Messages.General_OverwriteLayer,
-                                        layer.getName()))) {
-                            if (MapUtils.confirmSpatialFile(file)) {
-                                clipped = clipper.execute(features, clipFeatures);
-                            } else {
-                                openInformation(getShell(), Messages.General_Error);
-                            }
-                        }
-                    } else {
-                        clipped = clipper.execute(features, clipFeatures);
-                    }
-
-                    if (clipped != null) {
-                        export.setOutputTypeName(layer.getName());
-                        export.execute(clipped);
-                        ToolboxPlugin.log(file);
+                    ClipWithPreparedFeaturesOperation clipper;
+                    clipper = new ClipWithPreparedFeaturesOperation(clipIndex, layer.getName());
+                    clipper.setOutputDataStore(DataStoreFactory.getShapefileDataStore(folder));
+                    if (clipper.execute(features, monitor) == null) {
+                        OperationOutputs.removeCanceled(file);
+                        return null;
                     }
+                    return file;
                 }
-                monitor.worked(increment);
-            }
-        } catch (Exception e) {
-            ToolboxPlugin.log(e.getMessage());
-            throw new InvocationTargetException(e.getCause(), e.getMessage());
-        } finally {
-            monitor.done();
+            });
+        }
+
+        if (scheduler.isEmpty()) {
+            return;
+        }
+
+        try {
+            PlatformUI.getWorkbench().getProgressService().run(true, true, scheduler);
+            openInformation(getShell(), Messages.General_Completed);
+            super.okPressed();
+        } catch (InvocationTargetException e) {
+            MessageDialog.openError(getShell(), Messages.General_Error, e.getMessage());
+        } catch (InterruptedException e) {
+            MessageDialog.openInformation(getShell(), Messages.General_Cancelled, e.getMessage());
         }
     }
 
@@ -11,14 +11,12 @@ package org.locationtech.udig.processingtoolbox.tools;
 
 import java.io.File;
 import java.lang.reflect.InvocationTargetException;
-import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.dialogs.MessageDialog;
-import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.layout.GridData;
@@ -36,7 +34,6 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.geotools.process.spatialstatistics.gridcoverage.RasterCropOperation;
-import org.geotools.process.spatialstatistics.storage.RasterExportOperation;
 import org.geotools.process.spatialstatistics.transformation.ReprojectFeatureCollection;
 import org.geotools.referencing.CRS;
 import org.geotools.util.logging.Logging;
@@ -48,6 +45,7 @@ import org.locationtech.udig.processingtoolbox.internal.ui.OutputDataWidget.File
 import org.locationtech.udig.processingtoolbox.internal.ui.TableSelectionWidget;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils.VectorLayerType;
+import org.locationtech.udig.processingtoolbox.tools.BatchScheduler.BatchTask;
 import org.locationtech.udig.project.ILayer;
 import org.locationtech.udig.project.IMap;
 import org.opengis.coverage.SampleDimension;
@@ -64,8 +62,7 @@ import com.vividsolutions.jts.geom.GeometryFactory;
  * 
  * @author MapPlus
  */
-public class BatchClipRastersDialog extends AbstractGeoProcessingDialog implements
-        IRunnableWithProgress {
+public class BatchClipRastersDialog extends AbstractGeoProcessingDialog {
     protected static final Logger LOGGER = Logging.getLogger(BatchClipRastersDialog.class);
 
     private Table inputTable;
@@ -145,71 +142,59 @@ public class BatchClipRastersDialog extends AbstractGeoProcessingDialog implemen
             return;
         }
 
-        try {
-            PlatformUI.getWorkbench().getProgressService().run(false, true, this);
-            openInformation(getShell(), Messages.General_Completed);
-            super.okPressed();
-        } catch (InvocationTargetException e) {
-            MessageDialog.openError(getShell(), Messages.General_Error, e.getMessage());
-        } catch (InterruptedException e) {
-            MessageDialog.openInformation(getShell(), Messages.General_Cancelled, e.getMessage());
-        }
-    }
-
-    @Override
-    public void run(IProgressMonitor monitor) throws InvocationTargetException,
-            InterruptedException {
-        monitor.beginTask(String.format(Messages.Task_Executing, windowTitle),
-                inputTable.getItems().length * increment);
-        try {
-            monitor.worked(increment);
+        final String folder = locationView.getFolder();
+        final SimpleFeatureCollection clipFeatures = MapUtils.getFeatures(map, cboLayer.getText());
 
-            final String folder = locationView.getFolder();
-
-            RasterExportOperation export = new RasterExportOperation();
+        // collect layers and overwrite confirmations before processing
+        BatchScheduler scheduler = new BatchScheduler(windowTitle);
+        for (TableItem item : inputTable.getItems()) {
+            if (!item.getChecked()) {
+                continue;
+            }
 
-            SimpleFeatureCollection clipFeatures = MapUtils.getFeatures(map, cboLayer.getText());
+            final ILayer layer = (ILayer) item.getData();
+            final File file = new File(folder, layer.getName() + ".tif"); //$NON-NLS-1$
+            if (!confirmOverwrite(file, layer.getName())) {
+                continue;
+            }
 
-            RasterCropOperation clipper = new RasterCropOperation();
-            for (TableItem item : inputTable.getItems()) {
-                monitor.subTask(item.getText());
-                if (item.getChecked()) {
-                    ILayer layer = (ILayer) item.getData();
+            scheduler.add(new BatchTask(layer.getName()) {
+                @Override
+                protected Object execute(IProgressMonitor monitor) throws Exception {
                     GridCoverage2D coverage = MapUtils.getGridCoverage(layer);
 
                     CoordinateReferenceSystem targetCRS = coverage.getCoordinateReferenceSystem();
                     Geometry cropShape = getGeometries(clipFeatures, targetCRS);
 
-                    GridCoverage2D clipped = null;
-                    File file = new File(folder, layer.getName() + ".tif"); //$NON-NLS-1$
-                    if (file.exists()) {
-                        if (MessageDialog.openQuestion(
-                                getShell(),
-                                windowTitle,
-                                MessageFormat.format(Messages.General_OverwriteLayer,
-                                        layer.getName()))) {
-                            if (MapUtils.confirmSpatialFile(file)) {
-                                clipped = clipper.execute(coverage, cropShape);
-                            } else {
-                                openInformation(getShell(), Messages.General_Error);
-                            }
-                        }
-                    } else {
-                        clipped = clipper.execute(coverage, cropShape);
+                    RasterCropOperation clipper = new RasterCropOperation();
+                    GridCoverage2D clipped = clipper.execute(coverage, cropShape);
+                    if (clipped == null) {
+                        return null;
                     }
 
-                    if (clipped != null) {
-                        export.saveAsGeoTiff(clipped, file.getAbsolutePath());
-                        ToolboxPlugin.log(file.getAbsolutePath());
+                    // the tiles are computed while written
+                    MapUtils.saveAsGeoTiff(clipped, file, monitor);
+                    if (monitor.isCanceled()) {
+                        MapUtils.confirmSpatialFile(file);
+                        return null;
                     }
+                    return file.getAbsolutePath();
                 }
-                monitor.worked(increment);
-            }
-        } catch (Exception e) {
-            ToolboxPlugin.log(e.getMessage());
-            throw new InvocationTargetException(e.getCause(), e.getMessage());
-        } finally {
-            monitor.done();
+            });
+        }
+
+        if (scheduler.isEmpty()) {
+            return;
+        }
+
+        try {
+            PlatformUI.getWorkbench().getProgressService().run(true, true, scheduler);
+            openInformation(getShell(), Messages.General_Completed);
+            super.okPressed();
+        } catch (InvocationTargetException e) {
+            MessageDialog.openError(getShell(), Messages.General_Error, e.getMessage());
+        } catch (InterruptedException e) {
+            MessageDialog.openInformation(getShell(), Messages.General_Cancelled, e.getMessage());
         }
     }
 
@@ -11,12 +11,10 @@ package org.locationtech.udig.processingtoolbox.tools;
 
 import java.io.File;
 import java.lang.reflect.InvocationTargetException;
-import java.text.MessageFormat;
 import java.util.logging.Logger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.dialogs.MessageDialog;
-import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.SelectionAdapter;
@@ -39,6 +37,7 @@ import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.PlatformUI;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.process.spatialstatistics.storage.DataStoreFactory;
 import org.geotools.process.spatialstatistics.storage.ShapeExportOperation;
 import org.geotools.referencing.CRS;
 import org.geotools.util.logging.Logging;
@@ -49,6 +48,7 @@ import org.locationtech.udig.processingtoolbox.internal.ui.OutputDataWidget;
 import org.locationtech.udig.processingtoolbox.internal.ui.OutputDataWidget.FileDataType;
 import org.locationtech.udig.processingtoolbox.internal.ui.TableSelectionWidget;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils;
+import org.locationtech.udig.processingtoolbox.tools.BatchScheduler.BatchTask;
 import org.locationtech.udig.project.ILayer;
 import org.locationtech.udig.project.IMap;
 import org.locationtech.udig.ui.CRSChooserDialog;
@@ -60,8 +60,7 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
  * 
  * @author MapPlus
  */
-public class BatchReprojectFeaturesDialog extends AbstractGeoProcessingDialog implements
-        IRunnableWithProgress {
+public class BatchReprojectFeaturesDialog extends AbstractGeoProcessingDialog {
     protected static final Logger LOGGER = Logging.getLogger(BatchReprojectFeaturesDialog.class);
 
     private Table inputTable;
@@ -217,63 +216,53 @@ public class BatchReprojectFeaturesDialog extends AbstractGeoProcessingDialog im
             return;
         }
 
-        try {
-            PlatformUI.getWorkbench().getProgressService().run(false, true, this);
-            openInformation(getShell(), Messages.General_Completed);
-            super.okPressed();
-        } catch (InvocationTargetException e) {
-            MessageDialog.openError(getShell(), Messages.General_Error, e.getMessage());
-        } catch (InterruptedException e) {
-            MessageDialog.openInformation(getShell(), Messages.General_Cancelled, e.getMessage());
-        }
-    }
-
-    @Override
-    public void run(IProgressMonitor monitor) throws InvocationTargetException,
-            InterruptedException {
-        monitor.beginTask(String.format(Messages.Task_Executing, windowTitle),
-                inputTable.getItems().length * increment);
-        try {
-            monitor.worked(increment);
+        final String folder = locationView.getFolder();
+        final CoordinateReferenceSystem outputCRS = targetCRS;
 
-            final String folder = locationView.getFolder();
+        // collect layers and overwrite confirmations before processing
+        BatchScheduler scheduler = new BatchScheduler(windowTitle);
+        for (TableItem item : inputTable.getItems()) {
+            if (!item.getChecked()) {
+                continue;
+            }
 
-            ShapeExportOperation export = new ShapeExportOperation();
-            export.setOutputDataStore(locationView.getDataStore());
+            final ILayer layer = (ILayer) item.getData();
+            final File file = new File(folder, layer.getName() + ".shp"); //$NON-NLS-1$
+            if (!confirmOverwrite(file, layer.getName())) {
+                continue;
+            }
 
-            for (TableItem item : inputTable.getItems()) {
-                monitor.subTask(item.getText());
-                if (item.getChecked()) {
-                    ILayer layer = (ILayer) item.getData();
+            scheduler.add(new BatchTask(layer.getName()) {
+                @Override
+                protected Object execute(IProgressMonitor monitor) throws Exception {
                     SimpleFeatureCollection features = MapUtils.getFeatures(layer);
+                    features = BatchScheduler.monitor(features, monitor);
 
+                    ShapeExportOperation export = new ShapeExportOperation();
+                    export.setOutputDataStore(DataStoreFactory.getShapefileDataStore(folder));
                     export.setOutputTypeName(layer.getName());
-
-                    File file = new File(folder, layer.getName() + ".shp"); //$NON-NLS-1$
-                    if (file.exists()) {
-                        if (MessageDialog.openQuestion(
-                                getShell(),
-                                windowTitle,
-                                MessageFormat.format(Messages.General_OverwriteLayer,
-                                        layer.getName()))) {
-                            if (MapUtils.confirmSpatialFile(file)) {
-                                export.execute(features, targetCRS);
-                            } else {
-                                openInformation(getShell(), Messages.General_Error);
-                            }
-                        }
-                    } else {
-                        export.execute(features, targetCRS);
-                        ToolboxPlugin.log(file.getAbsolutePath());
+                    export.execute(features, outputCRS);
+                    if (monitor.isCanceled()) {
+                        OperationOutputs.removeCanceled(file);
+                        return null;
                     }
+                    return file.getAbsolutePath();
                 }
-                monitor.worked(increment);
-            }
-        } catch (Exception e) {
-            ToolboxPlugin.log(e.getMessage());
-            throw new InvocationTargetException(e.getCause(), e.getMessage());
-        } finally {
-            monitor.done();
+            });
+        }
+
+        if (scheduler.isEmpty()) {
+            return;
+        }
+
+        try {
+            PlatformUI.getWorkbench().getProgressService().run(true, true, scheduler);
+            openInformation(getShell(), Messages.General_Completed);
+            super.okPressed();
+        } catch (InvocationTargetException e) {
+            MessageDialog.openError(getShell(), Messages.General_Error, e.getMessage());
+        } catch (InterruptedException e) {
+            MessageDialog.openInformation(getShell(), Messages.General_Cancelled, e.getMessage());
         }
     }
 
@@ -11,12 +11,10 @@ package org.locationtech.udig.processingtoolbox.tools;
 
 import java.io.File;
 import java.lang.reflect.InvocationTargetException;
-import java.text.MessageFormat;
 import java.util.logging.Logger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.dialogs.MessageDialog;
-import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.SelectionAdapter;
@@ -39,7 +37,6 @@ import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.PlatformUI;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.process.spatialstatistics.gridcoverage.RasterReprojectOperation;
-import org.geotools.process.spatialstatistics.storage.RasterExportOperation;
 import org.geotools.referencing.CRS;
 import org.geotools.util.logging.Logging;
 import org.locationtech.udig.processingtoolbox.ToolboxPlugin;
@@ -49,6 +46,7 @@ import org.locationtech.udig.processingtoolbox.internal.ui.OutputDataWidget;
 import org.locationtech.udig.processingtoolbox.internal.ui.OutputDataWidget.FileDataType;
 import org.locationtech.udig.processingtoolbox.internal.ui.TableSelectionWidget;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils;
+import org.locationtech.udig.processingtoolbox.tools.BatchScheduler.BatchTask;
 import org.locationtech.udig.project.ILayer;
 import org.locationtech.udig.project.IMap;
 import org.locationtech.udig.ui.CRSChooserDialog;
@@ -63,8 +61,7 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
  * 
  * @author MapPlus
  */
-public class BatchReprojectRastersDialog extends AbstractGeoProcessingDialog implements
-        IRunnableWithProgress {
+public class BatchReprojectRastersDialog extends AbstractGeoProcessingDialog {
     protected static final Logger LOGGER = Logging.getLogger(BatchReprojectRastersDialog.class);
 
     private Table inputTable;
@@ -225,66 +222,56 @@ public class BatchReprojectRastersDialog extends AbstractGeoProcessingDialog imp
             return;
         }
 
-        try {
-            PlatformUI.getWorkbench().getProgressService().run(false, true, this);
-            openInformation(getShell(), Messages.General_Completed);
-            super.okPressed();
-        } catch (InvocationTargetException e) {
-            MessageDialog.openError(getShell(), Messages.General_Error, e.getMessage());
-        } catch (InterruptedException e) {
-            MessageDialog.openInformation(getShell(), Messages.General_Cancelled, e.getMessage());
-        }
-    }
+        final String folder = locationView.getFolder();
+        final CoordinateReferenceSystem outputCRS = targetCRS;
 
-    @Override
-    public void run(IProgressMonitor monitor) throws InvocationTargetException,
-            InterruptedException {
-        monitor.beginTask(String.format(Messages.Task_Executing, windowTitle),
-                inputTable.getItems().length * increment);
-        try {
-            monitor.worked(increment);
-
-            final String folder = locationView.getFolder();
+        // collect layers and overwrite confirmations before processing
+        BatchScheduler scheduler = new BatchScheduler(windowTitle);
+        for (TableItem item : inputTable.getItems()) {
+            if (!item.getChecked()) {
+                continue;
+            }
 
-            RasterReprojectOperation reproject = new RasterReprojectOperation();
-            RasterExportOperation export = new RasterExportOperation();
+            final ILayer layer = (ILayer) item.getData();
+            final File file = new File(folder, layer.getName() + ".tif"); //$NON-NLS-1$
+            if (!confirmOverwrite(file, layer.getName())) {
+                continue;
+            }
 
-            for (TableItem item : inputTable.getItems()) {
-                monitor.subTask(item.getText());
-                if (item.getChecked()) {
-                    ILayer layer = (ILayer) item.getData();
+            scheduler.add(new BatchTask(layer.getName()) {
+                @Override
+                protected Object execute(IProgressMonitor monitor) throws Exception {
                     GridCoverage2D coverage = MapUtils.getGridCoverage(layer);
 
-                    GridCoverage2D reprojected = null;
-                    File file = new File(folder, layer.getName() + ".tif"); //$NON-NLS-1$
-                    if (file.exists()) {
-                        if (MessageDialog.openQuestion(
-                                getShell(),
-                                windowTitle,
-                                MessageFormat.format(Messages.General_OverwriteLayer,
-                                        layer.getName()))) {
-                            if (MapUtils.confirmSpatialFile(file)) {
-                                reprojected = reproject.execute(coverage, targetCRS);
-                            } else {
-                                openInformation(getShell(), Messages.General_Error);
-                            }
-                        }
-                    } else {
-                        reprojected = reproject.execute(coverage, targetCRS);
+                    RasterReprojectOperation reproject = new RasterReprojectOperation();
+                    GridCoverage2D reprojected = reproject.execute(coverage, outputCRS);
+                    if (reprojected == null) {
+                        return null;
                     }
 
-                    if (reprojected != null) {
-                        export.saveAsGeoTiff(reprojected, file.getAbsolutePath());
-                        ToolboxPlugin.log(file.getAbsolutePath());
+                    // the tiles are computed while written
+                    MapUtils.saveAsGeoTiff(reprojected, file, monitor);
+                    if (monitor.isCanceled()) {
+                        MapUtils.confirmSpatialFile(file);
+                        return null;
                     }
+                    return file.getAbsolutePath();
                 }
-                monitor.worked(increment);
-            }
-        } catch (Exception e) {
-            ToolboxPlugin.log(e.getMessage());
-            throw new InvocationTargetException(e.getCause(), e.getMessage());
-        } finally {
-            monitor.done();
+            });
+        }
+
+        if (scheduler.isEmpty()) {
+            return;
+        }
+
+        try {
+            PlatformUI.getWorkbench().getProgressService().run(true, true, scheduler);
+            openInformation(getShell(), Messages.General_Completed);
+            super.okPressed();
+        } catch (InvocationTargetException e) {
+            MessageDialog.openError(getShell(), Messages.General_Error, e.getMessage());
+        } catch (InterruptedException e) {
+            MessageDialog.openInformation(getShell(), Messages.General_Cancelled, e.getMessage());
         }
     }
 
@@ -0,0 +1,309 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools;
+
+import java.lang.reflect.InvocationTargetException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jface.operation.IRunnableWithProgress;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.transformation.GXTSimpleFeatureCollection;
+import org.geotools.util.logging.Logging;
+import org.locationtech.udig.processingtoolbox.ToolboxPlugin;
+import org.locationtech.udig.processingtoolbox.internal.Messages;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Runs the layer tasks of the batch dialogs concurrently on a bounded worker pool.
+ * <p>
+ * Tasks are created on the UI thread, so every widget value and overwrite confirmation must be
+ * resolved before the scheduler is run. Each task reports its own progress, canceling the monitor
+ * skips the tasks not yet started and a failed task does not stop the others.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class BatchScheduler implements IRunnableWithProgress {
+    protected static final Logger LOGGER = Logging.getLogger(BatchScheduler.class);
+
+    static final int TASK_WORK = 100;
+
+    private final String title;
+
+    private final List<BatchTask> tasks = new ArrayList<BatchTask>();
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    public BatchScheduler(String title) {
+        this.title = title;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public void add(BatchTask task) {
+        tasks.add(task);
+    }
+
+    public boolean isEmpty() {
+        return tasks.isEmpty();
+    }
+
+    @Override
+    public void run(final IProgressMonitor monitor) throws InvocationTargetException,
+            InterruptedException {
+        final int total = tasks.size();
+        monitor.beginTask(String.format(Messages.Task_Executing, title), total * TASK_WORK);
+
+        final AtomicBoolean canceled = new AtomicBoolean(false);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism,
+                Math.max(1, total)));
+        CompletionService<BatchTask> completion = new ExecutorCompletionService<BatchTask>(
+                executor);
+
+        List<String> failures = new ArrayList<String>();
+        Throwable cause = null;
+        try {
+            for (final BatchTask task : tasks) {
+                completion.submit(new Callable<BatchTask>() {
+                    @Override
+                    public BatchTask call() throws Exception {
+                        TaskMonitor taskMonitor = new TaskMonitor(monitor, canceled);
+                        try {
+                            if (!taskMonitor.isCanceled()) {
+                                task.output = task.run(taskMonitor);
+                            }
+                        } finally {
+                            taskMonitor.done();
+                        }
+                        return task;
+                    }
+                });
+            }
+
+            int finished = 0;
+            while (finished < total) {
+                Future<BatchTask> future = completion.poll(200, TimeUnit.MILLISECONDS);
+                if (monitor.isCanceled()) {
+                    canceled.set(true);
+                }
+                if (future == null) {
+                    continue;
+                }
+
+                finished++;
+                try {
+                    BatchTask task = future.get();
+                    if (task.output != null) {
+                        ToolboxPlugin.log(task.output);
+                    }
+                } catch (ExecutionException e) {
+                    if (cause == null) {
+                        cause = e.getCause();
+                    }
+                    LOGGER.log(Level.WARNING, e.getMessage(), e.getCause());
+                }
+                monitor.subTask(finished + "/" + total); //$NON-NLS-1$
+            }
+
+            // collect the names of failed tasks in the order of the table
+            for (BatchTask task : tasks) {
+                if (task.failure != null) {
+                    failures.add(task.getName());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            monitor.done();
+        }
+
+        if (canceled.get()) {
+            throw new InterruptedException(Messages.Task_Canceled);
+        } else if (failures.size() > 0) {
+            String msg = MessageFormat.format(Messages.General_FailedLayers, failures.toString());
+            ToolboxPlugin.log(msg);
+            throw new InvocationTargetException(cause, msg);
+        }
+    }
+
+    /**
+     * Returns a view of the features whose iterators report the progress to the monitor and end
+     * once it is canceled
+     */
+    public static SimpleFeatureCollection monitor(SimpleFeatureCollection features,
+            IProgressMonitor monitor) {
+        return new MonitoredFeatureCollection(features, monitor);
+    }
+
+    /**
+     * A unit of work of the batch, usually one layer
+     */
+    public static abstract class BatchTask {
+        private final String name;
+
+        private Object output;
+
+        private Exception failure;
+
+        public BatchTask(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Processes the layer, called on a worker thread
+         *
+         * @param monitor the progress monitor of this task
+         * @return the output to be logged or null
+         * @throws Exception
+         */
+        protected abstract Object execute(IProgressMonitor monitor) throws Exception;
+
+        final Object run(IProgressMonitor monitor) throws Exception {
+            try {
+                return execute(monitor);
+            } catch (Exception e) {
+                failure = e;
+                throw e;
+            }
+        }
+    }
+
+    static final class MonitoredFeatureCollection extends GXTSimpleFeatureCollection {
+        private final IProgressMonitor monitor;
+
+        MonitoredFeatureCollection(SimpleFeatureCollection delegate, IProgressMonitor monitor) {
+            super(delegate);
+            this.monitor = monitor;
+        }
+
+        @Override
+        public SimpleFeatureIterator features() {
+            return new MonitoredFeatureIterator(delegate.features(), SubMonitor.convert(monitor,
+                    Math.max(1, delegate.size())));
+        }
+    }
+
+    static final class MonitoredFeatureIterator implements SimpleFeatureIterator {
+        private final SimpleFeatureIterator delegate;
+
+        private final IProgressMonitor monitor;
+
+        MonitoredFeatureIterator(SimpleFeatureIterator delegate, IProgressMonitor monitor) {
+            this.delegate = delegate;
+            this.monitor = monitor;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !monitor.isCanceled() && delegate.hasNext();
+        }
+
+        @Override
+        public SimpleFeature next() throws NoSuchElementException {
+            monitor.worked(1);
+            return delegate.next();
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+    }
+
+    /**
+     * Maps the progress of a task to its share of the batch monitor
+     */
+    static final class TaskMonitor extends NullProgressMonitor {
+        private final IProgressMonitor parent;
+
+        private final AtomicBoolean canceled;
+
+        private double scale = 0;
+
+        private double accumulated = 0;
+
+        private int reported = 0;
+
+        TaskMonitor(IProgressMonitor parent, AtomicBoolean canceled) {
+            this.parent = parent;
+            this.canceled = canceled;
+        }
+
+        @Override
+        public void beginTask(String name, int totalWork) {
+            scale = totalWork > 0 ? (double) TASK_WORK / totalWork : 0;
+        }
+
+        @Override
+        public void internalWorked(double work) {
+            accumulated += work * scale;
+            report((int) Math.min(accumulated, TASK_WORK));
+        }
+
+        @Override
+        public void worked(int work) {
+            internalWorked(work);
+        }
+
+        @Override
+        public void done() {
+            report(TASK_WORK);
+        }
+
+        private void report(int work) {
+            if (work > reported) {
+                synchronized (parent) {
+                    parent.worked(work - reported);
+                }
+                reported = work;
+            }
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled.get();
+        }
+
+        @Override
+        public void setCanceled(boolean value) {
+            if (value) {
+                canceled.set(true);
+            }
+        }
+    }
+}
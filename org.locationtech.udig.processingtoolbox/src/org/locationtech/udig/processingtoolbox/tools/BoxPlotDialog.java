@@ -12,14 +12,12 @@ package org.locationtech.udig.processingtoolbox.tools;
 import java.awt.Font;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.swt.SWT;
@@ -44,11 +42,7 @@ import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.TableItem;
 import org.eclipse.ui.PlatformUI;
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.process.spatialstatistics.StatisticsFeaturesProcess;
-import org.geotools.process.spatialstatistics.operations.DataStatisticsOperation.DataStatisticsResult;
 import org.geotools.util.logging.Logging;
 import org.jfree.chart.ChartMouseEvent;
 import org.jfree.chart.ChartMouseListener;
@@ -64,19 +58,15 @@ import org.jfree.data.statistics.BoxAndWhiskerCategoryDataset;
 import org.jfree.data.statistics.DefaultBoxAndWhiskerCategoryDataset;
 import org.jfree.experimental.chart.swt.ChartComposite;
 import org.jfree.ui.RectangleInsets;
-import org.locationtech.udig.catalog.util.GeoToolsAdapters;
 import org.locationtech.udig.processingtoolbox.ToolboxPlugin;
 import org.locationtech.udig.processingtoolbox.internal.Messages;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils.VectorLayerType;
 import org.locationtech.udig.project.ILayer;
 import org.locationtech.udig.project.IMap;
-import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
-import org.opengis.filter.expression.Expression;
-import org.opengis.util.ProgressListener;
 
 /**
  * Box Plot(Box and Whisker) Dialog
@@ -106,8 +96,6 @@ public class BoxPlotDialog extends AbstractGeoProcessingDialog implements IRunna
 
     private CTabItem inputTab, plotTab, outputTab;
 
-    private XYMinMaxVisitor minMaxVisitor = new XYMinMaxVisitor();
-
     public BoxPlotDialog(Shell parentShell, IMap map) {
         super(parentShell, map);
 
@@ -258,7 +246,7 @@ public class BoxPlotDialog extends AbstractGeoProcessingDialog implements IRunna
         }
     }
 
-    private void updateChart(SimpleFeatureCollection features, String[] fields) {
+    private void updateChart(ColumnStatistics statistics) {
         // Setup Box plot
         int fontStyle = java.awt.Font.BOLD;
         FontData fontData = getShell().getDisplay().getSystemFont().getFontData()[0];
@@ -281,7 +269,7 @@ public class BoxPlotDialog extends AbstractGeoProcessingDialog implements IRunna
         renderer.setBaseToolTipGenerator(new BoxAndWhiskerToolTipGenerator());
 
         // Set the scatter data, renderer, and axis into plot
-        CategoryDataset dataset = getDataset(features, fields);
+        CategoryDataset dataset = getDataset(statistics);
         CategoryPlot plot = new CategoryPlot(dataset, xPlotAxis, yPlotAxis, renderer);
         plot.setOrientation(PlotOrientation.VERTICAL);
         plot.setBackgroundPaint(java.awt.Color.WHITE);
@@ -326,37 +314,16 @@ public class BoxPlotDialog extends AbstractGeoProcessingDialog implements IRunna
         chartComposite.forceRedraw();
     }
 
-    private BoxAndWhiskerCategoryDataset getDataset(SimpleFeatureCollection features,
-            String[] fields) {
-        minMaxVisitor.reset();
-
-        Expression[] expression = new Expression[fields.length];
-        Map<String, List<Double>> listMap = new TreeMap<String, List<Double>>();
-        for (int index = 0; index < expression.length; index++) {
-            expression[index] = ff.property(fields[index]);
-            listMap.put(fields[index], new ArrayList<Double>());
-        }
-
-        SimpleFeatureIterator featureIter = features.features();
-        try {
-            while (featureIter.hasNext()) {
-                SimpleFeature feature = featureIter.next();
-                for (int index = 0; index < expression.length; index++) {
-                    Double val = expression[index].evaluate(feature, Double.class);
-                    if (val == null || val.isNaN() || val.isInfinite()) {
-                        continue;
-                    }
-                    minMaxVisitor.visit(val, val);
-                    listMap.get(fields[index]).add(val);
-                }
-            }
-        } finally {
-            featureIter.close();
-        }
-
+    private BoxAndWhiskerCategoryDataset getDataset(ColumnStatistics statistics) {
         DefaultBoxAndWhiskerCategoryDataset dataset = new DefaultBoxAndWhiskerCategoryDataset();
-        for (int index = 0; index < fields.length; index++) {
-            dataset.add(listMap.get(fields[index]), "Series1", fields[index]); //$NON-NLS-1$
+        for (int index = 0; index < statistics.getColumnCount(); index++) {
+            AttributeColumnCache.Column column = statistics.getColumn(index);
+            BitSet valid = column.getValidity();
+            List<Double> values = new ArrayList<Double>(valid.cardinality());
+            for (int row = valid.nextSetBit(0); row >= 0; row = valid.nextSetBit(row + 1)) {
+                values.add(Double.valueOf(column.get(row)));
+            }
+            dataset.add(values, "Series1", column.getName()); //$NON-NLS-1$
         }
         return dataset;
     }
@@ -395,25 +362,25 @@ public class BoxPlotDialog extends AbstractGeoProcessingDialog implements IRunna
 
             monitor.worked(increment);
 
-            SimpleFeatureCollection features = MapUtils.getFeatures(inputLayer);
+            // statistics of a single pass over the columns
+            String[] fields = selectedFields.split(",");
+            ColumnStatistics statistics = ColumnStatistics.compute(AttributeColumnCache.getCache(
+                    inputLayer).getColumns(fields));
+
             if (chkStatistics.getSelection()) {
                 if (outputTab == null) {
                     createOutputTab(inputTab.getParent());
                 }
 
-                ProgressListener subMonitor = GeoToolsAdapters.progress(SubMonitor.convert(monitor,
-                        Messages.Task_Internal, 20));
+                String typeName = inputLayer.getSchema().getTypeName();
                 HtmlWriter writer = new HtmlWriter(inputLayer.getName());
-                DataStatisticsResult statistics = null;
-                statistics = StatisticsFeaturesProcess
-                        .process(features, selectedFields, subMonitor);
-                writer.writeDataStatistics(statistics);
+                writer.writeDataStatistics(statistics.getDataStatistics(typeName));
                 browser.setText(writer.getHTML());
             }
 
             monitor.subTask("Updating box plot...");
             // chartComposite.setLayer(inputLayer);
-            updateChart(features, selectedFields.split(","));
+            updateChart(statistics);
             plotTab.getParent().setSelection(plotTab);
             monitor.worked(increment);
         } catch (Exception e) {
@@ -10,8 +10,10 @@
 package org.locationtech.udig.processingtoolbox.tools;
 
 import java.awt.Font;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -20,7 +22,6 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.swt.SWT;
@@ -42,11 +43,7 @@ import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.PlatformUI;
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.process.spatialstatistics.StatisticsFeaturesProcess;
-import org.geotools.process.spatialstatistics.operations.DataStatisticsOperation.DataStatisticsResult;
 import org.geotools.util.logging.Logging;
 import org.jfree.chart.ChartMouseEvent;
 import org.jfree.chart.ChartMouseListener;
@@ -65,26 +62,25 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYBubbleRenderer;
 import org.jfree.chart.renderer.xy.XYItemRenderer;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
+import org.jfree.data.xy.XYDataset;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 import org.jfree.data.xy.XYZDataset;
 import org.jfree.experimental.chart.swt.ChartComposite;
 import org.jfree.ui.RectangleInsets;
 import org.jfree.ui.TextAnchor;
-import org.locationtech.udig.catalog.util.GeoToolsAdapters;
 import org.locationtech.udig.processingtoolbox.ToolboxPlugin;
+import org.locationtech.udig.processingtoolbox.ToolboxView;
 import org.locationtech.udig.processingtoolbox.internal.Messages;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils.FieldType;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils.VectorLayerType;
+import org.locationtech.udig.processingtoolbox.tools.DensityGrid.DensityDataset;
 import org.locationtech.udig.project.ILayer;
 import org.locationtech.udig.project.IMap;
-import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
-import org.opengis.filter.expression.Expression;
 import org.opengis.filter.identity.FeatureId;
-import org.opengis.util.ProgressListener;
 
 /**
  * Bubble Chart Dialog
@@ -250,7 +246,15 @@ public class BubbleChartDialog extends AbstractGeoProcessingDialog implements IR
             ChartEntity entity = event.getEntity();
             if (entity != null && (entity instanceof XYItemEntity)) {
                 XYItemEntity item = (XYItemEntity) entity;
-                if (item.getSeriesIndex() == 0) {
+                if (item.getDataset() instanceof DensityDataset) {
+                    DensityDataset dataSet = (DensityDataset) item.getDataset();
+                    Set<FeatureId> selected = new HashSet<FeatureId>();
+                    for (int row : dataSet.getRows(item.getItem())) {
+                        selected.add(ff.featureId(dataSet.getGrid().getFeatureID(row)));
+                    }
+                    map.select(ff.id(selected), inputLayer);
+                    ds.removeSeries(EMPTY);
+                } else if (item.getSeriesIndex() == 0) {
                     DefaultXYZDataset2 dataSet = (DefaultXYZDataset2) item.getDataset();
                     String featureID = dataSet.getFeatrureID(0, item.getItem());
                     Filter selectionFilter = ff.id(ff.featureId(featureID));
@@ -272,8 +276,8 @@ public class BubbleChartDialog extends AbstractGeoProcessingDialog implements IR
         }
     }
 
-    private void updateChart(SimpleFeatureCollection features, String xField, String yField,
-            String sizeField) {
+    private void updateChart(String xField, String yField, ColumnStatistics statistics)
+            throws IOException {
         // 1. Create a single plot containing both the scatter and line
         XYPlot plot = new XYPlot();
         plot.setOrientation(PlotOrientation.VERTICAL);
@@ -307,7 +311,12 @@ public class BubbleChartDialog extends AbstractGeoProcessingDialog implements IR
                 TextAnchor.CENTER));
 
         // Set the bubble chart data, renderer, and axis into plot
-        plot.setDataset(0, getBubbleChartData(features, xField, yField, sizeField));
+        XYZDataset dataset = getBubbleChartData(statistics);
+        if (dataset instanceof DensityDataset) {
+            plotRenderer = ((DensityDataset) dataset).getGrid().createRenderer(
+                    java.awt.Color.ORANGE);
+        }
+        plot.setDataset(0, dataset);
 
         xPlotAxis.setAutoRangeIncludesZero(false);
         xPlotAxis.setAutoRange(false);
@@ -411,12 +420,24 @@ public class BubbleChartDialog extends AbstractGeoProcessingDialog implements IR
         chartComposite.forceRedraw();
     }
 
-    private XYZDataset getBubbleChartData(SimpleFeatureCollection features, String xField,
-            String yField, String sizeField) {
+    private XYZDataset getBubbleChartData(ColumnStatistics statistics) throws IOException {
         DefaultXYZDataset2 xyzDataset = new DefaultXYZDataset2();
 
+        AttributeColumnCache.Column[] columns = new AttributeColumnCache.Column[] {
+                statistics.getColumn(0), statistics.getColumn(1), statistics.getColumn(2) };
+        String[] featureIDs = AttributeColumnCache.getCache(inputLayer).getFeatureIDs();
+
         // 1. prepare bubble size
-        minMaxVisitor.visit(features, xField, yField, sizeField);
+        minMaxVisitor.visit(statistics);
+
+        if (statistics.getCompleteCount() > ToolboxView.getChartDensityThreshold()) {
+            // the bubble size is not shown by the density grid
+            DensityGrid grid = new DensityGrid(featureIDs, columns[0], columns[1],
+                    statistics.getCompleteRows(), minMaxVisitor.getMinX(),
+                    minMaxVisitor.getMinY(), minMaxVisitor.getMaxX(), minMaxVisitor.getMaxY(),
+                    DensityGrid.DEFAULT_BINS);
+            return grid.createDataset(EMPTY);
+        }
 
         final double minVal = minMaxVisitor.getMinZ();
         final double maxVal = minMaxVisitor.getMaxZ();
@@ -424,51 +445,26 @@ public class BubbleChartDialog extends AbstractGeoProcessingDialog implements IR
         final double scale = Math.min(minMaxVisitor.getMaxX(), minMaxVisitor.getMaxY()) / 8d;
 
         // 2. calculate x, y, z values
-        final int featureCount = features.size();
+        final int[] rows = statistics.getCompleteRows();
+        final int featureCount = rows.length;
         double[] xAxis = new double[featureCount];
         double[] yAxis = new double[featureCount];
         double[] zAxis = new double[featureCount];
         String[] featureIDS = new String[featureCount];
 
-        Expression xExpression = ff.property(xField);
-        Expression yExpression = ff.property(yField);
-        Expression sizeExpression = ff.property(sizeField);
-
         int index = 0;
-        SimpleFeatureIterator featureIter = features.features();
-        try {
-            while (featureIter.hasNext()) {
-                SimpleFeature feature = featureIter.next();
-                featureIDS[index] = feature.getID();
-
-                Double xVal = xExpression.evaluate(feature, Double.class);
-                if (xVal == null || xVal.isNaN() || xVal.isInfinite()) {
-                    continue;
-                }
-
-                Double yVal = yExpression.evaluate(feature, Double.class);
-                if (yVal == null || yVal.isNaN() || yVal.isInfinite()) {
-                    continue;
-                }
-
-                Double sizeVal = sizeExpression.evaluate(feature, Double.class);
-                if (sizeVal == null || sizeVal.isNaN() || sizeVal.isInfinite()) {
-                    continue;
-                }
-
-                xAxis[index] = xVal;
-                yAxis[index] = yVal;
-
-                double transformed = 0;
-                if (diffVal != 0) {
-                    transformed = (sizeVal - minVal) / diffVal;
-                }
-
-                zAxis[index] = transformed * scale;
-                index++;
+        for (int row : rows) {
+            featureIDS[index] = featureIDs[row];
+            xAxis[index] = columns[0].get(row);
+            yAxis[index] = columns[1].get(row);
+
+            double transformed = 0;
+            if (diffVal != 0) {
+                transformed = (columns[2].get(row) - minVal) / diffVal;
             }
-        } finally {
-            featureIter.close();
+
+            zAxis[index] = transformed * scale;
+            index++;
         }
 
         xyzDataset.addSeries(EMPTY, new double[][] { xAxis, yAxis, zAxis });
@@ -513,27 +509,25 @@ public class BubbleChartDialog extends AbstractGeoProcessingDialog implements IR
             String xField = cboXField.getText();
             String yField = cboYField.getText();
             String sizeField = cboSize.getText();
-            SimpleFeatureCollection features = MapUtils.getFeatures(inputLayer);
 
-            String fields = xField + "," + yField + "," + sizeField;
+            // statistics and the chart data of a single pass over the columns
+            ColumnStatistics statistics = ColumnStatistics.compute(AttributeColumnCache.getCache(
+                    inputLayer).getColumns(xField, yField, sizeField));
 
             if (chkStatistics.getSelection()) {
                 if (outputTab == null) {
                     createOutputTab(inputTab.getParent());
                 }
 
-                ProgressListener subMonitor = GeoToolsAdapters.progress(SubMonitor.convert(monitor,
-                        Messages.Task_Internal, 20));
-                DataStatisticsResult statistics = StatisticsFeaturesProcess.process(features,
-                        fields, subMonitor);
+                String typeName = inputLayer.getSchema().getTypeName();
                 HtmlWriter writer = new HtmlWriter(inputLayer.getName());
-                writer.writeDataStatistics(statistics);
+                writer.writeDataStatistics(statistics.getDataStatistics(typeName));
                 browser.setText(writer.getHTML());
             }
 
             monitor.subTask("Updating bubble chart...");
             chartComposite.setLayer(inputLayer);
-            updateChart(features, xField, yField, sizeField);
+            updateChart(xField, yField, statistics);
             plotTab.getParent().setSelection(plotTab);
             monitor.worked(increment);
         } catch (Exception e) {
@@ -581,6 +575,12 @@ public class BubbleChartDialog extends AbstractGeoProcessingDialog implements IR
             }
 
             DefaultXYZDataset2 ds = (DefaultXYZDataset2) getChart().getXYPlot().getDataset(2);
+            XYDataset dataset = getChart().getXYPlot().getDataset(0);
+            if (dataset instanceof DensityDataset) {
+                zoomDensity(((DensityDataset) dataset).getGrid(), selection, ds);
+                return;
+            }
+
             List<XYZItem> itemList = new ArrayList<XYZItem>();
             try {
                 EntityCollection entities = this.getChartRenderingInfo().getEntityCollection();
@@ -633,6 +633,31 @@ public class BubbleChartDialog extends AbstractGeoProcessingDialog implements IR
             }
         }
 
+        // the brushed region is drawn as points of the size of a bin over the density grid
+        private void zoomDensity(DensityGrid grid, Rectangle selection, DefaultXYZDataset2 ds) {
+            BitSet rows = grid.getRows(this, selection);
+            int count = rows.cardinality();
+
+            ds.removeSeries(EMPTY);
+            if (count > 0 && count <= ToolboxView.getChartDensityThreshold()) {
+                double[] xAxis = new double[count];
+                double[] yAxis = new double[count];
+                double[] zAxis = new double[count];
+                String[] featureIDS = new String[count];
+                int i = 0;
+                for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                    xAxis[i] = grid.getX(row);
+                    yAxis[i] = grid.getY(row);
+                    zAxis[i] = grid.getBinHeight();
+                    featureIDS[i++] = grid.getFeatureID(row);
+                }
+                ds.addSeries(EMPTY, new double[][] { xAxis, yAxis, zAxis });
+                ds.addFeatrureIDS(EMPTY, featureIDS);
+            }
+            map.select(grid.createFilter(rows), layer);
+            this.forceRedraw();
+        }
+
         @Override
         public void restoreAutoBounds() {
             return;
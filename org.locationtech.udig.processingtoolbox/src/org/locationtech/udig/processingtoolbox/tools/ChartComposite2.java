@@ -9,6 +9,7 @@
  */
 package org.locationtech.udig.processingtoolbox.tools;
 
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -24,6 +25,7 @@ import org.jfree.data.xy.XYDataItem;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 import org.jfree.experimental.chart.swt.ChartComposite;
+import org.locationtech.udig.processingtoolbox.ToolboxView;
 import org.locationtech.udig.project.ILayer;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
@@ -44,6 +46,10 @@ class ChartComposite2 extends ChartComposite {
 
     private ILayer layer;
 
+    private DensityGrid index;
+
+    private BitSet selectedRows = new BitSet();
+
     public org.locationtech.udig.project.internal.Map getMap() {
         return map;
     }
@@ -60,6 +66,26 @@ class ChartComposite2 extends ChartComposite {
         this.layer = layer;
     }
 
+    public DensityGrid getIndex() {
+        return index;
+    }
+
+    /**
+     * Sets the brushing index of the points of the first dataset, the plotted items are tested
+     * one by one if there is no index
+     */
+    public void setIndex(DensityGrid index) {
+        this.index = index;
+        this.selectedRows = new BitSet();
+    }
+
+    /**
+     * Returns the rows of the index selected by the last rubber band selection
+     */
+    public BitSet getSelectedRows() {
+        return selectedRows;
+    }
+
     public ChartComposite2(Composite comp, int style, JFreeChart chart, boolean useBuffer) {
         super(comp, style, chart, useBuffer);
     }
@@ -70,12 +96,29 @@ class ChartComposite2 extends ChartComposite {
         if (map == null || layer == null) {
             return;
         }
-        Set<FeatureId> selected = new HashSet<FeatureId>();
+        Filter filter = Filter.EXCLUDE;
+        selectedRows = new BitSet();
         try {
             XYSeriesCollection ds = (XYSeriesCollection) getChart().getXYPlot().getDataset(2);
             XYSeries selectionSeries = ds.getSeries(0);
             selectionSeries.clear();
 
+            if (index != null) {
+                // range query of the index, too many brushed points are not drawn
+                selectedRows = index.getRows(this, selection);
+                if (selectedRows.cardinality() <= ToolboxView.getChartDensityThreshold()) {
+                    for (int row = selectedRows.nextSetBit(0); row >= 0; row = selectedRows
+                            .nextSetBit(row + 1)) {
+                        selectionSeries.add(new XYDataItem2(index.getFeatureID(row),
+                                index.getX(row), index.getY(row)), false);
+                    }
+                    selectionSeries.fireSeriesChanged();
+                }
+                filter = index.createFilter(selectedRows);
+                return;
+            }
+
+            Set<FeatureId> selected = new HashSet<FeatureId>();
             EntityCollection entities = this.getChartRenderingInfo().getEntityCollection();
             Iterator iter = entities.iterator();
             while (iter.hasNext()) {
@@ -94,19 +137,19 @@ class ChartComposite2 extends ChartComposite {
                         if (xyDataItem instanceof XYDataItem2) {
                             XYDataItem2 dataItem = (XYDataItem2) xyDataItem;
                             selectionSeries.add(dataItem);
-                            selected.add(ff.featureId(dataItem.getFeature().getID()));
+                            selected.add(ff.featureId(dataItem.getFeatureID()));
                         }
                     }
                 }
             }
+
+            if (selected.size() > 0) {
+                filter = ff.id(selected);
+            }
         } catch (Exception e) {
             // skip
         } finally {
-            if (selected.size() > 0) {
-                map.select(ff.id(selected), layer);
-            } else {
-                map.select(Filter.EXCLUDE, layer);
-            }
+            map.select(filter, layer);
             this.forceRedraw();
         }
     }
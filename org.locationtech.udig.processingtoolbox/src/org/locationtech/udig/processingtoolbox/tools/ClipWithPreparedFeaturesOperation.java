@@ -0,0 +1,272 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.AttributeTypeBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.process.spatialstatistics.operations.GeneralOperation;
+import org.geotools.process.spatialstatistics.storage.IFeatureInserter;
+import org.geotools.process.spatialstatistics.storage.NamePolicy;
+import org.geotools.process.spatialstatistics.transformation.ReprojectFeatureCollection;
+import org.geotools.referencing.CRS;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * Extracts input features that overlay the clip features using a shared {@link ClipIndex}.
+ * <p>
+ * Like ClipWithFeaturesOperation, every input feature is clipped by each overlapping clip feature.
+ * Features fully contained in a clip feature are written without computing the intersection.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class ClipWithPreparedFeaturesOperation extends GeneralOperation {
+    protected static final Logger LOGGER = Logging
+            .getLogger(ClipWithPreparedFeaturesOperation.class);
+
+    private final ClipIndex clipIndex;
+
+    private final String outputName;
+
+    public ClipWithPreparedFeaturesOperation(ClipIndex clipIndex, String outputName) {
+        this.clipIndex = clipIndex;
+        this.outputName = outputName;
+    }
+
+    /**
+     * Clips the input features
+     *
+     * @return the output features or null if canceled
+     */
+    public SimpleFeatureCollection execute(SimpleFeatureCollection inputFeatures,
+            IProgressMonitor monitor) throws IOException {
+        SimpleFeatureType inputSchema = inputFeatures.getSchema();
+        SimpleFeatureType featureType = buildTargetSchema(inputSchema, outputName,
+                NamePolicy.NORMAL);
+        Class<?> binding = featureType.getGeometryDescriptor().getType().getBinding();
+
+        STRtree index = clipIndex.getIndex(inputSchema.getCoordinateReferenceSystem());
+
+        boolean canceled = false;
+        IFeatureInserter featureWriter = getFeatureWriter(featureType);
+        SimpleFeatureIterator featureIter = inputFeatures.features();
+        try {
+            SubMonitor progress = SubMonitor.convert(monitor, inputFeatures.size());
+            while (featureIter.hasNext()) {
+                if (progress.isCanceled()) {
+                    canceled = true;
+                    break;
+                }
+                progress.worked(1);
+
+                SimpleFeature feature = featureIter.next();
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                if (geometry == null || geometry.isEmpty()) {
+                    continue;
+                }
+
+                for (Object item : index.query(geometry.getEnvelopeInternal())) {
+                    PreparedGeometry clip = (PreparedGeometry) item;
+
+                    Geometry clipped;
+                    if (clip.contains(geometry)) {
+                        clipped = geometry; // fast path
+                    } else if (clip.intersects(geometry)) {
+                        clipped = geometry.intersection(clip.getGeometry());
+                    } else {
+                        continue;
+                    }
+
+                    clipped = toTargetGeometry(clipped, binding);
+                    if (clipped == null) {
+                        continue;
+                    }
+
+                    SimpleFeature newFeature = featureWriter.buildFeature();
+                    featureWriter.copyAttributes(feature, newFeature, false);
+                    newFeature.setDefaultGeometry(clipped);
+                    featureWriter.write(newFeature);
+                }
+            }
+
+            if (canceled) {
+                featureWriter.rollback();
+            }
+        } catch (Exception e) {
+            featureWriter.rollback(e);
+        } finally {
+            featureWriter.close(featureIter);
+        }
+
+        return canceled ? null : featureWriter.getFeatureCollection();
+    }
+
+    static Geometry toTargetGeometry(Geometry clipped, Class<?> binding) {
+        if (clipped == null || clipped.isEmpty()) {
+            return null;
+        }
+
+        if (MultiLineString.class.equals(binding)) {
+            List<LineString> lines = new ArrayList<LineString>();
+            for (int index = 0; index < clipped.getNumGeometries(); index++) {
+                Geometry part = clipped.getGeometryN(index);
+                if (part instanceof LineString) {
+                    lines.add((LineString) part);
+                } else if (part instanceof MultiLineString) {
+                    for (int idx = 0; idx < part.getNumGeometries(); idx++) {
+                        lines.add((LineString) part.getGeometryN(idx));
+                    }
+                }
+            }
+            return lines.size() == 0 ? null : clipped.getFactory().createMultiLineString(
+                    lines.toArray(new LineString[lines.size()]));
+        } else if (MultiPolygon.class.equals(binding)) {
+            List<Polygon> polygons = new ArrayList<Polygon>();
+            for (int index = 0; index < clipped.getNumGeometries(); index++) {
+                Geometry part = clipped.getGeometryN(index);
+                if (part instanceof Polygon) {
+                    polygons.add((Polygon) part);
+                } else if (part instanceof MultiPolygon) {
+                    for (int idx = 0; idx < part.getNumGeometries(); idx++) {
+                        polygons.add((Polygon) part.getGeometryN(idx));
+                    }
+                }
+            }
+            return polygons.size() == 0 ? null : clipped.getFactory().createMultiPolygon(
+                    polygons.toArray(new Polygon[polygons.size()]));
+        }
+        return clipped;
+    }
+
+    static SimpleFeatureType buildTargetSchema(SimpleFeatureType schema, String outputName,
+            NamePolicy namePolicy) {
+        SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+        AttributeTypeBuilder attBuilder = new AttributeTypeBuilder();
+        for (AttributeDescriptor descriptor : schema.getAttributeDescriptors()) {
+            String name = OperationOutputs.applyPolicy(descriptor.getLocalName(), namePolicy);
+            if (descriptor instanceof GeometryDescriptor) {
+                GeometryDescriptor geomDesc = (GeometryDescriptor) descriptor;
+                Class<?> binding = geomDesc.getType().getBinding();
+                if (Point.class.isAssignableFrom(binding)
+                        || MultiPoint.class.isAssignableFrom(binding)) {
+                    builder.add(rename(attBuilder, descriptor, name));
+                    continue;
+                } else if (LineString.class.isAssignableFrom(binding)
+                        || MultiLineString.class.isAssignableFrom(binding)) {
+                    binding = MultiLineString.class;
+                } else if (Polygon.class.isAssignableFrom(binding)
+                        || MultiPolygon.class.isAssignableFrom(binding)) {
+                    binding = MultiPolygon.class;
+                }
+                builder.minOccurs(descriptor.getMinOccurs());
+                builder.maxOccurs(descriptor.getMaxOccurs());
+                builder.nillable(descriptor.isNillable());
+                builder.add(name, binding, geomDesc.getCoordinateReferenceSystem());
+            } else {
+                builder.add(rename(attBuilder, descriptor, name));
+            }
+        }
+        builder.setName(OperationOutputs.applyPolicy(outputName, namePolicy));
+        return builder.buildFeatureType();
+    }
+
+    private static AttributeDescriptor rename(AttributeTypeBuilder attBuilder,
+            AttributeDescriptor descriptor, String name) {
+        if (name.equals(descriptor.getLocalName())) {
+            return descriptor;
+        }
+        attBuilder.init(descriptor);
+        return attBuilder.buildDescriptor(name, descriptor.getType());
+    }
+
+    /**
+     * STRtree of prepared clip geometries, built once per coordinate reference system and shared
+     * by all layers of a batch.
+     */
+    public static final class ClipIndex {
+        private final SimpleFeatureCollection clipFeatures;
+
+        private final List<CoordinateReferenceSystem> crsList;
+
+        private final List<STRtree> indexes;
+
+        public ClipIndex(SimpleFeatureCollection clipFeatures) {
+            this.clipFeatures = clipFeatures;
+            this.crsList = new ArrayList<CoordinateReferenceSystem>();
+            this.indexes = new ArrayList<STRtree>();
+        }
+
+        /**
+         * Returns the index of the clip geometries in the given coordinate reference system. The
+         * returned index is built and can be queried concurrently.
+         */
+        public synchronized STRtree getIndex(CoordinateReferenceSystem targetCRS) {
+            for (int index = 0; index < crsList.size(); index++) {
+                if (CRS.equalsIgnoreMetadata(crsList.get(index), targetCRS)) {
+                    return indexes.get(index);
+                }
+            }
+
+            SimpleFeatureCollection features = clipFeatures;
+            CoordinateReferenceSystem sourceCRS = features.getSchema()
+                    .getCoordinateReferenceSystem();
+            if (targetCRS != null && sourceCRS != null
+                    && !CRS.equalsIgnoreMetadata(sourceCRS, targetCRS)) {
+                features = new ReprojectFeatureCollection(features, targetCRS);
+            }
+
+            STRtree spatialIndex = new STRtree();
+            SimpleFeatureIterator featureIter = features.features();
+            try {
+                while (featureIter.hasNext()) {
+                    Geometry geometry = (Geometry) featureIter.next().getDefaultGeometry();
+                    if (geometry == null || geometry.isEmpty()) {
+                        continue;
+                    }
+                    PreparedGeometry prepared = PreparedGeometryFactory.prepare(geometry);
+                    spatialIndex.insert(geometry.getEnvelopeInternal(), prepared);
+                }
+            } finally {
+                featureIter.close();
+            }
+            spatialIndex.build();
+
+            crsList.add(targetCRS);
+            indexes.add(spatialIndex);
+            return spatialIndex;
+        }
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import org.geotools.process.spatialstatistics.operations.DataStatisticsOperation.DataStatisticsResult;
+import org.geotools.process.spatialstatistics.operations.DataStatisticsOperation.DataStatisticsResult.DataStatisticsItem;
+import org.geotools.process.spatialstatistics.operations.PearsonOperation.PearsonResult;
+import org.geotools.process.spatialstatistics.operations.PearsonOperation.PearsonResult.PropertyName;
+import org.geotools.process.spatialstatistics.operations.PearsonOperation.PearsonResult.PropertyName.PearsonItem;
+import org.geotools.util.logging.Logging;
+import org.locationtech.udig.processingtoolbox.tools.AttributeColumnCache.Column;
+
+/**
+ * Summary statistics, Pearson co-moments and the rows of the chart series of cached columns,
+ * computed in one pass.
+ * <p>
+ * The rows are split into blocks that are accumulated concurrently, the accumulators of the blocks
+ * are merged in row order. Means and (co-)variances use Welford's updates and Chan's merge, so
+ * the results do not depend on the number of blocks. The statistics match
+ * StatisticsFeaturesProcess and PearsonCorrelationProcess: population variance, and correlations
+ * of the rows where both fields are valid.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+final class ColumnStatistics {
+    protected static final Logger LOGGER = Logging.getLogger(ColumnStatistics.class);
+
+    static final int BLOCK_SIZE = 65536;
+
+    private final Column[] columns;
+
+    private final Accumulator result;
+
+    private ColumnStatistics(Column[] columns, Accumulator result) {
+        this.columns = columns;
+        this.result = result;
+    }
+
+    /**
+     * Accumulates the columns, the columns must have the same number of rows
+     */
+    public static ColumnStatistics compute(final Column... columns) {
+        final int rows = columns.length == 0 ? 0 : columns[0].size();
+        final int blocks = Math.max(1, (rows + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        if (blocks == 1) {
+            return new ColumnStatistics(columns, new Accumulator(columns, 0, rows));
+        }
+
+        int threads = Math.min(blocks, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Accumulator>> futures = new ArrayList<Future<Accumulator>>(blocks);
+            for (int block = 0; block < blocks; block++) {
+                final int from = block * BLOCK_SIZE;
+                final int to = Math.min(rows, from + BLOCK_SIZE);
+                futures.add(executor.submit(new Callable<Accumulator>() {
+                    @Override
+                    public Accumulator call() {
+                        return new Accumulator(columns, from, to);
+                    }
+                }));
+            }
+
+            Accumulator merged = futures.get(0).get();
+            for (int block = 1; block < blocks; block++) {
+                merged.merge(futures.get(block).get());
+            }
+            return new ColumnStatistics(columns, merged);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public Column getColumn(int index) {
+        return columns[index];
+    }
+
+    public int getCompleteCount() {
+        return result.completeCount;
+    }
+
+    /**
+     * Returns the minimum of a column in the rows where all columns are valid
+     */
+    public double getCompleteMinimum(int column) {
+        return result.completeMin[column];
+    }
+
+    /**
+     * Returns the maximum of a column in the rows where all columns are valid
+     */
+    public double getCompleteMaximum(int column) {
+        return result.completeMax[column];
+    }
+
+    /**
+     * Returns the sum of a column in the rows where all columns are valid
+     */
+    public double getCompleteSum(int column) {
+        return result.completeSum[column];
+    }
+
+    /**
+     * Returns the rows where all columns are valid, in ascending order
+     */
+    public int[] getCompleteRows() {
+        return Arrays.copyOf(result.completeRows, result.completeCount);
+    }
+
+    public long getCount(int column) {
+        return result.count[column];
+    }
+
+    public double getMinimum(int column) {
+        return result.min[column];
+    }
+
+    public double getMaximum(int column) {
+        return result.max[column];
+    }
+
+    public double getMean(int column) {
+        return result.mean[column];
+    }
+
+    public double getVariance(int column) {
+        return result.count[column] == 0 ? 0d : result.m2[column] / result.count[column];
+    }
+
+    /**
+     * Returns the Pearson correlation coefficient of two columns
+     */
+    public double getCorrelation(int column1, int column2) {
+        if (column1 == column2) {
+            return 1d;
+        }
+
+        int pair = result.pairIndex(Math.min(column1, column2), Math.max(column1, column2));
+        double denominator = Math.sqrt(result.pairM2X[pair] * result.pairM2Y[pair]);
+        return denominator == 0 ? 0d : result.pairC[pair] / denominator;
+    }
+
+    /**
+     * Returns the summary statistics of the columns
+     */
+    public DataStatisticsResult getDataStatistics(String typeName) {
+        DataStatisticsResult statistics = new DataStatisticsResult();
+        for (int index = 0; index < columns.length; index++) {
+            DataStatisticsItem item = new DataStatisticsItem(typeName, columns[index].getName());
+            int count = (int) result.count[index];
+            double min = count == 0 ? Double.MAX_VALUE : result.min[index];
+            double max = count == 0 ? Double.MIN_VALUE : result.max[index];
+            double mean = count == 0 ? 0d : result.mean[index];
+            double variance = getVariance(index);
+
+            item.setCount(Integer.valueOf(count));
+            item.setInvalidCount(columns[index].size() - count);
+            item.setSum(Double.valueOf(result.sum[index]));
+            item.setMinimum(Double.valueOf(min));
+            item.setMaximum(Double.valueOf(max));
+            item.setMean(Double.valueOf(mean));
+            item.setVariance(Double.valueOf(variance));
+            item.setStandardDeviation(Double.valueOf(Math.sqrt(variance)));
+            item.setCoefficientOfVariance(Double.valueOf(count == 0 ? 0d : Math.sqrt(variance)
+                    / mean));
+            item.setRange(Double.valueOf(max - min));
+            item.setRanges(min + " - " + max); //$NON-NLS-1$
+            statistics.add(item);
+        }
+        return statistics;
+    }
+
+    /**
+     * Returns the Pearson correlation coefficients of the columns
+     */
+    public PearsonResult getPearson() {
+        PearsonResult pearson = new PearsonResult();
+        for (int row = 0; row < columns.length; row++) {
+            PropertyName propertyName = new PropertyName(columns[row].getName());
+            for (int col = 0; col < columns.length; col++) {
+                PearsonItem item = new PearsonItem(columns[col].getName());
+                if (row != col) {
+                    item.setValue(Double.valueOf(getCorrelation(row, col)));
+                }
+                propertyName.getItems().add(item);
+            }
+            pearson.getProeprtyNames().add(propertyName);
+        }
+        return pearson;
+    }
+
+    /**
+     * Mergeable accumulator of a block of rows
+     */
+    static final class Accumulator {
+        private final int size;
+
+        private final long[] count;
+
+        private final double[] min, max, sum, mean, m2;
+
+        // co-moments of the rows where both columns of a pair are valid
+        private final long[] pairCount;
+
+        private final double[] pairMeanX, pairMeanY, pairM2X, pairM2Y, pairC;
+
+        // extents of the rows where all columns are valid, for the chart axes
+        private final double[] completeMin, completeMax, completeSum;
+
+        private int[] completeRows;
+
+        private int completeCount;
+
+        Accumulator(Column[] columns, int from, int to) {
+            size = columns.length;
+            count = new long[size];
+            min = new double[size];
+            max = new double[size];
+            sum = new double[size];
+            mean = new double[size];
+            m2 = new double[size];
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+
+            int pairs = size * (size - 1) / 2;
+            pairCount = new long[pairs];
+            pairMeanX = new double[pairs];
+            pairMeanY = new double[pairs];
+            pairM2X = new double[pairs];
+            pairM2Y = new double[pairs];
+            pairC = new double[pairs];
+
+            completeMin = new double[size];
+            completeMax = new double[size];
+            completeSum = new double[size];
+            Arrays.fill(completeMin, Double.POSITIVE_INFINITY);
+            Arrays.fill(completeMax, Double.NEGATIVE_INFINITY);
+            completeRows = new int[Math.max(16, to - from)];
+
+            boolean[] valid = new boolean[size];
+            double[] values = new double[size];
+            for (int row = from; row < to; row++) {
+                boolean complete = size > 0;
+                for (int index = 0; index < size; index++) {
+                    valid[index] = columns[index].isValid(row);
+                    if (valid[index]) {
+                        values[index] = columns[index].get(row);
+                        add(index, values[index]);
+                    } else {
+                        complete = false;
+                    }
+                }
+
+                int pair = 0;
+                for (int i = 0; i < size; i++) {
+                    for (int j = i + 1; j < size; j++, pair++) {
+                        if (valid[i] && valid[j]) {
+                            addPair(pair, values[i], values[j]);
+                        }
+                    }
+                }
+
+                if (complete) {
+                    completeRows[completeCount++] = row;
+                    for (int index = 0; index < size; index++) {
+                        completeMin[index] = Math.min(completeMin[index], values[index]);
+                        completeMax[index] = Math.max(completeMax[index], values[index]);
+                        completeSum[index] += values[index];
+                    }
+                }
+            }
+        }
+
+        int pairIndex(int i, int j) {
+            // pairs are numbered row by row of the upper triangle
+            return i * size - i * (i + 1) / 2 + (j - i - 1);
+        }
+
+        private void add(int index, double value) {
+            count[index]++;
+            min[index] = Math.min(min[index], value);
+            max[index] = Math.max(max[index], value);
+            sum[index] += value;
+
+            double delta = value - mean[index];
+            mean[index] += delta / count[index];
+            m2[index] += delta * (value - mean[index]);
+        }
+
+        private void addPair(int pair, double x, double y) {
+            long n = ++pairCount[pair];
+            double dx = x - pairMeanX[pair];
+            pairMeanX[pair] += dx / n;
+            double dy = y - pairMeanY[pair];
+            pairMeanY[pair] += dy / n;
+
+            pairM2X[pair] += dx * (x - pairMeanX[pair]);
+            pairM2Y[pair] += dy * (y - pairMeanY[pair]);
+            pairC[pair] += dx * (y - pairMeanY[pair]);
+        }
+
+        /**
+         * Merges the accumulator of the following block
+         */
+        void merge(Accumulator other) {
+            for (int index = 0; index < size; index++) {
+                long na = count[index];
+                long nb = other.count[index];
+                if (nb == 0) {
+                    continue;
+                }
+
+                long n = na + nb;
+                double delta = other.mean[index] - mean[index];
+                mean[index] += delta * nb / n;
+                m2[index] += other.m2[index] + delta * delta * na * nb / n;
+                count[index] = n;
+                sum[index] += other.sum[index];
+                min[index] = Math.min(min[index], other.min[index]);
+                max[index] = Math.max(max[index], other.max[index]);
+            }
+
+            for (int pair = 0; pair < pairCount.length; pair++) {
+                long na = pairCount[pair];
+                long nb = other.pairCount[pair];
+                if (nb == 0) {
+                    continue;
+                }
+
+                long n = na + nb;
+                double dx = other.pairMeanX[pair] - pairMeanX[pair];
+                double dy = other.pairMeanY[pair] - pairMeanY[pair];
+                double factor = (double) na * nb / n;
+                pairMeanX[pair] += dx * nb / n;
+                pairMeanY[pair] += dy * nb / n;
+                pairM2X[pair] += other.pairM2X[pair] + dx * dx * factor;
+                pairM2Y[pair] += other.pairM2Y[pair] + dy * dy * factor;
+                pairC[pair] += other.pairC[pair] + dx * dy * factor;
+                pairCount[pair] = n;
+            }
+
+            for (int index = 0; index < size; index++) {
+                completeMin[index] = Math.min(completeMin[index], other.completeMin[index]);
+                completeMax[index] = Math.max(completeMax[index], other.completeMax[index]);
+                completeSum[index] += other.completeSum[index];
+            }
+
+            int required = completeCount + other.completeCount;
+            if (required > completeRows.length) {
+                completeRows = Arrays.copyOf(completeRows,
+                        Math.max(required, completeRows.length * 2));
+            }
+            System.arraycopy(other.completeRows, 0, completeRows, completeCount,
+                    other.completeCount);
+            completeCount += other.completeCount;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools;
+
+import java.awt.Color;
+import java.awt.Paint;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.util.logging.Logging;
+import org.jfree.chart.labels.StandardXYZToolTipGenerator;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.PaintScale;
+import org.jfree.chart.renderer.xy.XYBlockRenderer;
+import org.jfree.experimental.chart.swt.ChartComposite;
+import org.jfree.data.xy.DefaultXYZDataset;
+import org.jfree.ui.RectangleAnchor;
+import org.locationtech.udig.processingtoolbox.tools.AttributeColumnCache.Column;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.identity.FeatureId;
+
+/**
+ * Square density grid of the points of a chart, used instead of the points when a chart has more
+ * than {@link org.locationtech.udig.processingtoolbox.ToolboxView#getChartDensityThreshold()}
+ * points.
+ * <p>
+ * The points are counted into the bins in one pass and sorted by bin in a second one, the rows of
+ * a bin are a range of a single int[] index. The non-empty bins are rendered as blocks shaded by
+ * their count, the brushed region is queried from the bins and drawn as exact points. The grid is
+ * also the brushing index of the charts drawing every point, a rubber band selection is a range
+ * query returning the selected rows as a bitset.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+final class DensityGrid {
+    protected static final Logger LOGGER = Logging.getLogger(DensityGrid.class);
+
+    static final int DEFAULT_BINS = 100;
+
+    private static final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    private final String[] featureIDs;
+
+    private final Column xColumn, yColumn;
+
+    private final int columns, rows;
+
+    private final double minX, minY, binWidth, binHeight;
+
+    // rows of bin i are binRows[binPointers[i]] .. binRows[binPointers[i + 1] - 1]
+    private final int[] binPointers;
+
+    private final int[] binRows;
+
+    private int maxCount;
+
+    /**
+     * Bins the rows of the columns within the extent
+     *
+     * @param featureIDs the feature ids of the cached columns
+     * @param dataRows the rows to bin, the values of both columns must be valid
+     */
+    public DensityGrid(String[] featureIDs, Column xColumn, Column yColumn, int[] dataRows,
+            double minX, double minY, double maxX, double maxY, int bins) {
+        this.featureIDs = featureIDs;
+        this.xColumn = xColumn;
+        this.yColumn = yColumn;
+        this.columns = bins;
+        this.rows = bins;
+        this.minX = minX;
+        this.minY = minY;
+        this.binWidth = maxX > minX ? (maxX - minX) / bins : 1d;
+        this.binHeight = maxY > minY ? (maxY - minY) / bins : 1d;
+
+        // counting sort of the rows by bin
+        binPointers = new int[columns * rows + 1];
+        for (int row : dataRows) {
+            binPointers[getBin(xColumn.get(row), yColumn.get(row)) + 1]++;
+        }
+        for (int bin = 0; bin < columns * rows; bin++) {
+            maxCount = Math.max(maxCount, binPointers[bin + 1]);
+            binPointers[bin + 1] += binPointers[bin];
+        }
+
+        binRows = new int[dataRows.length];
+        int[] next = Arrays.copyOf(binPointers, columns * rows);
+        for (int row : dataRows) {
+            binRows[next[getBin(xColumn.get(row), yColumn.get(row))]++] = row;
+        }
+    }
+
+    private int getColumn(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) ((x - minX) / binWidth)));
+    }
+
+    private int getRow(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / binHeight)));
+    }
+
+    private int getBin(double x, double y) {
+        return getRow(y) * columns + getColumn(x);
+    }
+
+    public double getBinWidth() {
+        return binWidth;
+    }
+
+    public double getBinHeight() {
+        return binHeight;
+    }
+
+    public String getFeatureID(int row) {
+        return featureIDs[row];
+    }
+
+    public double getX(int row) {
+        return xColumn.get(row);
+    }
+
+    public double getY(int row) {
+        return yColumn.get(row);
+    }
+
+    /**
+     * Returns the rows of a bin
+     */
+    public int[] getRows(int bin) {
+        return Arrays.copyOfRange(binRows, binPointers[bin], binPointers[bin + 1]);
+    }
+
+    /**
+     * Returns the rows within the range, only the bins intersecting the range are visited
+     */
+    public BitSet getRows(double x1, double y1, double x2, double y2) {
+        BitSet result = new BitSet(featureIDs.length);
+        for (int row = getRow(y1); row <= getRow(y2); row++) {
+            for (int column = getColumn(x1); column <= getColumn(x2); column++) {
+                int bin = row * columns + column;
+                double left = minX + column * binWidth;
+                double bottom = minY + row * binHeight;
+                boolean contains = left >= x1 && left + binWidth <= x2 && bottom >= y1
+                        && bottom + binHeight <= y2;
+                for (int index = binPointers[bin]; index < binPointers[bin + 1]; index++) {
+                    int dataRow = binRows[index];
+                    if (!contains) {
+                        double x = xColumn.get(dataRow);
+                        double y = yColumn.get(dataRow);
+                        if (x < x1 || x > x2 || y < y1 || y > y2) {
+                            continue;
+                        }
+                    }
+                    result.set(dataRow);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the rows within a selection rectangle of the chart composite, the range is computed
+     * from the first domain and range axis of the plot
+     */
+    public BitSet getRows(ChartComposite chartComposite, Rectangle selection) {
+        XYPlot plot = chartComposite.getChart().getXYPlot();
+        Rectangle2D dataArea = chartComposite.getChartRenderingInfo().getPlotInfo().getDataArea();
+        Point2D p1 = chartComposite.translateScreenToJava2D(new Point(selection.x, selection.y));
+        Point2D p2 = chartComposite.translateScreenToJava2D(new Point(selection.x
+                + selection.width, selection.y + selection.height));
+
+        double x1 = plot.getDomainAxis().java2DToValue(p1.getX(), dataArea,
+                plot.getDomainAxisEdge());
+        double x2 = plot.getDomainAxis().java2DToValue(p2.getX(), dataArea,
+                plot.getDomainAxisEdge());
+        double y1 = plot.getRangeAxis().java2DToValue(p1.getY(), dataArea,
+                plot.getRangeAxisEdge());
+        double y2 = plot.getRangeAxis().java2DToValue(p2.getY(), dataArea,
+                plot.getRangeAxisEdge());
+
+        return getRows(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2));
+    }
+
+    /**
+     * Returns the id filter of the features of the rows
+     */
+    public Filter createFilter(BitSet dataRows) {
+        Set<FeatureId> fids = new HashSet<FeatureId>(dataRows.cardinality() * 4 / 3 + 1);
+        for (int row = dataRows.nextSetBit(0); row >= 0; row = dataRows.nextSetBit(row + 1)) {
+            fids.add(ff.featureId(featureIDs[row]));
+        }
+        return fids.isEmpty() ? Filter.EXCLUDE : ff.id(fids);
+    }
+
+    /**
+     * Returns the non-empty bins as an XYZ dataset of the bin centers and counts
+     */
+    @SuppressWarnings("rawtypes")
+    public DensityDataset createDataset(Comparable seriesKey) {
+        int itemCount = 0;
+        for (int bin = 0; bin < columns * rows; bin++) {
+            if (binPointers[bin + 1] > binPointers[bin]) {
+                itemCount++;
+            }
+        }
+
+        double[] xAxis = new double[itemCount];
+        double[] yAxis = new double[itemCount];
+        double[] zAxis = new double[itemCount];
+        int[] itemBins = new int[itemCount];
+        int item = 0;
+        for (int bin = 0; bin < columns * rows; bin++) {
+            int count = binPointers[bin + 1] - binPointers[bin];
+            if (count > 0) {
+                xAxis[item] = minX + (bin % columns + 0.5) * binWidth;
+                yAxis[item] = minY + (bin / columns + 0.5) * binHeight;
+                zAxis[item] = count;
+                itemBins[item++] = bin;
+            }
+        }
+
+        DensityDataset dataset = new DensityDataset(this, itemBins);
+        dataset.addSeries(seriesKey, new double[][] { xAxis, yAxis, zAxis });
+        return dataset;
+    }
+
+    /**
+     * Returns a renderer drawing the bins as blocks shaded by their count
+     */
+    public XYBlockRenderer createRenderer(Color color) {
+        XYBlockRenderer renderer = new XYBlockRenderer();
+        renderer.setBlockWidth(binWidth);
+        renderer.setBlockHeight(binHeight);
+        renderer.setBlockAnchor(RectangleAnchor.CENTER);
+        renderer.setPaintScale(new DensityPaintScale(color, maxCount));
+        renderer.setBaseToolTipGenerator(new StandardXYZToolTipGenerator());
+        return renderer;
+    }
+
+    /**
+     * The bins of a density grid, the item of a bin is used to get its rows
+     */
+    static final class DensityDataset extends DefaultXYZDataset {
+        private static final long serialVersionUID = -4906813270212553461L;
+
+        private final transient DensityGrid grid;
+
+        private final int[] itemBins;
+
+        DensityDataset(DensityGrid grid, int[] itemBins) {
+            this.grid = grid;
+            this.itemBins = itemBins;
+        }
+
+        public DensityGrid getGrid() {
+            return grid;
+        }
+
+        /**
+         * Returns the rows of the bin of an item
+         */
+        public int[] getRows(int item) {
+            return grid.getRows(itemBins[item]);
+        }
+    }
+
+    /**
+     * Shades a color by the logarithm of the count
+     */
+    static final class DensityPaintScale implements PaintScale, Serializable {
+        private static final long serialVersionUID = 6404470237361716683L;
+
+        private final Color color;
+
+        private final double upperBound;
+
+        DensityPaintScale(Color color, int maxCount) {
+            this.color = color;
+            this.upperBound = Math.max(1, maxCount);
+        }
+
+        @Override
+        public double getLowerBound() {
+            return 0;
+        }
+
+        @Override
+        public double getUpperBound() {
+            return upperBound;
+        }
+
+        @Override
+        public Paint getPaint(double value) {
+            double ratio = Math.log1p(Math.max(0, Math.min(value, upperBound)))
+                    / Math.log1p(upperBound);
+            int alpha = 40 + (int) (215 * ratio);
+            return new Color(color.getRed(), color.getGreen(), color.getBlue(), alpha);
+        }
+    }
+}
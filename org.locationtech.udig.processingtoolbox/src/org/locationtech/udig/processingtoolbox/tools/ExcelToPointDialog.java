@@ -53,6 +53,7 @@ import org.locationtech.udig.processingtoolbox.internal.ui.OutputDataWidget.File
 import org.locationtech.udig.processingtoolbox.tools.excel.ExcelFormatReader;
 import org.locationtech.udig.processingtoolbox.tools.excel.ExcelFormatReader.ExcelSheetInfo;
 import org.locationtech.udig.processingtoolbox.tools.excel.ExcelToPointOperaion;
+import org.locationtech.udig.processingtoolbox.tools.excel.StreamingSheetReader;
 import org.locationtech.udig.project.IMap;
 import org.locationtech.udig.ui.CRSChooserDialog;
 import org.opengis.referencing.FactoryException;
@@ -353,9 +354,19 @@ public class ExcelToPointDialog extends AbstractGeoProcessingDialog implements
             exportOp.setOutputDataStore(locationView.getDataStore());
             exportOp.setOutputTypeName(outputName);
 
-            SimpleFeatureCollection features = exportOp.execute(
-                    process.execute(formatReader.getWorkbook(), sheetName, schema, headerFirst,
-                            sourceCRS, targetCRS)).getFeatures();
+            SimpleFeatureCollection features;
+            File excelFile = new File(cboSource.getText());
+            if (StreamingSheetReader.isSupported(excelFile)) {
+                // .xlsx rows are streamed into the output data store
+                process.setOutputDataStore(locationView.getDataStore());
+                process.setOutputTypeName(outputName);
+                features = process.executeStreaming(excelFile, sheetName, schema, headerFirst,
+                        sourceCRS, targetCRS);
+            } else {
+                features = exportOp.execute(
+                        process.execute(formatReader.getWorkbook(), sheetName, schema,
+                                headerFirst, sourceCRS, targetCRS)).getFeatures();
+            }
 
             error = process.getError();
             monitor.worked(increment);
@@ -20,7 +20,6 @@ import javax.xml.transform.TransformerException;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.dialogs.MessageDialog;
-import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
@@ -47,6 +46,7 @@ import org.locationtech.udig.processingtoolbox.internal.Messages;
 import org.locationtech.udig.processingtoolbox.internal.ui.OutputDataWidget;
 import org.locationtech.udig.processingtoolbox.internal.ui.OutputDataWidget.FileDataType;
 import org.locationtech.udig.processingtoolbox.internal.ui.TableSelectionWidget;
+import org.locationtech.udig.processingtoolbox.tools.BatchScheduler.BatchTask;
 import org.locationtech.udig.project.ILayer;
 import org.locationtech.udig.project.IMap;
 import org.locationtech.udig.style.sld.SLDContent;
@@ -57,7 +57,7 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
  * 
  * @author MapPlus
  */
-public class ExportStyleDialog extends AbstractGeoProcessingDialog implements IRunnableWithProgress {
+public class ExportStyleDialog extends AbstractGeoProcessingDialog {
     protected static final Logger LOGGER = Logging.getLogger(ExportStyleDialog.class);
 
     private Table inputTable;
@@ -138,8 +138,46 @@ public class ExportStyleDialog extends AbstractGeoProcessingDialog implements IR
             return;
         }
 
+        final String outputFolder = locationView.getFolder();
+        final boolean overwriter = chkOverwrite.getSelection();
+        final String ext = ".sld"; //$NON-NLS-1$
+
+        // styles are read on the UI thread, only the files are written by the workers
+        BatchScheduler scheduler = new BatchScheduler(windowTitle);
+        for (TableItem item : inputTable.getItems()) {
+            if (!item.getChecked()) {
+                continue;
+            }
+
+            final ILayer layer = (ILayer) item.getData();
+            final File sldFile = new File(outputFolder, layer.getName() + ext);
+            if (sldFile.exists()) {
+                if (overwriter) {
+                    sldFile.delete();
+                } else {
+                    continue;
+                }
+            }
+
+            final Style style = (Style) layer.getStyleBlackboard().get(SLDContent.ID);
+            scheduler.add(new BatchTask(layer.getName()) {
+                @Override
+                protected Object execute(IProgressMonitor monitor) throws Exception {
+                    // a style is written in one step, only a canceled batch skips it
+                    if (!monitor.isCanceled()) {
+                        saveToSldFile(getName(), style, sldFile);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        if (scheduler.isEmpty()) {
+            return;
+        }
+
         try {
-            PlatformUI.getWorkbench().getProgressService().run(false, true, this);
+            PlatformUI.getWorkbench().getProgressService().run(true, true, scheduler);
             openInformation(getShell(), Messages.General_Completed);
             super.okPressed();
         } catch (InvocationTargetException e) {
@@ -149,45 +187,6 @@ public class ExportStyleDialog extends AbstractGeoProcessingDialog implements IR
         }
     }
 
-    @Override
-    public void run(IProgressMonitor monitor) throws InvocationTargetException,
-            InterruptedException {
-        monitor.beginTask(String.format(Messages.Task_Executing, windowTitle),
-                inputTable.getItems().length * increment);
-        try {
-            monitor.worked(increment);
-
-            final String outputFolder = locationView.getFolder();
-            final boolean overwriter = chkOverwrite.getSelection();
-            final String ext = ".sld"; //$NON-NLS-1$
-
-            for (TableItem item : inputTable.getItems()) {
-                monitor.subTask(item.getText());
-                if (item.getChecked()) {
-                    ILayer layer = (ILayer) item.getData();
-                    File sldFile = new File(outputFolder, layer.getName() + ext);
-
-                    if (sldFile.exists()) {
-                        if (overwriter) {
-                            sldFile.delete();
-                        } else {
-                            continue;
-                        }
-                    }
-
-                    Style style = (Style) layer.getStyleBlackboard().get(SLDContent.ID);
-                    saveToSldFile(layer.getName(), style, sldFile);
-                }
-                monitor.worked(increment);
-            }
-        } catch (Exception e) {
-            ToolboxPlugin.log(e.getMessage());
-            throw new InvocationTargetException(e.getCause(), e.getMessage());
-        } finally {
-            monitor.done();
-        }
-    }
-
     private void saveToSldFile(String styleName, Style style, File sldFile) {
         UserLayer userLayer = sf.createUserLayer();
         userLayer.setLayerFeatureConstraints(new FeatureTypeConstraint[] { null });
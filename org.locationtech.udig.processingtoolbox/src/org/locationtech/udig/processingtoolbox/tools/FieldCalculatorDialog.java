@@ -10,25 +10,24 @@
 package org.locationtech.udig.processingtoolbox.tools;
 
 import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.io.FilenameUtils;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jface.dialogs.IDialogConstants;
 import org.eclipse.jface.dialogs.MessageDialog;
@@ -59,39 +58,34 @@ import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.TableItem;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.PlatformUI;
-import org.geotools.data.DataStore;
 import org.geotools.data.DataUtilities;
 import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.data.shapefile.ShapefileDataStore;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.filter.FunctionFactory;
 import org.geotools.filter.text.cql2.CQLException;
 import org.geotools.filter.text.ecql.ECQL;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
-import org.geotools.process.spatialstatistics.operations.GeneralOperation;
 import org.geotools.process.spatialstatistics.operations.TextColumn;
-import org.geotools.process.spatialstatistics.storage.DataStoreFactory;
-import org.geotools.process.spatialstatistics.storage.IFeatureInserter;
-import org.geotools.process.spatialstatistics.storage.ShapeFileEditor;
-import org.geotools.util.Converters;
 import org.geotools.util.logging.Logging;
 import org.locationtech.udig.catalog.CatalogPlugin;
 import org.locationtech.udig.catalog.ICatalog;
 import org.locationtech.udig.catalog.ID;
-import org.locationtech.udig.catalog.IResolve.Status;
 import org.locationtech.udig.catalog.IService;
 import org.locationtech.udig.catalog.IServiceFactory;
 import org.locationtech.udig.catalog.internal.shp.ShpGeoResourceImpl;
 import org.locationtech.udig.processingtoolbox.ToolboxPlugin;
-import org.locationtech.udig.processingtoolbox.ToolboxView;
 import org.locationtech.udig.processingtoolbox.internal.Messages;
 import org.locationtech.udig.processingtoolbox.internal.ui.WidgetBuilder;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils.FieldType;
+import org.locationtech.udig.processingtoolbox.tools.expression.FeatureExpressionEvaluator;
 import org.locationtech.udig.project.ILayer;
 import org.locationtech.udig.project.IMap;
-import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.feature.type.GeometryDescriptor;
@@ -177,7 +171,8 @@ public class FieldCalculatorDialog extends AbstractGeoProcessingDialog implement
             public void widgetSelected(SelectionEvent event) {
                 try {
                     Expression expression = ECQL.toExpression(txtExpression.getText());
-                    Object evaluated = expression.evaluate(source.features().next());
+                    Object evaluated = FeatureExpressionEvaluator.evaluateFirst(source,
+                            expression);
                     String msg = "Evaluated value: " + evaluated;
                     MessageDialog.openInformation(getParentShell(),
                             Messages.ExpressionBuilderDialog_Test, msg);
@@ -524,20 +519,18 @@ public class FieldCalculatorDialog extends AbstractGeoProcessingDialog implement
             InterruptedException {
         monitor.beginTask(String.format(Messages.Task_Executing, windowTitle), 100);
 
-        String folder = ToolboxView.getWorkspace();
-        DataStore outputDataStore = DataStoreFactory.getShapefileDataStore(folder);
-        String outputTypeName = null;
-
+        File calcFile = null;
         try {
             // Convert the given monitor into a progress instance
             final SubMonitor progress = SubMonitor.convert(monitor, 100);
 
             // prepare parameters
             Expression expression = ECQL.toExpression(txtExpression.getText());
-            String field = cboField.getText();
+            SimpleFeatureType schema = layer.getSchema();
+            String field = FeatureTypes.validateProperty(schema, cboField.getText());
             Class<?> fieldBinding = String.class;
-            if (FeatureTypes.existProeprty(source.getSchema(), field)) {
-                AttributeDescriptor attr = source.getSchema().getDescriptor(field);
+            if (FeatureTypes.existProeprty(schema, field)) {
+                AttributeDescriptor attr = schema.getDescriptor(field);
                 fieldBinding = attr.getType().getBinding();
             } else {
                 try {
@@ -547,144 +540,96 @@ public class FieldCalculatorDialog extends AbstractGeoProcessingDialog implement
                 }
             }
             int length = spnLen.getSelection();
-            monitor.worked(increment);
 
-            // execute process
-            String outputName = getUniqueName(folder, "calc_");
-            FieldCalculatorOperation process = new FieldCalculatorOperation(outputName);
-            process.setOutputDataStore(outputDataStore);
-            SimpleFeatureCollection features = process.execute(source, expression, field,
-                    fieldBinding, length, progress.newChild(70));
-
-            // post process
-            if (features != null) {
-                Date now = Calendar.getInstance().getTime();
-
-                // remove service
-                IService service = layer.getGeoResource().service(progress.newChild(5));
-                final ID id = service.getID();
-                final Map<java.lang.String, Serializable> params = service.getConnectionParams();
-                service.dispose(progress.newChild(10));
-                while (service.getStatus() == Status.CONNECTED) {
-                    Thread.sleep(100);
-                }
+            BitSet selection = null;
+            if (chkSelected.getSelection() && layer.getFilter() != Filter.EXCLUDE) {
+                selection = getSelectedRecords();
+            }
 
-                // replace dbf file
-                String shpPath = DataUtilities.urlToFile(id.toURL()).getPath(); // .shp
-                File dbfFile = new File(FilenameUtils.removeExtension(shpPath) + ".dbf");
-
-                File tempFile = new File(dbfFile.getParent(), "fc_" + df.format(now) + ".dbf");
-                if (dbfFile.renameTo(tempFile)) {
-                    File newFile = new File(folder, outputName + ".dbf");
-                    org.apache.commons.io.FileUtils.copyFile(newFile, dbfFile);
-                    tempFile.delete();
-                    updateFields(layer.getSchema());
-                    fillFields(cboField, layer.getSchema(), FieldType.ALL);
-                    cboType.setText("");
+            IService service = layer.getGeoResource().service(progress.newChild(5));
+            final ID id = service.getID();
+            final Map<java.lang.String, Serializable> params = service.getConnectionParams();
+            File shpFile = DataUtilities.urlToFile(id.toURL()); // .shp
+            File dbfFile = new File(FilenameUtils.removeExtension(shpFile.getPath()) + ".dbf");
+
+            // execute process: write the attribute table only
+            FieldCalculatorOperation process = new FieldCalculatorOperation();
+            if (service.canResolve(ShapefileDataStore.class)) {
+                ShapefileDataStore dataStore = service.resolve(ShapefileDataStore.class,
+                        progress.newChild(5));
+                process.setCharset(dataStore.getCharset());
+                process.setTimeZone(dataStore.getTimeZone());
+            }
+
+            String prefix = "fc_" + df.format(Calendar.getInstance().getTime());
+            calcFile = new File(dbfFile.getParent(), prefix + ".dbf");
+            if (!process.execute(shpFile, schema, selection, expression, field, fieldBinding,
+                    length, calcFile, progress.newChild(80))) {
+                throw new InterruptedException(Messages.Task_Canceled);
+            }
+
+            // release the shapefile and swap the attribute table, dispose is synchronous
+            service.dispose(progress.newChild(5));
+
+            File backupFile = new File(dbfFile.getParent(), prefix + ".bak");
+            boolean replaced = dbfFile.renameTo(backupFile);
+            if (replaced) {
+                if (calcFile.renameTo(dbfFile)) {
+                    backupFile.delete();
                 } else {
-                    throw new Exception(Messages.FieldCalculatorDialog_Failed);
+                    backupFile.renameTo(dbfFile);
+                    replaced = false;
                 }
+            }
 
-                // reload service
-                IServiceFactory serviceFactory = CatalogPlugin.getDefault().getServiceFactory();
-                ICatalog catalog = CatalogPlugin.getDefault().getLocalCatalog();
-                IService replacement = serviceFactory.createService(params).get(0);
-                catalog.replace(id, replacement);
-                layer.refresh(map.getViewportModel().getBounds());
+            // reload service
+            IServiceFactory serviceFactory = CatalogPlugin.getDefault().getServiceFactory();
+            ICatalog catalog = CatalogPlugin.getDefault().getLocalCatalog();
+            IService replacement = serviceFactory.createService(params).get(0);
+            catalog.replace(id, replacement);
 
-                monitor.worked(increment);
+            if (!replaced) {
+                throw new Exception(Messages.FieldCalculatorDialog_Failed);
             }
+
+            source = MapUtils.getFeatures(layer);
+            updateFields(layer.getSchema());
+            fillFields(cboField, layer.getSchema(), FieldType.ALL);
+            cboType.setText("");
+            layer.refresh(map.getViewportModel().getBounds());
             monitor.worked(increment);
+        } catch (InterruptedException e) {
+            throw e;
         } catch (Exception e) {
             ToolboxPlugin.log(e.getMessage());
             throw new InvocationTargetException(e.getCause(), e.getMessage());
         } finally {
             // finally delete temporary files
-            new ShapeFileEditor().remove(outputDataStore, outputTypeName);
+            if (calcFile != null && calcFile.exists()) {
+                calcFile.delete();
+            }
             monitor.done();
         }
     }
 
-    private String getUniqueName(final String directory, final String prefix) {
-        File[] files = new File(directory).listFiles(new FilenameFilter() {
-            public boolean accept(File dir, String name) {
-                name = name.toLowerCase();
-                return name.startsWith(prefix.toLowerCase()) && name.endsWith(".shp");
-            }
-        });
-
-        int max = 1;
-        if (files.length > 0) {
-            for (File file : files) {
-                try {
-                    String name = file.getName().toLowerCase().substring(5);
-                    name = name.substring(0, name.length() - 4);
-                    int num = Integer.parseInt(name);
-                    max = Math.max(max, num);
-                } catch (NumberFormatException e) {
-                    LOGGER.log(Level.FINER, e.getMessage());
-                }
-            }
-        }
-
-        return prefix + max;
-    }
+    private BitSet getSelectedRecords() throws IOException {
+        SimpleFeatureSource sfs = (SimpleFeatureSource) layer.getResource(FeatureSource.class,
+                new NullProgressMonitor());
+        String typeName = sfs.getSchema().getTypeName();
+        Query query = new Query(typeName, layer.getFilter(), Query.NO_NAMES);
 
-    static final class FieldCalculatorOperation extends GeneralOperation {
-        protected static final Logger LOGGER = Logging.getLogger(FieldCalculatorOperation.class);
-
-        private String outputName = "Merge"; //$NON-NLS-1$
-
-        public FieldCalculatorOperation(String outputName) {
-            this.outputName = outputName;
-        }
-
-        public SimpleFeatureCollection execute(SimpleFeatureCollection features,
-                Expression expression, String field, Class<?> fieldBinding, int length,
-                IProgressMonitor monitor) throws IOException {
-            field = FeatureTypes.validateProperty(features.getSchema(), field);
-
-            SimpleFeatureType schema = FeatureTypes.build(features.getSchema(), outputName);
-            if (FeatureTypes.existProeprty(schema, field)) {
-                AttributeDescriptor attr = schema.getDescriptor(field);
-                fieldBinding = attr.getType().getBinding();
-            } else {
-                schema = FeatureTypes.add(schema, field, fieldBinding, length);
-            }
-
-            SubMonitor progress = SubMonitor.convert(monitor, 100);
-            SubMonitor loopProgress = progress.newChild(100).setWorkRemaining(features.size());
-
-            IFeatureInserter featureWriter = getFeatureWriter(schema);
-            SimpleFeatureIterator featureIter = null;
-            try {
-                featureIter = features.features();
-                while (featureIter.hasNext()) {
-                    SimpleFeature feature = featureIter.next();
-                    Geometry geometry = (Geometry) feature.getDefaultGeometry();
-
-                    loopProgress.newChild(1);
-                    if (geometry == null || geometry.isEmpty()) {
-                        continue;
-                    }
-
-                    SimpleFeature newFeature = featureWriter.buildFeature();
-                    featureWriter.copyAttributes(feature, newFeature, true);
-
-                    // expression
-                    Object value = expression.evaluate(feature);
-                    newFeature.setAttribute(field, Converters.convert(value, fieldBinding));
-
-                    featureWriter.write(newFeature);
-                }
-            } catch (Exception e) {
-                featureWriter.rollback(e);
-            } finally {
-                featureWriter.close(featureIter);
+        // shapefile feature id = typeName.recordNumber(1 based)
+        BitSet selection = new BitSet();
+        SimpleFeatureIterator featureIter = sfs.getFeatures(query).features();
+        try {
+            while (featureIter.hasNext()) {
+                String fid = featureIter.next().getID();
+                int recNo = Integer.parseInt(fid.substring(fid.lastIndexOf('.') + 1));
+                selection.set(recNo - 1);
             }
-
-            return featureWriter.getFeatureCollection();
+        } finally {
+            featureIter.close();
         }
+        return selection;
     }
-
 }
@@ -0,0 +1,234 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.logging.Logger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+import org.geotools.data.shapefile.dbf.DbaseFileReader;
+import org.geotools.data.shapefile.dbf.DbaseFileWriter;
+import org.geotools.data.shapefile.files.ShpFiles;
+import org.geotools.data.shapefile.shp.ShapefileReader;
+import org.geotools.factory.GeoTools;
+import org.geotools.feature.simple.SimpleFeatureImpl;
+import org.geotools.filter.identity.FeatureIdImpl;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.util.logging.Logging;
+import org.locationtech.udig.processingtoolbox.tools.expression.FeatureExpressionEvaluator;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.expression.Expression;
+
+/**
+ * Calculates the values of a field of a shapefile by rewriting its attribute table(.dbf).
+ * <p>
+ * The existing .dbf file is streamed record by record into a new .dbf file with the new or updated
+ * column. The geometry files(.shp, .shx) are never written and are only read when the expression
+ * refers to the geometry.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+@SuppressWarnings("nls")
+public class FieldCalculatorOperation {
+    protected static final Logger LOGGER = Logging.getLogger(FieldCalculatorOperation.class);
+
+    static final int DEFAULT_LENGTH = 255;
+
+    private Charset charset = ShapefileDataStore.DEFAULT_STRING_CHARSET;
+
+    private TimeZone timeZone = TimeZone.getDefault();
+
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    public void setTimeZone(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    /**
+     * Writes the attribute table of the shapefile with the calculated field to the output file
+     *
+     * @param shpFile the shapefile
+     * @param schema the feature type of the shapefile
+     * @param selection the zero based record numbers to be calculated, null to calculate all
+     * @param expression the expression
+     * @param field the field name
+     * @param fieldBinding the binding of a new field
+     * @param length the length of a new field
+     * @param outputFile the output .dbf file
+     * @param monitor the progress monitor
+     * @return true if completed, false if canceled
+     * @throws IOException
+     */
+    public boolean execute(File shpFile, SimpleFeatureType schema, BitSet selection,
+            Expression expression, String field, Class<?> fieldBinding, int length,
+            File outputFile, IProgressMonitor monitor) throws IOException {
+        ShpFiles shpFiles = new ShpFiles(shpFile);
+        DbaseFileReader dbfReader = null;
+        ShapefileReader shpReader = null;
+        DbaseFileWriter dbfWriter = null;
+        try {
+            dbfReader = new DbaseFileReader(shpFiles, false, charset, timeZone);
+            DbaseFileHeader header = dbfReader.getHeader();
+            int numFields = header.getNumFields();
+            if (schema.getAttributeCount() != numFields + 1) {
+                throw new IOException("Schema does not match the attribute table: " + shpFile);
+            }
+
+            // existing field or new column
+            int fieldIndex = -1;
+            for (int index = 0; index < numFields; index++) {
+                if (header.getFieldName(index).equalsIgnoreCase(field)) {
+                    fieldIndex = index;
+                    fieldBinding = schema.getDescriptor(index + 1).getType().getBinding();
+                    break;
+                }
+            }
+
+            DbaseFileHeader outputHeader = new DbaseFileHeader();
+            for (int index = 0; index < numFields; index++) {
+                outputHeader.addColumn(header.getFieldName(index), header.getFieldType(index),
+                        header.getFieldLength(index), header.getFieldDecimalCount(index));
+            }
+            if (fieldIndex == -1) {
+                addColumn(outputHeader, field, fieldBinding, length);
+                fieldIndex = numFields;
+            }
+            // deleted records are skipped by the reader, the count is updated when completed
+            outputHeader.setNumRecords(header.getNumRecords());
+
+            // the geometry is read only if the expression refers to it
+            GeometryDescriptor geomDesc = schema.getGeometryDescriptor();
+            String[] attributes = DataUtilities.attributeNames(expression, schema);
+            for (String attribute : attributes) {
+                if (geomDesc != null && geomDesc.getLocalName().equals(attribute)) {
+                    shpReader = new ShapefileReader(shpFiles, false, false,
+                            JTSFactoryFinder.getGeometryFactory(GeoTools.getDefaultHints()));
+                    break;
+                }
+            }
+
+            FeatureExpressionEvaluator evaluator = new FeatureExpressionEvaluator(schema,
+                    expression, fieldBinding);
+
+            // one feature is reused for all records, 0 = geometry
+            Object[] values = new Object[numFields + 1];
+            FeatureIdImpl featureId = new FeatureIdImpl(schema.getTypeName());
+            SimpleFeatureImpl feature = new SimpleFeatureImpl(values, schema, featureId, false);
+            boolean updateId = !evaluator.isCompiled();
+            Object[] record = new Object[outputHeader.getNumFields()];
+
+            FileOutputStream outputStream = new FileOutputStream(outputFile);
+            dbfWriter = new DbaseFileWriter(outputHeader, outputStream.getChannel(), charset,
+                    timeZone);
+
+            SubMonitor progress = SubMonitor.convert(monitor, header.getNumRecords() / 1000 + 1);
+            int recNo = 0;
+            for (; dbfReader.hasNext(); recNo++) {
+                dbfReader.readEntry(values, 1);
+                if (shpReader != null) {
+                    values[0] = shpReader.hasNext() ? shpReader.nextRecord().shape() : null;
+                }
+
+                System.arraycopy(values, 1, record, 0, numFields);
+                if (selection == null || selection.get(recNo)) {
+                    if (shpReader != null && values[0] == null) {
+                        record[fieldIndex] = null;
+                    } else {
+                        if (updateId) {
+                            featureId.setID(schema.getTypeName() + "." + (recNo + 1));
+                        }
+                        record[fieldIndex] = evaluator.evaluate(feature);
+                    }
+                } else if (fieldIndex == numFields) {
+                    record[fieldIndex] = null;
+                }
+                dbfWriter.write(record);
+
+                if (recNo % 1000 == 999) {
+                    if (progress.isCanceled()) {
+                        return false;
+                    }
+                    progress.worked(1);
+                }
+            }
+
+            dbfWriter.close();
+            dbfWriter = null;
+            if (recNo != outputHeader.getNumRecords()) {
+                outputHeader.setNumRecords(recNo);
+                writeHeader(outputHeader, outputFile);
+            }
+            return true;
+        } finally {
+            if (dbfWriter != null) {
+                dbfWriter.close();
+            }
+            if (shpReader != null) {
+                shpReader.close();
+            }
+            if (dbfReader != null) {
+                dbfReader.close();
+            }
+            shpFiles.dispose();
+        }
+    }
+
+    private void writeHeader(DbaseFileHeader header, File dbfFile) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(dbfFile, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            channel.position(0);
+            header.writeHeader(channel);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void addColumn(DbaseFileHeader header, String field, Class<?> binding, int length)
+            throws IOException {
+        int fieldLen = length > 0 ? length : DEFAULT_LENGTH;
+        if (binding == Integer.class || binding == Short.class || binding == Byte.class) {
+            header.addColumn(field, 'N', Math.min(fieldLen, 9), 0);
+        } else if (binding == Long.class) {
+            header.addColumn(field, 'N', Math.min(fieldLen, 19), 0);
+        } else if (binding == BigInteger.class) {
+            header.addColumn(field, 'N', Math.min(fieldLen, 33), 0);
+        } else if (Number.class.isAssignableFrom(binding)) {
+            int len = Math.min(fieldLen, 33);
+            header.addColumn(field, 'N', len, Math.min(Math.max(len - 2, 0), 15));
+        } else if (Date.class.isAssignableFrom(binding)
+                || Calendar.class.isAssignableFrom(binding)) {
+            header.addColumn(field, 'D', fieldLen, 0);
+        } else if (binding == Boolean.class) {
+            header.addColumn(field, 'L', 1, 0);
+        } else {
+            header.addColumn(field, 'C', Math.min(Math.max(1, fieldLen), 254), 0);
+        }
+    }
+}
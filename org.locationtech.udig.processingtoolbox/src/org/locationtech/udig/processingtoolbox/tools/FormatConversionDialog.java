@@ -16,7 +16,6 @@ import java.util.logging.Logger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.dialogs.MessageDialog;
-import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.ModifyEvent;
 import org.eclipse.swt.events.ModifyListener;
@@ -31,6 +30,7 @@ import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Group;
 import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Spinner;
 import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.TableItem;
 import org.eclipse.swt.widgets.Text;
@@ -39,6 +39,7 @@ import org.eclipse.ui.PlatformUI;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.process.spatialstatistics.core.StringHelper;
+import org.geotools.process.spatialstatistics.storage.DataStoreFactory;
 import org.geotools.process.spatialstatistics.storage.ShapeExportOperation;
 import org.geotools.util.logging.Logging;
 import org.locationtech.udig.processingtoolbox.ToolboxPlugin;
@@ -48,6 +49,7 @@ import org.locationtech.udig.processingtoolbox.internal.ui.OutputDataWidget;
 import org.locationtech.udig.processingtoolbox.internal.ui.OutputDataWidget.FileDataType;
 import org.locationtech.udig.processingtoolbox.internal.ui.TableSelectionWidget;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils;
+import org.locationtech.udig.processingtoolbox.tools.BatchScheduler.BatchTask;
 import org.locationtech.udig.processingtoolbox.tools.FormatTransformer.EncodeType;
 import org.locationtech.udig.project.ILayer;
 import org.locationtech.udig.project.IMap;
@@ -60,8 +62,7 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
  * 
  * @author MapPlus
  */
-public class FormatConversionDialog extends AbstractGeoProcessingDialog implements
-        IRunnableWithProgress {
+public class FormatConversionDialog extends AbstractGeoProcessingDialog {
     protected static final Logger LOGGER = Logging.getLogger(FormatConversionDialog.class);
 
     private Table inputTable;
@@ -76,6 +77,15 @@ public class FormatConversionDialog extends AbstractGeoProcessingDialog implemen
 
     private Button optTab, optColon, optComma, optSpace, optEtc;
 
+    private Group grpGeoJSON;
+
+    private Spinner spnDecimals, spnChunkSize;
+
+    private Button chkPipelined;
+
+    // the combo lists the encode types followed by the shapefile
+    static final int SHAPEFILE = EncodeType.values().length;
+
     public FormatConversionDialog(Shell parentShell, IMap map) {
         super(parentShell, map);
 
@@ -110,7 +120,8 @@ public class FormatConversionDialog extends AbstractGeoProcessingDialog implemen
                 "Geography Markup Language (GML3.1.1)", "Geography Markup Language (GML3.2)",
                 "GeoJSON", "Keyhole Markup Language (KML 2.1)",
                 "Keyhole Markup Language (KML 2.2)", "Delimiter separated Text files",
-                "Delimiter separated WKT files", "ESRI Shapefiles" });
+                "Delimiter separated WKT files", "Newline-delimited GeoJSON (GeoJSONSeq)",
+                "ESRI Shapefiles" });
         cboOption.addSelectionListener(selectionListener);
         cboOption.select(1);
 
@@ -152,6 +163,21 @@ public class FormatConversionDialog extends AbstractGeoProcessingDialog implemen
         optEtc.setSelection(true);
         txtDelimiter.setText("|");
 
+        // GeoJSON options
+        grpGeoJSON = uiBuilder.createGroup(container,
+                Messages.FormatConversionDialog_GeoJSONOptions, false, 2);
+        grpGeoJSON.setLayout(new GridLayout(4, false));
+        uiBuilder.createLabel(grpGeoJSON, Messages.FormatConversionDialog_Decimals, null, 1);
+        spnDecimals = uiBuilder.createSpinner(grpGeoJSON,
+                GeoJSONFeatureEncoder.DEFAULT_DECIMALS, 0, 15, 0, 1, 5, 1);
+        uiBuilder.createLabel(grpGeoJSON, Messages.FormatConversionDialog_ChunkSize, null, 1);
+        spnChunkSize = uiBuilder.createSpinner(grpGeoJSON, 0, 0, 100000, 0, 1, 10, 1);
+        grpGeoJSON.setEnabled(false);
+        grpGeoJSON.setVisible(false);
+
+        chkPipelined = uiBuilder.createCheckbox(container,
+                Messages.FormatConversionDialog_Pipelined, null, 2);
+
         locationView = new OutputDataWidget(FileDataType.FOLDER, SWT.OPEN);
         locationView.create(container, SWT.BORDER, 2, 1);
         locationView.setFolder(ToolboxView.getWorkspace());
@@ -178,9 +204,14 @@ public class FormatConversionDialog extends AbstractGeoProcessingDialog implemen
                 }
             } else if (widget.equals(cboOption)) {
                 int selection = cboOption.getSelectionIndex();
-                grpOption.setEnabled(selection == 6 || selection == 7);
-                grpOption.setVisible(selection == 6 || selection == 7);
-                if (selection == 7) {
+                EncodeType type = selection == SHAPEFILE ? null : EncodeType.valueOf(selection);
+                boolean text = type == EncodeType.CSV || type == EncodeType.WKT;
+                boolean json = type == EncodeType.GEOJSON || type == EncodeType.GEOJSONSEQ;
+                grpOption.setEnabled(text);
+                grpOption.setVisible(text);
+                grpGeoJSON.setEnabled(json);
+                grpGeoJSON.setVisible(json);
+                if (type == EncodeType.WKT) {
                     optEtc.setSelection(true);
                     txtDelimiter.setEnabled(true);
                     txtDelimiter.setText("|"); //$NON-NLS-1$
@@ -220,68 +251,81 @@ public class FormatConversionDialog extends AbstractGeoProcessingDialog implemen
             return;
         }
 
-        try {
-            PlatformUI.getWorkbench().getProgressService().run(false, true, this);
-            openInformation(getShell(), Messages.General_Completed);
-            super.okPressed();
-        } catch (InvocationTargetException e) {
-            MessageDialog.openError(getShell(), Messages.General_Error, e.getMessage());
-        } catch (InterruptedException e) {
-            MessageDialog.openInformation(getShell(), Messages.General_Cancelled, e.getMessage());
+        final String outputFolder = locationView.getFolder();
+        final int selectionIdx = cboOption.getSelectionIndex();
+        final EncodeType encodeType = selectionIdx == SHAPEFILE ? null : EncodeType
+                .valueOf(selectionIdx);
+        final boolean pipelined = chkPipelined.getSelection();
+        final String separator = delimiter;
+        final Charset charset = Charset.forName(ToolboxPlugin.defaultCharset());
+        final int decimals = spnDecimals.getSelection();
+        final long chunkSize = spnChunkSize.getSelection() * 1024L * 1024L;
+
+        BatchScheduler scheduler = new BatchScheduler(windowTitle);
+        if (pipelined) {
+            // each layer uses all processors
+            scheduler.setParallelism(1);
         }
-    }
-
-    @Override
-    public void run(IProgressMonitor monitor) throws InvocationTargetException,
-            InterruptedException {
-        monitor.beginTask(String.format(Messages.Task_Executing, windowTitle),
-                inputTable.getItems().length * increment);
-        try {
-            monitor.worked(increment);
-
-            final String outputFolder = locationView.getFolder();
-            int selectionIdx = cboOption.getSelectionIndex();
-
-            FormatTransformer ftrans = null;
-            ShapeExportOperation export = null;
-            if (selectionIdx == 8) {
-                export = new ShapeExportOperation();
-                export.setOutputDataStore(locationView.getDataStore());
-            } else {
-                ftrans = new FormatTransformer(EncodeType.valueOf(selectionIdx));
+        for (TableItem item : inputTable.getItems()) {
+            if (!item.getChecked()) {
+                continue;
             }
 
-            for (TableItem item : inputTable.getItems()) {
-                monitor.subTask(item.getText());
-                if (item.getChecked()) {
-                    ILayer layer = (ILayer) item.getData();
+            final ILayer layer = (ILayer) item.getData();
+            scheduler.add(new BatchTask(layer.getName()) {
+                @Override
+                protected Object execute(IProgressMonitor monitor) throws Exception {
                     SimpleFeatureCollection features = MapUtils.getFeatures(layer);
-                    if (selectionIdx == 6) { // CSV
-                        Charset charset = Charset.forName(ToolboxPlugin.defaultCharset());
-                        File outputFile = new File(outputFolder, layer.getName()
-                                + ftrans.getExtension());
-                        ftrans.encodeCSV(features, outputFile, charset, delimiter);
-                    } else if (selectionIdx == 7) { // WKT
-                        Charset charset = Charset.forName(ToolboxPlugin.defaultCharset());
-                        File outputFile = new File(outputFolder, layer.getName()
-                                + ftrans.getExtension());
-                        ftrans.encodeWKT(features, outputFile, charset, delimiter);
-                    } else if (selectionIdx == 8) { // Shape file
+                    features = BatchScheduler.monitor(features, monitor);
+                    if (encodeType == null) { // Shape file
+                        if (pipelined) {
+                            features = new PipelinedFeatureEncoder().prefetch(features);
+                        }
+                        ShapeExportOperation export = new ShapeExportOperation();
+                        export.setOutputDataStore(DataStoreFactory
+                                .getShapefileDataStore(outputFolder));
                         export.setOutputTypeName(layer.getName());
                         export.execute(features);
+                        if (monitor.isCanceled()) {
+                            OperationOutputs.removeCanceled(new File(outputFolder, layer
+                                    .getName() + ".shp")); //$NON-NLS-1$
+                        }
+                        return null;
+                    }
+
+                    FormatTransformer ftrans = new FormatTransformer(encodeType);
+                    ftrans.setPipelined(pipelined);
+                    ftrans.setDecimals(decimals);
+                    ftrans.setChunkSize(chunkSize);
+                    File outputFile = new File(outputFolder, layer.getName()
+                            + ftrans.getExtension());
+                    if (encodeType == EncodeType.CSV) {
+                        ftrans.encodeCSV(features, outputFile, charset, separator);
+                    } else if (encodeType == EncodeType.WKT) {
+                        ftrans.encodeWKT(features, outputFile, charset, separator);
                     } else {
-                        File outputFile = new File(outputFolder, layer.getName()
-                                + ftrans.getExtension());
                         ftrans.encode(features, outputFile);
                     }
+                    if (monitor.isCanceled()) {
+                        outputFile.delete();
+                    }
+                    return null;
                 }
-                monitor.worked(increment);
-            }
-        } catch (Exception e) {
-            ToolboxPlugin.log(e.getMessage());
-            throw new InvocationTargetException(e.getCause(), e.getMessage());
-        } finally {
-            monitor.done();
+            });
+        }
+
+        if (scheduler.isEmpty()) {
+            return;
+        }
+
+        try {
+            PlatformUI.getWorkbench().getProgressService().run(true, true, scheduler);
+            openInformation(getShell(), Messages.General_Completed);
+            super.okPressed();
+        } catch (InvocationTargetException e) {
+            MessageDialog.openError(getShell(), Messages.General_Error, e.getMessage());
+        } catch (InterruptedException e) {
+            MessageDialog.openInformation(getShell(), Messages.General_Cancelled, e.getMessage());
         }
     }
 
@@ -9,13 +9,11 @@
  */
 package org.locationtech.udig.processingtoolbox.tools;
 
-import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
@@ -25,23 +23,15 @@ import java.util.logging.Logger;
 import javax.xml.namespace.QName;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.store.ReprojectingFeatureCollection;
-import org.geotools.geojson.feature.FeatureJSON;
 import org.geotools.referencing.CRS;
 import org.geotools.util.logging.Logging;
 import org.geotools.xml.Configuration;
 import org.locationtech.udig.processingtoolbox.ToolboxPlugin;
-import org.opengis.feature.simple.SimpleFeature;
-import org.opengis.feature.simple.SimpleFeatureType;
-import org.opengis.feature.type.AttributeDescriptor;
-import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.NoSuchAuthorityCodeException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
-import com.vividsolutions.jts.geom.Coordinate;
-import com.vividsolutions.jts.geom.Geometry;
 
 /**
  * Format Transformer
@@ -55,7 +45,8 @@ public class FormatTransformer {
     final static Logger LOGGER = Logging.getLogger(FormatTransformer.class);
 
     public enum EncodeType {
-        GML212(0), GML311(1), GML32(2), GEOJSON(3), KML21(4), KML22(5), CSV(6), WKT(7);
+        GML212(0), GML311(1), GML32(2), GEOJSON(3), KML21(4), KML22(5), CSV(6), WKT(7),
+        GEOJSONSEQ(8);
 
         private final int value;
 
@@ -81,10 +72,42 @@ public class FormatTransformer {
 
     private EncodeType encodeType = EncodeType.GML311;
 
+    private int decimals = GeoJSONFeatureEncoder.DEFAULT_DECIMALS;
+
+    private long chunkSize = 0;
+
+    private PipelinedFeatureEncoder pipeline;
+
     public FormatTransformer(EncodeType encodeType) {
         this.encodeType = encodeType;
     }
 
+    /**
+     * Sets the number of coordinate decimals of GeoJSON
+     */
+    public void setDecimals(int decimals) {
+        this.decimals = decimals;
+    }
+
+    /**
+     * Sets the maximum size of a GeoJSON output file in bytes, 0 to write a single file
+     */
+    public void setChunkSize(long chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Reads the features on a separate thread while they are encoded. Text formats(CSV, WKT,
+     * GeoJSON) are also encoded by parallel workers in batches.
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipeline = pipelined ? new PipelinedFeatureEncoder() : null;
+    }
+
+    public boolean isPipelined() {
+        return pipeline != null;
+    }
+
     public String getExtension() {
         switch (encodeType) {
         case GML212:
@@ -96,6 +119,8 @@ public class FormatTransformer {
             return ".kml";
         case GEOJSON:
             return ".json";
+        case GEOJSONSEQ:
+            return ".geojsonl";
         case CSV:
             return ".csv";
         case WKT:
@@ -114,6 +139,7 @@ public class FormatTransformer {
             encodeWKT(features, outputFile, Charset.defaultCharset(), "|");
             break;
         case GEOJSON:
+        case GEOJSONSEQ:
             encodeGeoJSON(features, outputFile);
             break;
         case GML212:
@@ -192,6 +218,9 @@ public class FormatTransformer {
             org.geotools.xml.Encoder encoder = new org.geotools.xml.Encoder(config);
             encoder.setIndenting(true);
             encoder.setIndentSize(2);
+            if (pipeline != null) {
+                features = pipeline.prefetch(features);
+            }
             encoder.encode(features, qName, fos);
         } catch (FileNotFoundException e) {
             ToolboxPlugin.log(e.getMessage());
@@ -202,132 +231,36 @@ public class FormatTransformer {
 
     public void encodeCSV(SimpleFeatureCollection features, File outputFile, Charset charset,
             String delimeter) throws IOException {
-        BufferedWriter writer = null;
         try {
-            String newLine = System.getProperty("line.separator"); //$NON-NLS-1$
-            FileOutputStream fos = new FileOutputStream(outputFile);
-            writer = new BufferedWriter(new OutputStreamWriter(fos, charset));
-
-            // write fields
-            SimpleFeatureType schema = features.getSchema();
-            StringBuffer sb = new StringBuffer();
-            for (AttributeDescriptor descriptor : schema.getAttributeDescriptors()) {
-                if (descriptor instanceof GeometryDescriptor) {
-                    continue;
-                }
-                if (sb.length() > 0) {
-                    sb.append(delimeter);
-                }
-                sb.append(descriptor.getLocalName());
-            }
-            sb.append(delimeter).append("xcoord").append(delimeter).append("ycoord")
-                    .append(newLine);
-            writer.write(sb.toString());
-
-            // write contents
-            SimpleFeatureIterator featureIter = null;
-            try {
-                featureIter = features.features();
-                while (featureIter.hasNext()) {
-                    SimpleFeature feature = featureIter.next();
-                    Geometry origGeom = (Geometry) feature.getDefaultGeometry();
-                    Coordinate coordinate = origGeom.getCentroid().getCoordinate();
-
-                    sb.setLength(0);
-                    for (Object value : feature.getAttributes()) {
-                        if (value instanceof Geometry) {
-                            continue;
-                        }
-                        if (sb.length() > 0) {
-                            sb.append(delimeter);
-                        }
-                        sb.append(value == null ? "" : value.toString());
-                    }
-                    sb.append(delimeter).append(coordinate.x);
-                    sb.append(delimeter).append(coordinate.y).append(newLine);
-                    writer.write(sb.toString());
-                }
-            } finally {
-                featureIter.close();
-            }
-            writer.flush();
-            writer.close();
+            TextFeatureEncoder encoder = new TextFeatureEncoder(charset, delimeter);
+            encoder.setPipeline(pipeline);
+            encoder.encodeCSV(features, outputFile);
         } catch (FileNotFoundException e) {
             ToolboxPlugin.log(e.getMessage());
-        } finally {
-            closeQuietly(writer);
         }
     }
 
     public void encodeWKT(SimpleFeatureCollection features, File outputFile, Charset charset,
             String delimeter) throws IOException {
-        BufferedWriter writer = null;
         try {
-            String newLine = System.getProperty("line.separator"); //$NON-NLS-1$
-            FileOutputStream fos = new FileOutputStream(outputFile);
-            writer = new BufferedWriter(new OutputStreamWriter(fos, charset));
-
-            boolean isComma = delimeter.equals(",");
-
-            // write fields
-            SimpleFeatureType schema = features.getSchema();
-            StringBuffer sb = new StringBuffer();
-            for (AttributeDescriptor descriptor : schema.getAttributeDescriptors()) {
-                if (sb.length() > 0) {
-                    sb.append(delimeter);
-                }
-                sb.append(descriptor.getLocalName());
-            }
-            writer.write(sb.append(newLine).toString());
-
-            // write contents
-            SimpleFeatureIterator featureIter = null;
-            try {
-                featureIter = features.features();
-                while (featureIter.hasNext()) {
-                    SimpleFeature feature = featureIter.next();
-                    Geometry origGeom = (Geometry) feature.getDefaultGeometry();
-
-                    sb.setLength(0);
-                    for (Object value : feature.getAttributes()) {
-                        if (sb.length() > 0) {
-                            sb.append(delimeter);
-                        }
-                        if (value instanceof Geometry) {
-                            if (isComma) {
-                                sb.append("\"").append(origGeom.toText()).append("\"");
-                            } else {
-                                sb.append(origGeom.toText());
-                            }
-                        } else {
-                            sb.append(value == null ? "" : value.toString());
-                        }
-                    }
-                    writer.write(sb.append(newLine).toString());
-                }
-            } finally {
-                featureIter.close();
-            }
-            writer.flush();
-            writer.close();
+            TextFeatureEncoder encoder = new TextFeatureEncoder(charset, delimeter);
+            encoder.setPipeline(pipeline);
+            encoder.encodeWKT(features, outputFile);
         } catch (FileNotFoundException e) {
             ToolboxPlugin.log(e.getMessage());
-        } finally {
-            closeQuietly(writer);
         }
     }
 
     public void encodeGeoJSON(SimpleFeatureCollection features, File outputFile) throws IOException {
-        FileOutputStream fos = null;
         try {
-            fos = new FileOutputStream(outputFile);
-            FeatureJSON featureJson = new FeatureJSON();
-            featureJson.setEncodeFeatureCollectionCRS(true);
-            featureJson.writeFeatureCollection(features, fos);
+            GeoJSONFeatureEncoder encoder = new GeoJSONFeatureEncoder();
+            encoder.setDecimals(decimals);
+            encoder.setChunkSize(chunkSize);
+            encoder.setSequence(encodeType == EncodeType.GEOJSONSEQ);
+            encoder.setPipeline(pipeline);
+            encoder.encode(features, outputFile);
         } catch (FileNotFoundException e) {
             ToolboxPlugin.log(e.getMessage());
-        } finally {
-            closeQuietly(fos);
         }
     }
 
@@ -0,0 +1,254 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FilenameUtils;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.geojson.feature.FeatureJSON;
+import org.geotools.geojson.geom.GeometryJSON;
+import org.geotools.util.logging.Logging;
+import org.locationtech.udig.processingtoolbox.tools.PipelinedFeatureEncoder.SegmentEncoder;
+import org.locationtech.udig.processingtoolbox.tools.PipelinedFeatureEncoder.SegmentEncoderFactory;
+import org.locationtech.udig.processingtoolbox.tools.PipelinedFeatureEncoder.SegmentWriter;
+import org.locationtech.udig.processingtoolbox.tools.TextFeatureEncoder.ChannelTextWriter;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Streaming GeoJSON encoder.
+ * <p>
+ * Features are encoded one by one with a limited number of coordinate decimals, either as a
+ * FeatureCollection or as newline-delimited GeoJSON(GeoJSONSeq, one feature per line). The output
+ * can be split into files of a maximum size: file.json becomes file_1.json, file_2.json, ...
+ * With a {@link PipelinedFeatureEncoder} batches of features are encoded in parallel and a chunk
+ * file is started only between batches.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+@SuppressWarnings("nls")
+public class GeoJSONFeatureEncoder {
+    protected static final Logger LOGGER = Logging.getLogger(GeoJSONFeatureEncoder.class);
+
+    public static final int DEFAULT_DECIMALS = 4;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private int decimals = DEFAULT_DECIMALS;
+
+    private boolean sequence = false;
+
+    private long chunkSize = 0;
+
+    private PipelinedFeatureEncoder pipeline;
+
+    public int getDecimals() {
+        return decimals;
+    }
+
+    public void setDecimals(int decimals) {
+        this.decimals = Math.max(0, decimals);
+    }
+
+    public boolean isSequence() {
+        return sequence;
+    }
+
+    /**
+     * Writes newline-delimited GeoJSON instead of a FeatureCollection
+     */
+    public void setSequence(boolean sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the maximum size of an output file in bytes, 0 to write a single file
+     */
+    public void setChunkSize(long chunkSize) {
+        this.chunkSize = Math.max(0, chunkSize);
+    }
+
+    /**
+     * Encodes the features with the given pipeline, null to encode on the calling thread
+     */
+    public void setPipeline(PipelinedFeatureEncoder pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Encodes the features
+     *
+     * @param features the features
+     * @param outputFile the output file
+     * @return the written files
+     * @throws IOException
+     */
+    public List<File> encode(SimpleFeatureCollection features, File outputFile)
+            throws IOException {
+        FeatureJSON featureJson = new FeatureJSON(new GeometryJSON(decimals));
+        String crs = null;
+        CoordinateReferenceSystem sourceCRS = features.getSchema().getCoordinateReferenceSystem();
+        if (!sequence && sourceCRS != null) {
+            crs = featureJson.toString(sourceCRS);
+        }
+
+        ChunkWriter output = new ChunkWriter(outputFile, crs);
+        try {
+            if (pipeline != null) {
+                pipeline.encode(features, new SegmentEncoderFactory() {
+                    @Override
+                    public SegmentEncoder create() {
+                        // FeatureJSON is not thread safe
+                        final FeatureJSON json = new FeatureJSON(new GeometryJSON(decimals));
+                        return new SegmentEncoder() {
+                            @Override
+                            public void encode(List<SimpleFeature> batch, StringBuilder segment)
+                                    throws IOException {
+                                for (SimpleFeature feature : batch) {
+                                    append(segment, json.toString(feature));
+                                }
+                            }
+                        };
+                    }
+                }, output);
+            } else {
+                StringBuilder segment = new StringBuilder();
+                SimpleFeatureIterator featureIter = features.features();
+                try {
+                    while (featureIter.hasNext()) {
+                        segment.setLength(0);
+                        append(segment, featureJson.toString(featureIter.next()));
+                        output.write(segment);
+                    }
+                } finally {
+                    featureIter.close();
+                }
+            }
+            output.finish();
+        } finally {
+            output.close();
+        }
+        return output.files;
+    }
+
+    private void append(StringBuilder segment, String feature) {
+        if (sequence) {
+            segment.append(feature).append('\n');
+        } else {
+            if (segment.length() > 0) {
+                segment.append(',');
+            }
+            segment.append(feature);
+        }
+    }
+
+    /**
+     * Writes the segments of features, a new chunk file is started at a segment boundary when the
+     * current file exceeds the chunk size
+     */
+    final class ChunkWriter implements SegmentWriter {
+        private final File outputFile;
+
+        private final String crs;
+
+        final List<File> files = new ArrayList<File>();
+
+        private ChannelTextWriter writer;
+
+        private int count = 0;
+
+        ChunkWriter(File outputFile, String crs) {
+            this.outputFile = outputFile;
+            this.crs = crs;
+        }
+
+        @Override
+        public void write(CharSequence segment) throws IOException {
+            if (segment.length() == 0) {
+                return;
+            }
+
+            boolean full = chunkSize > 0 && count > 0 && writer.size() >= chunkSize;
+            if (writer == null || full) {
+                if (writer != null) {
+                    end(writer);
+                    writer.close();
+                    writer = null;
+                }
+                open(chunkSize > 0 ? chunkFile(outputFile, files.size() + 1) : outputFile);
+            }
+
+            StringBuilder sb = writer.getBuffer();
+            if (!sequence && count > 0) {
+                sb.append(',');
+            }
+            sb.append(segment);
+            writer.flushIfFull();
+            count++;
+        }
+
+        void finish() throws IOException {
+            if (writer == null) {
+                open(outputFile); // empty collection
+            }
+            end(writer);
+        }
+
+        void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        }
+
+        private void open(File file) throws IOException {
+            files.add(file);
+            writer = new ChannelTextWriter(file, UTF8, TextFeatureEncoder.DEFAULT_BUFFER_SIZE);
+            begin(writer, crs);
+            count = 0;
+        }
+    }
+
+    private void begin(ChannelTextWriter writer, String crs) {
+        if (!sequence) {
+            StringBuilder sb = writer.getBuffer();
+            sb.append("{\"type\":\"FeatureCollection\",");
+            if (crs != null) {
+                sb.append("\"crs\":").append(crs).append(',');
+            }
+            sb.append("\"features\":[");
+        }
+    }
+
+    private void end(ChannelTextWriter writer) {
+        if (!sequence) {
+            writer.getBuffer().append("]}");
+        }
+    }
+
+    private File chunkFile(File outputFile, int index) {
+        String baseName = FilenameUtils.getBaseName(outputFile.getName());
+        String extension = FilenameUtils.getExtension(outputFile.getName());
+        return new File(outputFile.getParentFile(), baseName + "_" + index + "." + extension);
+    }
+}
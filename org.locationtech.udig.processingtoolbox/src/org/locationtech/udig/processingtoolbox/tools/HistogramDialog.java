@@ -21,7 +21,6 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.swt.SWT;
@@ -45,11 +44,7 @@ import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.Spinner;
 import org.eclipse.ui.PlatformUI;
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.process.spatialstatistics.StatisticsFeaturesProcess;
-import org.geotools.process.spatialstatistics.operations.DataStatisticsOperation.DataStatisticsResult;
 import org.geotools.util.logging.Logging;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartMouseEvent;
@@ -76,7 +71,6 @@ import org.jfree.experimental.chart.swt.ChartComposite;
 import org.jfree.ui.GradientPaintTransformer;
 import org.jfree.ui.RectangleEdge;
 import org.jfree.ui.TextAnchor;
-import org.locationtech.udig.catalog.util.GeoToolsAdapters;
 import org.locationtech.udig.processingtoolbox.ToolboxPlugin;
 import org.locationtech.udig.processingtoolbox.internal.Messages;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils;
@@ -84,12 +78,9 @@ import org.locationtech.udig.processingtoolbox.styler.MapUtils.FieldType;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils.VectorLayerType;
 import org.locationtech.udig.project.ILayer;
 import org.locationtech.udig.project.IMap;
-import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
-import org.opengis.filter.expression.Expression;
 import org.opengis.filter.expression.PropertyName;
-import org.opengis.util.ProgressListener;
 
 /**
  * Histogram Dialog
@@ -293,10 +284,10 @@ public class HistogramDialog extends AbstractGeoProcessingDialog implements IRun
         }
     }
 
-    private void updateChart(SimpleFeatureCollection features, String field) {
+    private void updateChart(String field, ColumnStatistics statistics) {
         int bin = spinner.getSelection();
 
-        double[] values = getValues(features, field);
+        double[] values = getValues(statistics);
         HistogramDataset dataset = new HistogramDataset();
         dataset.addSeries(field, values, bin, minMaxVisitor.getMinX(), minMaxVisitor.getMaxX());
         dataset.setType(histogramType);
@@ -401,25 +392,14 @@ public class HistogramDialog extends AbstractGeoProcessingDialog implements IRun
         chartComposite.forceRedraw();
     }
 
-    private double[] getValues(SimpleFeatureCollection features, String field) {
-        minMaxVisitor.reset();
+    private double[] getValues(ColumnStatistics statistics) {
+        minMaxVisitor.visit(statistics);
 
-        double[] values = new double[features.size()];
-        SimpleFeatureIterator featureIter = features.features();
-        try {
-            Expression expression = ff.property(field);
-            int index = 0;
-            while (featureIter.hasNext()) {
-                SimpleFeature feature = featureIter.next();
-                Double val = expression.evaluate(feature, Double.class);
-                if (val == null || val.isNaN() || val.isInfinite()) {
-                    continue;
-                }
-                values[index++] = val;
-                minMaxVisitor.visit(val, val);
-            }
-        } finally {
-            featureIter.close();
+        AttributeColumnCache.Column column = statistics.getColumn(0);
+        int[] rows = statistics.getCompleteRows();
+        double[] values = new double[rows.length];
+        for (int index = 0; index < rows.length; index++) {
+            values[index] = column.get(rows[index]);
         }
 
         return values;
@@ -457,26 +437,25 @@ public class HistogramDialog extends AbstractGeoProcessingDialog implements IRun
             }
             monitor.worked(increment);
 
+            // statistics and the histogram values of a single pass over the column
             String field = cboField.getText();
-            SimpleFeatureCollection features = MapUtils.getFeatures(inputLayer);
+            ColumnStatistics statistics = ColumnStatistics.compute(AttributeColumnCache.getCache(
+                    inputLayer).getColumn(field));
 
             if (chkStatistics.getSelection()) {
                 monitor.subTask("Calculating Basic Statistics...");
                 if (outputTab == null) {
                     createOutputTab(inputTab.getParent());
                 }
-                ProgressListener subMonitor = GeoToolsAdapters.progress(SubMonitor.convert(monitor,
-                        Messages.Task_Internal, 20));
-                DataStatisticsResult statistics = StatisticsFeaturesProcess.process(features,
-                        field, subMonitor);
 
+                String typeName = inputLayer.getSchema().getTypeName();
                 HtmlWriter writer = new HtmlWriter(inputLayer.getName());
-                writer.writeDataStatistics(statistics);
+                writer.writeDataStatistics(statistics.getDataStatistics(typeName));
                 browser.setText(writer.getHTML());
             }
 
             monitor.subTask("Updating Histogram...");
-            updateChart(features, field);
+            updateChart(field, statistics);
             plotTab.getParent().setSelection(plotTab);
             monitor.worked(increment);
         } catch (Exception e) {
@@ -0,0 +1,745 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.geometry.jts.JTS;
+import org.geotools.process.spatialstatistics.core.FeatureTypes;
+import org.geotools.process.spatialstatistics.operations.GeneralOperation;
+import org.geotools.process.spatialstatistics.operations.TextColumn;
+import org.geotools.process.spatialstatistics.storage.IFeatureInserter;
+import org.geotools.referencing.CRS;
+import org.geotools.util.Converters;
+import org.geotools.util.logging.Logging;
+import org.locationtech.udig.processingtoolbox.tools.PointBlockTransformer.PointHandler;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * Converts large delimited text files to point features.
+ * <p>
+ * The file is split at line boundaries into chunks that are memory mapped and parsed by a pool of
+ * workers. Fields are located in the mapped bytes: only the selected columns are decoded and
+ * numeric columns are parsed without creating strings. The rows of the chunks are written in the
+ * order of the file by the calling thread, at most two chunks per worker are kept in memory.
+ * <p>
+ * A record is one line, quoted fields may contain the delimiter but not line breaks. X, Y
+ * coordinates are reprojected in blocks by a {@link PointBlockTransformer}.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+@SuppressWarnings("nls")
+public class MappedTextfileToPointOperation extends GeneralOperation {
+    protected static final Logger LOGGER = Logging.getLogger(MappedTextfileToPointOperation.class);
+
+    static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+
+    static final String SEP = System.getProperty("line.separator");
+
+    // multi-byte charsets whose byte sequences never contain ASCII delimiters, quotes or digits
+    static final List<String> SAFE_CHARSETS = Arrays.asList("UTF-8", "EUC-KR", "x-windows-949",
+            "EUC-JP");
+
+    private StringBuffer errorBuffer = new StringBuffer();
+
+    private String outputTypeName = "TextfileToPoint";
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private int featureCount = 0;
+
+    public String getError() {
+        return errorBuffer.toString();
+    }
+
+    public void setOutputTypeName(String outputTypeName) {
+        this.outputTypeName = outputTypeName;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1 << 16, chunkSize);
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    /**
+     * Returns true if the file can be parsed as bytes: a single ASCII delimiter and a charset in
+     * which the delimiter, the quote and the line break never appear inside a character
+     */
+    public static boolean isSupported(Charset charset, String delimiter) {
+        if (delimiter == null || delimiter.length() != 1) {
+            return false;
+        }
+
+        char delim = delimiter.charAt(0);
+        if (delim > 127 || delim == '"' || delim == '\r' || delim == '\n'
+                || Character.isLetterOrDigit(delim)) {
+            return false;
+        }
+
+        String probe = delimiter + "\"\r\n.-+0123456789eE";
+        if (!Arrays.equals(probe.getBytes(charset), probe.getBytes(Charset.forName("US-ASCII")))) {
+            return false;
+        }
+        return charset.newEncoder().maxBytesPerChar() == 1
+                || SAFE_CHARSETS.contains(charset.name());
+    }
+
+    /**
+     * Imports the rows of the text file as points
+     *
+     * @return the output features or null if canceled
+     */
+    public SimpleFeatureCollection execute(File textFile, Charset charset, String delimiter,
+            boolean headerFirst, List<TextColumn> columns, CoordinateReferenceSystem sourceCRS,
+            CoordinateReferenceSystem targetCRS, IProgressMonitor monitor) throws IOException {
+        if (!isSupported(charset, delimiter)) {
+            throw new IOException("Unsupported delimiter or charset: " + delimiter + ", "
+                    + charset.name());
+        }
+
+        SimpleFeatureType schema = buildSchema(columns, targetCRS == null ? sourceCRS
+                : targetCRS);
+        MathTransform transform = null;
+        if (sourceCRS != null && targetCRS != null) {
+            transform = getMathTransform(sourceCRS, targetCRS);
+        }
+        RowPlan plan = new RowPlan(schema, columns, (byte) delimiter.charAt(0), charset,
+                transform, gf);
+
+        featureCount = 0;
+        IFeatureInserter featureWriter = getFeatureWriter(schema);
+        RandomAccessFile file = new RandomAccessFile(textFile, "r");
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+
+            long position = skipBOM(channel, charset);
+            long lineBase = 0; // number of lines before the current chunk
+            if (headerFirst) {
+                position = nextLineStart(channel, position, size);
+                lineBase = 1;
+            }
+
+            SubMonitor progress = SubMonitor.convert(monitor, 100);
+            progress.setWorkRemaining((int) ((size - position) / chunkSize) + 1);
+
+            ArrayDeque<Future<ChunkResult>> pending = new ArrayDeque<Future<ChunkResult>>();
+            while (position < size || !pending.isEmpty()) {
+                // keep the workers busy, but bound the parsed rows kept in memory
+                while (position < size && pending.size() < parallelism * 2) {
+                    long end = Math.min(position + chunkSize, size);
+                    if (end < size) {
+                        end = nextLineStart(channel, end, size);
+                    }
+                    pending.add(workers.submit(new ChunkParser(channel, position, end, plan)));
+                    position = end;
+                }
+
+                ChunkResult result = pending.poll().get();
+                for (Object[] row : result.rows) {
+                    SimpleFeature newFeature = featureWriter.buildFeature();
+                    for (int index = 0; index < row.length; index++) {
+                        newFeature.setAttribute(index, row[index]);
+                    }
+                    featureWriter.write(newFeature);
+                    featureCount++;
+                }
+
+                for (int index = 0; index < result.errorLines.size(); index++) {
+                    errorBuffer.append(lineBase + result.errorLines.get(index).intValue());
+                    errorBuffer.append(" : ").append(result.errors.get(index)).append(SEP);
+                }
+                lineBase += result.lineCount;
+
+                if (progress.isCanceled()) {
+                    featureWriter.rollback();
+                    return null;
+                }
+                progress.worked(1);
+            }
+        } catch (InterruptedException e) {
+            featureWriter.rollback(new IOException(e));
+        } catch (ExecutionException e) {
+            IOException cause = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                    : new IOException(e.getCause());
+            featureWriter.rollback(cause);
+        } catch (IOException e) {
+            featureWriter.rollback(e);
+        } finally {
+            workers.shutdownNow();
+            file.close();
+            featureWriter.close();
+        }
+
+        return featureWriter.getFeatureCollection();
+    }
+
+    private long skipBOM(FileChannel channel, Charset charset) throws IOException {
+        if (!charset.name().equals("UTF-8")) {
+            return 0;
+        }
+
+        ByteBuffer bom = ByteBuffer.allocate(3);
+        channel.read(bom, 0);
+        boolean hasBOM = bom.position() == 3 && bom.get(0) == (byte) 0xEF
+                && bom.get(1) == (byte) 0xBB && bom.get(2) == (byte) 0xBF;
+        return hasBOM ? 3 : 0;
+    }
+
+    private long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long current = position;
+        while (current < size) {
+            buffer.clear();
+            int read = channel.read(buffer, current);
+            if (read <= 0) {
+                break;
+            }
+            for (int index = 0; index < read; index++) {
+                if (buffer.get(index) == '\n') {
+                    return current + index + 1;
+                }
+            }
+            current += read;
+        }
+        return size;
+    }
+
+    private SimpleFeatureType buildSchema(List<TextColumn> columns, CoordinateReferenceSystem crs)
+            throws IOException {
+        TextColumn xColumn = null;
+        TextColumn yColumn = null;
+        TextColumn geomColumn = null;
+        for (TextColumn col : columns) {
+            if (col.isX()) {
+                xColumn = col;
+            } else if (col.isY()) {
+                yColumn = col;
+            } else if (col.isGeometry()) {
+                geomColumn = col;
+            }
+        }
+
+        if (geomColumn == null && (xColumn == null || yColumn == null)) {
+            throw new IOException("X or Y Column does not exist!");
+        }
+
+        Class<?> binding = geomColumn == null ? Point.class : geomColumn.getBinding();
+        SimpleFeatureType schema = FeatureTypes.getDefaultType(outputTypeName, binding, crs);
+        for (TextColumn col : columns) {
+            if (col.isGeometry()) {
+                continue;
+            } else if (col.getBinding().isAssignableFrom(String.class)) {
+                schema = FeatureTypes.add(schema, col.getName(), col.getBinding(),
+                        col.getLength());
+            } else {
+                schema = FeatureTypes.add(schema, col.getName(), col.getBinding());
+            }
+        }
+        return schema;
+    }
+
+    private MathTransform getMathTransform(CoordinateReferenceSystem sourceCRS,
+            CoordinateReferenceSystem targetCRS) {
+        if (CRS.equalsIgnoreMetadata(sourceCRS, targetCRS)) {
+            LOGGER.log(Level.WARNING, "Input and Output Coordinate Reference Systems are equal!");
+            return null;
+        }
+
+        try {
+            return CRS.findMathTransform(sourceCRS, targetCRS, false);
+        } catch (FactoryException e) {
+            LOGGER.log(Level.WARNING, e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * How the fields of a line are converted to the attributes of a feature, shared by the workers
+     */
+    static final class RowPlan {
+        static final int STRING = 0, DOUBLE = 1, INTEGER = 2, LONG = 3, OTHER = 4, GEOMETRY = 5;
+
+        final int attributeCount;
+
+        final int geomIndex;
+
+        final byte delimiter;
+
+        final Charset charset;
+
+        final MathTransform transform;
+
+        final GeometryFactory factory;
+
+        // per selected column
+        final int[] fieldIndexes;
+
+        final int[] attributeIndexes;
+
+        final int[] kinds;
+
+        final Class<?>[] bindings;
+
+        final int xColumn, yColumn;
+
+        final int maxField;
+
+        RowPlan(SimpleFeatureType schema, List<TextColumn> columns, byte delimiter,
+                Charset charset, MathTransform transform, GeometryFactory factory) {
+            this.attributeCount = schema.getAttributeCount();
+            this.geomIndex = schema.indexOf(schema.getGeometryDescriptor().getLocalName());
+            this.delimiter = delimiter;
+            this.charset = charset;
+            this.transform = transform;
+            this.factory = factory;
+
+            int size = columns.size();
+            fieldIndexes = new int[size];
+            attributeIndexes = new int[size];
+            kinds = new int[size];
+            bindings = new Class<?>[size];
+
+            int x = -1, y = -1, max = 0;
+            for (int index = 0; index < size; index++) {
+                TextColumn col = columns.get(index);
+                Class<?> binding = col.getBinding();
+                fieldIndexes[index] = col.getColumnIndex();
+                bindings[index] = binding;
+                max = Math.max(max, col.getColumnIndex());
+
+                if (col.isGeometry()) {
+                    attributeIndexes[index] = geomIndex;
+                    kinds[index] = GEOMETRY;
+                    continue;
+                }
+
+                attributeIndexes[index] = schema.indexOf(col.getName());
+                if (col.isX()) {
+                    x = index;
+                } else if (col.isY()) {
+                    y = index;
+                }
+
+                if (binding == String.class) {
+                    kinds[index] = STRING;
+                } else if (binding == Double.class) {
+                    kinds[index] = DOUBLE;
+                } else if (binding == Integer.class) {
+                    kinds[index] = INTEGER;
+                } else if (binding == Long.class) {
+                    kinds[index] = LONG;
+                } else {
+                    kinds[index] = OTHER;
+                }
+            }
+            this.xColumn = x;
+            this.yColumn = y;
+            this.maxField = max;
+        }
+    }
+
+    static final class ChunkResult {
+        final List<Object[]> rows = new ArrayList<Object[]>();
+
+        final List<Integer> errorLines = new ArrayList<Integer>();
+
+        final List<String> errors = new ArrayList<String>();
+
+        int lineCount = 0;
+    }
+
+    /**
+     * Parses the lines of a mapped chunk
+     */
+    static final class ChunkParser implements Callable<ChunkResult> {
+        private final FileChannel channel;
+
+        private final long start;
+
+        private final long end;
+
+        private final RowPlan plan;
+
+        private final int[] fieldStarts;
+
+        private final int[] fieldEnds;
+
+        private final boolean[] escaped;
+
+        private byte[] scratch = new byte[256];
+
+        private MappedByteBuffer buffer;
+
+        private WKTReader wktReader;
+
+        private PointBlockTransformer<Object[]> points;
+
+        ChunkParser(FileChannel channel, long start, long end, RowPlan plan) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.plan = plan;
+            this.fieldStarts = new int[plan.maxField + 1];
+            this.fieldEnds = new int[plan.maxField + 1];
+            this.escaped = new boolean[plan.maxField + 1];
+        }
+
+        @Override
+        public ChunkResult call() throws Exception {
+            ChunkResult result = new ChunkResult();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            points = new PointBlockTransformer<Object[]>(plan.factory, plan.transform,
+                    new PointHandler<Object[]>() {
+                        @Override
+                        public void handle(Object[] row, Point point) {
+                            row[plan.geomIndex] = point;
+                        }
+                    });
+
+            final int limit = buffer.limit();
+            int pos = 0;
+            while (pos < limit) {
+                int lineStart = pos;
+                int lineEnd = pos;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                pos = lineEnd + 1;
+                if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                result.lineCount++;
+
+                if (isBlank(lineStart, lineEnd)) {
+                    continue;
+                }
+
+                try {
+                    Object[] row = parseLine(lineStart, lineEnd);
+                    if (row != null) {
+                        result.rows.add(row);
+                    }
+                } catch (Exception e) {
+                    result.errorLines.add(Integer.valueOf(result.lineCount));
+                    result.errors.add(decode(lineStart, lineEnd, false));
+                }
+            }
+            points.flush();
+            return result;
+        }
+
+        private boolean isBlank(int from, int to) {
+            for (int index = from; index < to; index++) {
+                byte b = buffer.get(index);
+                if (b != ' ' && b != '\t') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Object[] parseLine(int lineStart, int lineEnd) throws ParseException,
+                TransformException, IOException {
+            int fieldCount = split(lineStart, lineEnd);
+
+            Object[] row = new Object[plan.attributeCount];
+            double x = Double.NaN;
+            double y = Double.NaN;
+            for (int index = 0; index < plan.kinds.length; index++) {
+                int field = plan.fieldIndexes[index];
+                if (field >= fieldCount) {
+                    continue; // missing field
+                }
+
+                int from = fieldStarts[field];
+                int to = fieldEnds[field];
+                Object value;
+                switch (plan.kinds[index]) {
+                case RowPlan.DOUBLE:
+                    double number = parseDouble(from, to);
+                    value = Double.isNaN(number) ? null : Double.valueOf(number);
+                    if (index == plan.xColumn) {
+                        x = number;
+                    } else if (index == plan.yColumn) {
+                        y = number;
+                    }
+                    break;
+                case RowPlan.INTEGER:
+                case RowPlan.LONG:
+                    value = parseLong(from, to, plan.kinds[index], plan.bindings[index]);
+                    break;
+                case RowPlan.STRING:
+                    value = decode(from, to, escaped[field]);
+                    break;
+                case RowPlan.GEOMETRY:
+                    if (wktReader == null) {
+                        wktReader = new WKTReader(plan.factory);
+                    }
+                    value = wktReader.read(decode(from, to, escaped[field]));
+                    break;
+                default:
+                    value = Converters.convert(decode(from, to, escaped[field]),
+                            plan.bindings[index]);
+                    break;
+                }
+                row[plan.attributeIndexes[index]] = value;
+            }
+
+            Geometry geometry = (Geometry) row[plan.geomIndex];
+            if (geometry != null) {
+                if (plan.transform != null) {
+                    row[plan.geomIndex] = JTS.transform(geometry, plan.transform);
+                }
+                return row;
+            } else if (Double.isNaN(x) || Double.isNaN(y)) {
+                return null;
+            }
+
+            // the point is set when its block is transformed
+            points.add(x, y, row);
+            return row;
+        }
+
+        /**
+         * Locates the fields of a line up to the last selected field
+         *
+         * @return the number of fields found
+         */
+        private int split(int lineStart, int lineEnd) {
+            final byte delimiter = plan.delimiter;
+            int pos = lineStart;
+            int field = 0;
+            while (field <= plan.maxField) {
+                escaped[field] = false;
+                if (pos < lineEnd && buffer.get(pos) == '"') {
+                    // quoted field, "" is an escaped quote
+                    int from = ++pos;
+                    while (pos < lineEnd) {
+                        if (buffer.get(pos) == '"') {
+                            if (pos + 1 < lineEnd && buffer.get(pos + 1) == '"') {
+                                escaped[field] = true;
+                                pos += 2;
+                                continue;
+                            }
+                            break;
+                        }
+                        pos++;
+                    }
+                    fieldStarts[field] = from;
+                    fieldEnds[field] = pos;
+                    while (pos < lineEnd && buffer.get(pos) != delimiter) {
+                        pos++;
+                    }
+                } else {
+                    fieldStarts[field] = pos;
+                    while (pos < lineEnd && buffer.get(pos) != delimiter) {
+                        pos++;
+                    }
+                    fieldEnds[field] = pos;
+                }
+
+                field++;
+                if (pos >= lineEnd) {
+                    break;
+                }
+                pos++; // skip the delimiter
+            }
+            return field;
+        }
+
+        private String decode(int from, int to, boolean unescape) {
+            int length = to - from;
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            ByteBuffer view = buffer.duplicate();
+            view.position(from);
+            view.get(scratch, 0, length);
+
+            String value = new String(scratch, 0, length, plan.charset);
+            return unescape ? value.replace("\"\"", "\"") : value;
+        }
+
+        private Object parseLong(int from, int to, int kind, Class<?> binding) {
+            while (from < to && buffer.get(from) == ' ') {
+                from++;
+            }
+            while (to > from && buffer.get(to - 1) == ' ') {
+                to--;
+            }
+            if (from == to) {
+                return null;
+            }
+
+            boolean negative = false;
+            int pos = from;
+            byte first = buffer.get(pos);
+            if (first == '-' || first == '+') {
+                negative = first == '-';
+                pos++;
+            }
+
+            long value = 0;
+            boolean valid = pos < to && to - pos <= 18;
+            for (; valid && pos < to; pos++) {
+                int digit = buffer.get(pos) - '0';
+                if (digit < 0 || digit > 9) {
+                    valid = false;
+                } else {
+                    value = value * 10 + digit;
+                }
+            }
+
+            if (!valid) {
+                // decimals, exponents or very long numbers
+                return Converters.convert(decode(from, to, false), binding);
+            }
+
+            value = negative ? -value : value;
+            if (kind == RowPlan.INTEGER) {
+                if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                    return null;
+                }
+                return Integer.valueOf((int) value);
+            }
+            return Long.valueOf(value);
+        }
+
+        static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+                1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21,
+                1e22 };
+
+        /**
+         * Parses a decimal number, NaN if the field is empty. Numbers with at most 15 significant
+         * digits and a small exponent are computed exactly from the digits, others are converted
+         * from the decoded text.
+         */
+        private double parseDouble(int from, int to) {
+            while (from < to && buffer.get(from) == ' ') {
+                from++;
+            }
+            while (to > from && buffer.get(to - 1) == ' ') {
+                to--;
+            }
+            if (from == to) {
+                return Double.NaN;
+            }
+
+            int pos = from;
+            boolean negative = false;
+            byte b = buffer.get(pos);
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                pos++;
+            }
+
+            long mantissa = 0;
+            int digits = 0;
+            int scale = 0;
+            boolean fraction = false;
+            boolean hasDigit = false;
+            boolean fast = pos < to;
+            for (; pos < to; pos++) {
+                b = buffer.get(pos);
+                if (b >= '0' && b <= '9') {
+                    hasDigit = true;
+                    if (mantissa == 0 && b == '0') {
+                        // leading zeros are not significant
+                    } else if (++digits > 15) {
+                        fast = false;
+                        break;
+                    }
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (fraction) {
+                        scale--;
+                    }
+                } else if (b == '.' && !fraction) {
+                    fraction = true;
+                } else if (b == 'e' || b == 'E') {
+                    int exponent = 0;
+                    boolean negativeExponent = false;
+                    pos++;
+                    if (pos < to && (buffer.get(pos) == '-' || buffer.get(pos) == '+')) {
+                        negativeExponent = buffer.get(pos) == '-';
+                        pos++;
+                    }
+                    fast = pos < to && to - pos <= 3;
+                    for (; fast && pos < to; pos++) {
+                        int digit = buffer.get(pos) - '0';
+                        if (digit < 0 || digit > 9) {
+                            fast = false;
+                        } else {
+                            exponent = exponent * 10 + digit;
+                        }
+                    }
+                    scale += negativeExponent ? -exponent : exponent;
+                    break;
+                } else {
+                    fast = false;
+                    break;
+                }
+            }
+
+            if (fast && hasDigit && scale >= -22 && scale <= 22) {
+                double value = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa
+                        * POWERS_OF_TEN[scale];
+                return negative ? -value : value;
+            }
+
+            // same as the Converters of the line based importer: invalid numbers are null
+            Double value = Converters.convert(decode(from, to, false), Double.class);
+            return value == null ? Double.NaN : value.doubleValue();
+        }
+    }
+}
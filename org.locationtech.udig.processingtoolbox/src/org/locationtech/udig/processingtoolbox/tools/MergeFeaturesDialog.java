@@ -14,10 +14,20 @@ import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 import org.apache.commons.io.FilenameUtils;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.swt.SWT;
@@ -39,6 +49,7 @@ import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.TableItem;
 import org.eclipse.swt.widgets.Widget;
 import org.eclipse.ui.PlatformUI;
+import org.geotools.data.DataStore;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
@@ -87,6 +98,12 @@ public class MergeFeaturesDialog extends AbstractGeoProcessingDialog implements
 
     private SimpleFeatureCollection templateFc;
 
+    private List<SimpleFeatureCollection> inputFeatures;
+
+    private File outputFile;
+
+    private DataStore outputDataStore;
+
     public MergeFeaturesDialog(Shell parentShell, IMap map) {
         super(parentShell, map);
 
@@ -251,8 +268,18 @@ public class MergeFeaturesDialog extends AbstractGeoProcessingDialog implements
             }
         }
 
+        // widget values are read before the merge runs on a worker thread
+        inputFeatures = new ArrayList<SimpleFeatureCollection>();
+        for (TableItem item : inputTable.getItems()) {
+            if (item.getChecked()) {
+                inputFeatures.add(MapUtils.getFeatures((ILayer) item.getData()));
+            }
+        }
+        outputFile = new File(locationView.getFile());
+        outputDataStore = locationView.getDataStore();
+
         try {
-            PlatformUI.getWorkbench().getProgressService().run(false, true, this);
+            PlatformUI.getWorkbench().getProgressService().run(true, true, this);
             openInformation(getShell(), Messages.General_Completed);
             super.okPressed();
         } catch (InvocationTargetException e) {
@@ -265,31 +292,32 @@ public class MergeFeaturesDialog extends AbstractGeoProcessingDialog implements
     @Override
     public void run(IProgressMonitor monitor) throws InvocationTargetException,
             InterruptedException {
-        monitor.beginTask(String.format(Messages.Task_Executing, windowTitle), 5);
+        monitor.beginTask(String.format(Messages.Task_Executing, windowTitle), 100);
         try {
-            monitor.worked(increment);
-
-            List<SimpleFeatureCollection> fcList = new ArrayList<SimpleFeatureCollection>();
-            for (TableItem item : inputTable.getItems()) {
-                if (item.getChecked()) {
-                    fcList.add(MapUtils.getFeatures((ILayer) item.getData()));
-                }
-            }
-
-            String outputName = FilenameUtils.getBaseName(locationView.getFile());
+            String outputName = FilenameUtils.getBaseName(outputFile.getPath());
 
             MergeOp op = new MergeOp(outputName);
-            op.setOutputDataStore(locationView.getDataStore());
+            op.setOutputDataStore(outputDataStore);
+
+            long start = System.currentTimeMillis();
+            SimpleFeatureSource sfs = op.merge(inputFeatures, templateFc,
+                    SubMonitor.convert(monitor, 100));
+            if (op.isCanceled() || monitor.isCanceled()) {
+                OperationOutputs.removeCanceled(outputFile);
+                throw new InterruptedException(Messages.Task_Canceled);
+            }
 
-            SimpleFeatureSource sfs = op.merge(fcList, templateFc, monitor);
             if (sfs != null) {
-                MapUtils.addFeaturesToMap(map, new File(locationView.getFile()), outputName);
+                double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000d;
+                int count = op.getFeatureCount();
+                ToolboxPlugin.log(String.format(Messages.Task_FeaturesMerged, windowTitle, count,
+                        seconds, count / seconds));
+                MapUtils.addFeaturesToMap(map, outputFile, outputName);
             } else {
                 ToolboxPlugin.log(windowTitle + " : Failed to merge : " + outputName); //$NON-NLS-1$
             }
-
-            monitor.worked(increment);
-        } catch (Exception e) {
+        } catch (IOException e) {
+            MapUtils.confirmSpatialFile(outputFile);
             ToolboxPlugin.log(e.getMessage());
             throw new InvocationTargetException(e.getCause(), e.getMessage());
         } finally {
@@ -297,15 +325,50 @@ public class MergeFeaturesDialog extends AbstractGeoProcessingDialog implements
         }
     }
 
+    /**
+     * Merges the input features into one output. Each input is read on its own worker thread and
+     * its attributes are mapped to the output schema with an index plan built once per input. The
+     * mapped rows are passed in blocks through a bounded queue to the single writer.
+     */
     static final class MergeOp extends GeneralOperation {
         static final Logger LOGGER = Logging.getLogger(MergeOp.class);
 
+        static final int BLOCK_SIZE = 1000;
+
+        static final int QUEUE_CAPACITY = 16;
+
+        static final Object[][] END_OF_INPUT = new Object[0][];
+
         private String outputName = "Merge"; //$NON-NLS-1$
 
+        private int parallelism = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+        private int featureCount = 0;
+
+        private boolean canceled = false;
+
         public MergeOp(String outputName) {
             this.outputName = outputName;
         }
 
+        public void setParallelism(int parallelism) {
+            this.parallelism = Math.max(1, parallelism);
+        }
+
+        /**
+         * Returns the number of features written by the last merge
+         */
+        public int getFeatureCount() {
+            return featureCount;
+        }
+
+        /**
+         * Returns true if the last merge was canceled, the partial output is rolled back
+         */
+        public boolean isCanceled() {
+            return canceled;
+        }
+
         public SimpleFeatureSource merge(List<SimpleFeatureCollection> fcList,
                 SimpleFeatureCollection template, IProgressMonitor monitor) throws IOException {
             if (template == null) {
@@ -313,43 +376,169 @@ public class MergeFeaturesDialog extends AbstractGeoProcessingDialog implements
             }
 
             // prepare feature type
-            SimpleFeatureType destSchema = FeatureTypes.build(template, outputName);
+            final SimpleFeatureType destSchema = FeatureTypes.build(template, outputName);
+            final int geomIndex = destSchema.indexOf(destSchema.getGeometryDescriptor()
+                    .getLocalName());
+
+            final BlockingQueue<Object[][]> queue = new ArrayBlockingQueue<Object[][]>(
+                    QUEUE_CAPACITY);
+            final AtomicBoolean canceled = new AtomicBoolean(false);
+            // set when the writer no longer drains the queue, readers must not block then
+            final AtomicBoolean stopped = new AtomicBoolean(false);
+
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism,
+                    fcList.size()));
+            List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+            for (final SimpleFeatureCollection inputFeatures : fcList) {
+                readers.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        try {
+                            return Integer.valueOf(read(inputFeatures, destSchema, geomIndex,
+                                    queue, canceled, stopped));
+                        } finally {
+                            offer(queue, END_OF_INPUT, stopped);
+                        }
+                    }
+                }));
+            }
+            executor.shutdown();
+
+            SubMonitor progress = SubMonitor.convert(monitor, fcList.size());
+            featureCount = 0;
 
             // prepare transactional feature store
             IFeatureInserter featureWriter = getFeatureWriter(destSchema);
+            featureWriter.setFlushInterval(BLOCK_SIZE * QUEUE_CAPACITY);
+            IOException failure = null;
             try {
-                for (SimpleFeatureCollection inputFeatures : fcList) {
-                    monitor.worked(1);
-                    SimpleFeatureType inputSchema = inputFeatures.getSchema();
-                    SimpleFeatureIterator featureIter = inputFeatures.features();
-                    try {
-                        while (featureIter.hasNext()) {
-                            SimpleFeature feature = featureIter.next();
-
-                            // create feature and set geometry
-                            SimpleFeature newFeature = featureWriter.buildFeature();
-                            for (AttributeDescriptor ad : destSchema.getAttributeDescriptors()) {
-                                if (ad instanceof GeometryDescriptor
-                                        || inputSchema.indexOf(ad.getName()) == -1) {
-                                    continue;
-                                }
-                                newFeature.setAttribute(ad.getName(),
-                                        feature.getAttribute(ad.getName()));
+                int finished = 0;
+                long start = System.currentTimeMillis();
+                while (finished < fcList.size()) {
+                    if (progress.isCanceled()) {
+                        canceled.set(true);
+                    }
+
+                    Object[][] block = queue.poll(200, TimeUnit.MILLISECONDS);
+                    if (block == null) {
+                        continue;
+                    } else if (block == END_OF_INPUT) {
+                        finished++;
+                        progress.worked(1);
+                        continue;
+                    } else if (canceled.get()) {
+                        continue; // drain the queue so that readers can finish
+                    }
+
+                    for (Object[] values : block) {
+                        if (values == null) {
+                            break;
+                        }
+                        SimpleFeature newFeature = featureWriter.buildFeature();
+                        for (int index = 0; index < values.length; index++) {
+                            if (values[index] != null) {
+                                newFeature.setAttribute(index, values[index]);
                             }
-                            newFeature.setDefaultGeometry(feature.getDefaultGeometry());
-                            featureWriter.write(newFeature);
                         }
-                    } finally {
-                        featureIter.close();
+                        featureWriter.write(newFeature);
+                        featureCount++;
+                    }
+
+                    long elapsed = System.currentTimeMillis() - start;
+                    if (elapsed > 0) {
+                        progress.subTask(String.format(Messages.Task_FeaturesWritten,
+                                featureCount, featureCount * 1000d / elapsed));
                     }
                 }
+
+                for (Future<Integer> reader : readers) {
+                    reader.get();
+                }
+
+                if (canceled.get() || progress.isCanceled()) {
+                    canceled.set(true);
+                    featureWriter.rollback();
+                }
+            } catch (InterruptedException e) {
+                canceled.set(true);
+                featureWriter.rollback(e);
+            } catch (ExecutionException e) {
+                featureWriter.rollback(e);
+                failure = new IOException(e.getCause());
             } catch (IOException e) {
                 featureWriter.rollback(e);
+                failure = e;
             } finally {
+                stopped.set(true);
+                queue.clear();
+                executor.shutdownNow();
                 featureWriter.close();
             }
 
-            return featureWriter.getFeatureSource();
+            if (failure != null) {
+                throw failure;
+            }
+            this.canceled = canceled.get();
+            return this.canceled ? null : featureWriter.getFeatureSource();
+        }
+
+        // waits until the writer takes the block or stops draining the queue
+        private static boolean offer(BlockingQueue<Object[][]> queue, Object[][] block,
+                AtomicBoolean stopped) throws InterruptedException {
+            while (!stopped.get()) {
+                if (queue.offer(block, 200, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int read(SimpleFeatureCollection inputFeatures, SimpleFeatureType destSchema,
+                int geomIndex, BlockingQueue<Object[][]> queue, AtomicBoolean canceled,
+                AtomicBoolean stopped) throws InterruptedException {
+            // attribute index plan: input index of each output attribute, -1 if not exists
+            SimpleFeatureType inputSchema = inputFeatures.getSchema();
+            int[] plan = new int[destSchema.getAttributeCount()];
+            for (int index = 0; index < plan.length; index++) {
+                AttributeDescriptor ad = destSchema.getDescriptor(index);
+                plan[index] = ad instanceof GeometryDescriptor ? -1 : inputSchema.indexOf(ad
+                        .getName());
+            }
+
+            int count = 0;
+            int pos = 0;
+            Object[][] block = new Object[BLOCK_SIZE][];
+            SimpleFeatureIterator featureIter = inputFeatures.features();
+            try {
+                while (featureIter.hasNext() && !canceled.get() && !stopped.get()) {
+                    SimpleFeature feature = featureIter.next();
+
+                    Object[] values = new Object[plan.length];
+                    for (int index = 0; index < plan.length; index++) {
+                        if (plan[index] != -1) {
+                            values[index] = feature.getAttribute(plan[index]);
+                        }
+                    }
+                    values[geomIndex] = feature.getDefaultGeometry();
+
+                    block[pos++] = values;
+                    if (pos == BLOCK_SIZE) {
+                        if (!offer(queue, block, stopped)) {
+                            break;
+                        }
+                        block = new Object[BLOCK_SIZE][];
+                        pos = 0;
+                    }
+                    count++;
+                }
+
+                if (pos > 0 && !canceled.get()) {
+                    offer(queue, block, stopped); // a partial block ends with null
+                }
+            } finally {
+                featureIter.close();
+            }
+            return count;
         }
     }
-}
\ No newline at end of file
+}
@@ -47,8 +47,6 @@ import org.geotools.process.spatialstatistics.GlobalMoransIProcess;
 import org.geotools.process.spatialstatistics.GlobalMoransIProcess.MoransIProcessResult;
 import org.geotools.process.spatialstatistics.GlobalMoransIProcessFactory;
 import org.geotools.process.spatialstatistics.autocorrelation.LocalMoranIStatisticOperation;
-import org.geotools.process.spatialstatistics.core.SpatialEvent;
-import org.geotools.process.spatialstatistics.core.WeightMatrixBuilder;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
 import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
@@ -85,9 +83,6 @@ import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
 import org.opengis.util.ProgressListener;
 
-import com.vividsolutions.jts.geom.Coordinate;
-import com.vividsolutions.jts.geom.Geometry;
-
 /**
  * Moran Scatter Plot Dialog
  * 
@@ -115,9 +110,8 @@ public class MoranScatterPlotDialog extends AbstractGeoProcessingDialog implemen
 
     private boolean crossCenter = true;
 
-    private WeightMatrixBuilder swMatrix;
-
-    private double[] zScore;
+    // spatial lag of the z scores, in the order of the output features
+    private double[] spatialLag;
 
     private SpatialConcept spatialConcept = SpatialConcept.InverseDistance;
 
@@ -329,7 +323,7 @@ public class MoranScatterPlotDialog extends AbstractGeoProcessingDialog implemen
                 XYSeries xySeries = dataSet.getSeries(item.getSeriesIndex());
                 XYDataItem2 dataItem = (XYDataItem2) xySeries.getDataItem(item.getItem());
 
-                Filter selectionFilter = ff.id(ff.featureId(dataItem.getFeature().getID()));
+                Filter selectionFilter = ff.id(ff.featureId(dataItem.getFeatureID()));
                 map.select(selectionFilter, outputLayer);
             } else {
                 map.select(Filter.EXCLUDE, outputLayer);
@@ -474,20 +468,18 @@ public class MoranScatterPlotDialog extends AbstractGeoProcessingDialog implemen
         XYSeries xySeries = new XYSeries(features.getSchema().getTypeName());
         minMaxVisitor.reset();
 
-        String typeName = features.getSchema().getTypeName();
         SimpleFeatureIterator featureIter = features.features();
         try {
-            int i = 0;
+            int row = 0;
             while (featureIter.hasNext()) {
                 SimpleFeature feature = featureIter.next();
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                Coordinate coordinate = geometry.getCentroid().getCoordinate();
+                int index = row++;
 
                 // The X axis of the scatter plot represents the standardised Z values of your
                 // variable (that is, they’ve been standardised to their Z scores, with a mean of
                 // zero, and a standard deviation of 1.)
                 Double x = Converters.convert(feature.getAttribute("LMiZScore"), Double.class);
-                if (x == null || x.isInfinite() || x.isNaN()) {
+                if (x == null || x.isInfinite() || x.isNaN() || index >= spatialLag.length) {
                     continue;
                 }
 
@@ -497,23 +489,7 @@ public class MoranScatterPlotDialog extends AbstractGeoProcessingDialog implemen
                 // a contiguous spatial weights matrix, with a first order queen contiguity, the
                 // value of the y axis represents the mean value of the variable for all of the
                 // areas that share a border with the area of interest.
-                SpatialEvent source = new SpatialEvent(typeName + "." + ++i, coordinate);
-                int neighbors = 0;
-                double zSum = 0d;
-                for (int j = 0; j < swMatrix.getEvents().size(); j++) {
-                    SpatialEvent target = swMatrix.getEvents().get(j);
-                    if (source.id == target.id) {
-                        continue;
-                    }
-
-                    double wij = swMatrix.getWeight(source, target);
-                    if (wij > 0) {
-                        neighbors++;
-                        zSum += zScore[j];
-                    }
-                }
-
-                double y = neighbors == 0 ? 0d : zSum / neighbors;
+                double y = spatialLag[index];
                 minMaxVisitor.visit(x, y);
                 xySeries.add(new XYDataItem2(feature, x, y));
             }
@@ -605,8 +581,10 @@ public class MoranScatterPlotDialog extends AbstractGeoProcessingDialog implemen
                     .get(GlobalMoransIProcessFactory.inputFeatures.key), (String) params
                     .get(GlobalMoransIProcessFactory.inputField.key));
 
-            swMatrix = opertor.getSpatialWeightMatrix();
-            zScore = opertor.getZScore();
+            // the output features are written in the order of the events
+            SpatialLagMatrix lagMatrix = SpatialLagMatrix.build(
+                    opertor.getSpatialWeightMatrix(), spatialConcept);
+            spatialLag = lagMatrix.lag(opertor.getZScore());
 
             subMonitor.complete();
             monitor.subTask(Messages.Task_AddingLayer);
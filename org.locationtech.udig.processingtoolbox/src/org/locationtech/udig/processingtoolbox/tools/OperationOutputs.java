@@ -0,0 +1,81 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.process.spatialstatistics.storage.NamePolicy;
+import org.locationtech.udig.processingtoolbox.styler.MapUtils;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+/**
+ * Helpers for the output layers of the split, clip and merge operations.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+final class OperationOutputs {
+
+    private OperationOutputs() {
+    }
+
+    /**
+     * Same as ShapeExportOperation: shape_leng and shape_area are skipped
+     */
+    static boolean isShapeField(AttributeDescriptor descriptor) {
+        String name = descriptor.getLocalName();
+        return name.equalsIgnoreCase("shape_leng") //$NON-NLS-1$
+                || name.equalsIgnoreCase("shape_area"); //$NON-NLS-1$
+    }
+
+    static String applyPolicy(String name, NamePolicy namePolicy) {
+        switch (namePolicy) {
+        case LOWERCASE:
+            return name.toLowerCase();
+        case UPPERCASE:
+            return name.toUpperCase();
+        default:
+            return name;
+        }
+    }
+
+    /**
+     * Returns the indexes of the source attributes kept in the output, in the output order
+     */
+    static int[] buildSourceIndexes(SimpleFeatureType schema) {
+        List<Integer> indexes = new ArrayList<Integer>();
+        for (int index = 0; index < schema.getAttributeCount(); index++) {
+            AttributeDescriptor descriptor = schema.getDescriptor(index);
+            if (!(descriptor instanceof GeometryDescriptor) && isShapeField(descriptor)) {
+                continue;
+            }
+            indexes.add(Integer.valueOf(index));
+        }
+
+        int[] sourceIndexes = new int[indexes.size()];
+        for (int index = 0; index < sourceIndexes.length; index++) {
+            sourceIndexes[index] = indexes.get(index).intValue();
+        }
+        return sourceIndexes;
+    }
+
+    /**
+     * Removes the output of a canceled operation. The feature writers commit their blocks at the
+     * flush interval, so a rollback only discards the rows written after the last flush.
+     */
+    static void removeCanceled(File outputFile) {
+        MapUtils.confirmSpatialFile(outputFile);
+    }
+}
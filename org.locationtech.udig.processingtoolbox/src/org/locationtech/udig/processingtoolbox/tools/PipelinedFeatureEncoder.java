@@ -0,0 +1,303 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.transformation.GXTSimpleFeatureCollection;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Producer/consumer pipeline of the format conversion.
+ * <p>
+ * A reader thread pulls the features into batches. For text formats each batch is encoded to a
+ * text segment by a pool of encoder workers and the segments are written in the order of the
+ * input: the futures of the batches are passed through a bounded ring, so at most a few batches
+ * are kept in memory. Formats that are encoded as a whole document(GML, KML, Shapefile) read the
+ * features through {@link #prefetch(SimpleFeatureCollection)}, which overlaps reading with
+ * encoding.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class PipelinedFeatureEncoder {
+    protected static final Logger LOGGER = Logging.getLogger(PipelinedFeatureEncoder.class);
+
+    static final int BATCH_SIZE = 1000;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Encodes a batch of features to a text segment. One encoder is created per worker thread.
+     */
+    public interface SegmentEncoder {
+        void encode(List<SimpleFeature> batch, StringBuilder segment) throws IOException;
+    }
+
+    /**
+     * Creates the encoder of a worker thread
+     */
+    public interface SegmentEncoderFactory {
+        SegmentEncoder create();
+    }
+
+    /**
+     * Receives the encoded segments in the order of the input
+     */
+    public interface SegmentWriter {
+        void write(CharSequence segment) throws IOException;
+    }
+
+    /**
+     * Encodes the features in parallel and writes the segments in order
+     *
+     * @param features the features
+     * @param factory the encoder factory
+     * @param writer the segment writer, called on the calling thread
+     * @throws IOException
+     */
+    public void encode(final SimpleFeatureCollection features,
+            final SegmentEncoderFactory factory, SegmentWriter writer) throws IOException {
+        final ThreadLocal<SegmentEncoder> encoders = new ThreadLocal<SegmentEncoder>() {
+            @Override
+            protected SegmentEncoder initialValue() {
+                return factory.create();
+            }
+        };
+
+        final ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        final BlockingQueue<Future<StringBuilder>> ring;
+        ring = new ArrayBlockingQueue<Future<StringBuilder>>(parallelism * 2);
+        final Future<StringBuilder> endOfInput = new FutureTask<StringBuilder>(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, null);
+        // set when the consumer no longer takes from the ring, the reader must not block then
+        final AtomicBoolean stopped = new AtomicBoolean(false);
+
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        Future<Integer> readerResult = reader.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                int count = 0;
+                SimpleFeatureIterator featureIter = features.features();
+                try {
+                    List<SimpleFeature> batch = new ArrayList<SimpleFeature>(BATCH_SIZE);
+                    while (featureIter.hasNext() && !stopped.get()) {
+                        batch.add(featureIter.next());
+                        if (batch.size() == BATCH_SIZE) {
+                            if (!offer(ring, workers.submit(new EncodeTask(batch, encoders)),
+                                    stopped)) {
+                                break;
+                            }
+                            batch = new ArrayList<SimpleFeature>(BATCH_SIZE);
+                        }
+                        count++;
+                    }
+                    if (batch.size() > 0 && !stopped.get()) {
+                        offer(ring, workers.submit(new EncodeTask(batch, encoders)), stopped);
+                    }
+                } finally {
+                    featureIter.close();
+                    offer(ring, endOfInput, stopped);
+                }
+                return Integer.valueOf(count);
+            }
+        });
+
+        try {
+            while (true) {
+                Future<StringBuilder> segment = ring.take();
+                if (segment == endOfInput) {
+                    break;
+                }
+                writer.write(segment.get());
+            }
+            readerResult.get();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                    : new IOException(e.getCause());
+        } finally {
+            stopped.set(true);
+            ring.clear();
+            reader.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits until the item is queued or the consumer stops taking items, never blocks once stopped
+     *
+     * @return true if the item is queued
+     */
+    static <T> boolean offer(BlockingQueue<T> queue, T item, AtomicBoolean stopped)
+            throws InterruptedException {
+        while (!stopped.get()) {
+            if (queue.offer(item, 200, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static final class EncodeTask implements Callable<StringBuilder> {
+        private final List<SimpleFeature> batch;
+
+        private final ThreadLocal<SegmentEncoder> encoders;
+
+        EncodeTask(List<SimpleFeature> batch, ThreadLocal<SegmentEncoder> encoders) {
+            this.batch = batch;
+            this.encoders = encoders;
+        }
+
+        @Override
+        public StringBuilder call() throws Exception {
+            StringBuilder segment = new StringBuilder(batch.size() * 128);
+            encoders.get().encode(batch, segment);
+            return segment;
+        }
+    }
+
+    /**
+     * Returns a view of the features whose iterators are filled by a reader thread
+     */
+    public SimpleFeatureCollection prefetch(SimpleFeatureCollection features) {
+        return new PrefetchFeatureCollection(features);
+    }
+
+    static final class PrefetchFeatureCollection extends GXTSimpleFeatureCollection {
+        static final int CAPACITY = 8;
+
+        PrefetchFeatureCollection(SimpleFeatureCollection delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public SimpleFeatureIterator features() {
+            return new PrefetchFeatureIterator(delegate);
+        }
+    }
+
+    static final class PrefetchFeatureIterator implements SimpleFeatureIterator {
+        static final List<SimpleFeature> END_OF_INPUT = new ArrayList<SimpleFeature>(0);
+
+        private final BlockingQueue<List<SimpleFeature>> queue;
+
+        private final ExecutorService reader;
+
+        private final Future<?> readerResult;
+
+        private final AtomicBoolean stopped = new AtomicBoolean(false);
+
+        private List<SimpleFeature> current = new ArrayList<SimpleFeature>(0);
+
+        private int pos = 0;
+
+        PrefetchFeatureIterator(final SimpleFeatureCollection features) {
+            this.queue = new ArrayBlockingQueue<List<SimpleFeature>>(
+                    PrefetchFeatureCollection.CAPACITY);
+            this.reader = Executors.newSingleThreadExecutor();
+            this.readerResult = reader.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    SimpleFeatureIterator featureIter = features.features();
+                    try {
+                        List<SimpleFeature> batch = new ArrayList<SimpleFeature>(BATCH_SIZE);
+                        while (featureIter.hasNext() && !stopped.get()) {
+                            batch.add(featureIter.next());
+                            if (batch.size() == BATCH_SIZE) {
+                                if (!offer(queue, batch, stopped)) {
+                                    break;
+                                }
+                                batch = new ArrayList<SimpleFeature>(BATCH_SIZE);
+                            }
+                        }
+                        if (batch.size() > 0) {
+                            offer(queue, batch, stopped);
+                        }
+                    } finally {
+                        featureIter.close();
+                        offer(queue, END_OF_INPUT, stopped);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (pos < current.size()) {
+                return true;
+            } else if (current == END_OF_INPUT) {
+                return false;
+            }
+
+            try {
+                current = queue.take();
+                pos = 0;
+                if (current == END_OF_INPUT) {
+                    readerResult.get(); // throws the failure of the reader
+                    return false;
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        @Override
+        public SimpleFeature next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException("hasNext() returned false!"); //$NON-NLS-1$
+            }
+            return current.get(pos++);
+        }
+
+        @Override
+        public void close() {
+            // the encoder may close the iterator before the end of the input
+            stopped.set(true);
+            queue.clear();
+            reader.shutdownNow();
+        }
+    }
+}
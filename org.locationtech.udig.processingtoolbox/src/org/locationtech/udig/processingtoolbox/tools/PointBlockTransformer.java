@@ -0,0 +1,134 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.util.logging.Logging;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Builds points from x, y coordinates in blocks: the coordinates of a block are reprojected by
+ * one {@link MathTransform#transform(double[], int, double[], int, int)} call before the points
+ * are created. The points are passed to the handler in the order they were added.
+ * <p>
+ * If a block fails, its coordinates are transformed one by one and the coordinates that can not
+ * be transformed are kept, like the per point transform of the importers.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class PointBlockTransformer<T> {
+    protected static final Logger LOGGER = Logging.getLogger(PointBlockTransformer.class);
+
+    public static final int BLOCK_SIZE = 4096;
+
+    /**
+     * Receives the points with the item they were added with
+     */
+    public interface PointHandler<T> {
+        void handle(T item, Point point) throws IOException;
+    }
+
+    private final GeometryFactory factory;
+
+    private final MathTransform transform;
+
+    private final PointHandler<T> handler;
+
+    private final double[] coordinates;
+
+    private final double[] transformed;
+
+    private final Object[] items;
+
+    private int size = 0;
+
+    /**
+     * @param factory the geometry factory
+     * @param transform the transform, null to create the points as they are
+     * @param handler the point handler
+     */
+    public PointBlockTransformer(GeometryFactory factory, MathTransform transform,
+            PointHandler<T> handler) {
+        this.factory = factory;
+        this.handler = handler;
+        // only 2D transforms can be applied to x, y pairs
+        boolean is2D = transform != null && transform.getSourceDimensions() == 2
+                && transform.getTargetDimensions() == 2;
+        this.transform = is2D ? transform : null;
+        if (transform != null && !is2D) {
+            LOGGER.log(Level.WARNING, "Only two dimensional transforms are supported!");
+        }
+
+        this.coordinates = new double[BLOCK_SIZE * 2];
+        this.transformed = this.transform == null ? coordinates : new double[BLOCK_SIZE * 2];
+        this.items = new Object[BLOCK_SIZE];
+    }
+
+    public void add(double x, double y, T item) throws IOException {
+        coordinates[size * 2] = x;
+        coordinates[size * 2 + 1] = y;
+        items[size++] = item;
+        if (size == BLOCK_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Transforms the pending coordinates and passes the points to the handler
+     */
+    @SuppressWarnings("unchecked")
+    public void flush() throws IOException {
+        if (size == 0) {
+            return;
+        }
+
+        if (transform != null) {
+            try {
+                transform.transform(coordinates, 0, transformed, 0, size);
+            } catch (TransformException e) {
+                LOGGER.log(Level.FINER, e.getMessage(), e);
+                transformEach();
+            }
+        }
+
+        int count = size;
+        size = 0;
+        for (int index = 0; index < count; index++) {
+            Coordinate coordinate = new Coordinate(transformed[index * 2],
+                    transformed[index * 2 + 1]);
+            T item = (T) items[index];
+            items[index] = null;
+            handler.handle(item, factory.createPoint(coordinate));
+        }
+    }
+
+    private void transformEach() {
+        for (int index = 0; index < size; index++) {
+            int offset = index * 2;
+            try {
+                transform.transform(coordinates, offset, transformed, offset, 1);
+            } catch (TransformException e) {
+                LOGGER.log(Level.FINER, e.getMessage(), e);
+                transformed[offset] = coordinates[offset];
+                transformed[offset + 1] = coordinates[offset + 1];
+            }
+        }
+    }
+}
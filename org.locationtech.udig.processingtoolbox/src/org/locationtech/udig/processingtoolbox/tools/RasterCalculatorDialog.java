@@ -9,11 +9,7 @@
  */
 package org.locationtech.udig.processingtoolbox.tools;
 
-import java.awt.Dimension;
 import java.awt.geom.AffineTransform;
-import java.awt.image.ColorModel;
-import java.awt.image.DataBuffer;
-import java.awt.image.SampleModel;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.lang.reflect.InvocationTargetException;
@@ -24,19 +20,11 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.media.jai.PlanarImage;
-import javax.media.jai.RasterFactory;
-import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
-import javax.media.jai.iterator.RectIterFactory;
-import javax.media.jai.iterator.WritableRectIter;
-
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jface.dialogs.IDialogConstants;
@@ -67,32 +55,16 @@ import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.PlatformUI;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridGeometry2D;
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.factory.GeoTools;
-import org.geotools.feature.collection.SubFeatureCollection;
-import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.filter.FunctionFactory;
 import org.geotools.filter.text.cql2.CQLException;
 import org.geotools.filter.text.ecql.ECQL;
-import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
-import org.geotools.process.spatialstatistics.core.FeatureTypes;
-import org.geotools.process.spatialstatistics.core.SSUtils;
-import org.geotools.process.spatialstatistics.enumeration.ResampleType;
-import org.geotools.process.spatialstatistics.gridcoverage.GridTransformer;
-import org.geotools.process.spatialstatistics.gridcoverage.RasterClipOperation;
 import org.geotools.process.spatialstatistics.gridcoverage.RasterHelper;
-import org.geotools.process.spatialstatistics.gridcoverage.RasterReprojectOperation;
-import org.geotools.process.spatialstatistics.gridcoverage.RasterResampleOperation;
 import org.geotools.process.spatialstatistics.storage.RasterExportOperation;
 import org.geotools.process.spatialstatistics.styler.SSStyleBuilder;
-import org.geotools.process.spatialstatistics.transformation.GXTSimpleFeatureCollection;
-import org.geotools.referencing.CRS;
 import org.geotools.styling.Style;
 import org.geotools.util.logging.Logging;
-import org.jaitools.tiledimage.DiskMemImage;
 import org.locationtech.udig.processingtoolbox.ToolboxPlugin;
 import org.locationtech.udig.processingtoolbox.ToolboxView;
 import org.locationtech.udig.processingtoolbox.internal.Messages;
@@ -103,17 +75,11 @@ import org.locationtech.udig.processingtoolbox.styler.MapUtils;
 import org.locationtech.udig.project.ILayer;
 import org.locationtech.udig.project.IMap;
 import org.opengis.coverage.grid.GridCoverageReader;
-import org.opengis.feature.simple.SimpleFeature;
-import org.opengis.feature.simple.SimpleFeatureType;
-import org.opengis.filter.Filter;
 import org.opengis.filter.capability.FunctionName;
 import org.opengis.filter.expression.Expression;
 import org.opengis.parameter.Parameter;
-import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.geom.GeometryFactory;
 
 /**
  * Raster Calculator Dialog
@@ -594,40 +560,50 @@ public class RasterCalculatorDialog extends AbstractGeoProcessingDialog implemen
             monitor.worked(increment);
             ReferencedEnvelope extent = resolveExtent(layers);
 
-            // convert to features
-            CoveragesToPointFeatureCollection features = null;
-            features = new CoveragesToPointFeatureCollection(layers, extent, cellSizeX, cellSizeY);
-
             // calculate
             monitor.worked(increment);
-            GridCoverage2D coverage = calculateExpression(features, expression, extent, cellSizeX,
-                    cellSizeY, monitor);
+            RasterCalculatorOperation operation = new RasterCalculatorOperation();
+            IProgressMonitor subMonitor = SubMonitor.convert(monitor, 100).newChild(60);
+            File outputFile = new File(locationView.getFile());
+
+            GridCoverage2D coverage = null;
+            if (ToolboxView.getStreamingRasterOutput()) {
+                // each finished tile goes straight to the GeoTIFF file
+                long workingSet = ToolboxView.getRasterWorkingSetSize().longValue();
+                operation.setWorkingSetSize(workingSet * RasterCalculatorOperation.MEGABYTE);
+                coverage = operation.execute(layers, expression, extent, cellSizeX, cellSizeY,
+                        outputFile, subMonitor);
+            } else {
+                coverage = operation.execute(layers, expression, extent, cellSizeX, cellSizeY,
+                        subMonitor);
+                if (coverage != null) {
+                    monitor.worked(increment);
+                    RasterExportOperation saveAs = new RasterExportOperation();
+                    coverage = saveAs.saveAsGeoTiff(coverage, outputFile.getAbsolutePath());
+                }
+            }
 
             if (coverage == null) {
+                ToolboxPlugin.log(String.format(Messages.Task_Canceled, windowTitle));
                 return;
             }
 
-            Object minValue = coverage.getProperty("Minimum"); //$NON-NLS-1$
-            Object maxValue = coverage.getProperty("Maximum"); //$NON-NLS-1$
+            double minValue = operation.getMinValue();
+            double maxValue = operation.getMaxValue();
             int numBands = coverage.getNumSampleDimensions();
 
-            monitor.worked(increment);
-            RasterExportOperation saveAs = new RasterExportOperation();
-            coverage = saveAs.saveAsGeoTiff(coverage, locationView.getFile());
-
             Style style = null;
             monitor.worked(increment);
-            if (minValue != null && minValue instanceof Number && maxValue != null
-                    && maxValue instanceof Number && numBands == 1) {
+            if (!Double.isNaN(minValue) && !Double.isNaN(maxValue) && numBands == 1) {
                 Double noData = RasterHelper.getNoDataValue(coverage);
-                style = buildCoverageStyle((Double) minValue, (Double) maxValue, noData);
+                style = buildCoverageStyle(minValue, maxValue, noData);
             } else {
                 SSStyleBuilder builder = new SSStyleBuilder(null);
                 style = builder.getDefaultGridCoverageStyle(coverage);
             }
 
             monitor.worked(increment);
-            MapUtils.addGridCoverageToMap(map, coverage, new File(locationView.getFile()), style);
+            MapUtils.addGridCoverageToMap(map, coverage, outputFile, style);
         } catch (Exception e) {
             // always show log
             boolean showLog = ToolboxView.getShowLog();
@@ -640,66 +616,6 @@ public class RasterCalculatorDialog extends AbstractGeoProcessingDialog implemen
         }
     }
 
-    private GridCoverage2D calculateExpression(SimpleFeatureCollection features,
-            Expression expression, ReferencedEnvelope extent, double cellSizeX, double cellSizeY,
-            IProgressMonitor monitor) {
-        extent = RasterHelper.getResolvedEnvelope(extent, cellSizeX, cellSizeY);
-        SampleModel sampleModel = RasterFactory.createBandedSampleModel(DataBuffer.TYPE_DOUBLE,
-                128, 128, 1);
-        ColorModel cm = PlanarImage.createColorModel(sampleModel);
-
-        Dimension dm = RasterHelper.getDimension(extent, cellSizeX, cellSizeY);
-        double noDataValue = -Double.MAX_VALUE;
-        double minValue = Double.MAX_VALUE;
-        double maxValue = Double.MIN_VALUE;
-
-        DiskMemImage outputImage = null;
-        outputImage = new DiskMemImage(0, 0, dm.width, dm.height, 0, 0, sampleModel, cm);
-        outputImage.setUseCommonCache(true);
-
-        WritableRectIter writerIter = RectIterFactory.createWritable(outputImage,
-                outputImage.getBounds());
-
-        SubMonitor progress = SubMonitor.convert(monitor, dm.height).newChild(dm.height);
-        progress.beginTask(String.format(Messages.Task_Executing, windowTitle), dm.height);
-        progress.setWorkRemaining(dm.height);
-
-        SimpleFeatureIterator featureIter = features.features();
-        writerIter.startLines();
-        while (!writerIter.finishedLines()) {
-            progress.worked(1);
-            if (progress.isCanceled()) {
-                ToolboxPlugin.log(String.format(Messages.Task_Canceled, windowTitle));
-                featureIter.close();
-                return null;
-            }
-
-            writerIter.startPixels();
-            while (!writerIter.finishedPixels()) {
-                if (featureIter.hasNext()) {
-                    SimpleFeature feature = featureIter.next();
-                    Double value = expression.evaluate(feature, Double.class);
-                    if (value == null || value.isInfinite() || value.isNaN()) {
-                        writerIter.setSample(0, noDataValue);
-                    } else {
-                        double val = value.doubleValue();
-                        writerIter.setSample(0, val);
-                        minValue = Math.min(minValue, val);
-                        maxValue = Math.max(maxValue, val);
-                    }
-                } else {
-                    writerIter.setSample(0, noDataValue);
-                }
-                writerIter.nextPixel();
-            }
-            writerIter.nextLine();
-        }
-        featureIter.close();
-
-        return RasterHelper.createGridCoverage("result", outputImage, 1, noDataValue, minValue,
-                maxValue, extent);
-    }
-
     private ReferencedEnvelope resolveExtent(Map<String, GridCoverage2D> selectedLayers) {
         ReferencedEnvelope extent = null;
 
@@ -744,252 +660,4 @@ public class RasterCalculatorDialog extends AbstractGeoProcessingDialog implemen
 
         return map;
     }
-
-    static class CoveragesToPointFeatureCollection extends GXTSimpleFeatureCollection {
-        protected static final Logger LOGGER = Logging
-                .getLogger(CoveragesToPointFeatureCollection.class);
-
-        static final String TYPE_NAME = "Coverage";
-
-        private SimpleFeatureType schema;
-
-        private Map<String, GridCoverage2D> coverages;
-
-        private ReferencedEnvelope extent;
-
-        private double cellSizeX;
-
-        private double cellSizeY;
-
-        public CoveragesToPointFeatureCollection(Map<String, GridCoverage2D> coverages,
-                ReferencedEnvelope extent, double cellSizeX, double cellSizeY) {
-            super(null);
-
-            this.coverages = coverages;
-            this.extent = extent;
-            this.cellSizeX = cellSizeX;
-            this.cellSizeY = cellSizeY;
-            this.createTemplateFeatureType();
-        }
-
-        private void createTemplateFeatureType() {
-            CoordinateReferenceSystem targetCRS = extent.getCoordinateReferenceSystem();
-            schema = FeatureTypes.getDefaultType(TYPE_NAME,
-                    com.vividsolutions.jts.geom.Point.class, targetCRS);
-
-            for (Entry<String, GridCoverage2D> entry : coverages.entrySet()) {
-                GridCoverage2D coverage = entry.getValue();
-                String fieldName = entry.getKey();
-
-                schema = FeatureTypes.add(schema, fieldName, Double.class); // default, landsat8
-                for (int bndIdx = 0; bndIdx < coverage.getNumSampleDimensions(); bndIdx++) {
-                    schema = FeatureTypes.add(schema, fieldName + "_Band_" + bndIdx, Double.class);
-                }
-            }
-        }
-
-        @Override
-        public SimpleFeatureIterator features() {
-            return new CoveragesToPointFeatureIterator(getSchema());
-        }
-
-        @Override
-        public SimpleFeatureType getSchema() {
-            return schema;
-        }
-
-        @Override
-        public SimpleFeatureCollection subCollection(Filter filter) {
-            if (filter == Filter.INCLUDE) {
-                return this;
-            }
-            return new SubFeatureCollection(this, filter);
-        }
-
-        @Override
-        public int size() {
-            int columns = (int) Math.floor((extent.getWidth() / cellSizeX) + 0.5);
-            int rows = (int) Math.floor((extent.getHeight() / cellSizeY) + 0.5);
-            return columns * rows;
-        }
-
-        @Override
-        public ReferencedEnvelope getBounds() {
-            return extent;
-        }
-
-        final class CoveragesToPointFeatureIterator implements SimpleFeatureIterator {
-            private GeometryFactory gf = JTSFactoryFinder.getGeometryFactory(GeoTools
-                    .getDefaultHints());
-
-            private RandomIter[] readIter;
-
-            private GridTransformer[] trans;
-
-            private double[] noData;
-
-            private int[] bands;
-
-            private java.awt.Rectangle[] bounds;
-
-            private int currentRow = 0;
-
-            private int rowCount = Integer.MAX_VALUE;
-
-            private SimpleFeatureBuilder builder;
-
-            private SimpleFeature next;
-
-            private int featureID = 0;
-
-            private Map<Integer, List<Coordinate>> rowCells = new TreeMap<Integer, List<Coordinate>>();
-
-            public CoveragesToPointFeatureIterator(SimpleFeatureType schema) {
-                this.builder = new SimpleFeatureBuilder(schema);
-
-                readIter = new RandomIter[coverages.size()];
-
-                trans = new GridTransformer[coverages.size()];
-
-                noData = new double[coverages.size()];
-                bands = new int[coverages.size()];
-                bounds = new java.awt.Rectangle[coverages.size()];
-
-                int covIdx = 0;
-                CoordinateReferenceSystem targetCRS = schema.getCoordinateReferenceSystem();
-                for (Entry<String, GridCoverage2D> entry : coverages.entrySet()) {
-                    GridCoverage2D coverage = entry.getValue();
-
-                    // 1. reproject
-                    CoordinateReferenceSystem sourceCRS = coverage.getCoordinateReferenceSystem();
-                    if (!CRS.equalsIgnoreMetadata(sourceCRS, targetCRS)) {
-                        // Reproject
-                        RasterReprojectOperation project = new RasterReprojectOperation();
-                        coverage = project.execute(coverage, targetCRS, ResampleType.NEAREST,
-                                cellSizeX, cellSizeY);
-                    }
-
-                    // 2. resample
-                    GridGeometry2D gridGeometry2D = coverage.getGridGeometry();
-                    AffineTransform gridToWorld = (AffineTransform) gridGeometry2D.getGridToCRS2D();
-
-                    double cellX = Math.abs(gridToWorld.getScaleX());
-                    double cellY = Math.abs(gridToWorld.getScaleY());
-
-                    if (!SSUtils.compareDouble(cellX, cellSizeX)
-                            || !SSUtils.compareDouble(cellY, cellSizeY)) {
-                        RasterResampleOperation resample = new RasterResampleOperation();
-                        coverage = resample.execute(coverage, cellSizeX, cellSizeY,
-                                ResampleType.NEAREST);
-                    }
-
-                    // 3. clip
-                    ReferencedEnvelope env = new ReferencedEnvelope(coverage.getEnvelope());
-                    if (!extent.equals(env)) {
-                        RasterClipOperation clip = new RasterClipOperation();
-                        coverage = clip.execute(coverage, extent);
-                    }
-
-                    trans[covIdx] = new GridTransformer(coverage);
-
-                    noData[covIdx] = RasterHelper.getNoDataValue(coverage);
-                    bands[covIdx] = coverage.getNumSampleDimensions();
-
-                    PlanarImage inputImage = (PlanarImage) coverage.getRenderedImage();
-                    java.awt.Rectangle bound = inputImage.getBounds();
-
-                    readIter[covIdx] = RandomIterFactory.create(inputImage, bound);
-                    bounds[covIdx] = bound;
-                    rowCount = Math.min(rowCount, bound.height);
-                    covIdx++;
-                }
-
-                currentRow = 0;
-                rowCells.clear();
-            }
-
-            @Override
-            public void close() {
-                // nothing to do
-            }
-
-            private void extractValues() {
-                for (int covIdx = 0; covIdx < readIter.length; covIdx++) {
-                    List<Coordinate> coords = new ArrayList<Coordinate>();
-                    rowCells.put(Integer.valueOf(covIdx), coords);
-
-                    int minX = bounds[covIdx].x; // Minimum inclusive
-                    int maxX = bounds[covIdx].width + minX; // Maximum exclusive
-                    int row = bounds[covIdx].y + currentRow;
-
-                    for (int column = minX; column < maxX; column++) {
-                        double[] vals = readIter[covIdx].getPixel(column, row,
-                                new double[bands[covIdx]]);
-
-                        Coordinate coord = trans[covIdx].gridToWorldCoordinate(column, row);
-                        coord.z = getRasterValue(vals[0], noData[covIdx]);
-                        coords.add(coord);
-
-                        for (int bndIdx = 0; bndIdx < bands[covIdx]; bndIdx++) {
-                            coord = (Coordinate) coord.clone();
-                            coord.z = getRasterValue(vals[bndIdx], noData[covIdx]);
-                            coords.add(coord);
-                        }
-                    }
-                }
-                currentRow++;
-            }
-
-            public boolean hasNext() {
-                while (next == null && (rowCount > currentRow || rowCells.size() > 0)) {
-                    if (rowCells.size() == 0) {
-                        extractValues();
-                    }
-
-                    if (rowCells.size() > 0) {
-                        int feldIndex = 1; // 0 = geom
-                        for (int covIdx = 0; covIdx < rowCells.size(); covIdx++) {
-                            List<Coordinate> coordinates = rowCells.get(covIdx);
-                            if (coordinates.size() > 0) {
-                                if (next == null) {
-                                    next = builder.buildFeature(buildID(TYPE_NAME, ++featureID));
-                                    next.setDefaultGeometry(gf.createPoint(coordinates.get(0)));
-                                }
-
-                                for (int bndIdx = 0; bndIdx <= bands[covIdx]; bndIdx++) {
-                                    Coordinate coord = coordinates.get(0);
-                                    next.setAttribute(feldIndex++, getFeatureValue(coord.z));
-                                    coordinates.remove(0);
-                                }
-                            } else {
-                                rowCells.clear();
-                                break;
-                            }
-                        }
-                    }
-                }
-
-                return next != null;
-            }
-
-            public SimpleFeature next() throws NoSuchElementException {
-                if (!hasNext()) {
-                    throw new NoSuchElementException("hasNext() returned false!");
-                }
-
-                SimpleFeature result = next;
-                next = null;
-                return result;
-            }
-
-            private double getRasterValue(double value, double noData) {
-                return SSUtils.compareDouble(noData, value) ? Double.NaN : value;
-            }
-
-            private Double getFeatureValue(double value) {
-                return Double.isNaN(value) || Double.isInfinite(value) ? null : value;
-            }
-        }
-    }
-
 }
@@ -0,0 +1,664 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.RasterFactory;
+import javax.media.jai.SourcelessOpImage;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridGeometry2D;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.process.ProcessException;
+import org.geotools.process.spatialstatistics.core.SSUtils;
+import org.geotools.process.spatialstatistics.enumeration.ResampleType;
+import org.geotools.process.spatialstatistics.gridcoverage.RasterClipOperation;
+import org.geotools.process.spatialstatistics.gridcoverage.RasterHelper;
+import org.geotools.process.spatialstatistics.gridcoverage.RasterReprojectOperation;
+import org.geotools.process.spatialstatistics.gridcoverage.RasterResampleOperation;
+import org.geotools.process.spatialstatistics.storage.RasterExportOperation;
+import org.geotools.referencing.CRS;
+import org.geotools.util.logging.Logging;
+import org.jaitools.tiledimage.DiskMemImage;
+import org.locationtech.udig.processingtoolbox.styler.MapUtils;
+import org.locationtech.udig.processingtoolbox.tools.expression.CompiledExpression;
+import org.locationtech.udig.processingtoolbox.tools.expression.NumericExpressionCompiler;
+import org.opengis.filter.expression.Expression;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Map algebra operation used by the Raster Calculator.
+ * <p>
+ * The expression is compiled once and evaluated directly over the double sample buffers of the
+ * input coverages. Output tiles are calculated in parallel on a fork-join pool, either into a
+ * {@link DiskMemImage} or, in streaming mode, straight into a tiled and compressed GeoTIFF file.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+@SuppressWarnings("nls")
+public class RasterCalculatorOperation {
+    protected static final Logger LOGGER = Logging.getLogger(RasterCalculatorOperation.class);
+
+    static final int TILE_SIZE = 128;
+
+    static final String BAND_SUFFIX = "_Band_";
+
+    static final long MEGABYTE = 1024L * 1024L;
+
+    private double noDataValue = -Double.MAX_VALUE;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private long workingSetSize = 256 * MEGABYTE;
+
+    private String compressionType = "LZW";
+
+    private double minValue = Double.NaN;
+
+    private double maxValue = Double.NaN;
+
+    public double getNoDataValue() {
+        return noDataValue;
+    }
+
+    public void setNoDataValue(double noDataValue) {
+        this.noDataValue = noDataValue;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Returns the maximum bytes of output tiles held in memory in streaming mode
+     */
+    public long getWorkingSetSize() {
+        return workingSetSize;
+    }
+
+    public void setWorkingSetSize(long workingSetSize) {
+        this.workingSetSize = workingSetSize;
+    }
+
+    public String getCompressionType() {
+        return compressionType;
+    }
+
+    public void setCompressionType(String compressionType) {
+        this.compressionType = compressionType;
+    }
+
+    /**
+     * Returns the minimum value of the last execution or Double.NaN
+     */
+    public double getMinValue() {
+        return minValue;
+    }
+
+    /**
+     * Returns the maximum value of the last execution or Double.NaN
+     */
+    public double getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * Reprojects, resamples and clips the coverage to the calculation extent and cell size
+     */
+    public static GridCoverage2D prepareCoverage(GridCoverage2D coverage,
+            ReferencedEnvelope extent, double cellSizeX, double cellSizeY) {
+        // 1. reproject
+        CoordinateReferenceSystem targetCRS = extent.getCoordinateReferenceSystem();
+        CoordinateReferenceSystem sourceCRS = coverage.getCoordinateReferenceSystem();
+        if (!CRS.equalsIgnoreMetadata(sourceCRS, targetCRS)) {
+            RasterReprojectOperation project = new RasterReprojectOperation();
+            coverage = project.execute(coverage, targetCRS, ResampleType.NEAREST, cellSizeX,
+                    cellSizeY);
+        }
+
+        // 2. resample
+        GridGeometry2D gridGeometry2D = coverage.getGridGeometry();
+        AffineTransform gridToWorld = (AffineTransform) gridGeometry2D.getGridToCRS2D();
+
+        double cellX = Math.abs(gridToWorld.getScaleX());
+        double cellY = Math.abs(gridToWorld.getScaleY());
+
+        if (!SSUtils.compareDouble(cellX, cellSizeX) || !SSUtils.compareDouble(cellY, cellSizeY)) {
+            RasterResampleOperation resample = new RasterResampleOperation();
+            coverage = resample.execute(coverage, cellSizeX, cellSizeY, ResampleType.NEAREST);
+        }
+
+        // 3. clip
+        ReferencedEnvelope env = new ReferencedEnvelope(coverage.getEnvelope());
+        if (!extent.equals(env)) {
+            RasterClipOperation clip = new RasterClipOperation();
+            coverage = clip.execute(coverage, extent);
+        }
+
+        return coverage;
+    }
+
+    /**
+     * Evaluates the expression for every cell of the extent
+     *
+     * @param coverages input coverages keyed by layer name
+     * @param expression numeric expression, [layer] or [layer_Band_N] refers to a cell value
+     * @param extent output extent
+     * @param cellSizeX output cell size x
+     * @param cellSizeY output cell size y
+     * @param monitor progress monitor, polled on the calling thread
+     * @return the result coverage or null if canceled
+     */
+    public GridCoverage2D execute(Map<String, GridCoverage2D> coverages, Expression expression,
+            ReferencedEnvelope extent, double cellSizeX, double cellSizeY,
+            IProgressMonitor monitor) throws ProcessException {
+        if (monitor == null) {
+            monitor = new NullProgressMonitor();
+        }
+
+        extent = RasterHelper.getResolvedEnvelope(extent, cellSizeX, cellSizeY);
+        TileContext context = createContext(coverages, expression, extent, cellSizeX, cellSizeY);
+
+        DiskMemImage outputImage = new DiskMemImage(0, 0, context.width, context.height, 0, 0,
+                context.sampleModel, context.colorModel);
+        outputImage.setUseCommonCache(true);
+
+        int tileCount = outputImage.getNumXTiles() * outputImage.getNumYTiles();
+        monitor.beginTask(expression.toString(), tileCount);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            ForkJoinTask<double[]> task = pool.submit(new TileTask(context, outputImage, 0,
+                    tileCount));
+            waitFor(task, context, monitor);
+
+            double[] range = task.get();
+            if (context.canceled.get()) {
+                return null;
+            }
+
+            updateRange(range);
+            return RasterHelper.createGridCoverage("result", outputImage, 1, noDataValue,
+                    getRangeValue(minValue), getRangeValue(maxValue), extent);
+        } catch (InterruptedException e) {
+            context.canceled.set(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new ProcessException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+            monitor.done();
+        }
+    }
+
+    /**
+     * Evaluates the expression for every cell of the extent and writes each output tile straight
+     * into a tiled, compressed GeoTIFF file. At most {@link #getWorkingSetSize()} bytes of output
+     * tiles are held in memory.
+     *
+     * @param outputFile the GeoTIFF file
+     * @return the coverage read from the written file or null if canceled
+     */
+    public GridCoverage2D execute(Map<String, GridCoverage2D> coverages, Expression expression,
+            ReferencedEnvelope extent, double cellSizeX, double cellSizeY, final File outputFile,
+            IProgressMonitor monitor) throws ProcessException {
+        if (monitor == null) {
+            monitor = new NullProgressMonitor();
+        }
+
+        extent = RasterHelper.getResolvedEnvelope(extent, cellSizeX, cellSizeY);
+        TileContext context = createContext(coverages, expression, extent, cellSizeX, cellSizeY);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        ExecutorService writerService = Executors.newSingleThreadExecutor();
+
+        final StreamingImage outputImage = new StreamingImage(context, pool);
+        int tileCount = outputImage.getNumXTiles() * outputImage.getNumYTiles();
+        monitor.beginTask(expression.toString(), tileCount);
+
+        try {
+            // the value range is not known until every tile is written
+            final GridCoverage2D source = RasterHelper.createGridCoverage("result", outputImage,
+                    1, noDataValue, 0d, 0d, extent);
+
+            Future<GridCoverage2D> task = writerService.submit(new Callable<GridCoverage2D>() {
+                @Override
+                public GridCoverage2D call() throws Exception {
+                    RasterExportOperation saveAs = new RasterExportOperation();
+                    saveAs.setTileMode(true);
+                    saveAs.setTileWidth(TILE_SIZE);
+                    saveAs.setTileHEight(TILE_SIZE);
+                    saveAs.setCompressionMode(true);
+                    saveAs.setCompressionType(compressionType);
+                    return saveAs.saveAsGeoTiff(source, outputFile.getAbsolutePath());
+                }
+            });
+            waitFor(task, context, monitor);
+
+            if (context.canceled.get()) {
+                task.cancel(true);
+                MapUtils.confirmSpatialFile(outputFile);
+                return null;
+            }
+
+            GridCoverage2D coverage = task.get();
+            updateRange(outputImage.range);
+            return coverage;
+        } catch (InterruptedException e) {
+            context.canceled.set(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (context.canceled.get()) {
+                MapUtils.confirmSpatialFile(outputFile);
+                return null;
+            }
+            throw new ProcessException(e.getCause());
+        } finally {
+            writerService.shutdownNow();
+            pool.shutdownNow();
+            monitor.done();
+        }
+    }
+
+    private void waitFor(Future<?> task, TileContext context, IProgressMonitor monitor)
+            throws InterruptedException, ExecutionException {
+        int reported = 0;
+        while (!task.isDone()) {
+            try {
+                task.get(200, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // update progress
+            } catch (ExecutionException e) {
+                break;
+            }
+
+            int completed = context.completed.get();
+            monitor.worked(completed - reported);
+            reported = completed;
+
+            if (monitor.isCanceled()) {
+                context.canceled.set(true);
+            }
+        }
+    }
+
+    private void updateRange(double[] range) {
+        minValue = range[0] == Double.MAX_VALUE ? Double.NaN : range[0];
+        maxValue = range[1] == -Double.MAX_VALUE ? Double.NaN : range[1];
+    }
+
+    private double getRangeValue(double value) {
+        return Double.isNaN(value) ? noDataValue : value;
+    }
+
+    private TileContext createContext(Map<String, GridCoverage2D> coverages,
+            Expression expression, ReferencedEnvelope extent, double cellSizeX, double cellSizeY) {
+        minValue = maxValue = Double.NaN;
+
+        // 1. bind [layer] and [layer_Band_N] to slots
+        Map<String, Integer> slots = new HashMap<String, Integer>();
+        List<Integer> slotCoverage = new ArrayList<Integer>();
+        List<Integer> slotBand = new ArrayList<Integer>();
+        List<GridCoverage2D> sources = new ArrayList<GridCoverage2D>();
+        for (Entry<String, GridCoverage2D> entry : coverages.entrySet()) {
+            int covIdx = sources.size();
+            sources.add(entry.getValue());
+
+            slots.put(entry.getKey(), Integer.valueOf(slotCoverage.size()));
+            slotCoverage.add(covIdx);
+            slotBand.add(0);
+
+            for (int bndIdx = 0; bndIdx < entry.getValue().getNumSampleDimensions(); bndIdx++) {
+                slots.put(entry.getKey() + BAND_SUFFIX + bndIdx,
+                        Integer.valueOf(slotCoverage.size()));
+                slotCoverage.add(covIdx);
+                slotBand.add(bndIdx);
+            }
+        }
+
+        NumericExpressionCompiler compiler = new NumericExpressionCompiler(slots);
+        CompiledExpression compiled = compiler.compile(expression);
+
+        // 2. prepare referenced coverages only
+        PlanarImage[] images = new PlanarImage[sources.size()];
+        double[] noData = new double[sources.size()];
+        for (Integer slot : compiler.getUsedSlots()) {
+            int covIdx = slotCoverage.get(slot);
+            if (images[covIdx] == null) {
+                GridCoverage2D coverage = prepareCoverage(sources.get(covIdx), extent, cellSizeX,
+                        cellSizeY);
+                images[covIdx] = (PlanarImage) coverage.getRenderedImage();
+                noData[covIdx] = RasterHelper.getNoDataValue(coverage);
+            }
+        }
+
+        int[] usedSlots = new int[compiler.getUsedSlots().size()];
+        int index = 0;
+        for (Integer slot : compiler.getUsedSlots()) {
+            usedSlots[index++] = slot.intValue();
+        }
+
+        // 3. output image layout
+        Dimension dm = RasterHelper.getDimension(extent, cellSizeX, cellSizeY);
+        return new TileContext(compiled, images, noData, usedSlots, toIntArray(slotCoverage),
+                toIntArray(slotBand), dm.width, dm.height);
+    }
+
+    private int[] toIntArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int index = 0; index < array.length; index++) {
+            array[index] = values.get(index).intValue();
+        }
+        return array;
+    }
+
+    final class TileContext {
+        final CompiledExpression expression;
+
+        final PlanarImage[] images;
+
+        final double[] noData;
+
+        final int[] usedSlots;
+
+        final int[] slotCoverage;
+
+        final int[] slotBand;
+
+        final int width;
+
+        final int height;
+
+        final SampleModel sampleModel;
+
+        final ColorModel colorModel;
+
+        final AtomicInteger completed = new AtomicInteger(0);
+
+        final AtomicBoolean canceled = new AtomicBoolean(false);
+
+        TileContext(CompiledExpression expression, PlanarImage[] images, double[] noData,
+                int[] usedSlots, int[] slotCoverage, int[] slotBand, int width, int height) {
+            this.expression = expression;
+            this.images = images;
+            this.noData = noData;
+            this.usedSlots = usedSlots;
+            this.slotCoverage = slotCoverage;
+            this.slotBand = slotBand;
+            this.width = width;
+            this.height = height;
+            this.sampleModel = RasterFactory.createBandedSampleModel(DataBuffer.TYPE_DOUBLE,
+                    TILE_SIZE, TILE_SIZE, 1);
+            this.colorModel = PlanarImage.createColorModel(sampleModel);
+        }
+
+        /**
+         * Calculates the cells of the tile rectangle and updates the minimum and maximum value
+         */
+        double[] calculate(Rectangle tileRect, double[] range) {
+            int cells = tileRect.width * tileRect.height;
+
+            // read the referenced bands of the tile as primitive buffers
+            double[][] buffers = new double[usedSlots.length][];
+            Raster[] rasters = new Raster[images.length];
+            for (int idx = 0; idx < usedSlots.length; idx++) {
+                int covIdx = slotCoverage[usedSlots[idx]];
+                if (rasters[covIdx] == null) {
+                    rasters[covIdx] = readRaster(images[covIdx], tileRect);
+                }
+                buffers[idx] = readBand(rasters[covIdx], images[covIdx], tileRect,
+                        slotBand[usedSlots[idx]], noData[covIdx]);
+            }
+
+            // evaluate
+            double[] slots = new double[slotCoverage.length];
+            double[] result = new double[cells];
+            for (int cell = 0; cell < cells; cell++) {
+                for (int idx = 0; idx < usedSlots.length; idx++) {
+                    slots[usedSlots[idx]] = buffers[idx][cell];
+                }
+
+                double value = expression.evaluate(slots);
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    result[cell] = noDataValue;
+                } else {
+                    result[cell] = value;
+                    range[0] = Math.min(range[0], value);
+                    range[1] = Math.max(range[1], value);
+                }
+            }
+            return result;
+        }
+
+        private Raster readRaster(PlanarImage image, Rectangle tileRect) {
+            // output cell (x, y) is cell (minX + x, minY + y) of the prepared coverage
+            Rectangle bounds = image.getBounds();
+            Rectangle source = new Rectangle(bounds.x + tileRect.x, bounds.y + tileRect.y,
+                    tileRect.width, tileRect.height).intersection(bounds);
+            return source.isEmpty() ? null : image.getData(source);
+        }
+
+        private double[] readBand(Raster raster, PlanarImage image, Rectangle tileRect, int band,
+                double noData) {
+            double[] buffer = new double[tileRect.width * tileRect.height];
+            Arrays.fill(buffer, Double.NaN);
+            if (raster == null) {
+                return buffer;
+            }
+
+            Rectangle bounds = image.getBounds();
+            Rectangle source = raster.getBounds();
+            double[] samples = raster.getSamples(source.x, source.y, source.width,
+                    source.height, band, (double[]) null);
+
+            int offsetX = source.x - bounds.x - tileRect.x;
+            int offsetY = source.y - bounds.y - tileRect.y;
+            for (int row = 0; row < source.height; row++) {
+                int pos = (offsetY + row) * tileRect.width + offsetX;
+                int srcPos = row * source.width;
+                for (int col = 0; col < source.width; col++) {
+                    double value = samples[srcPos + col];
+                    buffer[pos + col] = SSUtils.compareDouble(noData, value) ? Double.NaN
+                            : value;
+                }
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Calculates a range of output tiles and returns the minimum and maximum value
+     */
+    final class TileTask extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final TileContext context;
+
+        private final DiskMemImage outputImage;
+
+        private final int start;
+
+        private final int end;
+
+        TileTask(TileContext context, DiskMemImage outputImage, int start, int end) {
+            this.context = context;
+            this.outputImage = outputImage;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (end - start > 1) {
+                int middle = (start + end) >>> 1;
+                TileTask left = new TileTask(context, outputImage, start, middle);
+                left.fork();
+                double[] right = new TileTask(context, outputImage, middle, end).compute();
+                double[] range = left.join();
+                range[0] = Math.min(range[0], right[0]);
+                range[1] = Math.max(range[1], right[1]);
+                return range;
+            }
+
+            double[] range = new double[] { Double.MAX_VALUE, -Double.MAX_VALUE };
+            if (!context.canceled.get()) {
+                int tileX = outputImage.getMinTileX() + start % outputImage.getNumXTiles();
+                int tileY = outputImage.getMinTileY() + start / outputImage.getNumXTiles();
+                Rectangle tileRect = outputImage.getTileRect(tileX, tileY);
+
+                double[] result = context.calculate(tileRect, range);
+
+                WritableRaster tile;
+                synchronized (outputImage) {
+                    tile = outputImage.getWritableTile(tileX, tileY);
+                }
+                tile.setSamples(tileRect.x, tileRect.y, tileRect.width, tileRect.height, 0,
+                        result);
+                synchronized (outputImage) {
+                    outputImage.releaseWritableTile(tileX, tileY);
+                }
+                context.completed.incrementAndGet();
+            }
+            return range;
+        }
+    }
+
+    /**
+     * Output image whose tiles are calculated on demand and not cached. When a tile is requested
+     * the following tiles in row-major order are calculated ahead on the pool, bounded by the
+     * working set size.
+     */
+    final class StreamingImage extends SourcelessOpImage {
+        final double[] range = new double[] { Double.MAX_VALUE, -Double.MAX_VALUE };
+
+        private final TileContext context;
+
+        private final ForkJoinPool pool;
+
+        private final int window;
+
+        private final Map<Integer, ForkJoinTask<Raster>> pending;
+
+        private int scheduled = 0;
+
+        StreamingImage(TileContext context, ForkJoinPool pool) {
+            super(new ImageLayout(0, 0, context.width, context.height, 0, 0, TILE_SIZE,
+                    TILE_SIZE, context.sampleModel, context.colorModel), null,
+                    context.sampleModel, 0, 0, context.width, context.height);
+            setTileCache(null);
+
+            this.context = context;
+            this.pool = pool;
+            this.pending = new ConcurrentHashMap<Integer, ForkJoinTask<Raster>>();
+
+            long tileBytes = (long) TILE_SIZE * TILE_SIZE * 8L;
+            int tiles = (int) Math.min(Integer.MAX_VALUE, workingSetSize / tileBytes);
+            this.window = Math.max(pool.getParallelism(), tiles);
+        }
+
+        @Override
+        public Raster computeTile(int tileX, int tileY) {
+            if (context.canceled.get()) {
+                throw new CancellationException();
+            }
+
+            int tileIndex = (tileY - getMinTileY()) * getNumXTiles() + (tileX - getMinTileX());
+            int tileCount = getNumXTiles() * getNumYTiles();
+
+            ForkJoinTask<Raster> task;
+            synchronized (pending) {
+                scheduled = Math.max(scheduled, tileIndex + 1);
+                while (scheduled < tileCount && scheduled < tileIndex + window) {
+                    schedule(scheduled++);
+                }
+
+                task = pending.remove(Integer.valueOf(tileIndex));
+            }
+
+            Raster tile = task == null ? calculateTile(tileIndex) : task.join();
+            context.completed.incrementAndGet();
+            return tile;
+        }
+
+        private void schedule(final int tileIndex) {
+            ForkJoinTask<Raster> task = pool.submit(new Callable<Raster>() {
+                @Override
+                public Raster call() throws Exception {
+                    if (context.canceled.get()) {
+                        throw new CancellationException();
+                    }
+                    return calculateTile(tileIndex);
+                }
+            });
+            pending.put(Integer.valueOf(tileIndex), task);
+        }
+
+        private Raster calculateTile(int tileIndex) {
+            int tileX = getMinTileX() + tileIndex % getNumXTiles();
+            int tileY = getMinTileY() + tileIndex / getNumXTiles();
+            Rectangle tileRect = getTileRect(tileX, tileY);
+
+            double[] tileRange = new double[] { Double.MAX_VALUE, -Double.MAX_VALUE };
+            double[] result = context.calculate(tileRect, tileRange);
+            synchronized (range) {
+                range[0] = Math.min(range[0], tileRange[0]);
+                range[1] = Math.max(range[1], tileRange[1]);
+            }
+
+            WritableRaster tile = RasterFactory.createWritableRaster(getSampleModel(), new Point(
+                    tileXToX(tileX), tileYToY(tileY)));
+            tile.setSamples(tileRect.x, tileRect.y, tileRect.width, tileRect.height, 0, result);
+            return tile;
+        }
+    }
+}
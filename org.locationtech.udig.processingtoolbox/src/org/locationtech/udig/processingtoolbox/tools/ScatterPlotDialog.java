@@ -11,12 +11,14 @@ package org.locationtech.udig.processingtoolbox.tools;
 
 import java.awt.Font;
 import java.awt.geom.Ellipse2D;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.swt.SWT;
@@ -37,13 +39,7 @@ import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.PlatformUI;
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.process.spatialstatistics.PearsonCorrelationProcess;
-import org.geotools.process.spatialstatistics.StatisticsFeaturesProcess;
-import org.geotools.process.spatialstatistics.operations.DataStatisticsOperation.DataStatisticsResult;
-import org.geotools.process.spatialstatistics.operations.PearsonOperation.PearsonResult;
 import org.geotools.util.logging.Logging;
 import org.jfree.chart.ChartMouseEvent;
 import org.jfree.chart.ChartMouseListener;
@@ -62,19 +58,18 @@ import org.jfree.data.xy.XYDataset;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 import org.jfree.ui.RectangleInsets;
-import org.locationtech.udig.catalog.util.GeoToolsAdapters;
 import org.locationtech.udig.processingtoolbox.ToolboxPlugin;
+import org.locationtech.udig.processingtoolbox.ToolboxView;
 import org.locationtech.udig.processingtoolbox.internal.Messages;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils.FieldType;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils.VectorLayerType;
+import org.locationtech.udig.processingtoolbox.tools.DensityGrid.DensityDataset;
 import org.locationtech.udig.project.ILayer;
 import org.locationtech.udig.project.IMap;
-import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
-import org.opengis.filter.expression.Expression;
-import org.opengis.util.ProgressListener;
+import org.opengis.filter.identity.FeatureId;
 
 /**
  * Scatter Plot Dialog
@@ -238,12 +233,19 @@ public class ScatterPlotDialog extends AbstractGeoProcessingDialog implements IR
             ChartEntity entity = event.getEntity();
             if (entity != null && (entity instanceof XYItemEntity)) {
                 XYItemEntity item = (XYItemEntity) entity;
-                if (item.getSeriesIndex() == 0) {
+                if (item.getDataset() instanceof DensityDataset) {
+                    DensityDataset dataSet = (DensityDataset) item.getDataset();
+                    Set<FeatureId> selected = new HashSet<FeatureId>();
+                    for (int row : dataSet.getRows(item.getItem())) {
+                        selected.add(ff.featureId(dataSet.getGrid().getFeatureID(row)));
+                    }
+                    map.select(ff.id(selected), inputLayer);
+                } else if (item.getSeriesIndex() == 0) {
                     XYSeriesCollection dataSet = (XYSeriesCollection) item.getDataset();
                     XYSeries xySeries = dataSet.getSeries(item.getSeriesIndex());
                     XYDataItem2 dataItem = (XYDataItem2) xySeries.getDataItem(item.getItem());
 
-                    Filter selectionFilter = ff.id(ff.featureId(dataItem.getFeature().getID()));
+                    Filter selectionFilter = ff.id(ff.featureId(dataItem.getFeatureID()));
                     map.select(selectionFilter, inputLayer);
                 } else {
                     map.select(Filter.EXCLUDE, inputLayer);
@@ -254,7 +256,8 @@ public class ScatterPlotDialog extends AbstractGeoProcessingDialog implements IR
         }
     }
 
-    private void updateChart(SimpleFeatureCollection features, String xField, String yField) {
+    private void updateChart(String xField, String yField, ColumnStatistics statistics)
+            throws IOException {
         // 1. Create a single plot containing both the scatter and line
         XYPlot plot = new XYPlot();
         plot.setOrientation(PlotOrientation.VERTICAL);
@@ -287,7 +290,12 @@ public class ScatterPlotDialog extends AbstractGeoProcessingDialog implements IR
         plotRenderer.setBaseToolTipGenerator(plotToolTip);
 
         // Set the scatter data, renderer, and axis into plot
-        plot.setDataset(0, getScatterPlotData(features, xField, yField));
+        XYDataset dataset = getScatterPlotData(statistics);
+        if (dataset instanceof DensityDataset) {
+            plotRenderer = ((DensityDataset) dataset).getGrid().createRenderer(
+                    java.awt.Color.BLUE);
+        }
+        plot.setDataset(0, dataset);
 
         xPlotAxis.setAutoRangeIncludesZero(false);
         xPlotAxis.setAutoRange(false);
@@ -396,34 +404,26 @@ public class ScatterPlotDialog extends AbstractGeoProcessingDialog implements IR
         chartComposite.forceRedraw();
     }
 
-    private XYDataset getScatterPlotData(SimpleFeatureCollection features, String xField,
-            String yField) {
-        XYSeries xySeries = new XYSeries(features.getSchema().getTypeName());
-        minMaxVisitor.reset();
-
-        Expression xExpression = ff.property(xField);
-        Expression yExpression = ff.property(yField);
-
-        SimpleFeatureIterator featureIter = features.features();
-        try {
-            while (featureIter.hasNext()) {
-                SimpleFeature feature = featureIter.next();
-
-                Double xVal = xExpression.evaluate(feature, Double.class);
-                if (xVal == null || xVal.isNaN() || xVal.isInfinite()) {
-                    continue;
-                }
-
-                Double yVal = yExpression.evaluate(feature, Double.class);
-                if (yVal == null || yVal.isNaN() || yVal.isInfinite()) {
-                    continue;
-                }
+    private XYDataset getScatterPlotData(ColumnStatistics statistics) throws IOException {
+        XYSeries xySeries = new XYSeries(inputLayer.getSchema().getTypeName());
+        minMaxVisitor.visit(statistics);
+
+        String[] featureIDs = AttributeColumnCache.getCache(inputLayer).getFeatureIDs();
+        AttributeColumnCache.Column xColumn = statistics.getColumn(0);
+        AttributeColumnCache.Column yColumn = statistics.getColumn(1);
+        // the grid is the brushing index of the points, or drawn instead of too many points
+        DensityGrid grid = new DensityGrid(featureIDs, xColumn, yColumn,
+                statistics.getCompleteRows(), minMaxVisitor.getMinX(), minMaxVisitor.getMinY(),
+                minMaxVisitor.getMaxX(), minMaxVisitor.getMaxY(), DensityGrid.DEFAULT_BINS);
+        chartComposite.setIndex(grid);
+        if (statistics.getCompleteCount() > ToolboxView.getChartDensityThreshold()) {
+            return grid.createDataset(xySeries.getKey());
+        }
 
-                minMaxVisitor.visit(xVal, yVal);
-                xySeries.add(new XYDataItem2(feature, xVal, yVal));
-            }
-        } finally {
-            featureIter.close();
+        for (int row : statistics.getCompleteRows()) {
+            double xVal = xColumn.get(row);
+            double yVal = yColumn.get(row);
+            xySeries.add(new XYDataItem2(featureIDs[row], xVal, yVal));
         }
 
         return new XYSeriesCollection(xySeries);
@@ -468,35 +468,30 @@ public class ScatterPlotDialog extends AbstractGeoProcessingDialog implements IR
 
             String xField = cboXField.getText();
             String yField = cboYField.getText();
-            SimpleFeatureCollection features = MapUtils.getFeatures(inputLayer);
 
-            String fields = xField + "," + yField;
+            // statistics, correlation and the plot data of a single pass over the columns
+            AttributeColumnCache cache = AttributeColumnCache.getCache(inputLayer);
+            ColumnStatistics statistics = ColumnStatistics.compute(cache.getColumns(xField,
+                    yField));
+            monitor.worked(increment);
 
             HtmlWriter writer = new HtmlWriter(inputLayer.getName());
-            DataStatisticsResult statistics = null;
-            PearsonResult pearson = null;
-
             if (chkStatistics.getSelection()) {
-                ProgressListener subMonitor = GeoToolsAdapters.progress(SubMonitor.convert(monitor,
-                        Messages.Task_Internal, 20));
-                statistics = StatisticsFeaturesProcess.process(features, fields, subMonitor);
-                writer.writeDataStatistics(statistics);
+                String typeName = inputLayer.getSchema().getTypeName();
+                writer.writeDataStatistics(statistics.getDataStatistics(typeName));
             }
 
             if (chkPearson.getSelection()) {
-                ProgressListener subMonitor = GeoToolsAdapters.progress(SubMonitor.convert(monitor,
-                        Messages.Task_Internal, 20));
-                pearson = PearsonCorrelationProcess.process(features, fields, subMonitor);
-                writer.writePearson(pearson);
+                writer.writePearson(statistics.getPearson());
             }
 
-            if (statistics != null || pearson != null) {
+            if (chkStatistics.getSelection() || chkPearson.getSelection()) {
                 browser.setText(writer.getHTML());
             }
 
             monitor.subTask("Updating scatter plot...");
             chartComposite.setLayer(inputLayer);
-            updateChart(features, xField, yField);
+            updateChart(xField, yField, statistics);
             plotTab.getParent().setSelection(plotTab);
             monitor.worked(increment);
         } catch (Exception e) {
@@ -0,0 +1,243 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import org.geotools.process.spatialstatistics.core.DistanceFactory;
+import org.geotools.process.spatialstatistics.core.SpatialEvent;
+import org.geotools.process.spatialstatistics.core.WeightMatrix;
+import org.geotools.process.spatialstatistics.core.WeightMatrixBuilder;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+import org.geotools.util.logging.Logging;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * Row standardized spatial weights of the events of a {@link WeightMatrixBuilder} in compressed
+ * sparse row (CSR) form, used to compute the spatial lag of the Moran scatter plot.
+ * <p>
+ * The neighbors of row i are the column indexes from rowPointers[i] to rowPointers[i + 1], the
+ * weight of a neighbor is 1 / number of neighbors, so the lag is the mean of the neighboring
+ * values. An event is never its own neighbor. The neighbors are read from the neighbor lists of
+ * the contiguity and k nearest neighbors concepts, and searched within the band of the fixed
+ * distance concept. Inverse distance and zone of indifference weights are positive for every pair
+ * of events, these are not stored and the lag is the mean of all the other values. The concept is
+ * checked before the weight matrix of the builder, which only keeps the pairs within the distance
+ * threshold for the distance based concepts.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+final class SpatialLagMatrix {
+    protected static final Logger LOGGER = Logging.getLogger(SpatialLagMatrix.class);
+
+    static final int BLOCK_SIZE = 16384;
+
+    private final int size;
+
+    // null if every other event is a neighbor
+    private final int[] rowPointers;
+
+    private final int[] columnIndexes;
+
+    private final double[] weights;
+
+    private SpatialLagMatrix(int size, int[] rowPointers, int[] columnIndexes, double[] weights) {
+        this.size = size;
+        this.rowPointers = rowPointers;
+        this.columnIndexes = columnIndexes;
+        this.weights = weights;
+    }
+
+    /**
+     * Builds the weights of the events, the row of an event is its index in the events
+     */
+    public static SpatialLagMatrix build(WeightMatrixBuilder builder, SpatialConcept concept) {
+        List<SpatialEvent> events = builder.getEvents();
+        switch (concept) {
+        case InverseDistance:
+        case InverseDistanceSquared:
+        case ZoneOfIndifference:
+            // the builder keeps a thresholded matrix, but every pair of events is weighted
+            return new SpatialLagMatrix(events.size(), null, null, null);
+        case FixedDistance:
+            return fromDistanceBand(events, builder);
+        default:
+            return fromNeighbors(events, builder.getWeightMatrix());
+        }
+    }
+
+    private static SpatialLagMatrix fromNeighbors(List<SpatialEvent> events,
+            WeightMatrix weightMatrix) {
+        final int size = events.size();
+        Map<Object, Integer> rows = new HashMap<Object, Integer>(size * 2);
+        for (int row = 0; row < size; row++) {
+            rows.put(events.get(row).id, Integer.valueOf(row));
+        }
+
+        Map<Object, Hashtable<Object, Double>> items = weightMatrix == null
+                ? new HashMap<Object, Hashtable<Object, Double>>() : weightMatrix.getItems();
+        int[] rowPointers = new int[size + 1];
+        int[] columnIndexes = new int[16];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            rowPointers[row] = count;
+            Hashtable<Object, Double> neighbors = items.get(events.get(row).id);
+            if (neighbors == null) {
+                continue;
+            }
+
+            for (Entry<Object, Double> entry : neighbors.entrySet()) {
+                Integer column = rows.get(entry.getKey());
+                if (column == null || column.intValue() == row) {
+                    continue;
+                }
+                if (count == columnIndexes.length) {
+                    columnIndexes = Arrays.copyOf(columnIndexes, count * 2);
+                }
+                columnIndexes[count++] = column.intValue();
+            }
+        }
+        rowPointers[size] = count;
+        return standardize(size, rowPointers, columnIndexes);
+    }
+
+    private static SpatialLagMatrix fromDistanceBand(List<SpatialEvent> events,
+            WeightMatrixBuilder builder) {
+        final int size = events.size();
+        final double band = builder.getDistanceBandWidth();
+
+        STRtree spatialIndex = new STRtree();
+        for (int row = 0; row < size; row++) {
+            spatialIndex.insert(new Envelope(events.get(row).coordinate), Integer.valueOf(row));
+        }
+        spatialIndex.build();
+
+        DistanceFactory factory = DistanceFactory.newInstance();
+        factory.setDistanceType(builder.getDistanceMethod());
+
+        int[] rowPointers = new int[size + 1];
+        int[] columnIndexes = new int[16];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            rowPointers[row] = count;
+            SpatialEvent source = events.get(row);
+            Envelope searchEnv = new Envelope(source.coordinate);
+            searchEnv.expandBy(band);
+
+            for (Object item : spatialIndex.query(searchEnv)) {
+                int column = ((Integer) item).intValue();
+                if (column == row || factory.getDistance(source, events.get(column)) > band) {
+                    continue;
+                }
+                if (count == columnIndexes.length) {
+                    columnIndexes = Arrays.copyOf(columnIndexes, count * 2);
+                }
+                columnIndexes[count++] = column;
+            }
+        }
+        rowPointers[size] = count;
+        return standardize(size, rowPointers, columnIndexes);
+    }
+
+    private static SpatialLagMatrix standardize(int size, int[] rowPointers, int[] columnIndexes) {
+        final int count = rowPointers[size];
+        int[] columns = Arrays.copyOf(columnIndexes, count);
+        double[] weights = new double[count];
+        for (int row = 0; row < size; row++) {
+            int from = rowPointers[row];
+            int to = rowPointers[row + 1];
+            Arrays.sort(columns, from, to);
+            Arrays.fill(weights, from, to, 1d / (to - from));
+        }
+        return new SpatialLagMatrix(size, rowPointers, columns, weights);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the spatial lag of the values, 0 if a row has no neighbors
+     */
+    public double[] lag(final double[] values) {
+        final double[] result = new double[size];
+        if (rowPointers == null) {
+            double sum = 0d;
+            for (int row = 0; row < size; row++) {
+                sum += values[row];
+            }
+            for (int row = 0; row < size; row++) {
+                result[row] = size < 2 ? 0d : (sum - values[row]) / (size - 1);
+            }
+            return result;
+        }
+
+        final int blocks = Math.max(1, (size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        if (blocks == 1) {
+            multiply(values, result, 0, size);
+            return result;
+        }
+
+        int threads = Math.min(blocks, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(blocks);
+            for (int block = 0; block < blocks; block++) {
+                final int from = block * BLOCK_SIZE;
+                final int to = Math.min(size, from + BLOCK_SIZE);
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        multiply(values, result, from, to);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void multiply(double[] values, double[] result, int from, int to) {
+        for (int row = from; row < to; row++) {
+            double sum = 0d;
+            for (int index = rowPointers[row]; index < rowPointers[row + 1]; index++) {
+                sum += weights[index] * values[columnIndexes[index]];
+            }
+            result[row] = sum;
+        }
+    }
+}
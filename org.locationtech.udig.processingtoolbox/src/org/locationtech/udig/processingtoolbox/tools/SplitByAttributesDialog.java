@@ -9,13 +9,22 @@
  */
 package org.locationtech.udig.processingtoolbox.tools;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.logging.Logger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.swt.SWT;
@@ -37,12 +46,10 @@ import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.TableItem;
 import org.eclipse.swt.widgets.Widget;
 import org.eclipse.ui.PlatformUI;
+import org.geotools.data.DataStore;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
-import org.geotools.data.simple.SimpleFeatureSource;
-import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.process.spatialstatistics.storage.NamePolicy;
-import org.geotools.process.spatialstatistics.storage.ShapeExportOperation;
 import org.geotools.util.logging.Logging;
 import org.locationtech.udig.processingtoolbox.ToolboxPlugin;
 import org.locationtech.udig.processingtoolbox.ToolboxView;
@@ -53,10 +60,6 @@ import org.locationtech.udig.processingtoolbox.styler.MapUtils;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils.FieldType;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils.VectorLayerType;
 import org.locationtech.udig.project.IMap;
-import org.opengis.feature.simple.SimpleFeature;
-import org.opengis.filter.Filter;
-import org.opengis.filter.FilterFactory2;
-import org.opengis.filter.expression.PropertyName;
 
 /**
  * Splits a layer according to attributes within the selected field producing a separate shapefile
@@ -68,6 +71,8 @@ public class SplitByAttributesDialog extends AbstractGeoProcessingDialog impleme
         IRunnableWithProgress {
     protected static final Logger LOGGER = Logging.getLogger(SplitByAttributesDialog.class);
 
+    static final String NULL_VALUE = "Null_Value"; //$NON-NLS-1$
+
     private Combo cboInput, cboSplitField, cboNamePolicy;
 
     private Button chkPrefix;
@@ -78,6 +83,14 @@ public class SplitByAttributesDialog extends AbstractGeoProcessingDialog impleme
 
     private SimpleFeatureCollection inputFeatures;
 
+    private String splitField;
+
+    private Map<String, String> outputNames;
+
+    private DataStore outputDataStore;
+
+    private String outputFolder;
+
     public SplitByAttributesDialog(Shell parentShell, IMap map) {
         super(parentShell, map);
 
@@ -184,29 +197,42 @@ public class SplitByAttributesDialog extends AbstractGeoProcessingDialog impleme
     };
 
     private void buildTables(String attributeName) {
-        SortedMap<Object, Integer> valueCountsMap = new TreeMap<Object, Integer>();
+        // counts are collected in a hash map and sorted once, null values are listed last
+        Map<Object, int[]> valueCounts = new HashMap<Object, int[]>();
+        int nullCount = 0;
         SimpleFeatureIterator featureIter = inputFeatures.features();
         try {
             while (featureIter.hasNext()) {
-                final SimpleFeature feature = featureIter.next();
-                Object value = feature.getAttribute(attributeName);
+                Object value = featureIter.next().getAttribute(attributeName);
                 if (value == null) {
-                    value = "Null_Value"; //$NON-NLS-1$
+                    nullCount++;
+                    continue;
                 }
 
-                if (valueCountsMap.containsKey(value)) {
-                    final int cnt = valueCountsMap.get(value);
-                    valueCountsMap.put(value, Integer.valueOf(cnt + 1));
+                int[] count = valueCounts.get(value);
+                if (count == null) {
+                    valueCounts.put(value, new int[] { 1 });
                 } else {
-                    valueCountsMap.put(value, Integer.valueOf(1));
+                    count[0]++;
                 }
             }
         } finally {
             featureIter.close();
         }
 
+        SortedMap<Object, Integer> valueCountsMap = new TreeMap<Object, Integer>();
+        for (Entry<Object, int[]> entry : valueCounts.entrySet()) {
+            valueCountsMap.put(entry.getKey(), Integer.valueOf(entry.getValue()[0]));
+        }
+
+        List<Entry<Object, Integer>> entries = new ArrayList<Entry<Object, Integer>>(
+                valueCountsMap.entrySet());
+        if (nullCount > 0) {
+            entries.add(new SimpleEntry<Object, Integer>(NULL_VALUE, Integer.valueOf(nullCount)));
+        }
+
         uniqueTable.removeAll();
-        for (Entry<Object, Integer> entrySet : valueCountsMap.entrySet()) {
+        for (Entry<Object, Integer> entrySet : entries) {
             TableItem item = new TableItem(uniqueTable, SWT.NONE);
             String fieldName = entrySet.getKey().toString();
             if (this.chkPrefix.getSelection()) {
@@ -227,8 +253,20 @@ public class SplitByAttributesDialog extends AbstractGeoProcessingDialog impleme
             return;
         }
 
+        // the output names are read on the UI thread, null values are keyed by null
+        outputNames = new LinkedHashMap<String, String>();
+        for (TableItem item : uniqueTable.getItems()) {
+            if (item.getChecked()) {
+                String value = item.getText(1);
+                outputNames.put(value.equals(NULL_VALUE) ? null : value, item.getText());
+            }
+        }
+        splitField = cboSplitField.getText();
+        outputDataStore = locationView.getDataStore();
+        outputFolder = locationView.getFolder();
+
         try {
-            PlatformUI.getWorkbench().getProgressService().run(false, true, this);
+            PlatformUI.getWorkbench().getProgressService().run(true, true, this);
             openInformation(getShell(), Messages.General_Completed);
             super.okPressed();
         } catch (InvocationTargetException e) {
@@ -241,59 +279,25 @@ public class SplitByAttributesDialog extends AbstractGeoProcessingDialog impleme
     @Override
     public void run(IProgressMonitor monitor) throws InvocationTargetException,
             InterruptedException {
-        monitor.beginTask(String.format(Messages.Task_Executing, windowTitle),
-                uniqueTable.getItems().length + 1);
+        monitor.beginTask(String.format(Messages.Task_Executing, windowTitle), 100);
         try {
-            monitor.worked(increment);
-
-            final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
-            PropertyName uniqueField = ff.property(cboSplitField.getText());
-
-            ShapeExportOperation process = new ShapeExportOperation();
-            process.setOutputDataStore(locationView.getDataStore());
+            SplitByAttributesOperation process = new SplitByAttributesOperation();
+            process.setOutputDataStore(outputDataStore);
             process.setNamePolicy(namePolicy);
 
-            for (TableItem item : uniqueTable.getItems()) {
-                monitor.subTask(String.format(Messages.Task_Executing, item.getText()));
-                if (monitor.isCanceled()) {
-                    break;
-                }
-
-                if (item.getChecked()) {
-                    String layerName = item.getText();
-                    switch (namePolicy) {
-                    case LOWERCASE:
-                        layerName = layerName.toLowerCase();
-                        break;
-                    case UPPERCASE:
-                        layerName = layerName.toUpperCase();
-                        break;
-                    default:
-                        break;
-                    }
-
-                    final String value = item.getText(1);
-                    Filter filter = ff.equal(uniqueField, ff.literal(value), true);
-                    if (value.equals("Null_Value")) { //$NON-NLS-1$
-                        filter = ff.isNull(uniqueField);
-                    }
-
-                    process.setOutputTypeName(layerName);
-                    SimpleFeatureSource outputSfs = process.execute(inputFeatures
-                            .subCollection(filter));
-                    if (outputSfs == null) {
-                        ToolboxPlugin.log(windowTitle + " : Failed to export : " + layerName); //$NON-NLS-1$
-                    }
+            if (!process.execute(inputFeatures, splitField, outputNames,
+                    SubMonitor.convert(monitor, 100))) {
+                for (String name : process.getCreatedNames()) {
+                    File file = new File(outputFolder, name + ".shp"); //$NON-NLS-1$
+                    OperationOutputs.removeCanceled(file);
                 }
-
-                monitor.worked(increment);
-                Thread.sleep(100);
+                throw new InterruptedException(Messages.Task_Canceled);
             }
-        } catch (Exception e) {
+        } catch (IOException e) {
             ToolboxPlugin.log(e.getMessage());
             throw new InvocationTargetException(e.getCause(), e.getMessage());
         } finally {
             monitor.done();
         }
     }
-}
\ No newline at end of file
+}
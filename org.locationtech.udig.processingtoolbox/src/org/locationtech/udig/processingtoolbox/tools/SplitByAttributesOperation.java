@@ -0,0 +1,348 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.AttributeTypeBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.process.spatialstatistics.operations.GeneralOperation;
+import org.geotools.process.spatialstatistics.storage.IFeatureInserter;
+import org.geotools.process.spatialstatistics.storage.NamePolicy;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * Splits features into one output layer per unique value of a field, reading the input only once.
+ * <p>
+ * Every feature is routed to the writer of its value. A shapefile can not be reopened for
+ * appending, so at most {@link #getMaxOpenWriters()} writers are kept open: the features of the
+ * remaining values are spilled to a temporary file and written in further rounds over that file.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+@SuppressWarnings("nls")
+public class SplitByAttributesOperation extends GeneralOperation {
+    protected static final Logger LOGGER = Logging.getLogger(SplitByAttributesOperation.class);
+
+    static final int DEFAULT_MAX_OPEN_WRITERS = 64;
+
+    private NamePolicy namePolicy = NamePolicy.NORMAL;
+
+    private int maxOpenWriters = DEFAULT_MAX_OPEN_WRITERS;
+
+    private List<String> createdNames = new ArrayList<String>();
+
+    public NamePolicy getNamePolicy() {
+        return namePolicy;
+    }
+
+    public void setNamePolicy(NamePolicy namePolicy) {
+        this.namePolicy = namePolicy;
+    }
+
+    public int getMaxOpenWriters() {
+        return maxOpenWriters;
+    }
+
+    public void setMaxOpenWriters(int maxOpenWriters) {
+        this.maxOpenWriters = Math.max(1, maxOpenWriters);
+    }
+
+    /**
+     * Returns the names of the outputs created by the last execution, the caller removes these
+     * if the execution was canceled
+     */
+    public List<String> getCreatedNames() {
+        return createdNames;
+    }
+
+    /**
+     * Splits the features
+     *
+     * @param features the input features
+     * @param field the split field
+     * @param outputNames the output layer name of each value(value.toString(), null for null
+     *        values), features of other values are skipped
+     * @param monitor the progress monitor
+     * @return true if completed, false if canceled, the open outputs are rolled back
+     * @throws IOException
+     */
+    public boolean execute(SimpleFeatureCollection features, String field,
+            Map<String, String> outputNames, IProgressMonitor monitor) throws IOException {
+        SimpleFeatureType schema = features.getSchema();
+        int fieldIndex = schema.indexOf(field);
+        if (fieldIndex == -1) {
+            throw new IOException(field + " does not exist!");
+        }
+
+        int geomIndex = schema.indexOf(schema.getGeometryDescriptor().getLocalName());
+        int[] sourceIndexes = OperationOutputs.buildSourceIndexes(schema);
+
+        List<Group> groups = new ArrayList<Group>();
+        Map<String, Group> groupMap = new LinkedHashMap<String, Group>();
+        for (Entry<String, String> entry : outputNames.entrySet()) {
+            String name = OperationOutputs.applyPolicy(entry.getValue(), namePolicy);
+            Group group = new Group(groups.size(), name);
+            groups.add(group);
+            groupMap.put(entry.getKey(), group);
+        }
+
+        SubMonitor progress = SubMonitor.convert(monitor, 100);
+        createdNames = new ArrayList<String>();
+
+        File spillFile = null;
+        ObjectOutputStream spill = null;
+        List<Group> spilled = new ArrayList<Group>();
+        int openWriters = 0;
+
+        Object[] values = new Object[schema.getAttributeCount()];
+        WKBWriter wkbWriter = new WKBWriter(3);
+
+        // 1. single pass over the input
+        SubMonitor readMonitor = progress.newChild(70);
+        readMonitor.setWorkRemaining(features.size() / 1000 + 1);
+        boolean completed = false;
+        SimpleFeatureIterator featureIter = features.features();
+        try {
+            int count = 0;
+            while (featureIter.hasNext()) {
+                SimpleFeature feature = featureIter.next();
+                if (++count % 1000 == 0) {
+                    if (readMonitor.isCanceled()) {
+                        rollback(groups);
+                        return false;
+                    }
+                    readMonitor.worked(1);
+                }
+
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                if (geometry == null || geometry.isEmpty()) {
+                    LOGGER.warning(feature.getID() + " has null or empty geometry!");
+                    continue;
+                }
+
+                Object value = feature.getAttribute(fieldIndex);
+                Group group = groupMap.get(value == null ? null : value.toString());
+                if (group == null) {
+                    continue;
+                }
+
+                if (group.writer == null && !group.spilled) {
+                    if (openWriters < maxOpenWriters) {
+                        group.writer = getFeatureWriter(buildSchema(schema, group.name));
+                        createdNames.add(group.name);
+                        openWriters++;
+                    } else {
+                        group.spilled = true;
+                        spilled.add(group);
+                    }
+                }
+
+                for (int index = 0; index < values.length; index++) {
+                    values[index] = feature.getAttribute(index);
+                }
+
+                if (group.writer != null) {
+                    write(group, values, sourceIndexes);
+                } else {
+                    if (spill == null) {
+                        spillFile = File.createTempFile("split_", ".tmp");
+                        spill = new ObjectOutputStream(new BufferedOutputStream(
+                                new FileOutputStream(spillFile), 1 << 16));
+                    }
+                    values[geomIndex] = wkbWriter.write(geometry);
+                    spill.writeInt(group.ordinal);
+                    spill.writeObject(values);
+                    spill.reset(); // do not keep references to the written values
+                }
+            }
+
+            if (spill != null) {
+                spill.close();
+                spill = null;
+            }
+            completed = true;
+        } catch (IOException e) {
+            rollback(groups, e);
+        } finally {
+            featureIter.close();
+            close(groups);
+            if (spill != null) {
+                spill.close();
+            }
+            if (spillFile != null && (!completed || spilled.size() == 0)) {
+                spillFile.delete();
+            }
+        }
+
+        if (spilled.size() == 0) {
+            return true;
+        }
+
+        // 2. the spilled values in rounds of maxOpenWriters
+        try {
+            SubMonitor spillMonitor = progress.newChild(30);
+            spillMonitor.setWorkRemaining(spilled.size());
+            WKBReader wkbReader = new WKBReader(gf);
+            for (int start = 0; start < spilled.size(); start += maxOpenWriters) {
+                if (spillMonitor.isCanceled()) {
+                    rollback(groups);
+                    return false;
+                }
+
+                List<Group> round = spilled.subList(start,
+                        Math.min(start + maxOpenWriters, spilled.size()));
+                for (Group group : round) {
+                    group.spilled = false;
+                    group.writer = getFeatureWriter(buildSchema(schema, group.name));
+                    createdNames.add(group.name);
+                }
+
+                readSpill(spillFile, groups, geomIndex, sourceIndexes, wkbReader);
+                close(round);
+                spillMonitor.worked(round.size());
+            }
+            return true;
+        } finally {
+            close(groups);
+            spillFile.delete();
+        }
+    }
+
+    private void readSpill(File spillFile, List<Group> groups, int geomIndex,
+            int[] sourceIndexes, WKBReader wkbReader) throws IOException {
+        ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(
+                new FileInputStream(spillFile), 1 << 16));
+        try {
+            while (true) {
+                int ordinal;
+                try {
+                    ordinal = input.readInt();
+                } catch (EOFException eof) {
+                    break;
+                }
+
+                Object[] values = (Object[]) input.readObject();
+                Group group = groups.get(ordinal);
+                if (group.writer == null) {
+                    continue;
+                }
+
+                values[geomIndex] = wkbReader.read((byte[]) values[geomIndex]);
+                write(group, values, sourceIndexes);
+            }
+        } catch (ClassNotFoundException e) {
+            rollback(groups, new IOException(e));
+        } catch (ParseException e) {
+            rollback(groups, new IOException(e));
+        } catch (IOException e) {
+            rollback(groups, e);
+        } finally {
+            input.close();
+        }
+    }
+
+    private void write(Group group, Object[] values, int[] sourceIndexes) throws IOException {
+        SimpleFeature newFeature = group.writer.buildFeature();
+        for (int index = 0; index < sourceIndexes.length; index++) {
+            newFeature.setAttribute(index, values[sourceIndexes[index]]);
+        }
+        group.writer.write(newFeature);
+    }
+
+    private void rollback(List<Group> groups, IOException e) throws IOException {
+        rollback(groups);
+        throw e;
+    }
+
+    private void rollback(List<Group> groups) {
+        for (Group group : groups) {
+            if (group.writer != null) {
+                try {
+                    group.writer.rollback();
+                } catch (IOException ex) {
+                    LOGGER.log(Level.FINER, ex.getMessage(), ex);
+                }
+            }
+        }
+    }
+
+    private void close(List<Group> groups) throws IOException {
+        for (Group group : groups) {
+            if (group.writer != null) {
+                group.writer.close();
+                group.writer = null;
+            }
+        }
+    }
+
+    private SimpleFeatureType buildSchema(SimpleFeatureType schema, String typeName) {
+        SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+        builder.setName(typeName);
+        builder.setCRS(schema.getCoordinateReferenceSystem());
+        AttributeTypeBuilder attBuilder = new AttributeTypeBuilder();
+        for (AttributeDescriptor descriptor : schema.getAttributeDescriptors()) {
+            String name = OperationOutputs.applyPolicy(descriptor.getLocalName(), namePolicy);
+            if (descriptor instanceof GeometryDescriptor) {
+                GeometryDescriptor geomDesc = (GeometryDescriptor) descriptor;
+                builder.add(name, geomDesc.getType().getBinding(),
+                        geomDesc.getCoordinateReferenceSystem());
+            } else if (!OperationOutputs.isShapeField(descriptor)) {
+                builder.add(attBuilder.buildDescriptor(name, descriptor.getType()));
+            }
+        }
+        return builder.buildFeatureType();
+    }
+
+    static final class Group {
+        final int ordinal;
+
+        final String name;
+
+        IFeatureInserter writer;
+
+        boolean spilled;
+
+        Group(int ordinal, String name) {
+            this.ordinal = ordinal;
+            this.name = name;
+        }
+    }
+}
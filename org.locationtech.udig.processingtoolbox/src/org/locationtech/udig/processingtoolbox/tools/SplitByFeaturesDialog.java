@@ -9,6 +9,7 @@
  */
 package org.locationtech.udig.processingtoolbox.tools;
 
+import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.List;
@@ -19,7 +20,6 @@ import java.util.logging.Logger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.dialogs.MessageDialog;
-import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.BusyIndicator;
 import org.eclipse.swt.events.ModifyEvent;
@@ -41,14 +41,11 @@ import org.eclipse.swt.widgets.Widget;
 import org.eclipse.ui.PlatformUI;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
-import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.process.spatialstatistics.core.StringHelper;
+import org.geotools.process.spatialstatistics.storage.DataStoreFactory;
 import org.geotools.process.spatialstatistics.storage.NamePolicy;
-import org.geotools.process.spatialstatistics.storage.ShapeExportOperation;
-import org.geotools.process.spatialstatistics.transformation.ClipWithGeometryFeatureCollection;
 import org.geotools.util.logging.Logging;
-import org.locationtech.udig.processingtoolbox.ToolboxPlugin;
 import org.locationtech.udig.processingtoolbox.ToolboxView;
 import org.locationtech.udig.processingtoolbox.internal.Messages;
 import org.locationtech.udig.processingtoolbox.internal.ui.OutputDataWidget;
@@ -56,6 +53,8 @@ import org.locationtech.udig.processingtoolbox.internal.ui.OutputDataWidget.File
 import org.locationtech.udig.processingtoolbox.styler.MapUtils;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils.FieldType;
 import org.locationtech.udig.processingtoolbox.styler.MapUtils.VectorLayerType;
+import org.locationtech.udig.processingtoolbox.tools.BatchScheduler.BatchTask;
+import org.locationtech.udig.processingtoolbox.tools.SplitByFeaturesOperation.FeatureIndex;
 import org.locationtech.udig.project.IMap;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.filter.Filter;
@@ -70,8 +69,7 @@ import com.vividsolutions.jts.operation.union.CascadedPolygonUnion;
  * 
  * @author MapPlus
  */
-public class SplitByFeaturesDialog extends AbstractGeoProcessingDialog implements
-        IRunnableWithProgress {
+public class SplitByFeaturesDialog extends AbstractGeoProcessingDialog {
     protected static final Logger LOGGER = Logging.getLogger(SplitByFeaturesDialog.class);
 
     private Combo cboInputFeatures, cboSplitFeatures, cboSplitField, cboNamePolicy;
@@ -250,64 +248,61 @@ public class SplitByFeaturesDialog extends AbstractGeoProcessingDialog implement
             return;
         }
 
-        try {
-            PlatformUI.getWorkbench().getProgressService().run(false, true, this);
-            openInformation(getShell(), Messages.General_Completed);
-            super.okPressed();
-        } catch (InvocationTargetException e) {
-            MessageDialog.openError(getShell(), Messages.General_Error, e.getMessage());
-        } catch (InterruptedException e) {
-            MessageDialog.openInformation(getShell(), Messages.General_Cancelled, e.getMessage());
-        }
-    }
+        final String folder = locationView.getFolder();
+        final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+        final PropertyName uniqueField = ff.property(cboSplitField.getText());
 
-    @Override
-    public void run(IProgressMonitor monitor) throws InvocationTargetException,
-            InterruptedException {
-        monitor.beginTask(String.format(Messages.Task_Executing, windowTitle),
-                uniqueTable.getItems().length + 1);
-        try {
-            monitor.worked(increment);
+        // the input features are indexed once and shared by all split zones
+        final FeatureIndex featureIndex = new FeatureIndex(inputFeatures);
+        final SimpleFeatureCollection zoneFeatures = splitFeatures;
+        final NamePolicy policy = namePolicy;
 
-            final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
-            PropertyName uniqueField = ff.property(cboSplitField.getText());
-
-            ShapeExportOperation process = new ShapeExportOperation();
-            process.setOutputDataStore(locationView.getDataStore());
-            process.setNamePolicy(namePolicy);
-
-            for (TableItem item : uniqueTable.getItems()) {
-                monitor.subTask(String.format(Messages.Task_Executing, item.getText()));
-                if (monitor.isCanceled()) {
-                    break;
-                }
+        BatchScheduler scheduler = new BatchScheduler(windowTitle);
+        for (TableItem item : uniqueTable.getItems()) {
+            if (!item.getChecked()) {
+                continue;
+            }
 
-                if (item.getChecked()) {
-                    String layerName = item.getText();
-                    final String value = item.getText(1);
+            final String layerName = item.getText();
+            final String value = item.getText(1);
+            scheduler.add(new BatchTask(layerName) {
+                @Override
+                protected Object execute(IProgressMonitor monitor) throws Exception {
                     Filter filter = ff.equal(uniqueField, ff.literal(value), true);
                     if (value.equals("Null_Value")) { //$NON-NLS-1$
                         filter = ff.isNull(uniqueField);
                     }
 
-                    Geometry clipGeometry = unionGeometry(splitFeatures.subCollection(filter));
-                    process.setOutputTypeName(layerName);
-                    SimpleFeatureSource outputSfs = process
-                            .execute(new ClipWithGeometryFeatureCollection(inputFeatures,
-                                    clipGeometry));
-                    if (outputSfs == null) {
-                        ToolboxPlugin.log(windowTitle + " : Failed to export : " + layerName); //$NON-NLS-1$
+                    Geometry zone = unionGeometry(zoneFeatures.subCollection(filter));
+                    if (zone == null || zone.isEmpty()) {
+                        return null;
+                    }
+
+                    SplitByFeaturesOperation process = new SplitByFeaturesOperation(
+                            featureIndex, layerName);
+                    process.setOutputDataStore(DataStoreFactory.getShapefileDataStore(folder));
+                    process.setNamePolicy(policy);
+                    if (process.execute(zone, monitor) == null) {
+                        if (process.isCanceled()) {
+                            String fileName = process.getTypeName() + ".shp"; //$NON-NLS-1$
+                            OperationOutputs.removeCanceled(new File(folder, fileName));
+                            return null;
+                        }
+                        return windowTitle + " : Failed to export : " + layerName; //$NON-NLS-1$
                     }
+                    return null;
                 }
+            });
+        }
 
-                monitor.worked(increment);
-                Thread.sleep(100);
-            }
-        } catch (Exception e) {
-            ToolboxPlugin.log(e.getMessage());
-            throw new InvocationTargetException(e.getCause(), e.getMessage());
-        } finally {
-            monitor.done();
+        try {
+            PlatformUI.getWorkbench().getProgressService().run(true, true, scheduler);
+            openInformation(getShell(), Messages.General_Completed);
+            super.okPressed();
+        } catch (InvocationTargetException e) {
+            MessageDialog.openError(getShell(), Messages.General_Error, e.getMessage());
+        } catch (InterruptedException e) {
+            MessageDialog.openInformation(getShell(), Messages.General_Cancelled, e.getMessage());
         }
     }
 
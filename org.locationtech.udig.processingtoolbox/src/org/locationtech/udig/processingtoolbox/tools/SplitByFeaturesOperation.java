@@ -0,0 +1,260 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.process.spatialstatistics.operations.GeneralOperation;
+import org.geotools.process.spatialstatistics.storage.IFeatureInserter;
+import org.geotools.process.spatialstatistics.storage.NamePolicy;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.FilterFactory2;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * Extracts the input features that overlay a split zone using a shared {@link FeatureIndex}.
+ * <p>
+ * Only the features whose envelope intersects the zone are visited. Features fully contained in
+ * the zone are written without computing the intersection. As in
+ * {@link SplitByAttributesOperation}, the shape_leng and shape_area fields are not written.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class SplitByFeaturesOperation extends GeneralOperation {
+    protected static final Logger LOGGER = Logging.getLogger(SplitByFeaturesOperation.class);
+
+    private final FeatureIndex featureIndex;
+
+    private final String outputName;
+
+    private NamePolicy namePolicy = NamePolicy.NORMAL;
+
+    private boolean canceled = false;
+
+    private String typeName;
+
+    public SplitByFeaturesOperation(FeatureIndex featureIndex, String outputName) {
+        this.featureIndex = featureIndex;
+        this.outputName = outputName;
+    }
+
+    public void setNamePolicy(NamePolicy namePolicy) {
+        this.namePolicy = namePolicy;
+    }
+
+    /**
+     * Returns the type name of the output of the last execution, the output name with the name
+     * policy applied
+     */
+    public String getTypeName() {
+        return typeName;
+    }
+
+    /**
+     * Returns true if the last execution was canceled, the output is rolled back
+     */
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Extracts the features overlaying the zone
+     *
+     * @return the output features or null if canceled
+     */
+    public SimpleFeatureCollection execute(Geometry zone, IProgressMonitor monitor)
+            throws IOException {
+        SimpleFeatureType schema = featureIndex.getSchema();
+        SimpleFeatureType featureType = buildTargetSchema(schema);
+        typeName = featureType.getTypeName();
+        Class<?> binding = featureType.getGeometryDescriptor().getType().getBinding();
+        int[] sourceIndexes = OperationOutputs.buildSourceIndexes(schema);
+        int geomIndex = featureType.indexOf(featureType.getGeometryDescriptor().getLocalName());
+
+        PreparedGeometry prepared = PreparedGeometryFactory.prepare(zone);
+        SimpleFeatureCollection candidates = featureIndex.query(zone.getEnvelopeInternal());
+
+        canceled = false;
+        IFeatureInserter featureWriter = getFeatureWriter(featureType);
+        SimpleFeatureIterator featureIter = null;
+        try {
+            SubMonitor progress = SubMonitor.convert(monitor, 100);
+            progress.setWorkRemaining(featureIndex.size() / 1000 + 1);
+
+            int count = 0;
+            featureIter = candidates.features();
+            while (featureIter.hasNext()) {
+                SimpleFeature feature = featureIter.next();
+                if (++count % 1000 == 0) {
+                    if (progress.isCanceled()) {
+                        canceled = true;
+                        break;
+                    }
+                    progress.worked(1);
+                }
+
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                if (geometry == null || geometry.isEmpty()) {
+                    continue;
+                }
+
+                Geometry clipped;
+                if (prepared.contains(geometry)) {
+                    clipped = geometry; // fast path
+                } else if (prepared.intersects(geometry)) {
+                    clipped = geometry.intersection(zone);
+                } else {
+                    continue;
+                }
+
+                clipped = ClipWithPreparedFeaturesOperation.toTargetGeometry(clipped, binding);
+                if (clipped == null) {
+                    continue;
+                }
+
+                // attributes are copied by index, the names may differ by the name policy
+                SimpleFeature newFeature = featureWriter.buildFeature();
+                for (int idx = 0; idx < sourceIndexes.length; idx++) {
+                    if (idx != geomIndex) {
+                        newFeature.setAttribute(idx, feature.getAttribute(sourceIndexes[idx]));
+                    }
+                }
+                newFeature.setDefaultGeometry(clipped);
+                featureWriter.write(newFeature);
+            }
+
+            if (canceled) {
+                featureWriter.rollback();
+            }
+        } catch (Exception e) {
+            featureWriter.rollback(e);
+        } finally {
+            featureWriter.close(featureIter);
+        }
+
+        return canceled ? null : featureWriter.getFeatureCollection();
+    }
+
+    private SimpleFeatureType buildTargetSchema(SimpleFeatureType schema) {
+        SimpleFeatureType featureType = ClipWithPreparedFeaturesOperation.buildTargetSchema(
+                schema, outputName, namePolicy);
+
+        SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+        builder.init(featureType);
+        for (AttributeDescriptor descriptor : featureType.getAttributeDescriptors()) {
+            if (!(descriptor instanceof GeometryDescriptor)
+                    && OperationOutputs.isShapeField(descriptor)) {
+                builder.remove(descriptor.getLocalName());
+            }
+        }
+        return builder.buildFeatureType();
+    }
+
+    /**
+     * STRtree of the input features, built once and shared by all split zones.
+     * <p>
+     * The indexed features are held in memory. Inputs larger than the maximum number of indexed
+     * features are not indexed, the features of each zone are then read from the input with a
+     * bounding box filter.
+     */
+    public static final class FeatureIndex {
+        static final int DEFAULT_MAX_FEATURES = 500000;
+
+        private static final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+        private final SimpleFeatureCollection features;
+
+        private final int size;
+
+        private int maxFeatures = DEFAULT_MAX_FEATURES;
+
+        private STRtree index;
+
+        public FeatureIndex(SimpleFeatureCollection features) {
+            this.features = features;
+            this.size = features.size();
+        }
+
+        public SimpleFeatureType getSchema() {
+            return features.getSchema();
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void setMaxFeatures(int maxFeatures) {
+            this.maxFeatures = maxFeatures;
+        }
+
+        /**
+         * Returns the features whose envelope intersects the search envelope, can be called
+         * concurrently.
+         */
+        @SuppressWarnings("unchecked")
+        public SimpleFeatureCollection query(Envelope searchEnv) {
+            if (size > maxFeatures) {
+                String geomName = getSchema().getGeometryDescriptor().getLocalName();
+                ReferencedEnvelope bbox = new ReferencedEnvelope(searchEnv,
+                        getSchema().getCoordinateReferenceSystem());
+                return features.subCollection(ff.bbox(ff.property(geomName), bbox));
+            }
+
+            List<SimpleFeature> result = getIndex().query(searchEnv);
+            return new ListFeatureCollection(getSchema(), result);
+        }
+
+        private synchronized STRtree getIndex() {
+            if (index != null) {
+                return index;
+            }
+
+            STRtree spatialIndex = new STRtree();
+            SimpleFeatureIterator featureIter = features.features();
+            try {
+                while (featureIter.hasNext()) {
+                    SimpleFeature feature = featureIter.next();
+                    Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                    if (geometry == null || geometry.isEmpty()) {
+                        continue;
+                    }
+                    spatialIndex.insert(geometry.getEnvelopeInternal(), feature);
+                }
+            } finally {
+                featureIter.close();
+            }
+            spatialIndex.build();
+
+            index = spatialIndex;
+            return index;
+        }
+    }
+}
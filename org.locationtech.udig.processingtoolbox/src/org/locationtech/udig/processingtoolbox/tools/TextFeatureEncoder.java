@@ -0,0 +1,405 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.util.logging.Logging;
+import org.locationtech.udig.processingtoolbox.tools.PipelinedFeatureEncoder.SegmentEncoder;
+import org.locationtech.udig.processingtoolbox.tools.PipelinedFeatureEncoder.SegmentEncoderFactory;
+import org.locationtech.udig.processingtoolbox.tools.PipelinedFeatureEncoder.SegmentWriter;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.io.WKTWriter;
+
+/**
+ * Streaming encoder of delimited text(CSV, WKT) files.
+ * <p>
+ * Records are formatted into one reused character buffer, numbers are appended as primitives and
+ * geometries are written by a single WKTWriter. The characters are encoded into a large byte
+ * buffer that is written to the file channel.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+@SuppressWarnings("nls")
+public class TextFeatureEncoder {
+    protected static final Logger LOGGER = Logging.getLogger(TextFeatureEncoder.class);
+
+    static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    static final String NEW_LINE = System.getProperty("line.separator"); //$NON-NLS-1$
+
+    private final Charset charset;
+
+    private final String delimiter;
+
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    private PipelinedFeatureEncoder pipeline;
+
+    public TextFeatureEncoder(Charset charset, String delimiter) {
+        this.charset = charset;
+        this.delimiter = delimiter;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = Math.max(8192, bufferSize);
+    }
+
+    /**
+     * Encodes the records with the given pipeline, null to encode on the calling thread
+     */
+    public void setPipeline(PipelinedFeatureEncoder pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Writes the attributes and the x, y coordinates of the centroid of each feature
+     */
+    public void encodeCSV(SimpleFeatureCollection features, File outputFile) throws IOException {
+        SimpleFeatureType schema = features.getSchema();
+        final int geomIndex = geometryIndex(schema);
+        final int count = schema.getAttributeCount();
+
+        final ChannelTextWriter writer = new ChannelTextWriter(outputFile, charset, bufferSize);
+        try {
+            // write fields
+            StringBuilder sb = writer.getBuffer();
+            boolean first = true;
+            for (AttributeDescriptor descriptor : schema.getAttributeDescriptors()) {
+                if (descriptor instanceof GeometryDescriptor) {
+                    continue;
+                }
+                if (!first) {
+                    sb.append(delimiter);
+                }
+                sb.append(descriptor.getLocalName());
+                first = false;
+            }
+            sb.append(delimiter).append("xcoord").append(delimiter).append("ycoord");
+            writer.endRecord();
+
+            // write contents
+            if (pipeline != null) {
+                pipeline.encode(features, new SegmentEncoderFactory() {
+                    @Override
+                    public SegmentEncoder create() {
+                        return new SegmentEncoder() {
+                            @Override
+                            public void encode(List<SimpleFeature> batch, StringBuilder segment) {
+                                for (SimpleFeature feature : batch) {
+                                    appendCSVRecord(segment, feature, count, geomIndex);
+                                    segment.append(NEW_LINE);
+                                }
+                            }
+                        };
+                    }
+                }, writer);
+                return;
+            }
+
+            SimpleFeatureIterator featureIter = features.features();
+            try {
+                while (featureIter.hasNext()) {
+                    appendCSVRecord(sb, featureIter.next(), count, geomIndex);
+                    writer.endRecord();
+                }
+            } finally {
+                featureIter.close();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void appendCSVRecord(StringBuilder sb, SimpleFeature feature, int count,
+            int geomIndex) {
+        boolean first = true;
+        for (int index = 0; index < count; index++) {
+            if (index == geomIndex) {
+                continue;
+            }
+            if (!first) {
+                sb.append(delimiter);
+            }
+            appendValue(sb, feature.getAttribute(index));
+            first = false;
+        }
+
+        Geometry geometry = (Geometry) feature.getDefaultGeometry();
+        sb.append(delimiter);
+        if (geometry != null && !geometry.isEmpty()) {
+            // the centroid of a point is the point itself
+            Coordinate coordinate = geometry instanceof Point ? geometry.getCoordinate()
+                    : geometry.getCentroid().getCoordinate();
+            sb.append(coordinate.x).append(delimiter).append(coordinate.y);
+        } else {
+            sb.append(delimiter);
+        }
+    }
+
+    /**
+     * Writes the attributes of each feature, the geometry as well-known text
+     */
+    public void encodeWKT(SimpleFeatureCollection features, File outputFile) throws IOException {
+        SimpleFeatureType schema = features.getSchema();
+        final int geomIndex = geometryIndex(schema);
+        final int count = schema.getAttributeCount();
+
+        final ChannelTextWriter writer = new ChannelTextWriter(outputFile, charset, bufferSize);
+        try {
+            // write fields
+            StringBuilder sb = writer.getBuffer();
+            for (AttributeDescriptor descriptor : schema.getAttributeDescriptors()) {
+                if (sb.length() > 0) {
+                    sb.append(delimiter);
+                }
+                sb.append(descriptor.getLocalName());
+            }
+            writer.endRecord();
+
+            // write contents
+            if (pipeline != null) {
+                pipeline.encode(features, new SegmentEncoderFactory() {
+                    @Override
+                    public SegmentEncoder create() {
+                        final WKTWriter wktWriter = new WKTWriter();
+                        return new SegmentEncoder() {
+                            @Override
+                            public void encode(List<SimpleFeature> batch, StringBuilder segment)
+                                    throws IOException {
+                                BufferWriter segmentWriter = new BufferWriter(segment);
+                                for (SimpleFeature feature : batch) {
+                                    appendWKTRecord(segmentWriter, wktWriter, feature, count,
+                                            geomIndex);
+                                    segment.append(NEW_LINE);
+                                }
+                            }
+                        };
+                    }
+                }, writer);
+                return;
+            }
+
+            WKTWriter wktWriter = new WKTWriter();
+            SimpleFeatureIterator featureIter = features.features();
+            try {
+                while (featureIter.hasNext()) {
+                    appendWKTRecord(writer, wktWriter, featureIter.next(), count, geomIndex);
+                    writer.endRecord();
+                }
+            } finally {
+                featureIter.close();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void appendWKTRecord(BufferWriter target, WKTWriter wktWriter, SimpleFeature feature,
+            int count, int geomIndex) throws IOException {
+        StringBuilder sb = target.getBuffer();
+        boolean isComma = delimiter.equals(",");
+        for (int index = 0; index < count; index++) {
+            if (index > 0) {
+                sb.append(delimiter);
+            }
+
+            Object value = feature.getAttribute(index);
+            if (index == geomIndex && value != null) {
+                if (isComma) {
+                    sb.append('"');
+                }
+                wktWriter.write((Geometry) value, target);
+                if (isComma) {
+                    sb.append('"');
+                }
+            } else {
+                appendValue(sb, value);
+            }
+        }
+    }
+
+    private int geometryIndex(SimpleFeatureType schema) {
+        GeometryDescriptor descriptor = schema.getGeometryDescriptor();
+        return descriptor == null ? -1 : schema.indexOf(descriptor.getLocalName());
+    }
+
+    private void appendValue(StringBuilder sb, Object value) {
+        if (value == null) {
+            return;
+        } else if (value instanceof Double) {
+            sb.append(((Double) value).doubleValue());
+        } else if (value instanceof Integer) {
+            sb.append(((Integer) value).intValue());
+        } else if (value instanceof Long) {
+            sb.append(((Long) value).longValue());
+        } else if (value instanceof Float) {
+            sb.append(((Float) value).floatValue());
+        } else if (value instanceof String) {
+            sb.append((String) value);
+        } else {
+            sb.append(value.toString());
+        }
+    }
+
+    /**
+     * Writer that appends to a StringBuilder
+     */
+    static class BufferWriter extends Writer {
+        protected final StringBuilder buffer;
+
+        BufferWriter(StringBuilder buffer) {
+            this.buffer = buffer;
+        }
+
+        StringBuilder getBuffer() {
+            return buffer;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            buffer.append(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str) {
+            buffer.append(str);
+        }
+
+        @Override
+        public void write(int c) {
+            buffer.append((char) c);
+        }
+
+        @Override
+        public void flush() throws IOException {
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    /**
+     * Collects characters in a reused buffer and encodes them to the file channel in large
+     * blocks. Also serves as the Writer of the WKTWriter and receives the pipelined segments.
+     */
+    static final class ChannelTextWriter extends BufferWriter implements SegmentWriter {
+        static final int FLUSH_CHARS = 1 << 16;
+
+        private final FileOutputStream outputStream;
+
+        private final FileChannel channel;
+
+        private final CharsetEncoder encoder;
+
+        private final ByteBuffer bytes;
+
+        private long written = 0;
+
+        ChannelTextWriter(File file, Charset charset, int bufferSize) throws IOException {
+            super(new StringBuilder(FLUSH_CHARS + 1024));
+            this.outputStream = new FileOutputStream(file);
+            this.channel = outputStream.getChannel();
+            this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.bytes = ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        void endRecord() throws IOException {
+            buffer.append(NEW_LINE);
+            flushIfFull();
+        }
+
+        void flushIfFull() throws IOException {
+            if (buffer.length() >= FLUSH_CHARS) {
+                encode(false);
+            }
+        }
+
+        /**
+         * Returns the approximate size of the output, pending characters are counted as bytes
+         */
+        long size() {
+            return written + bytes.position() + buffer.length();
+        }
+
+        @Override
+        public void write(CharSequence segment) throws IOException {
+            buffer.append(segment);
+            flushIfFull();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            encode(false);
+            drain();
+        }
+
+        private void encode(boolean endOfInput) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(buffer);
+            while (true) {
+                CoderResult result = encoder.encode(chars, bytes, endOfInput);
+                if (result.isOverflow()) {
+                    drain();
+                } else {
+                    break;
+                }
+            }
+            // an incomplete surrogate pair is kept for the next block
+            buffer.delete(0, chars.position());
+        }
+
+        private void drain() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                written += channel.write(bytes);
+            }
+            bytes.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                encode(true);
+                while (encoder.flush(bytes).isOverflow()) {
+                    drain();
+                }
+                drain();
+            } finally {
+                channel.close();
+                outputStream.close();
+            }
+        }
+    }
+}
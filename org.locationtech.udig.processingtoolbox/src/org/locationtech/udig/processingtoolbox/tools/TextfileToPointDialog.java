@@ -19,6 +19,7 @@ import java.util.Map.Entry;
 import java.util.logging.Logger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jface.window.Window;
@@ -42,6 +43,7 @@ import org.eclipse.swt.widgets.TableItem;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.swt.widgets.Widget;
 import org.eclipse.ui.PlatformUI;
+import org.geotools.data.DataStore;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.process.spatialstatistics.core.StringHelper;
 import org.geotools.process.spatialstatistics.operations.TextColumn;
@@ -85,6 +87,17 @@ public class TextfileToPointDialog extends AbstractGeoProcessingDialog implement
 
     private Charset charset = Charset.defaultCharset(); // default
 
+    // widget values read before the conversion runs on a worker thread
+    private boolean headerFirst;
+
+    private List<TextColumn> schema;
+
+    private CoordinateReferenceSystem sourceCRS, targetCRS;
+
+    private String outputName, outputFile;
+
+    private DataStore outputDataStore;
+
     public TextfileToPointDialog(Shell parentShell, IMap map) {
         super(parentShell, map);
 
@@ -363,10 +376,17 @@ public class TextfileToPointDialog extends AbstractGeoProcessingDialog implement
             }
         }
 
+        this.headerFirst = chkHeader.getSelection();
+        this.schema = schema;
+        this.sourceCRS = (CoordinateReferenceSystem) txtSourceCrs.getData();
+        this.targetCRS = (CoordinateReferenceSystem) txtTargetCrs.getData();
+        this.outputName = locationView.getOutputName();
+        this.outputFile = locationView.getFile();
+        this.outputDataStore = locationView.getDataStore();
+
         try {
-            PlatformUI.getWorkbench().getProgressService().run(false, true, this);
-            openInformation(getShell(),
-                    String.format(Messages.Task_Completed, locationView.getFile()));
+            PlatformUI.getWorkbench().getProgressService().run(true, true, this);
+            openInformation(getShell(), String.format(Messages.Task_Completed, outputFile));
 
             if (!StringHelper.isNullOrEmpty(error)) {
                 if (MessageDialog.openConfirm(getShell(), windowTitle,
@@ -393,40 +413,47 @@ public class TextfileToPointDialog extends AbstractGeoProcessingDialog implement
             monitor.setTaskName(String.format(Messages.Task_Executing, windowTitle));
             monitor.worked(increment);
 
-            boolean headerFirst = chkHeader.getSelection();
-            List<TextColumn> schema = getTextColumns();
-
-            CoordinateReferenceSystem sourceCRS = null;
-            CoordinateReferenceSystem targetCRS = null;
-
-            if (txtSourceCrs.getData() != null) {
-                sourceCRS = (CoordinateReferenceSystem) txtSourceCrs.getData();
-            }
-
-            if (txtTargetCrs.getData() != null) {
-                targetCRS = (CoordinateReferenceSystem) txtTargetCrs.getData();
-            }
-
-            String outputName = locationView.getOutputName();
-
             monitor.subTask(String.format(Messages.Task_Executing, windowTitle));
-            TextfileToPointOperation process = new TextfileToPointOperation();
-            ShapeExportOperation exportOp = new ShapeExportOperation();
-
-            exportOp.setOutputDataStore(locationView.getDataStore());
-            exportOp.setOutputTypeName(outputName);
-            SimpleFeatureCollection features = exportOp.execute(
-                    process.execute(textFile, charset, delimiter, headerFirst, schema, sourceCRS,
-                            targetCRS)).getFeatures();
+            SimpleFeatureCollection features;
+            if (MappedTextfileToPointOperation.isSupported(charset, delimiter)) {
+                // parallel parsing of the mapped file, written straight to the output
+                MappedTextfileToPointOperation process = new MappedTextfileToPointOperation();
+                process.setOutputDataStore(outputDataStore);
+                process.setOutputTypeName(outputName);
+
+                long start = System.currentTimeMillis();
+                features = process.execute(textFile, charset, delimiter, headerFirst, schema,
+                        sourceCRS, targetCRS, SubMonitor.convert(monitor, 80));
+                if (monitor.isCanceled()) {
+                    OperationOutputs.removeCanceled(new File(outputFile));
+                    throw new InterruptedException(Messages.Task_Canceled);
+                }
 
-            error = process.getError();
+                double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000d;
+                int count = process.getFeatureCount();
+                ToolboxPlugin.log(String.format(Messages.Task_FeaturesImported, windowTitle,
+                        count, seconds, count / seconds));
+                error = process.getError();
+            } else {
+                TextfileToPointOperation process = new TextfileToPointOperation();
+                ShapeExportOperation exportOp = new ShapeExportOperation();
+
+                exportOp.setOutputDataStore(outputDataStore);
+                exportOp.setOutputTypeName(outputName);
+                features = exportOp.execute(
+                        process.execute(textFile, charset, delimiter, headerFirst, schema,
+                                sourceCRS, targetCRS)).getFeatures();
+                error = process.getError();
+            }
             monitor.worked(increment);
 
             if (features != null) {
                 monitor.setTaskName(Messages.Task_AddingLayer);
-                addFeaturesToMap(map, locationView.getFile(), outputName);
+                addFeaturesToMap(map, outputFile, outputName);
                 monitor.worked(increment);
             }
+        } catch (InterruptedException e) {
+            throw e;
         } catch (Exception e) {
             ToolboxPlugin.log(e.getMessage());
             throw new InvocationTargetException(e.getCause(), e.getMessage());
@@ -22,14 +22,18 @@ import org.opengis.feature.simple.SimpleFeature;
 class XYDataItem2 extends XYDataItem {
     private static final long serialVersionUID = 2567264473390904488L;
 
-    private SimpleFeature feature;
+    private String featureID;
 
     public XYDataItem2(SimpleFeature feature, double x, double y) {
+        this(feature.getID(), x, y);
+    }
+
+    public XYDataItem2(String featureID, double x, double y) {
         super(x, y);
-        this.feature = feature;
+        this.featureID = featureID;
     }
 
-    public SimpleFeature getFeature() {
-        return this.feature;
+    public String getFeatureID() {
+        return this.featureID;
     }
 }
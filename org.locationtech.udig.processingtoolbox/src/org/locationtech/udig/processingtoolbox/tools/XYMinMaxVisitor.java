@@ -110,6 +110,33 @@ class XYMinMaxVisitor {
         }
     }
 
+    /**
+     * Sets the extents of the rows where all columns are valid, the columns are x, y and z. A
+     * single column is used for x and y.
+     */
+    public void visit(ColumnStatistics statistics) {
+        reset();
+        if (statistics.getColumnCount() == 0 || statistics.getCompleteCount() == 0) {
+            return;
+        }
+
+        int last = statistics.getColumnCount() - 1;
+        minX = statistics.getCompleteMinimum(0);
+        maxX = statistics.getCompleteMaximum(0);
+        sumX = statistics.getCompleteSum(0);
+
+        minY = statistics.getCompleteMinimum(Math.min(1, last));
+        maxY = statistics.getCompleteMaximum(Math.min(1, last));
+        sumY = statistics.getCompleteSum(Math.min(1, last));
+
+        if (last >= 2) {
+            minZ = statistics.getCompleteMinimum(2);
+            maxZ = statistics.getCompleteMaximum(2);
+            sumZ = statistics.getCompleteSum(2);
+        }
+        count = statistics.getCompleteCount();
+    }
+
     public double getAverageX() {
         return sumX / count;
     }
@@ -40,10 +40,15 @@ import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.geotools.process.spatialstatistics.operations.TextColumn;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.util.logging.Logging;
+import org.locationtech.udig.processingtoolbox.tools.excel.StreamingSheetReader.RowHandler;
+import org.locationtech.udig.processingtoolbox.tools.excel.StreamingSheetReader.SheetRow;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 /**
  * ExcelFormatReader.
+ * <p>
+ * The file is opened lazily: sheet names and previews of .xlsx files are read with
+ * {@link StreamingSheetReader}, other workbooks are loaded on the first access.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -53,19 +58,33 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
 public class ExcelFormatReader {
     protected static final Logger LOGGER = Logging.getLogger(ExcelFormatReader.class);
 
+    private final File excelFile;
+
     private Workbook workbook;
 
+    private boolean loaded = false;
+
     static final DateFormat dataFormat = new SimpleDateFormat("yyyyMMdd");
 
     static final DecimalFormat decimalFormat = new DecimalFormat("#.####################");
 
     static final String prefix = "col_";
 
+    // number of rows used to infer the column types
+    static final int INFER_ROWS = 100;
+
     public ExcelFormatReader(File excelFile) {
-        this.workbook = getWorkbook(excelFile);
+        this.excelFile = excelFile;
     }
 
+    /**
+     * Returns the workbook, loaded on the first call
+     */
     public Workbook getWorkbook() {
+        if (!loaded) {
+            workbook = getWorkbook(excelFile);
+            loaded = true;
+        }
         return workbook;
     }
 
@@ -90,7 +109,17 @@ public class ExcelFormatReader {
     }
 
     public List<String> getWorksheets() {
+        if (StreamingSheetReader.isSupported(excelFile)) {
+            try {
+                return new StreamingSheetReader(excelFile).getWorksheets();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINER, e.getMessage(), e);
+                return new ArrayList<String>();
+            }
+        }
+
         List<String> workSheets = new ArrayList<String>();
+        Workbook workbook = getWorkbook();
         if (workbook == null) {
             return workSheets;
         }
@@ -101,41 +130,57 @@ public class ExcelFormatReader {
         return workSheets;
     }
 
+    /**
+     * Builds the columns of a sheet from its first rows. Only the header and the first
+     * {@link #INFER_ROWS} rows are read, .xlsx files without loading the workbook.
+     *
+     * @param sheetName the sheet name
+     * @param headerFirst the first row contains the column names
+     * @param sampleSize the number of preview values of each column
+     * @return the sheet information
+     */
     public ExcelSheetInfo getSheet(String sheetName, boolean headerFirst, int sampleSize) {
-        if (workbook == null) {
-            throw new NullPointerException("Invalid workbook file!");
-        }
+        SampleCollector sample = new SampleCollector(Math.max(sampleSize, INFER_ROWS));
+        ExcelSheetInfo sheetInfo;
+        if (StreamingSheetReader.isSupported(excelFile)) {
+            try {
+                new StreamingSheetReader(excelFile).read(sheetName, sample);
+            } catch (IOException e) {
+                throw new NullPointerException("Invalid workbook file: " + e.getMessage());
+            }
+            sheetInfo = new ExcelSheetInfo(sheetName);
+        } else {
+            Workbook workbook = getWorkbook();
+            if (workbook == null) {
+                throw new NullPointerException("Invalid workbook file!");
+            }
 
-        Sheet sheet = workbook.getSheet(sheetName);
-        if (sheet == null) {
-            throw new NullPointerException(sheetName + " sheet does not exist!");
+            Sheet sheet = workbook.getSheet(sheetName);
+            if (sheet == null) {
+                throw new NullPointerException(sheetName + " sheet does not exist!");
+            }
+            readSample(workbook, sheet, sample);
+            sheetInfo = new ExcelSheetInfo(workbook, sheet, sheetName);
         }
+        sheetInfo.setHeaderFirst(headerFirst);
 
-        // get valid data row
-        int firstRow = sheet.getFirstRowNum();
-        Row header = sheet.getRow(firstRow);
-        while (firstRow <= sheet.getLastRowNum()) {
-            if (header.getFirstCellNum() == -1) {
-                header = sheet.getRow(++firstRow);
-                continue;
-            }
-            break;
+        if (sample.header == null) {
+            return sheetInfo; // empty sheet
         }
 
-        // build schema
-        ExcelSheetInfo sheetInfo = new ExcelSheetInfo(workbook, sheet, sheetName);
-        sheetInfo.setHeaderFirst(headerFirst);
+        // the first row is either the header or the first data row
+        List<String[]> rows = sample.rows;
+        if (!headerFirst) {
+            rows.add(0, sample.header);
+        }
 
-        FormulaEvaluator evaluator = workbook.getCreationHelper().createFormulaEvaluator();
-        DataFormatter formatter = new DataFormatter(true);
-        for (int index = header.getFirstCellNum(); index <= header.getLastCellNum(); index++) {
+        for (int index = sample.firstColumn; index <= sample.lastColumn; index++) {
             TextColumn column = new TextColumn();
             column.setColumnIndex(index);
 
             String columnName = prefix + index;
             if (headerFirst) {
-                Cell cell = sheet.getRow(firstRow).getCell(index);
-                columnName = getCellValue(cell, evaluator, formatter);
+                columnName = sample.header[index];
                 if (columnName == null || columnName.isEmpty()) {
                     columnName = prefix + index;
                 }
@@ -148,20 +193,13 @@ public class ExcelFormatReader {
             } else if (columnName.startsWith("y") || columnName.startsWith("lat")) {
                 column.setY();
             } else {
-                column.setType("String"); // default type
+                column.setType(inferType(rows, index));
             }
             column.setName(columnName);
 
             // preview
-            int start = headerFirst ? firstRow + 1 : firstRow;
-            for (int pos = start, count = 0; count < sampleSize; count++, pos++) {
-                Row row = sheet.getRow(pos);
-                if (row == null) {
-                    continue;
-                }
-
-                String val = getCellValue(row.getCell(index), evaluator, formatter);
-                column.getSampleValues().add(val);
+            for (int pos = 0; pos < sampleSize && pos < rows.size(); pos++) {
+                column.getSampleValues().add(cellAt(rows.get(pos), index));
             }
 
             sheetInfo.getColumns().add(column);
@@ -170,6 +208,149 @@ public class ExcelFormatReader {
         return sheetInfo;
     }
 
+    private void readSample(Workbook workbook, Sheet sheet, SampleCollector sample) {
+        FormulaEvaluator evaluator = workbook.getCreationHelper().createFormulaEvaluator();
+        DataFormatter formatter = new DataFormatter(true);
+
+        // row major, stops after the sampled rows
+        SheetRow sheetRow = new SheetRow();
+        for (int rowID = sheet.getFirstRowNum(); rowID <= sheet.getLastRowNum(); rowID++) {
+            Row row = sheet.getRow(rowID);
+            if (row == null) {
+                continue;
+            }
+
+            sheetRow.reset(rowID);
+            for (Cell cell : row) {
+                // blank cells are not set, same as the streaming reader
+                String value = getCellValue(cell, evaluator, formatter);
+                if (!value.isEmpty()) {
+                    sheetRow.setCell(cell.getColumnIndex(), value);
+                }
+            }
+
+            if (!sample.handleRow(sheetRow)) {
+                break;
+            }
+        }
+    }
+
+    private String cellAt(String[] row, int column) {
+        return column < row.length && row[column] != null ? row[column] : "";
+    }
+
+    /**
+     * Returns the narrowest type of {@link TextColumn#getFieldTypes(boolean)} that accepts all
+     * non empty sample values. The type is a suggestion of the dialog, the values of the later rows
+     * that do not fit the type are reported as errors by {@link ExcelToPointOperaion}. Numbers
+     * with leading zeros such as codes are kept as String.
+     */
+    private String inferType(List<String[]> rows, int column) {
+        boolean isInteger = true;
+        boolean isLong = true;
+        boolean isDouble = true;
+        boolean isBoolean = true;
+        int count = 0;
+        for (String[] row : rows) {
+            String value = cellAt(row, column);
+            if (value.isEmpty()) {
+                continue;
+            }
+            count++;
+
+            if (hasLeadingZero(value)) {
+                return "String";
+            }
+
+            if (isBoolean) {
+                isBoolean = value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false");
+            }
+
+            if (isLong) {
+                try {
+                    long longValue = Long.parseLong(value);
+                    isInteger &= longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE;
+                } catch (NumberFormatException e) {
+                    isInteger = false;
+                    isLong = false;
+                }
+            }
+
+            if (isDouble && !isLong) {
+                try {
+                    Double.parseDouble(value);
+                } catch (NumberFormatException e) {
+                    isDouble = false;
+                }
+            }
+
+            if (!isBoolean && !isDouble) {
+                break;
+            }
+        }
+
+        if (count == 0) {
+            return "String";
+        } else if (isBoolean) {
+            return "Boolean";
+        } else if (isInteger) {
+            return "Integer";
+        } else if (isLong) {
+            return "Long";
+        } else if (isDouble) {
+            return "Double";
+        }
+        return "String";
+    }
+
+    // "00123" would lose its leading zeros as a number, "0" and "0.5" are numbers
+    private boolean hasLeadingZero(String value) {
+        int start = value.startsWith("-") || value.startsWith("+") ? 1 : 0;
+        return value.length() > start + 1 && value.charAt(start) == '0'
+                && Character.isDigit(value.charAt(start + 1));
+    }
+
+    /**
+     * Collects the first non empty row and the following rows
+     */
+    static final class SampleCollector implements RowHandler {
+        private final int maxRows;
+
+        String[] header;
+
+        int firstColumn;
+
+        int lastColumn;
+
+        final List<String[]> rows = new ArrayList<String[]>();
+
+        SampleCollector(int maxRows) {
+            this.maxRows = maxRows;
+        }
+
+        @Override
+        public boolean handleRow(SheetRow row) {
+            if (row.isEmpty()) {
+                return true;
+            }
+
+            String[] values = new String[row.getLastColumn() + 1];
+            for (int index = row.getFirstColumn(); index < values.length; index++) {
+                values[index] = row.getCell(index);
+            }
+
+            if (header == null) {
+                header = values;
+                firstColumn = row.getFirstColumn();
+                lastColumn = row.getLastColumn();
+                return true;
+            }
+
+            rows.add(values);
+            return rows.size() < maxRows;
+        }
+    }
+
     private String getCellValue(Cell cell, FormulaEvaluator evaluator, DataFormatter formatter) {
         if (cell == null) {
             return "";
@@ -222,6 +403,13 @@ public class ExcelFormatReader {
 
         private CoordinateReferenceSystem targetCRS = null;
 
+        /**
+         * Sheet of a streamed workbook, the workbook and the sheet are not loaded
+         */
+        public ExcelSheetInfo(String name) {
+            this.name = name;
+        }
+
         public ExcelSheetInfo(Workbook workbook, Sheet sheet) {
             this.workbook = workbook;
             this.sheet = sheet;
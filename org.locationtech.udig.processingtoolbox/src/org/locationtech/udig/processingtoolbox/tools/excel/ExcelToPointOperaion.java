@@ -37,7 +37,6 @@ import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.geometry.jts.JTS;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.operations.GeneralOperation;
 import org.geotools.process.spatialstatistics.operations.TextColumn;
@@ -45,21 +44,24 @@ import org.geotools.process.spatialstatistics.storage.IFeatureInserter;
 import org.geotools.referencing.CRS;
 import org.geotools.util.Converters;
 import org.geotools.util.logging.Logging;
+import org.locationtech.udig.processingtoolbox.tools.PointBlockTransformer;
+import org.locationtech.udig.processingtoolbox.tools.PointBlockTransformer.PointHandler;
 import org.locationtech.udig.processingtoolbox.tools.excel.ExcelFormatReader.ExcelSheetInfo;
+import org.locationtech.udig.processingtoolbox.tools.excel.StreamingSheetReader.RowHandler;
+import org.locationtech.udig.processingtoolbox.tools.excel.StreamingSheetReader.SheetRow;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
-import org.opengis.geometry.MismatchedDimensionException;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
-import org.opengis.referencing.operation.TransformException;
 
-import com.vividsolutions.jts.geom.Coordinate;
-import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.Point;
 
 /**
  * Excel file to point features operation.
+ * <p>
+ * Office Open XML(.xlsx) files are streamed row by row with {@link StreamingSheetReader}, other
+ * workbooks are loaded with the POI usermodel.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -77,6 +79,12 @@ public class ExcelToPointOperaion extends GeneralOperation {
 
     private StringBuffer errorBuffer = new StringBuffer();
 
+    private String outputTypeName = "ExcelToPoint";
+
+    public void setOutputTypeName(String outputTypeName) {
+        this.outputTypeName = outputTypeName;
+    }
+
     public String getError() {
         return errorBuffer.toString();
     }
@@ -84,6 +92,11 @@ public class ExcelToPointOperaion extends GeneralOperation {
     public SimpleFeatureCollection execute(File excelFile, String sheetName,
             List<TextColumn> columns, boolean headerFirst, CoordinateReferenceSystem sourceCRS,
             CoordinateReferenceSystem targetCRS) throws IOException {
+        if (StreamingSheetReader.isSupported(excelFile)) {
+            return executeStreaming(excelFile, sheetName, columns, headerFirst, sourceCRS,
+                    targetCRS);
+        }
+
         FileInputStream inputStream = null;
         try {
             inputStream = new FileInputStream(excelFile);
@@ -102,6 +115,58 @@ public class ExcelToPointOperaion extends GeneralOperation {
         return null;
     }
 
+    /**
+     * Converts an Office Open XML(.xlsx) sheet row by row without loading the workbook. The rows
+     * are written to the output data store as they are parsed.
+     */
+    public SimpleFeatureCollection executeStreaming(File excelFile, String sheetName,
+            final List<TextColumn> columns, final boolean headerFirst,
+            CoordinateReferenceSystem sourceCRS, CoordinateReferenceSystem targetCRS)
+            throws IOException {
+        SimpleFeatureType schema = buildSchema(columns, sourceCRS, targetCRS);
+
+        MathTransform transform = null;
+        if (sourceCRS != null && targetCRS != null) {
+            transform = getMathTransform(sourceCRS, targetCRS);
+        }
+
+        // prepare transactional feature store
+        final IFeatureInserter featureWriter = getFeatureWriter(schema);
+        final PointBlockTransformer<RowFeature> points = createPoints(featureWriter, columns,
+                transform);
+        try {
+            final String[] values = new String[columns.size()];
+            new StreamingSheetReader(excelFile).read(sheetName, new RowHandler() {
+                boolean first = true;
+
+                @Override
+                public boolean handleRow(SheetRow row) throws IOException {
+                    if (row.isEmpty()) {
+                        return true;
+                    } else if (first) {
+                        first = false;
+                        if (headerFirst) {
+                            return true;
+                        }
+                    }
+
+                    for (int index = 0; index < values.length; index++) {
+                        values[index] = row.getCell(columns.get(index).getColumnIndex());
+                    }
+                    write(featureWriter, points, columns, values, row.getRowNum());
+                    return true;
+                }
+            });
+            points.flush();
+        } catch (IOException e) {
+            featureWriter.rollback(e);
+        } finally {
+            featureWriter.close();
+        }
+
+        return featureWriter.getFeatureCollection();
+    }
+
     public SimpleFeatureCollection execute(Workbook workbook, String sheetName,
             List<TextColumn> columns, boolean headerFirst, CoordinateReferenceSystem sourceCRS,
             CoordinateReferenceSystem targetCRS) throws IOException {
@@ -132,7 +197,8 @@ public class ExcelToPointOperaion extends GeneralOperation {
     }
 
     public SimpleFeatureCollection execute(ExcelSheetInfo sheetInfo) throws IOException {
-        SimpleFeatureType schema = buildSchema(sheetInfo);
+        SimpleFeatureType schema = buildSchema(sheetInfo.getColumns(), sheetInfo.getSourceCRS(),
+                sheetInfo.getTargetCRS());
 
         MathTransform transform = null;
         if (sheetInfo.getSourceCRS() != null && sheetInfo.getTargetCRS() != null) {
@@ -141,6 +207,8 @@ public class ExcelToPointOperaion extends GeneralOperation {
 
         // prepare transactional feature store
         IFeatureInserter featureWriter = getFeatureWriter(schema);
+        PointBlockTransformer<RowFeature> points = createPoints(featureWriter,
+                sheetInfo.getColumns(), transform);
 
         FormulaEvaluator evaluator = sheetInfo.getWorkbook().getCreationHelper()
                 .createFormulaEvaluator();
@@ -159,6 +227,8 @@ public class ExcelToPointOperaion extends GeneralOperation {
 
         try {
             final int startID = sheetInfo.isHeaderFirst() ? firstRow + 1 : firstRow;
+            List<TextColumn> columns = sheetInfo.getColumns();
+            String[] values = new String[columns.size()];
 
             // convert
             for (int rowID = startID; rowID <= sheet.getLastRowNum(); rowID++) {
@@ -167,45 +237,13 @@ public class ExcelToPointOperaion extends GeneralOperation {
                     continue;
                 }
 
-                Double x = null;
-                Double y = null;
-
-                SimpleFeature newFeature = featureWriter.buildFeature();
-
-                for (TextColumn col : sheetInfo.getColumns()) {
-                    Cell cell = row.getCell(col.getColumnIndex());
-                    Object value = getCellValue(cell, evaluator, formatter);
-                    value = Converters.convert(value, col.getBinding());
-                    newFeature.setAttribute(col.getName(), value);
-
-                    if (value != null && col.isX()) {
-                        x = Converters.convert(value, Double.class);
-                    } else if (value != null && col.isY()) {
-                        y = Converters.convert(value, Double.class);
-                    }
-                }
-
-                if (x != null && y != null) {
-                    Geometry point = gf.createPoint(new Coordinate(x, y));
-                    if (transform != null) {
-                        try {
-                            point = JTS.transform(point, transform);
-                        } catch (MismatchedDimensionException e) {
-                            LOGGER.log(Level.FINER, e.getMessage(), e);
-                        } catch (TransformException e) {
-                            LOGGER.log(Level.FINER, e.getMessage(), e);
-                        }
-                    }
-
-                    newFeature.setDefaultGeometry(point);
-                    try {
-                        featureWriter.write(newFeature);
-                    } catch (IOException e) {
-                        errorBuffer.append(rowID);
-                        errorBuffer.append(SEP);
-                    }
+                for (int index = 0; index < values.length; index++) {
+                    Cell cell = row.getCell(columns.get(index).getColumnIndex());
+                    values[index] = getCellValue(cell, evaluator, formatter);
                 }
+                write(featureWriter, points, columns, values, rowID);
             }
+            points.flush();
         } catch (IOException e) {
             featureWriter.rollback(e);
         } finally {
@@ -215,10 +253,80 @@ public class ExcelToPointOperaion extends GeneralOperation {
         return featureWriter.getFeatureCollection();
     }
 
-    private SimpleFeatureType buildSchema(ExcelSheetInfo sheetInfo) throws NullPointerException {
+    /**
+     * Points are reprojected in blocks, the features are built and written in row order when their
+     * block is complete
+     */
+    private PointBlockTransformer<RowFeature> createPoints(final IFeatureInserter featureWriter,
+            final List<TextColumn> columns, MathTransform transform) {
+        return new PointBlockTransformer<RowFeature>(gf, transform,
+                new PointHandler<RowFeature>() {
+                    @Override
+                    public void handle(RowFeature item, Point point) {
+                        try {
+                            SimpleFeature newFeature = featureWriter.buildFeature();
+                            for (int index = 0; index < item.values.length; index++) {
+                                newFeature.setAttribute(columns.get(index).getName(),
+                                        item.values[index]);
+                            }
+                            newFeature.setDefaultGeometry(point);
+                            featureWriter.write(newFeature);
+                        } catch (IOException e) {
+                            errorBuffer.append(item.rowID);
+                            errorBuffer.append(SEP);
+                        }
+                    }
+                });
+    }
+
+    private void write(IFeatureInserter featureWriter, PointBlockTransformer<RowFeature> points,
+            List<TextColumn> columns, String[] values, int rowID) throws IOException {
+        Double x = null;
+        Double y = null;
+
+        Object[] converted = new Object[values.length];
+        for (int index = 0; index < values.length; index++) {
+            TextColumn col = columns.get(index);
+            Object value = Converters.convert(values[index], col.getBinding());
+            converted[index] = value;
+            if (value == null && values[index] != null && !values[index].isEmpty()) {
+                // the value does not fit the column type, the field is left empty
+                errorBuffer.append(rowID).append(": ").append(col.getName()).append(" = ")
+                        .append(values[index]).append(SEP);
+            }
+
+            if (value != null && col.isX()) {
+                x = Converters.convert(value, Double.class);
+            } else if (value != null && col.isY()) {
+                y = Converters.convert(value, Double.class);
+            }
+        }
+
+        if (x != null && y != null) {
+            points.add(x.doubleValue(), y.doubleValue(), new RowFeature(converted, rowID));
+        }
+    }
+
+    /**
+     * Converted attribute values of a row waiting for the transformation of its block
+     */
+    static final class RowFeature {
+        final Object[] values;
+
+        final int rowID;
+
+        RowFeature(Object[] values, int rowID) {
+            this.values = values;
+            this.rowID = rowID;
+        }
+    }
+
+    private SimpleFeatureType buildSchema(List<TextColumn> columns,
+            CoordinateReferenceSystem sourceCRS, CoordinateReferenceSystem targetCRS)
+            throws NullPointerException {
         TextColumn xColumn = null;
         TextColumn yColomn = null;
-        for (TextColumn col : sheetInfo.getColumns()) {
+        for (TextColumn col : columns) {
             if (col.isX()) {
                 xColumn = col;
             } else if (col.isY()) {
@@ -231,12 +339,11 @@ public class ExcelToPointOperaion extends GeneralOperation {
         }
 
         // build schema
-        CoordinateReferenceSystem crs = sheetInfo.getTargetCRS() == null ? sheetInfo.getSourceCRS()
-                : sheetInfo.getTargetCRS();
+        CoordinateReferenceSystem crs = targetCRS == null ? sourceCRS : targetCRS;
 
         SimpleFeatureType schema = null;
-        schema = FeatureTypes.getDefaultType("ExcelToPoint", Point.class, crs);
-        for (TextColumn col : sheetInfo.getColumns()) {
+        schema = FeatureTypes.getDefaultType(outputTypeName, Point.class, crs);
+        for (TextColumn col : columns) {
             if (col.getBinding().isAssignableFrom(String.class)) {
                 schema = FeatureTypes.add(schema, col.getName(), col.getBinding(), col.getLength());
             } else {
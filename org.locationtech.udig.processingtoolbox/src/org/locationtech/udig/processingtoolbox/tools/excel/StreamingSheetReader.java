@@ -0,0 +1,298 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.locationtech.udig.processingtoolbox.tools.excel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.DateFormat;
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFReader.SheetIterator;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.geotools.util.logging.Logging;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Event based reader of Office Open XML(.xlsx) worksheets.
+ * <p>
+ * The sheet is parsed with SAX and each row is passed to a {@link RowHandler}, so the memory used
+ * does not depend on the number of rows. Cell values are formatted like the workbook based
+ * readers: dates as yyyyMMdd, numbers without grouping and formulas as their cached results.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+@SuppressWarnings("nls")
+public class StreamingSheetReader {
+    protected static final Logger LOGGER = Logging.getLogger(StreamingSheetReader.class);
+
+    private final File excelFile;
+
+    public StreamingSheetReader(File excelFile) {
+        this.excelFile = excelFile;
+    }
+
+    /**
+     * Returns true if the file is an Office Open XML workbook that can be streamed
+     */
+    public static boolean isSupported(File excelFile) {
+        String extension = FilenameUtils.getExtension(excelFile.getName()).toLowerCase();
+        return extension.equals("xlsx") || extension.equals("xlsm");
+    }
+
+    /**
+     * Receives the rows of a sheet in order
+     */
+    public interface RowHandler {
+        /**
+         * @param row the row, reused for the next row
+         * @return false to stop reading
+         */
+        boolean handleRow(SheetRow row) throws IOException;
+    }
+
+    public List<String> getWorksheets() throws IOException {
+        List<String> workSheets = new ArrayList<String>();
+        OPCPackage pkg = open();
+        try {
+            SheetIterator iter = (SheetIterator) new XSSFReader(pkg).getSheetsData();
+            while (iter.hasNext()) {
+                InputStream sheetData = iter.next();
+                workSheets.add(iter.getSheetName());
+                sheetData.close();
+            }
+        } catch (OpenXML4JException e) {
+            throw new IOException(e);
+        } finally {
+            pkg.revert();
+        }
+        return workSheets;
+    }
+
+    /**
+     * Reads the rows of a sheet
+     *
+     * @param sheetName the sheet name
+     * @param handler the row handler
+     * @throws IOException
+     */
+    public void read(String sheetName, RowHandler handler) throws IOException {
+        OPCPackage pkg = open();
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            InputStream sheetData = null;
+            SheetIterator iter = (SheetIterator) reader.getSheetsData();
+            while (iter.hasNext()) {
+                InputStream data = iter.next();
+                if (sheetName.equals(iter.getSheetName())) {
+                    sheetData = data;
+                    break;
+                }
+                data.close();
+            }
+
+            if (sheetData == null) {
+                throw new NullPointerException(sheetName + " sheet does not exist!");
+            }
+
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+            RowCollector collector = new RowCollector(handler);
+            try {
+                XMLReader parser = SAXHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(styles, strings, collector,
+                        new CellFormatter(), false));
+                parser.parse(new InputSource(sheetData));
+            } catch (StopReading stop) {
+                if (collector.failure != null) {
+                    throw collector.failure;
+                }
+            } finally {
+                sheetData.close();
+            }
+        } catch (OpenXML4JException e) {
+            throw new IOException(e);
+        } catch (SAXException e) {
+            throw new IOException(e);
+        } catch (ParserConfigurationException e) {
+            throw new IOException(e);
+        } finally {
+            pkg.revert(); // read only, nothing to save
+        }
+    }
+
+    private OPCPackage open() throws IOException {
+        try {
+            return OPCPackage.open(excelFile, PackageAccess.READ);
+        } catch (OpenXML4JException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Cell values of a row, missing cells are empty strings
+     */
+    public static final class SheetRow {
+        private int rowNum = -1;
+
+        private String[] cells = new String[32];
+
+        private int firstColumn = -1;
+
+        private int lastColumn = -1;
+
+        public int getRowNum() {
+            return rowNum;
+        }
+
+        public int getFirstColumn() {
+            return firstColumn;
+        }
+
+        public int getLastColumn() {
+            return lastColumn;
+        }
+
+        public boolean isEmpty() {
+            return lastColumn == -1;
+        }
+
+        public String getCell(int column) {
+            if (column < 0 || column > lastColumn || cells[column] == null) {
+                return "";
+            }
+            return cells[column];
+        }
+
+        void reset(int rowNum) {
+            Arrays.fill(cells, 0, lastColumn + 1, null);
+            this.firstColumn = -1;
+            this.lastColumn = -1;
+            this.rowNum = rowNum;
+        }
+
+        void setCell(int column, String value) {
+            if (column >= cells.length) {
+                cells = Arrays.copyOf(cells, Math.max(column + 1, cells.length * 2));
+            }
+            cells[column] = value;
+            firstColumn = firstColumn == -1 ? column : Math.min(firstColumn, column);
+            lastColumn = Math.max(lastColumn, column);
+        }
+    }
+
+    static final class StopReading extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    static final class RowCollector implements SheetContentsHandler {
+        private final RowHandler handler;
+
+        private final SheetRow row = new SheetRow();
+
+        private int column = -1;
+
+        IOException failure;
+
+        RowCollector(RowHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            row.reset(rowNum);
+            column = -1;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            boolean proceed;
+            try {
+                proceed = handler.handleRow(row);
+            } catch (IOException e) {
+                failure = e;
+                proceed = false;
+            }
+
+            if (!proceed) {
+                throw new StopReading();
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            // the reference can be omitted for consecutive cells
+            column = cellReference == null ? column + 1
+                    : new CellReference(cellReference).getCol();
+            if (formattedValue == null || formattedValue.startsWith("ERROR:")) {
+                return; // same as blank and error cells of the workbook readers
+            }
+            row.setCell(column, formattedValue.trim());
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+            // ignore
+        }
+    }
+
+    /**
+     * Formats numbers and dates the same way as {@link ExcelFormatReader}
+     */
+    static final class CellFormatter extends DataFormatter {
+        private final DateFormat dateFormat = new SimpleDateFormat("yyyyMMdd");
+
+        private final DecimalFormat decimalFormat = new DecimalFormat("#.####################");
+
+        CellFormatter() {
+            super(true);
+        }
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            if (DateUtil.isADateFormat(formatIndex, formatString)
+                    && DateUtil.isValidExcelDate(value)) {
+                return dateFormat.format(DateUtil.getJavaDate(value));
+            }
+            return decimalFormat.format(value);
+        }
+    }
+}
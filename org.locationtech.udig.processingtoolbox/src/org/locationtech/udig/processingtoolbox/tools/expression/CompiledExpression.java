@@ -0,0 +1,45 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools.expression;
+
+/**
+ * Numeric expression compiled by {@link NumericExpressionCompiler}.
+ * <p>
+ * Input values are read from a slot array of primitive doubles, missing values are Double.NaN.
+ * Instances are immutable and can be shared between threads.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public abstract class CompiledExpression {
+
+    /**
+     * Evaluates this expression against the given slot values
+     *
+     * @param slots the slot values
+     * @return the result value or Double.NaN
+     */
+    public abstract double evaluate(double[] slots);
+
+    /**
+     * Returns true if the result of this expression does not depend on any slot value
+     */
+    public boolean isConstant() {
+        return false;
+    }
+
+    /**
+     * Returns true if the result of this expression is an integral number (round)
+     */
+    public boolean isIntegral() {
+        return false;
+    }
+}
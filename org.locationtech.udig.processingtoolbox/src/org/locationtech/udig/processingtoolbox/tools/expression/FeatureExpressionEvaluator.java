@@ -0,0 +1,195 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools.expression;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.util.Converters;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+
+/**
+ * Evaluates an expression against the features of a given feature type.
+ * <p>
+ * Numeric expressions are compiled once with {@link NumericExpressionCompiler}: property names are
+ * resolved to attribute indexes of the feature type and the values are read into a primitive slot
+ * array. Expressions that can not be compiled (text, geometry or temporal operations) are
+ * evaluated by the GeoTools expression.<br>
+ * Instances are not thread safe, use one evaluator per thread.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class FeatureExpressionEvaluator {
+    protected static final Logger LOGGER = Logging.getLogger(FeatureExpressionEvaluator.class);
+
+    private final Expression expression;
+
+    private final Class<?> binding;
+
+    private CompiledExpression compiled;
+
+    private int[] attributes;
+
+    private double[] slots;
+
+    private Object constant;
+
+    /**
+     * Creates an evaluator
+     *
+     * @param schema the feature type of the features to be evaluated
+     * @param expression the expression
+     * @param binding the result type, null to return the value as is
+     */
+    public FeatureExpressionEvaluator(SimpleFeatureType schema, Expression expression,
+            Class<?> binding) {
+        this.expression = expression;
+        this.binding = binding;
+        this.compile(schema);
+    }
+
+    private void compile(SimpleFeatureType schema) {
+        // property names and literals are already cheap, text results keep the GeoTools format
+        if (expression instanceof PropertyName || expression instanceof Literal) {
+            return;
+        } else if (binding != null && !Number.class.isAssignableFrom(binding)) {
+            return;
+        }
+
+        Map<String, Integer> slotMap = new HashMap<String, Integer>();
+        for (int index = 0; index < schema.getAttributeCount(); index++) {
+            AttributeDescriptor descriptor = schema.getDescriptor(index);
+            if (Number.class.isAssignableFrom(descriptor.getType().getBinding())) {
+                slotMap.put(descriptor.getLocalName(), Integer.valueOf(index));
+            }
+        }
+
+        try {
+            // functions other than arithmetic and math are evaluated by GeoTools as a whole,
+            // so that their null handling and result types are kept
+            NumericExpressionCompiler compiler = new NumericExpressionCompiler(slotMap);
+            compiler.setDelegateFunctions(false);
+            CompiledExpression result = compiler.compile(expression);
+
+            Set<Integer> usedSlots = compiler.getUsedSlots();
+            attributes = new int[usedSlots.size()];
+            int pos = 0;
+            for (Integer slot : usedSlots) {
+                attributes[pos++] = slot.intValue();
+            }
+            slots = new double[schema.getAttributeCount()];
+            compiled = result;
+
+            if (compiled.isConstant()) {
+                constant = toValue(compiled.evaluate(slots));
+            }
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.FINER, e.getMessage());
+            compiled = null;
+        }
+    }
+
+    /**
+     * Returns true if the expression was compiled to a numeric evaluator
+     */
+    public boolean isCompiled() {
+        return compiled != null;
+    }
+
+    /**
+     * Returns the expression
+     */
+    public Expression getExpression() {
+        return expression;
+    }
+
+    /**
+     * Evaluates the expression and converts the result to the binding of this evaluator
+     *
+     * @param feature the feature
+     * @return the value or null
+     */
+    public Object evaluate(SimpleFeature feature) {
+        if (compiled == null) {
+            Object value = expression.evaluate(feature);
+            return binding == null ? value : Converters.convert(value, binding);
+        } else if (compiled.isConstant()) {
+            return constant;
+        }
+        return toValue(evaluateCompiled(feature));
+    }
+
+    /**
+     * Evaluates the expression as a primitive double
+     *
+     * @param feature the feature
+     * @return the value or Double.NaN if the value is null or not numeric
+     */
+    public double evaluateDouble(SimpleFeature feature) {
+        if (compiled == null) {
+            Double value = NumericExpressionCompiler.toDouble(expression.evaluate(feature));
+            return value == null ? Double.NaN : value.doubleValue();
+        }
+        return evaluateCompiled(feature);
+    }
+
+    private double evaluateCompiled(SimpleFeature feature) {
+        for (int index : attributes) {
+            Object value = feature.getAttribute(index);
+            slots[index] = value == null ? Double.NaN : ((Number) value).doubleValue();
+        }
+        return compiled.evaluate(slots);
+    }
+
+    private Object toValue(double value) {
+        if (Double.isNaN(value)) {
+            return null;
+        } else if (compiled.isIntegral() && (binding == null || binding == Number.class)) {
+            return Long.valueOf((long) value);
+        } else if (binding == null || binding == Double.class || binding == Number.class) {
+            return Double.valueOf(value);
+        }
+        return Converters.convert(Double.valueOf(value), binding);
+    }
+
+    /**
+     * Evaluates the expression against the first feature of the collection
+     *
+     * @param features the features
+     * @param expression the expression
+     * @return the value or null if the collection is empty
+     */
+    public static Object evaluateFirst(SimpleFeatureCollection features, Expression expression) {
+        SimpleFeatureIterator featureIter = features.features();
+        try {
+            if (featureIter.hasNext()) {
+                FeatureExpressionEvaluator evaluator = new FeatureExpressionEvaluator(
+                        features.getSchema(), expression, null);
+                return evaluator.evaluate(featureIter.next());
+            }
+            return null;
+        } finally {
+            featureIter.close();
+        }
+    }
+}
@@ -0,0 +1,437 @@
+/*
+ * uDig - User Friendly Desktop Internet GIS client
+ * (C) MangoSystem - www.mangosystem.com
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Refractions BSD
+ * License v1.0 (http://udig.refractions.net/files/bsd3-v10.html).
+ */
+package org.locationtech.udig.processingtoolbox.tools.expression;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.util.Converters;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.expression.Add;
+import org.opengis.filter.expression.BinaryExpression;
+import org.opengis.filter.expression.Divide;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Function;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.Multiply;
+import org.opengis.filter.expression.NilExpression;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.expression.Subtract;
+
+/**
+ * Compiles a GeoTools numeric expression into a {@link CompiledExpression}.
+ * <p>
+ * Property names are resolved to slot indexes once, constant subtrees are folded and arithmetic
+ * and common math functions are evaluated on primitive doubles. Other functions (conditional,
+ * comparison, text functions...) are evaluated as is by the GeoTools function against the slot
+ * values of the properties they refer to, or rejected if function delegation is disabled.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+@SuppressWarnings("nls")
+public class NumericExpressionCompiler {
+    protected static final Logger LOGGER = Logging.getLogger(NumericExpressionCompiler.class);
+
+    static final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    static final double[] NO_SLOTS = new double[0];
+
+    // arithmetic operators
+    static final int ADD = 0, SUBTRACT = 1, MULTIPLY = 2, DIVIDE = 3;
+
+    // native functions
+    static final int PI = 10, ABS = 11, ACOS = 12, ASIN = 13, ATAN = 14, CEIL = 15, COS = 16,
+            EXP = 17, FLOOR = 18, LOG = 19, RINT = 20, ROUND = 21, SIN = 22, SQRT = 23, TAN = 24,
+            TO_DEGREES = 25, TO_RADIANS = 26, ATAN2 = 27, REMAINDER = 28, MAX = 29, MIN = 30,
+            POW = 31;
+
+    static final Map<String, Integer> FUNCTIONS = new HashMap<String, Integer>();
+
+    static final Map<Integer, Integer> ARGUMENTS = new HashMap<Integer, Integer>();
+
+    static {
+        register(PI, 0, "pi");
+        register(ABS, 1, "abs", "abs_2", "abs_3", "abs_4");
+        register(ACOS, 1, "acos");
+        register(ASIN, 1, "asin");
+        register(ATAN, 1, "atan");
+        register(CEIL, 1, "ceil");
+        register(COS, 1, "cos");
+        register(EXP, 1, "exp");
+        register(FLOOR, 1, "floor");
+        register(LOG, 1, "log");
+        register(RINT, 1, "rint");
+        register(ROUND, 1, "round", "round_2");
+        register(SIN, 1, "sin");
+        register(SQRT, 1, "sqrt");
+        register(TAN, 1, "tan");
+        register(TO_DEGREES, 1, "toDegrees");
+        register(TO_RADIANS, 1, "toRadians");
+        register(ATAN2, 2, "atan2");
+        register(REMAINDER, 2, "IEEEremainder");
+        register(MAX, 2, "max", "max_2", "max_3", "max_4");
+        register(MIN, 2, "min", "min_2", "min_3", "min_4");
+        register(POW, 2, "pow");
+    }
+
+    private static void register(int opcode, int arguments, String... names) {
+        for (String name : names) {
+            FUNCTIONS.put(name.toLowerCase(), Integer.valueOf(opcode));
+        }
+        ARGUMENTS.put(Integer.valueOf(opcode), Integer.valueOf(arguments));
+    }
+
+    private final Map<String, Integer> slots;
+
+    private final Set<Integer> usedSlots = new TreeSet<Integer>();
+
+    private boolean delegateFunctions = true;
+
+    /**
+     * Creates a compiler
+     *
+     * @param slots property name to slot index map
+     */
+    public NumericExpressionCompiler(Map<String, Integer> slots) {
+        this.slots = slots;
+    }
+
+    /**
+     * Sets whether the functions that are not evaluated natively are delegated to GeoTools, if
+     * false compiling such a function throws an IllegalArgumentException so that the caller can
+     * evaluate the whole expression with GeoTools
+     */
+    public void setDelegateFunctions(boolean delegateFunctions) {
+        this.delegateFunctions = delegateFunctions;
+    }
+
+    /**
+     * Returns the slot indexes referenced by the compiled expressions
+     */
+    public Set<Integer> getUsedSlots() {
+        return Collections.unmodifiableSet(usedSlots);
+    }
+
+    /**
+     * Compiles the expression
+     *
+     * @param expression the GeoTools expression
+     * @return the compiled expression
+     * @throws IllegalArgumentException if the expression is not numeric or refers to unknown
+     *         properties
+     */
+    public CompiledExpression compile(Expression expression) throws IllegalArgumentException {
+        if (expression == null || expression instanceof NilExpression) {
+            return new Constant(Double.NaN);
+        } else if (expression instanceof Literal) {
+            Double value = toDouble(((Literal) expression).getValue());
+            if (value == null) {
+                throw new IllegalArgumentException("Not a numeric literal: " + expression);
+            }
+            return new Constant(value.doubleValue());
+        } else if (expression instanceof PropertyName) {
+            String name = ((PropertyName) expression).getPropertyName();
+            Integer slot = slots.get(name);
+            if (slot == null) {
+                throw new IllegalArgumentException("Unknown property: " + name);
+            }
+            usedSlots.add(slot);
+            return new Slot(slot.intValue());
+        } else if (expression instanceof BinaryExpression) {
+            BinaryExpression binary = (BinaryExpression) expression;
+            int operator;
+            if (expression instanceof Add) {
+                operator = ADD;
+            } else if (expression instanceof Subtract) {
+                operator = SUBTRACT;
+            } else if (expression instanceof Multiply) {
+                operator = MULTIPLY;
+            } else if (expression instanceof Divide) {
+                operator = DIVIDE;
+            } else {
+                throw new IllegalArgumentException("Unsupported operator: " + expression);
+            }
+            CompiledExpression left = compile(binary.getExpression1());
+            CompiledExpression right = compile(binary.getExpression2());
+            return fold(new Arithmetic(operator, left, right), left, right);
+        } else if (expression instanceof Function) {
+            return compileFunction((Function) expression);
+        }
+
+        throw new IllegalArgumentException("Unsupported expression: " + expression);
+    }
+
+    private CompiledExpression compileFunction(Function function) {
+        List<Expression> params = function.getParameters();
+        Integer opcode = FUNCTIONS.get(function.getName().toLowerCase());
+        if (opcode != null && ARGUMENTS.get(opcode).intValue() == params.size()) {
+            switch (params.size()) {
+            case 0:
+                return new Constant(evaluate(opcode.intValue(), Double.NaN, Double.NaN));
+            case 1:
+                CompiledExpression arg = compile(params.get(0));
+                return fold(new NativeFunction(opcode.intValue(), arg, null), arg, null);
+            default:
+                CompiledExpression arg1 = compile(params.get(0));
+                CompiledExpression arg2 = compile(params.get(1));
+                return fold(new NativeFunction(opcode.intValue(), arg1, arg2), arg1, arg2);
+            }
+        }
+
+        if (!delegateFunctions) {
+            throw new IllegalArgumentException("Not a native function: " + function.getName());
+        }
+
+        // delegate to GeoTools function, the properties are read from the slots
+        SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+        typeBuilder.setName("CompiledFunction");
+
+        String[] names = DataUtilities.attributeNames(function);
+        int[] argSlots = new int[names.length];
+        for (int index = 0; index < names.length; index++) {
+            Integer slot = slots.get(names[index]);
+            if (slot == null) {
+                throw new IllegalArgumentException("Unknown property: " + names[index]);
+            }
+            usedSlots.add(slot);
+            argSlots[index] = slot.intValue();
+            typeBuilder.add(names[index], Double.class);
+        }
+
+        return new DelegateFunction(function, argSlots, typeBuilder.buildFeatureType());
+    }
+
+    private CompiledExpression fold(CompiledExpression node, CompiledExpression arg1,
+            CompiledExpression arg2) {
+        if (arg1.isConstant() && (arg2 == null || arg2.isConstant())) {
+            return new Constant(node.evaluate(NO_SLOTS), node.isIntegral());
+        }
+        return node;
+    }
+
+    static Double toDouble(Object value) {
+        if (value == null) {
+            return null;
+        } else if (value instanceof Number) {
+            return Double.valueOf(((Number) value).doubleValue());
+        }
+        return Converters.convert(value, Double.class);
+    }
+
+    static double evaluate(int opcode, double a, double b) {
+        switch (opcode) {
+        case ADD:
+            return a + b;
+        case SUBTRACT:
+            return a - b;
+        case MULTIPLY:
+            return a * b;
+        case DIVIDE:
+            return a / b;
+        case PI:
+            return Math.PI;
+        case ABS:
+            return Math.abs(a);
+        case ACOS:
+            return Math.acos(a);
+        case ASIN:
+            return Math.asin(a);
+        case ATAN:
+            return Math.atan(a);
+        case CEIL:
+            return Math.ceil(a);
+        case COS:
+            return Math.cos(a);
+        case EXP:
+            return Math.exp(a);
+        case FLOOR:
+            return Math.floor(a);
+        case LOG:
+            return Math.log(a);
+        case RINT:
+            return Math.rint(a);
+        case ROUND:
+            return Double.isNaN(a) ? a : Math.round(a);
+        case SIN:
+            return Math.sin(a);
+        case SQRT:
+            return Math.sqrt(a);
+        case TAN:
+            return Math.tan(a);
+        case TO_DEGREES:
+            return Math.toDegrees(a);
+        case TO_RADIANS:
+            return Math.toRadians(a);
+        case ATAN2:
+            return Math.atan2(a, b);
+        case REMAINDER:
+            return Math.IEEEremainder(a, b);
+        case MAX:
+            return Math.max(a, b);
+        case MIN:
+            return Math.min(a, b);
+        case POW:
+            return Math.pow(a, b);
+        default:
+            return Double.NaN;
+        }
+    }
+
+    static final class Constant extends CompiledExpression {
+        private final double value;
+
+        private final boolean integral;
+
+        Constant(double value) {
+            this(value, false);
+        }
+
+        Constant(double value, boolean integral) {
+            this.value = value;
+            this.integral = integral;
+        }
+
+        @Override
+        public double evaluate(double[] slots) {
+            return value;
+        }
+
+        @Override
+        public boolean isConstant() {
+            return true;
+        }
+
+        @Override
+        public boolean isIntegral() {
+            return integral;
+        }
+    }
+
+    static final class Slot extends CompiledExpression {
+        private final int index;
+
+        Slot(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public double evaluate(double[] slots) {
+            return slots[index];
+        }
+    }
+
+    static final class Arithmetic extends CompiledExpression {
+        private final int operator;
+
+        private final CompiledExpression left;
+
+        private final CompiledExpression right;
+
+        Arithmetic(int operator, CompiledExpression left, CompiledExpression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public double evaluate(double[] slots) {
+            double a = left.evaluate(slots);
+            double b = right.evaluate(slots);
+            switch (operator) {
+            case ADD:
+                return a + b;
+            case SUBTRACT:
+                return a - b;
+            case MULTIPLY:
+                return a * b;
+            default:
+                return a / b;
+            }
+        }
+    }
+
+    static final class NativeFunction extends CompiledExpression {
+        private final int opcode;
+
+        private final CompiledExpression arg1;
+
+        private final CompiledExpression arg2;
+
+        NativeFunction(int opcode, CompiledExpression arg1, CompiledExpression arg2) {
+            this.opcode = opcode;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+        }
+
+        @Override
+        public double evaluate(double[] slots) {
+            double a = arg1.evaluate(slots);
+            double b = arg2 == null ? Double.NaN : arg2.evaluate(slots);
+            return NumericExpressionCompiler.evaluate(opcode, a, b);
+        }
+
+        @Override
+        public boolean isIntegral() {
+            return opcode == ROUND;
+        }
+    }
+
+    static final class DelegateFunction extends CompiledExpression {
+        private final Function function;
+
+        private final int[] argSlots;
+
+        private final ThreadLocal<SimpleFeature> feature;
+
+        DelegateFunction(Function function, int[] argSlots, final SimpleFeatureType schema) {
+            this.function = function;
+            this.argSlots = argSlots;
+            this.feature = new ThreadLocal<SimpleFeature>() {
+                @Override
+                protected SimpleFeature initialValue() {
+                    return new SimpleFeatureBuilder(schema).buildFeature(null);
+                }
+            };
+        }
+
+        @Override
+        public double evaluate(double[] slots) {
+            // missing values are passed as null, the function decides how to handle them
+            SimpleFeature context = feature.get();
+            for (int index = 0; index < argSlots.length; index++) {
+                double value = slots[argSlots[index]];
+                context.setAttribute(index, Double.isNaN(value) ? null : Double.valueOf(value));
+            }
+
+            try {
+                Double value = toDouble(function.evaluate(context));
+                return value == null ? Double.NaN : value.doubleValue();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINEST, e.getMessage(), e);
+                return Double.NaN;
+            }
+        }
+    }
+}